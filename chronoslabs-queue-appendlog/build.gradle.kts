@@ -0,0 +1,13 @@
+plugins {
+    id("java-library")
+    id("publishing-conventions")
+}
+
+dependencies {
+    api(projects.chronoslabsQueueCore)
+
+    implementation(libs.logging.slf4j.api)
+
+    testImplementation(libs.test.groovy.language)
+    testImplementation(testFixtures(projects.chronoslabsQueueCore))
+}
@@ -0,0 +1,403 @@
+package io.chronoslabs.queue;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sequence of {@link AppendLogSegment}s with the location and dispatch state of every live element.
+ *
+ * <p>Appending only copies records into the mapped active segment. A single flusher thread forces
+ * the appended ranges to disk and wakes up every writer whose records are covered, so concurrent
+ * commits share one fsync (group commit). A failed fsync leaves the log in an unknown state, so the
+ * log refuses every further append until it is reopened.
+ *
+ * <p>Compaction only ever processes the oldest segment: it copies the live elements, with their
+ * current dispatch state, into the active segment and deletes the file once the copies are durable.
+ * Tombstones and dispatch state updates in the oldest segment can only refer to elements inserted
+ * in that same segment, so they are dropped with it.
+ */
+final class AppendLog {
+  private static final Logger logger = LoggerFactory.getLogger(AppendLog.class);
+  private static final int COMPACTION_RECORDS_PER_LOCK = 256;
+
+  private final Path directory;
+  private final int segmentSize;
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition flushRequested = lock.newCondition();
+  private final Condition flushed = lock.newCondition();
+  private final Deque<AppendLogSegment> segments = new ArrayDeque<>();
+  private final LongObjectHashMap<Location> locations = new LongObjectHashMap<>();
+  private final Thread flusher;
+  private long highestId;
+  private long appendedBytes;
+  private long durableBytes;
+  private RuntimeException failure;
+  private boolean closed;
+
+  private AppendLog(Path directory, int segmentSize, String flusherThreadName) {
+    this.directory = directory;
+    this.segmentSize = segmentSize;
+    this.flusher = new Thread(this::flushContinuously, flusherThreadName);
+    this.flusher.setDaemon(true);
+  }
+
+  /**
+   * Opens the log in the directory, replays all segments and passes every live element to the
+   * consumer before the log accepts new records.
+   */
+  static AppendLog open(
+      Path directory, int segmentSize, String flusherThreadName, RecoveredElementConsumer consumer)
+      throws IOException {
+    Files.createDirectories(directory);
+    var appendLog = new AppendLog(directory, segmentSize, flusherThreadName);
+    appendLog.recover(consumer);
+    appendLog.flusher.start();
+    return appendLog;
+  }
+
+  long highestUsedId() {
+    lock.lock();
+    try {
+      return highestId;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Appends the records in order, without waiting for them to become durable.
+   *
+   * @return the position to pass to {@link #awaitDurable(long)}.
+   */
+  long append(List<AppendLogRecord> records) {
+    for (var record : records) {
+      Assert.isTrue(
+          AppendLogSegment.HEADER_SIZE + record.size() <= segmentSize,
+          "Append log record of element with id=%d has %d bytes and does not fit into a segment of %d bytes."
+              .formatted(record.id(), record.size(), segmentSize));
+    }
+    lock.lock();
+    try {
+      ensureWritable();
+      for (var record : records) {
+        appendRecord(record);
+      }
+      flushRequested.signal();
+      return appendedBytes;
+    } catch (IOException exception) {
+      throw fail(exception);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  void awaitDurable(long position) {
+    lock.lock();
+    try {
+      while (durableBytes < position) {
+        ensureWritable();
+        flushed.awaitUninterruptibly();
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Compacts the oldest segment when it is not the active one and the share of its elements that
+   * are still live dropped below the ratio.
+   *
+   * @return whether a segment was deleted.
+   */
+  boolean compactOldestSegment(double liveElementsRatio) throws IOException {
+    var oldest = oldestSegmentToCompact(liveElementsRatio);
+    if (oldest == null) {
+      return false;
+    }
+    var offset = AppendLogSegment.HEADER_SIZE;
+    var position = 0L;
+    while (offset < oldest.writeOffset()) {
+      lock.lock();
+      try {
+        ensureWritable();
+        for (int records = 0;
+            records < COMPACTION_RECORDS_PER_LOCK && offset < oldest.writeOffset();
+            records++) {
+          var record = oldest.read(offset);
+          if (record == null) {
+            break;
+          }
+          copyIfLive(oldest, offset, record);
+          offset += record.size();
+        }
+        position = appendedBytes;
+        flushRequested.signal();
+      } catch (IOException exception) {
+        throw fail(exception);
+      } finally {
+        lock.unlock();
+      }
+    }
+    awaitDurable(position);
+    return deleteIfNoLiveElements(oldest);
+  }
+
+  /** Waits until everything appended so far is durable and closes all segments. */
+  void close() throws IOException {
+    lock.lock();
+    try {
+      closed = true;
+      flushRequested.signal();
+    } finally {
+      lock.unlock();
+    }
+    try {
+      flusher.join();
+    } catch (InterruptedException exception) {
+      Thread.currentThread().interrupt();
+    }
+    for (var segment : segments) {
+      segment.close();
+    }
+  }
+
+  private void recover(RecoveredElementConsumer consumer) throws IOException {
+    List<Path> paths;
+    try (var files = Files.list(directory)) {
+      paths =
+          files
+              .filter(AppendLogSegment::isSegmentFile)
+              .sorted(Comparator.comparing(Path::getFileName))
+              .toList();
+    }
+    for (var path : paths) {
+      var segment = AppendLogSegment.open(path);
+      segment.recoverWriteOffset();
+      segments.addLast(segment);
+      highestId = Math.max(highestId, segment.idHighWaterMark());
+      var offset = AppendLogSegment.HEADER_SIZE;
+      while (offset < segment.writeOffset()) {
+        var record = segment.read(offset);
+        track(record, segment, offset);
+        offset += record.size();
+      }
+    }
+    if (segments.isEmpty()) {
+      segments.addLast(AppendLogSegment.create(directory, 0, segmentSize, highestId));
+    }
+    locations.forEachValue(
+        location -> {
+          var record = location.segment.read(location.offset);
+          consumer.accept(
+              record.id(),
+              record.createdAt(),
+              location.nextDispatchAfter,
+              location.dispatchCount,
+              record.traceContext(),
+              record.payload());
+        });
+    logger
+        .atInfo()
+        .addArgument(directory)
+        .addArgument(segments.size())
+        .addArgument(locations.size())
+        .log("Recovered append log {} with {} segments and {} live elements.");
+  }
+
+  private void appendRecord(AppendLogRecord record) throws IOException {
+    var segment = segments.getLast();
+    if (!segment.hasRoomFor(record.size())) {
+      segment = AppendLogSegment.create(directory, segment.sequence() + 1, segmentSize, highestId);
+      segments.addLast(segment);
+    }
+    var offset = segment.append(record);
+    appendedBytes += record.size();
+    track(record, segment, offset);
+  }
+
+  private void track(AppendLogRecord record, AppendLogSegment segment, int offset) {
+    highestId = Math.max(highestId, record.id());
+    switch (record.type()) {
+      case AppendLogRecord.INSERT -> {
+        var previousLocation =
+            locations.put(
+                record.id(),
+                new Location(segment, offset, record.nextDispatchAfter(), record.dispatchCount()));
+        if (previousLocation != null) {
+          previousLocation.segment.elementRemoved();
+        }
+        segment.elementInserted();
+      }
+      case AppendLogRecord.UPDATE -> {
+        var location = locations.get(record.id());
+        if (location != null) {
+          location.nextDispatchAfter = record.nextDispatchAfter();
+          location.dispatchCount = record.dispatchCount();
+        }
+      }
+      default -> {
+        var location = locations.remove(record.id());
+        if (location != null) {
+          location.segment.elementRemoved();
+        }
+      }
+    }
+  }
+
+  @SuppressWarnings("PMD.CompareObjectsWithEquals")
+  private void copyIfLive(AppendLogSegment oldest, int offset, AppendLogRecord record)
+      throws IOException {
+    if (record.type() != AppendLogRecord.INSERT) {
+      return;
+    }
+    var location = locations.get(record.id());
+    if (location != null && location.segment == oldest && location.offset == offset) {
+      appendRecord(record.withDispatchState(location.nextDispatchAfter, location.dispatchCount));
+    }
+  }
+
+  private AppendLogSegment oldestSegmentToCompact(double liveElementsRatio) {
+    lock.lock();
+    try {
+      if (segments.size() < 2 || failure != null || closed) {
+        return null;
+      }
+      var oldest = segments.getFirst();
+      if (oldest.liveElements() >= liveElementsRatio * oldest.insertedElements()
+          && oldest.liveElements() > 0) {
+        return null;
+      }
+      return oldest;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @SuppressWarnings("PMD.CompareObjectsWithEquals")
+  private boolean deleteIfNoLiveElements(AppendLogSegment oldest) throws IOException {
+    lock.lock();
+    try {
+      if (oldest.liveElements() > 0 || segments.getFirst() != oldest) {
+        return false;
+      }
+      segments.removeFirst();
+      oldest.delete();
+      return true;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void flushContinuously() {
+    var ranges = new ArrayList<FlushRange>();
+    while (true) {
+      long position;
+      ranges.clear();
+      lock.lock();
+      try {
+        while (appendedBytes == durableBytes && failure == null && !closed) {
+          flushRequested.awaitUninterruptibly();
+        }
+        if (appendedBytes == durableBytes || failure != null) {
+          return;
+        }
+        position = appendedBytes;
+        for (var segment : segments) {
+          if (segment.hasUnflushedRecords()) {
+            ranges.add(new FlushRange(segment, segment.markFlushed(), segment.writeOffset()));
+          }
+        }
+      } finally {
+        lock.unlock();
+      }
+      try {
+        for (var range : ranges) {
+          range.segment().force(range.from(), range.to());
+        }
+      } catch (RuntimeException exception) {
+        lock.lock();
+        try {
+          fail(exception);
+        } finally {
+          lock.unlock();
+        }
+        return;
+      }
+      lock.lock();
+      try {
+        durableBytes = position;
+        flushed.signalAll();
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+
+  private void ensureWritable() {
+    if (failure != null) {
+      throw failure;
+    }
+    if (closed) {
+      throw new IllegalStateException("Append log %s is closed.".formatted(directory));
+    }
+  }
+
+  private RuntimeException fail(Exception exception) {
+    if (failure == null) {
+      logger
+          .atError()
+          .addArgument(directory)
+          .setCause(exception)
+          .log("Append log {} failed and refuses further writes until it is reopened.");
+      failure =
+          exception instanceof IOException ioException
+              ? new UncheckedIOException("Append log %s failed.".formatted(directory), ioException)
+              : new IllegalStateException("Append log %s failed.".formatted(directory), exception);
+      flushed.signalAll();
+      flushRequested.signalAll();
+    }
+    return failure;
+  }
+
+  @FunctionalInterface
+  interface RecoveredElementConsumer {
+    @SuppressWarnings("java:S107")
+    void accept(
+        long id,
+        Instant createdAt,
+        Instant nextDispatchAfter,
+        int dispatchCount,
+        Map<String, String> traceContext,
+        byte[] payload);
+  }
+
+  private static final class Location {
+    private final AppendLogSegment segment;
+    private final int offset;
+    private Instant nextDispatchAfter;
+    private int dispatchCount;
+
+    private Location(
+        AppendLogSegment segment, int offset, Instant nextDispatchAfter, int dispatchCount) {
+      this.segment = segment;
+      this.offset = offset;
+      this.nextDispatchAfter = nextDispatchAfter;
+      this.dispatchCount = dispatchCount;
+    }
+  }
+
+  private record FlushRange(AppendLogSegment segment, int from, int to) {}
+}
@@ -0,0 +1,61 @@
+package io.chronoslabs.queue;
+
+import static io.chronoslabs.queue.Assert.isPositive;
+import static io.chronoslabs.queue.Assert.isTrue;
+
+import java.time.Duration;
+
+public record AppendLogConfigurationProperties(
+    int segmentSize, Duration compactionInterval, double compactionLiveElementsRatio) {
+
+  void validate(String queueName) {
+    isTrue(
+        segmentSize > AppendLogSegment.HEADER_SIZE,
+        "Configuration property 'segment-size' of queue %s must be greater than %d bytes."
+            .formatted(queueName, AppendLogSegment.HEADER_SIZE));
+    isPositive(
+        compactionInterval,
+        "Configuration property 'compaction-interval' of queue %s must be greater than zero."
+            .formatted(queueName));
+    isTrue(
+        compactionLiveElementsRatio > 0 && compactionLiveElementsRatio <= 1,
+        "Configuration property 'compaction-live-elements-ratio' of queue %s must be greater than zero and at most one."
+            .formatted(queueName));
+  }
+
+  public static AppendLogConfigurationProperties defaultConfiguration() {
+    return new AppendLogConfigurationProperties(64 * 1024 * 1024, Duration.ofSeconds(10), 0.5);
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  public static class Builder {
+    private int segmentSize;
+    private Duration compactionInterval;
+    private double compactionLiveElementsRatio;
+
+    private Builder() {}
+
+    public Builder withSegmentSize(int segmentSize) {
+      this.segmentSize = segmentSize;
+      return this;
+    }
+
+    public Builder withCompactionInterval(Duration compactionInterval) {
+      this.compactionInterval = compactionInterval;
+      return this;
+    }
+
+    public Builder withCompactionLiveElementsRatio(double compactionLiveElementsRatio) {
+      this.compactionLiveElementsRatio = compactionLiveElementsRatio;
+      return this;
+    }
+
+    public AppendLogConfigurationProperties build() {
+      return new AppendLogConfigurationProperties(
+          segmentSize, compactionInterval, compactionLiveElementsRatio);
+    }
+  }
+}
@@ -0,0 +1,11 @@
+package io.chronoslabs.queue;
+
+/**
+ * Converts elements to enqueue to the bytes stored in the append log and back when the log is
+ * replayed on startup.
+ */
+public interface AppendLogElementCodec<I> {
+  byte[] encode(I elementToEnqueue);
+
+  I decode(byte[] bytes);
+}
@@ -0,0 +1,236 @@
+package io.chronoslabs.queue;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+/**
+ * A change of one element as written to an {@link AppendLogSegment}: the full element on insert,
+ * the new dispatch state when it is locked for dispatch, and a tombstone on delete.
+ *
+ * <p>On disk a record is its body length and the CRC32C of its body, followed by the body. A zero
+ * length marks the end of the written part of a segment, and a checksum mismatch a torn write.
+ */
+@SuppressWarnings({"PMD.AvoidFieldNameMatchingMethodName", "PMD.MethodReturnsInternalArray"})
+final class AppendLogRecord {
+  static final byte INSERT = 1;
+  static final byte UPDATE = 2;
+  static final byte DELETE = 3;
+  static final int HEADER_SIZE = 2 * Integer.BYTES;
+
+  private static final int TYPE_AND_ID_SIZE = Byte.BYTES + Long.BYTES;
+  private static final int INSTANT_SIZE = Long.BYTES + Integer.BYTES;
+
+  private final byte type;
+  private final long id;
+  private final Instant createdAt;
+  private final Instant nextDispatchAfter;
+  private final int dispatchCount;
+  private final Map<String, String> traceContext;
+  private final byte[] payload;
+
+  private AppendLogRecord(
+      byte type,
+      long id,
+      Instant createdAt,
+      Instant nextDispatchAfter,
+      int dispatchCount,
+      Map<String, String> traceContext,
+      byte[] payload) {
+    this.type = type;
+    this.id = id;
+    this.createdAt = createdAt;
+    this.nextDispatchAfter = nextDispatchAfter;
+    this.dispatchCount = dispatchCount;
+    this.traceContext = traceContext;
+    this.payload = payload;
+  }
+
+  static AppendLogRecord insert(
+      long id,
+      Instant createdAt,
+      Instant nextDispatchAfter,
+      int dispatchCount,
+      Map<String, String> traceContext,
+      byte[] payload) {
+    return new AppendLogRecord(
+        INSERT, id, createdAt, nextDispatchAfter, dispatchCount, traceContext, payload);
+  }
+
+  static AppendLogRecord update(long id, Instant nextDispatchAfter, int dispatchCount) {
+    return new AppendLogRecord(UPDATE, id, null, nextDispatchAfter, dispatchCount, Map.of(), null);
+  }
+
+  static AppendLogRecord delete(long id) {
+    return new AppendLogRecord(DELETE, id, null, null, 0, Map.of(), null);
+  }
+
+  /** The insert record of this element with its dispatch state replaced, used by compaction. */
+  AppendLogRecord withDispatchState(Instant newNextDispatchAfter, int newDispatchCount) {
+    return insert(id, createdAt, newNextDispatchAfter, newDispatchCount, traceContext, payload);
+  }
+
+  byte type() {
+    return type;
+  }
+
+  long id() {
+    return id;
+  }
+
+  Instant createdAt() {
+    return createdAt;
+  }
+
+  Instant nextDispatchAfter() {
+    return nextDispatchAfter;
+  }
+
+  int dispatchCount() {
+    return dispatchCount;
+  }
+
+  Map<String, String> traceContext() {
+    return traceContext;
+  }
+
+  byte[] payload() {
+    return payload;
+  }
+
+  int size() {
+    return HEADER_SIZE + bodySize();
+  }
+
+  /**
+   * Writes the record at the offset using absolute puts, so the position of the buffer is never
+   * touched and it can be read concurrently.
+   */
+  void write(ByteBuffer buffer, int offset) {
+    var bodyOffset = offset + HEADER_SIZE;
+    var position = bodyOffset;
+    buffer.put(position, type);
+    buffer.putLong(position + Byte.BYTES, id);
+    position += TYPE_AND_ID_SIZE;
+    if (type == INSERT) {
+      position = putInstant(buffer, position, createdAt);
+    }
+    if (type != DELETE) {
+      position = putInstant(buffer, position, nextDispatchAfter);
+      buffer.putInt(position, dispatchCount);
+      position += Integer.BYTES;
+    }
+    if (type == INSERT) {
+      buffer.putInt(position, traceContext.size());
+      position += Integer.BYTES;
+      for (var entry : traceContext.entrySet()) {
+        position = putString(buffer, position, entry.getKey());
+        position = putString(buffer, position, entry.getValue());
+      }
+      buffer.putInt(position, payload.length);
+      buffer.put(position + Integer.BYTES, payload);
+      position += Integer.BYTES + payload.length;
+    }
+    var bodySize = position - bodyOffset;
+    buffer.putInt(offset + Integer.BYTES, checksum(buffer, bodyOffset, bodySize));
+    buffer.putInt(offset, bodySize);
+  }
+
+  /**
+   * @return the record written at the offset, or {@code null} when there is none: the end of the
+   *     written part of the segment or a torn write.
+   */
+  static AppendLogRecord read(ByteBuffer buffer, int offset) {
+    if (offset + HEADER_SIZE > buffer.capacity()) {
+      return null;
+    }
+    var bodySize = buffer.getInt(offset);
+    var bodyOffset = offset + HEADER_SIZE;
+    if (bodySize < TYPE_AND_ID_SIZE
+        || bodySize > buffer.capacity() - bodyOffset
+        || buffer.getInt(offset + Integer.BYTES) != checksum(buffer, bodyOffset, bodySize)) {
+      return null;
+    }
+    var type = buffer.get(bodyOffset);
+    var id = buffer.getLong(bodyOffset + Byte.BYTES);
+    var position = bodyOffset + TYPE_AND_ID_SIZE;
+    if (type == DELETE) {
+      return delete(id);
+    }
+    Instant createdAt = null;
+    if (type == INSERT) {
+      createdAt = getInstant(buffer, position);
+      position += INSTANT_SIZE;
+    }
+    var nextDispatchAfter = getInstant(buffer, position);
+    var dispatchCount = buffer.getInt(position + INSTANT_SIZE);
+    position += INSTANT_SIZE + Integer.BYTES;
+    if (type == UPDATE) {
+      return update(id, nextDispatchAfter, dispatchCount);
+    }
+    var traceContextSize = buffer.getInt(position);
+    position += Integer.BYTES;
+    var traceContext = new LinkedHashMap<String, String>();
+    for (int index = 0; index < traceContextSize; index++) {
+      var key = getString(buffer, position);
+      position += Integer.BYTES + key.getBytes(StandardCharsets.UTF_8).length;
+      var value = getString(buffer, position);
+      position += Integer.BYTES + value.getBytes(StandardCharsets.UTF_8).length;
+      traceContext.put(key, value);
+    }
+    var payload = new byte[buffer.getInt(position)];
+    buffer.get(position + Integer.BYTES, payload);
+    return insert(
+        id, createdAt, nextDispatchAfter, dispatchCount, Map.copyOf(traceContext), payload);
+  }
+
+  private int bodySize() {
+    if (type == DELETE) {
+      return TYPE_AND_ID_SIZE;
+    }
+    if (type == UPDATE) {
+      return TYPE_AND_ID_SIZE + INSTANT_SIZE + Integer.BYTES;
+    }
+    var size = TYPE_AND_ID_SIZE + 2 * INSTANT_SIZE + 3 * Integer.BYTES + payload.length;
+    for (var entry : traceContext.entrySet()) {
+      size += 2 * Integer.BYTES + utf8Length(entry.getKey()) + utf8Length(entry.getValue());
+    }
+    return size;
+  }
+
+  private static int putInstant(ByteBuffer buffer, int position, Instant instant) {
+    buffer.putLong(position, instant.getEpochSecond());
+    buffer.putInt(position + Long.BYTES, instant.getNano());
+    return position + INSTANT_SIZE;
+  }
+
+  private static Instant getInstant(ByteBuffer buffer, int position) {
+    return Instant.ofEpochSecond(buffer.getLong(position), buffer.getInt(position + Long.BYTES));
+  }
+
+  private static int putString(ByteBuffer buffer, int position, String value) {
+    var bytes = value.getBytes(StandardCharsets.UTF_8);
+    buffer.putInt(position, bytes.length);
+    buffer.put(position + Integer.BYTES, bytes);
+    return position + Integer.BYTES + bytes.length;
+  }
+
+  private static String getString(ByteBuffer buffer, int position) {
+    var bytes = new byte[buffer.getInt(position)];
+    buffer.get(position + Integer.BYTES, bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static int utf8Length(String value) {
+    return value.getBytes(StandardCharsets.UTF_8).length;
+  }
+
+  private static int checksum(ByteBuffer buffer, int offset, int length) {
+    var crc = new CRC32C();
+    crc.update(buffer.slice(offset, length));
+    return (int) crc.getValue();
+  }
+}
@@ -0,0 +1,187 @@
+package io.chronoslabs.queue;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A fixed-size, memory-mapped file of {@link AppendLogRecord}s. Records are only appended, the file
+ * is deleted as a whole once compaction has moved its live elements to a newer segment.
+ *
+ * <p>The header holds the sequence number of the segment and the highest element id written before
+ * it was created, so ids of deleted elements are not reused after their records were compacted. Not
+ * thread-safe, guarded by the lock of the {@link AppendLog}.
+ */
+@SuppressWarnings("PMD.AvoidFieldNameMatchingMethodName")
+final class AppendLogSegment {
+  static final int HEADER_SIZE = 2 * Integer.BYTES + 2 * Long.BYTES;
+
+  private static final Logger logger = LoggerFactory.getLogger(AppendLogSegment.class);
+  private static final int MAGIC = 0x43514C47;
+  private static final int VERSION = 1;
+  private static final String FILE_SUFFIX = ".segment";
+
+  private final Path path;
+  private final FileChannel channel;
+  private final MappedByteBuffer buffer;
+  private int writeOffset = HEADER_SIZE;
+  private int flushedOffset = HEADER_SIZE;
+  private int insertedElements;
+  private int liveElements;
+
+  private AppendLogSegment(Path path, FileChannel channel, MappedByteBuffer buffer) {
+    this.path = path;
+    this.channel = channel;
+    this.buffer = buffer;
+  }
+
+  @SuppressWarnings("PMD.CloseResource")
+  static AppendLogSegment create(Path directory, long sequence, int size, long idHighWaterMark)
+      throws IOException {
+    var path = directory.resolve("%020d%s".formatted(sequence, FILE_SUFFIX));
+    var channel =
+        FileChannel.open(
+            path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    var segment =
+        new AppendLogSegment(path, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+    segment.buffer.putInt(0, MAGIC);
+    segment.buffer.putInt(Integer.BYTES, VERSION);
+    segment.buffer.putLong(2 * Integer.BYTES, sequence);
+    segment.buffer.putLong(2 * Integer.BYTES + Long.BYTES, idHighWaterMark);
+    segment.buffer.force(0, HEADER_SIZE);
+    forceDirectory(directory);
+    return segment;
+  }
+
+  @SuppressWarnings("PMD.CloseResource")
+  static AppendLogSegment open(Path path) throws IOException {
+    var channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    var segment =
+        new AppendLogSegment(
+            path, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size()));
+    if (segment.buffer.capacity() < HEADER_SIZE
+        || segment.buffer.getInt(0) != MAGIC
+        || segment.buffer.getInt(Integer.BYTES) != VERSION) {
+      channel.close();
+      throw new IOException("File %s is not an append log segment.".formatted(path));
+    }
+    return segment;
+  }
+
+  static boolean isSegmentFile(Path path) {
+    return path.getFileName().toString().endsWith(FILE_SUFFIX);
+  }
+
+  long sequence() {
+    return buffer.getLong(2 * Integer.BYTES);
+  }
+
+  long idHighWaterMark() {
+    return buffer.getLong(2 * Integer.BYTES + Long.BYTES);
+  }
+
+  int writeOffset() {
+    return writeOffset;
+  }
+
+  int insertedElements() {
+    return insertedElements;
+  }
+
+  int liveElements() {
+    return liveElements;
+  }
+
+  void elementInserted() {
+    insertedElements++;
+    liveElements++;
+  }
+
+  void elementRemoved() {
+    liveElements--;
+  }
+
+  boolean hasRoomFor(int recordSize) {
+    return recordSize <= buffer.capacity() - writeOffset;
+  }
+
+  /**
+   * @return the offset of the appended record.
+   */
+  int append(AppendLogRecord record) {
+    var offset = writeOffset;
+    record.write(buffer, offset);
+    writeOffset += record.size();
+    return offset;
+  }
+
+  AppendLogRecord read(int offset) {
+    return AppendLogRecord.read(buffer, offset);
+  }
+
+  /**
+   * Finds the end of the valid records after a restart and clears whatever a torn write left behind
+   * it, so it cannot be mistaken for a record once new records are appended.
+   */
+  void recoverWriteOffset() {
+    var offset = HEADER_SIZE;
+    for (var record = read(offset); record != null; record = read(offset)) {
+      offset += record.size();
+    }
+    writeOffset = offset;
+    flushedOffset = offset;
+    if (offset + Integer.BYTES <= buffer.capacity() && buffer.getInt(offset) != 0) {
+      logger
+          .atWarn()
+          .addArgument(path)
+          .addArgument(offset)
+          .log("Discarding torn write at the end of append log segment {} at offset {}.");
+      var zeros = new byte[buffer.capacity() - offset];
+      buffer.put(offset, zeros);
+      buffer.force(offset, zeros.length);
+    }
+  }
+
+  boolean hasUnflushedRecords() {
+    return flushedOffset < writeOffset;
+  }
+
+  /**
+   * @return the offset from which records have to be passed to {@link #force(int, int)}.
+   */
+  int markFlushed() {
+    var from = flushedOffset;
+    flushedOffset = writeOffset;
+    return from;
+  }
+
+  void force(int from, int to) {
+    buffer.force(from, to - from);
+  }
+
+  void delete() throws IOException {
+    channel.close();
+    Files.deleteIfExists(path);
+  }
+
+  void close() throws IOException {
+    channel.close();
+  }
+
+  private static void forceDirectory(Path directory) {
+    try (var directoryChannel = FileChannel.open(directory, StandardOpenOption.READ)) {
+      directoryChannel.force(true);
+    } catch (IOException exception) {
+      logger
+          .atDebug()
+          .addArgument(directory)
+          .setCause(exception)
+          .log("Directory {} cannot be synced on this platform.");
+    }
+  }
+}
@@ -0,0 +1,300 @@
+package io.chronoslabs.queue;
+
+import static io.chronoslabs.queue.Assert.requireNonNull;
+import static io.chronoslabs.queue.TransactionDefinition.PROPAGATION_REQUIRES_NEW;
+
+import com.github.sviperll.result4j.Result;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Durable {@link TransactionalQueueElementRepository} that keeps its elements in an {@link
+ * InMemoryTransactionalQueueElementRepository} and persists every change to an append-only log of
+ * memory-mapped segment files, for queues that must survive a restart without a database.
+ *
+ * <p>Changes of a transaction of the {@link InMemoryTransactionCreator} are appended to the log
+ * when the transaction commits and become visible to other transactions only once they are durable.
+ * Transactions committing at the same time share a single fsync. When the log cannot be written the
+ * transaction is rolled back, and since an fsync failure leaves the files in an unknown state, the
+ * repository refuses every further change until it is reopened. Changes made outside a transaction
+ * are written in a transaction of their own.
+ *
+ * <p>On {@link #open} the log is replayed to rebuild the in-memory index. A background task
+ * compacts the oldest segment once most of its elements have been deleted.
+ */
+public final class AppendLogTransactionalQueueElementRepository<
+        P,
+        E extends TransactionalQueueElement<P>,
+        I extends TransactionalQueueElementToEnqueue<P, E>>
+    implements TransactionalQueueElementRepository<P, E, I>, AutoCloseable {
+  private static final Logger logger =
+      LoggerFactory.getLogger(AppendLogTransactionalQueueElementRepository.class);
+  private static final long[] NO_SKIPPED_IDS = {};
+
+  private final String queueName;
+  private final InMemoryTransactionCreator transactionCreator;
+  private final AppendLogElementCodec<I> codec;
+  private final InMemoryTransactionalQueueElementRepository<P, E, I> index;
+  private final AppendLog appendLog;
+  private final ScheduledExecutorService compactionExecutor;
+
+  private AppendLogTransactionalQueueElementRepository(
+      String queueName,
+      InMemoryTransactionCreator transactionCreator,
+      AppendLogElementCodec<I> codec,
+      InMemoryTransactionalQueueElementRepository<P, E, I> index,
+      AppendLog appendLog,
+      AppendLogConfigurationProperties configurationProperties) {
+    this.queueName = queueName;
+    this.transactionCreator = transactionCreator;
+    this.codec = codec;
+    this.index = index;
+    this.appendLog = appendLog;
+    this.compactionExecutor =
+        Executors.newSingleThreadScheduledExecutor(
+            runnable -> {
+              var thread = new Thread(runnable, queueName + "-append-log-compaction");
+              thread.setDaemon(true);
+              return thread;
+            });
+    var compactionInterval = configurationProperties.compactionInterval().toMillis();
+    compactionExecutor.scheduleWithFixedDelay(
+        () -> compact(configurationProperties.compactionLiveElementsRatio()),
+        compactionInterval,
+        compactionInterval,
+        TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Opens the log in the directory, creating it when it does not exist, and replays it.
+   *
+   * @throws IOException when the log cannot be read.
+   */
+  public static <
+          P,
+          E extends TransactionalQueueElement<P>,
+          I extends TransactionalQueueElementToEnqueue<P, E>>
+      AppendLogTransactionalQueueElementRepository<P, E, I> open(
+          String queueName,
+          InMemoryTransactionCreator transactionCreator,
+          Path directory,
+          AppendLogElementCodec<I> codec,
+          AppendLogConfigurationProperties configurationProperties)
+          throws IOException {
+    requireNonNull(queueName, "AppendLogTransactionalQueueElementRepository.queueName");
+    requireNonNull(
+        transactionCreator, "AppendLogTransactionalQueueElementRepository.transactionCreator");
+    requireNonNull(directory, "AppendLogTransactionalQueueElementRepository.directory");
+    requireNonNull(codec, "AppendLogTransactionalQueueElementRepository.codec");
+    requireNonNull(
+        configurationProperties,
+        "AppendLogTransactionalQueueElementRepository.configurationProperties");
+    configurationProperties.validate(queueName);
+    var index =
+        new InMemoryTransactionalQueueElementRepository<P, E, I>(queueName, transactionCreator);
+    var appendLog =
+        AppendLog.open(
+            directory,
+            configurationProperties.segmentSize(),
+            queueName + "-append-log-flusher",
+            (id, createdAt, nextDispatchAfter, dispatchCount, traceContext, payload) ->
+                index.restore(
+                    id,
+                    codec.decode(payload),
+                    createdAt,
+                    nextDispatchAfter,
+                    dispatchCount,
+                    traceContext));
+    index.restoreIdSequence(appendLog.highestUsedId());
+    return new AppendLogTransactionalQueueElementRepository<>(
+        queueName, transactionCreator, codec, index, appendLog, configurationProperties);
+  }
+
+  @Override
+  public Result<E, TransactionalQueueError<I>> insert(
+      I elementToEnqueue, Instant createdAt, Instant nextDispatchAfter) {
+    return insert(elementToEnqueue, createdAt, nextDispatchAfter, Map.of());
+  }
+
+  @Override
+  public Result<E, TransactionalQueueError<I>> insert(
+      I elementToEnqueue,
+      Instant createdAt,
+      Instant nextDispatchAfter,
+      Map<String, String> traceContext) {
+    byte[] payload;
+    try {
+      payload = codec.encode(elementToEnqueue);
+    } catch (RuntimeException exception) {
+      return Result.error(
+          TransactionalQueueError.<I>builder(queueName)
+              .withCause(exception)
+              .withElement(elementToEnqueue)
+              .withMessage(
+                  "Failed to encode element to insert into %s. Error: %s"
+                      .formatted(queueName, exception.getMessage()))
+              .withType("queue-insert-error")
+              .build());
+    }
+    return inTransaction(
+        elementToEnqueue,
+        () ->
+            index
+                .insert(elementToEnqueue, createdAt, nextDispatchAfter, traceContext)
+                .peekSuccess(
+                    element ->
+                        pendingRecords()
+                            .add(
+                                AppendLogRecord.insert(
+                                    element.id(),
+                                    element.createdAt(),
+                                    element.nextDispatchAfter(),
+                                    element.dispatchCount(),
+                                    element.traceContext(),
+                                    payload))));
+  }
+
+  @Override
+  public Result<E, TransactionalQueueError<Long>> findById(long id) {
+    return index.findById(id);
+  }
+
+  @Override
+  public Result<Collection<E>, TransactionalQueueError<String>> lockForNextDispatch(
+      int batchSize, Instant notDispatchedTill, Instant nextDispatchTime) {
+    return lockForNextDispatch(batchSize, notDispatchedTill, nextDispatchTime, NO_SKIPPED_IDS);
+  }
+
+  @Override
+  public Result<Collection<E>, TransactionalQueueError<String>> lockForNextDispatch(
+      int batchSize, Instant notDispatchedTill, Instant nextDispatchTime, long[] skippedIds) {
+    return inTransaction(
+        "batchSize=%d, notDispatchedTill=%s, nextDispatchTime=%s"
+            .formatted(batchSize, notDispatchedTill, nextDispatchTime),
+        () ->
+            index
+                .lockForNextDispatch(batchSize, notDispatchedTill, nextDispatchTime, skippedIds)
+                .peekSuccess(
+                    elements -> {
+                      var records = pendingRecords();
+                      for (var element : elements) {
+                        records.add(
+                            AppendLogRecord.update(
+                                element.id(),
+                                element.nextDispatchAfter(),
+                                element.dispatchCount()));
+                      }
+                    }));
+  }
+
+  @Override
+  public Result<E, TransactionalQueueError<E>> delete(E element) {
+    return inTransaction(
+        element,
+        () ->
+            index
+                .delete(element)
+                .peekSuccess(
+                    deleted -> pendingRecords().add(AppendLogRecord.delete(deleted.id()))));
+  }
+
+  /** Stops compaction and closes the log once everything appended so far is durable. */
+  @Override
+  public void close() throws IOException {
+    compactionExecutor.shutdown();
+    try {
+      if (!compactionExecutor.awaitTermination(1, TimeUnit.MINUTES)) {
+        logger
+            .atWarn()
+            .addArgument(queueName)
+            .log("Compaction of append log of {} did not stop within a minute.");
+      }
+    } catch (InterruptedException exception) {
+      Thread.currentThread().interrupt();
+    }
+    appendLog.close();
+  }
+
+  private <T, X> Result<T, TransactionalQueueError<X>> inTransaction(
+      X element, Supplier<Result<T, TransactionalQueueError<X>>> operation) {
+    if (transactionCreator.currentTransaction() != null) {
+      return operation.get();
+    }
+    return transactionCreator
+        .openTransaction(PROPAGATION_REQUIRES_NEW, queueName)
+        .mapError(error -> error.withAnotherElement(element))
+        .flatMap(transaction -> executeAndCommit(transaction, element, operation));
+  }
+
+  private static <T, X> Result<T, TransactionalQueueError<X>> executeAndCommit(
+      OpenedTransaction transaction,
+      X element,
+      Supplier<Result<T, TransactionalQueueError<X>>> operation) {
+    Result<T, TransactionalQueueError<X>> result;
+    try {
+      result = operation.get();
+    } catch (RuntimeException exception) {
+      transaction.rollback();
+      throw exception;
+    }
+    return result
+        .flatMap(
+            success ->
+                transaction.commit(success).mapError(error -> error.withAnotherElement(element)))
+        .peekError(ignored -> transaction.rollback());
+  }
+
+  private List<AppendLogRecord> pendingRecords() {
+    return transactionCreator
+        .currentTransaction()
+        .synchronizationFor(this, PendingRecords::new)
+        .records;
+  }
+
+  private void compact(double liveElementsRatio) {
+    try {
+      while (appendLog.compactOldestSegment(liveElementsRatio)) {
+        logger.atDebug().addArgument(queueName).log("Compacted oldest append log segment of {}.");
+      }
+    } catch (Exception exception) {
+      logger
+          .atError()
+          .addArgument(queueName)
+          .setCause(exception)
+          .log("Failed to compact append log of {}.");
+    }
+  }
+
+  /** Records of one transaction, appended and made durable before the transaction commits. */
+  private final class PendingRecords implements InMemoryTransaction.Synchronization {
+    private final List<AppendLogRecord> records = new ArrayList<>();
+
+    @Override
+    public void beforeCommit() {
+      if (!records.isEmpty()) {
+        appendLog.awaitDurable(appendLog.append(records));
+      }
+    }
+
+    @Override
+    public void afterCommit() {
+      records.clear();
+    }
+
+    @Override
+    public void afterRollback() {
+      records.clear();
+    }
+  }
+}
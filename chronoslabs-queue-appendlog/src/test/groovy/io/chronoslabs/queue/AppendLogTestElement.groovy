@@ -0,0 +1,58 @@
+package io.chronoslabs.queue
+
+import java.time.Instant
+
+record AppendLogTestElement(
+    long id, String payload, Instant createdAt, Instant nextDispatchAfter, int dispatchCount,
+    Map<String, String> traceContext)
+    implements TransactionalQueueElement<String> {
+
+    static Builder builder() {
+        return new Builder()
+    }
+
+    static class Builder implements TransactionalQueueElementBuilder<String, AppendLogTestElement> {
+        private long id
+        private String payload
+        private Instant createdAt
+        private Instant nextDispatchAfter
+        private int dispatchCount
+        private Map<String, String> traceContext = [:]
+
+        private Builder() {}
+
+        Builder withId(long id) {
+            this.id = id
+            return this
+        }
+
+        Builder withPayload(String payload) {
+            this.payload = payload
+            return this
+        }
+
+        Builder withCreatedAt(Instant createdAt) {
+            this.createdAt = createdAt
+            return this
+        }
+
+        Builder withNextDispatchAfter(Instant nextDispatchAfter) {
+            this.nextDispatchAfter = nextDispatchAfter
+            return this
+        }
+
+        Builder withDispatchCount(int dispatchCount) {
+            this.dispatchCount = dispatchCount
+            return this
+        }
+
+        Builder withTraceContext(Map<String, String> traceContext) {
+            this.traceContext = traceContext
+            return this
+        }
+
+        AppendLogTestElement build() {
+            return new AppendLogTestElement(id, payload, createdAt, nextDispatchAfter, dispatchCount, traceContext)
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package io.chronoslabs.queue
+
+import java.nio.charset.StandardCharsets
+
+class AppendLogTestElementCodec implements AppendLogElementCodec<AppendLogTestElementToEnqueue> {
+
+    byte[] encode(AppendLogTestElementToEnqueue elementToEnqueue) {
+        return elementToEnqueue.payload().getBytes(StandardCharsets.UTF_8)
+    }
+
+    AppendLogTestElementToEnqueue decode(byte[] bytes) {
+        return new AppendLogTestElementToEnqueue(new String(bytes, StandardCharsets.UTF_8))
+    }
+}
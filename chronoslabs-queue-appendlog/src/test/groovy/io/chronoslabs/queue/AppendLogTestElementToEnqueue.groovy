@@ -0,0 +1,9 @@
+package io.chronoslabs.queue
+
+record AppendLogTestElementToEnqueue(String payload)
+    implements TransactionalQueueElementToEnqueue<String, AppendLogTestElement> {
+
+    AppendLogTestElement.Builder toTransactionalQueueElementBuilder() {
+        return AppendLogTestElement.builder()
+    }
+}
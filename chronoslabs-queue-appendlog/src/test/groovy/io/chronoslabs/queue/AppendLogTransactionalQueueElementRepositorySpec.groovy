@@ -0,0 +1,149 @@
+package io.chronoslabs.queue
+
+import spock.lang.Specification
+import spock.lang.TempDir
+import spock.util.concurrent.PollingConditions
+
+import java.nio.file.Files
+import java.nio.file.Path
+import java.time.Duration
+import java.time.Instant
+
+import static io.chronoslabs.queue.TransactionDefinition.PROPAGATION_REQUIRES_NEW
+
+class AppendLogTransactionalQueueElementRepositorySpec extends Specification {
+    String queueName = "TestQueue"
+    Instant now = Instant.parse("2025-04-25T12:00:00Z")
+    AppendLogConfigurationProperties configurationProperties = AppendLogConfigurationProperties.builder()
+        .withSegmentSize(4096)
+        .withCompactionInterval(Duration.ofMillis(10))
+        .withCompactionLiveElementsRatio(0.5)
+        .build()
+
+    @TempDir
+    Path directory
+
+    InMemoryTransactionCreator transactionCreator
+    AppendLogTransactionalQueueElementRepository<String, AppendLogTestElement, AppendLogTestElementToEnqueue> repository
+
+    def setup() {
+        reopen()
+    }
+
+    def cleanup() {
+        repository.close()
+    }
+
+    def "should replay committed elements and drop rolled back ones after a restart"() {
+        given: "an element inserted in a committed transaction"
+            AppendLogTestElement committed = transactionCreator.executeInTransaction {
+                repository.insert(new AppendLogTestElementToEnqueue("committed"), now, now, ["traceparent": "00-1-2-01"]).discardError().get()
+            }
+
+        and: "an element inserted in a rolled back transaction"
+            OpenedTransaction transaction = transactionCreator.openTransaction(PROPAGATION_REQUIRES_NEW, queueName).discardError().get()
+            AppendLogTestElement rolledBack = insert("rolled back")
+            transaction.rollback()
+
+        when: "the repository is reopened"
+            reopen()
+
+        then: "only the committed element is restored, with all its properties"
+            repository.findById(committed.id()).discardError().get() == committed
+            repository.findById(rolledBack.id()).discardError().isEmpty()
+    }
+
+    def "should restore dispatch state and deletes after a restart"() {
+        given: "two elements, one of which is locked for dispatch and the other deleted"
+            AppendLogTestElement locked = insert("locked")
+            AppendLogTestElement deleted = insert("deleted")
+            repository.delete(deleted)
+            lockForNextDispatch()
+
+        when: "the repository is reopened"
+            reopen()
+
+        then: "the locked element keeps its dispatch state and the deleted element is gone"
+            AppendLogTestElement restored = repository.findById(locked.id()).discardError().get()
+            restored.dispatchCount() == 1
+            restored.nextDispatchAfter() == now + Duration.ofSeconds(10)
+            repository.findById(deleted.id()).discardError().isEmpty()
+
+        and: "new elements do not reuse ids of deleted elements"
+            insert("new").id() > deleted.id()
+    }
+
+    def "should compact segments whose elements were deleted"() {
+        given: "elements spread over several segments"
+            List<AppendLogTestElement> elements = (1..200).collect { insert("element-$it") }
+            long segmentsBeforeDelete = segmentFileCount()
+
+        when: "all but the last element are deleted"
+            elements.dropRight(1).each { Assertions.assertThat(repository.delete(it)).isSuccess() }
+
+        then: "compaction deletes the old segments"
+            segmentsBeforeDelete > 2
+            new PollingConditions(timeout: 5).eventually {
+                assert segmentFileCount() <= 2
+            }
+
+        when: "the repository is reopened"
+            reopen()
+
+        then: "only the last element is restored and ids of compacted elements are not reused"
+            elements.dropRight(1).every { repository.findById(it.id()).discardError().isEmpty() }
+            repository.findById(elements.last().id()).discardError().get() == elements.last()
+            insert("new").id() > elements.last().id()
+    }
+
+    def "should discard a torn write at the end of the log"() {
+        given: "two committed elements"
+            AppendLogTestElement first = insert("first")
+            AppendLogTestElement second = insert("second")
+            repository.close()
+
+        and: "the record of the second element was only partially written"
+            Path segment = segmentFiles().last()
+            byte[] bytes = Files.readAllBytes(segment)
+            int lastWrittenByte = (bytes.length - 1..0).find { bytes[it] != 0 as byte }
+            bytes[lastWrittenByte] = bytes[lastWrittenByte] + 1 as byte
+            Files.write(segment, bytes)
+
+        when: "the repository is reopened"
+            reopen()
+
+        then: "only the first element is restored"
+            repository.findById(first.id()).discardError().isPresent()
+            repository.findById(second.id()).discardError().isEmpty()
+
+        when: "another element is inserted and the repository is reopened"
+            AppendLogTestElement third = insert("third")
+            reopen()
+
+        then: "the new element was written over the torn record"
+            repository.findById(third.id()).discardError().get() == third
+    }
+
+    private void reopen() {
+        repository?.close()
+        transactionCreator = new InMemoryTransactionCreator()
+        repository = AppendLogTransactionalQueueElementRepository.open(
+            queueName, transactionCreator, directory, new AppendLogTestElementCodec(), configurationProperties)
+    }
+
+    private AppendLogTestElement insert(String payload) {
+        return repository.insert(new AppendLogTestElementToEnqueue(payload), now, now - Duration.ofSeconds(1)).discardError().get()
+    }
+
+    private Collection<AppendLogTestElement> lockForNextDispatch() {
+        return repository.lockForNextDispatch(10, now, now + Duration.ofSeconds(10)).discardError().get()
+    }
+
+    private List<Path> segmentFiles() {
+        return Files.list(directory).withCloseable { it.filter { AppendLogSegment.isSegmentFile(it) }.sorted().toList() }
+    }
+
+    private long segmentFileCount() {
+        return segmentFiles().size()
+    }
+}
@@ -0,0 +1,64 @@
+import groovy.json.JsonSlurper
+import net.ltgt.gradle.errorprone.errorprone
+
+plugins {
+    id("java-library")
+    alias(libs.plugins.benchmark.jmh)
+}
+
+dependencies {
+    jmhImplementation(platform(libs.spring.boot.platform))
+    jmhImplementation(projects.chronoslabsQueueCore)
+    jmhImplementation(projects.chronoslabsQueueJdbc)
+    jmhImplementation(projects.chronoslabsQueueSpring)
+    jmhImplementation(testFixtures(projects.chronoslabsQueueCore))
+    jmhImplementation(libs.loadtest.embeddedPostgres)
+    jmhImplementation(libs.loadtest.hikari)
+
+    jmhRuntimeOnly(libs.loadtest.postgresql)
+}
+
+jmh {
+    jmhVersion = libs.versions.benchmark.jmh
+    fork = 1
+    warmupIterations = 3
+    iterations = 5
+    profilers = listOf("gc")
+    resultFormat = "JSON"
+}
+
+tasks.named<JavaCompile>("jmhCompileGeneratedClasses") {
+    options.errorprone.enabled = false
+}
+
+// Bytes allocated per operation (gc.alloc.rate.norm) on the success paths, with headroom for
+// JVM differences. Exceeding a budget means the success path allocates again per element.
+val allocationBudgets = mapOf(
+    "io.chronoslabs.queue.DispatchBenchmark.dispatch" to 64.0,
+    "io.chronoslabs.queue.EnqueueBenchmark.enqueue" to 160.0,
+    "io.chronoslabs.queue.RetryBenchmark.retryDispatch" to 64.0,
+)
+
+tasks.register("jmhAllocationCheck") {
+    group = "verification"
+    description = "Runs the benchmarks and fails when a success path exceeds its allocation budget."
+    dependsOn(tasks.named("jmh"))
+    val results = layout.buildDirectory.file("results/jmh/results.json")
+    inputs.file(results)
+    doLast {
+        @Suppress("UNCHECKED_CAST")
+        val benchmarks = JsonSlurper().parse(results.get().asFile) as List<Map<String, Any>>
+        val violations = benchmarks.mapNotNull { benchmark ->
+            val name = benchmark["benchmark"] as String
+            val budget = allocationBudgets[name] ?: return@mapNotNull null
+            @Suppress("UNCHECKED_CAST")
+            val secondaryMetrics = benchmark["secondaryMetrics"] as Map<String, Map<String, Any>>
+            val allocated = (secondaryMetrics["gc.alloc.rate.norm"]?.get("score") as Number?)?.toDouble()
+                ?: throw GradleException("$name has no allocation profile, run it with the gc profiler.")
+            if (allocated > budget) "$name ${benchmark["params"] ?: ""} allocates $allocated B/op, budget $budget B/op" else null
+        }
+        if (violations.isNotEmpty()) {
+            throw GradleException("Allocation budgets exceeded:\n" + violations.joinToString("\n"))
+        }
+    }
+}
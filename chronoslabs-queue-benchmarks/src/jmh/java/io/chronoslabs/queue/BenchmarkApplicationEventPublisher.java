@@ -0,0 +1,26 @@
+package io.chronoslabs.queue;
+
+import com.github.sviperll.result4j.Result;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Collects the published elements so a benchmark can dispatch them like an event listener. */
+class BenchmarkApplicationEventPublisher implements TransactionalQueueApplicationEventPublisher {
+  private final List<BenchmarkQueueElement> elements = new ArrayList<>();
+
+  @Override
+  public <E extends TransactionalQueueElement<?>>
+      Result<E, TransactionalQueueError<E>> publishElementAsApplicationEvent(
+          E element, String queueName) {
+    elements.add((BenchmarkQueueElement) element);
+    return Result.success(element);
+  }
+
+  List<BenchmarkQueueElement> publishedElements() {
+    return elements;
+  }
+
+  void reset() {
+    elements.clear();
+  }
+}
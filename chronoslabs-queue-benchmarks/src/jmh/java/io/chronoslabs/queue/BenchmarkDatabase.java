@@ -0,0 +1,76 @@
+package io.chronoslabs.queue;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import javax.sql.DataSource;
+
+/** Embedded Postgres with the queue table of the benchmarks which need a real database. */
+class BenchmarkDatabase implements AutoCloseable {
+  static final String QUEUE_TABLE_NAME = "benchmark_queue";
+  static final String QUEUE_TABLE_COLUMNS =
+      "id, created_at, next_dispatch_after, dispatch_count, payload";
+
+  private final EmbeddedPostgres embeddedPostgres;
+  private final HikariDataSource pooledDataSource;
+
+  private BenchmarkDatabase(EmbeddedPostgres embeddedPostgres, HikariDataSource dataSource) {
+    this.embeddedPostgres = embeddedPostgres;
+    this.pooledDataSource = dataSource;
+  }
+
+  @SuppressWarnings("PMD.CloseResource")
+  static BenchmarkDatabase start() throws IOException, SQLException {
+    var embeddedPostgres = EmbeddedPostgres.start();
+    var config = new HikariConfig();
+    config.setJdbcUrl(embeddedPostgres.getJdbcUrl("postgres", "postgres"));
+    config.setMaximumPoolSize(4 + JdbcTransactionCreator.DEFAULT_MAX_IDLE_SESSIONS);
+    config.setPoolName("benchmark");
+    var database = new BenchmarkDatabase(embeddedPostgres, new HikariDataSource(config));
+    database.execute(
+        """
+        CREATE TABLE %s (
+            id                  BIGSERIAL PRIMARY KEY,
+            created_at          TIMESTAMP WITH TIME ZONE NOT NULL,
+            next_dispatch_after TIMESTAMP WITH TIME ZONE NOT NULL,
+            dispatch_count      INTEGER                  NOT NULL,
+            payload             TEXT                     NOT NULL
+        )
+        """
+            .formatted(QUEUE_TABLE_NAME));
+    return database;
+  }
+
+  static BenchmarkQueueElement mapRow(ResultSet resultSet) throws SQLException {
+    return new BenchmarkQueueElement(
+        resultSet.getLong("id"),
+        resultSet.getString("payload"),
+        resultSet.getTimestamp("created_at").toInstant(),
+        resultSet.getTimestamp("next_dispatch_after").toInstant(),
+        resultSet.getInt("dispatch_count"));
+  }
+
+  DataSource dataSource() {
+    return pooledDataSource;
+  }
+
+  void truncate() throws SQLException {
+    execute("TRUNCATE " + QUEUE_TABLE_NAME);
+  }
+
+  private void execute(String sql) throws SQLException {
+    try (var connection = pooledDataSource.getConnection();
+        var statement = connection.createStatement()) {
+      statement.execute(sql);
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    pooledDataSource.close();
+    embeddedPostgres.close();
+  }
+}
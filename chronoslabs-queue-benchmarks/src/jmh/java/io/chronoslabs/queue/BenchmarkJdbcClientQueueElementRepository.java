@@ -0,0 +1,37 @@
+package io.chronoslabs.queue;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import org.springframework.jdbc.core.simple.JdbcClient;
+
+class BenchmarkJdbcClientQueueElementRepository
+    extends JdbcClientTransactionalQueueElementRepository<
+        String, BenchmarkQueueElement, BenchmarkQueueElementToEnqueue> {
+  private static final String INSERT_STATEMENT_SQL =
+      """
+      INSERT INTO %s (created_at, next_dispatch_after, dispatch_count, payload)
+      VALUES (:createdAt, :nextDispatchAfter, 0, :payload)
+      """
+          .formatted(BenchmarkDatabase.QUEUE_TABLE_NAME);
+
+  BenchmarkJdbcClientQueueElementRepository(JdbcClient jdbcClient, String queueName) {
+    super(
+        jdbcClient,
+        queueName,
+        BenchmarkDatabase.QUEUE_TABLE_NAME,
+        BenchmarkDatabase.QUEUE_TABLE_COLUMNS,
+        (resultSet, rowNumber) -> BenchmarkDatabase.mapRow(resultSet));
+  }
+
+  @Override
+  protected JdbcClient.StatementSpec anInsertStatementSpec(
+      BenchmarkQueueElementToEnqueue elementToEnqueue,
+      Instant createdAt,
+      Instant nextDispatchAfter) {
+    return jdbcClient
+        .sql(INSERT_STATEMENT_SQL)
+        .param("createdAt", Timestamp.from(createdAt))
+        .param("nextDispatchAfter", Timestamp.from(nextDispatchAfter))
+        .param("payload", elementToEnqueue.payload());
+  }
+}
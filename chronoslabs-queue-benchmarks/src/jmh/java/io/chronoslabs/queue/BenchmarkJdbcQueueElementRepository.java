@@ -0,0 +1,31 @@
+package io.chronoslabs.queue;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+
+class BenchmarkJdbcQueueElementRepository
+    extends JdbcTransactionalQueueElementRepository<
+        String, BenchmarkQueueElement, BenchmarkQueueElementToEnqueue> {
+
+  BenchmarkJdbcQueueElementRepository(JdbcTransactionCreator transactionCreator, String queueName) {
+    super(
+        transactionCreator,
+        queueName,
+        BenchmarkDatabase.QUEUE_TABLE_NAME,
+        BenchmarkDatabase.QUEUE_TABLE_COLUMNS,
+        List.of("payload"),
+        BenchmarkDatabase::mapRow);
+  }
+
+  @Override
+  protected void bindInsertParameters(
+      PreparedStatement statement,
+      int firstParameterIndex,
+      BenchmarkQueueElementToEnqueue elementToEnqueue,
+      Map<String, String> traceContext)
+      throws SQLException {
+    statement.setString(firstParameterIndex, elementToEnqueue.payload());
+  }
+}
@@ -0,0 +1,37 @@
+package io.chronoslabs.queue;
+
+import com.github.sviperll.result4j.Result;
+
+/**
+ * Payload consumer with a fixed outcome, so only the queue's own success or error path is measured.
+ */
+class BenchmarkPayloadConsumer
+    implements TransactionalQueueElementPayloadConsumer<BenchmarkQueueElement> {
+  private final TransactionalQueueError<BenchmarkQueueElement> error;
+
+  private BenchmarkPayloadConsumer(TransactionalQueueError<BenchmarkQueueElement> error) {
+    this.error = error;
+  }
+
+  static BenchmarkPayloadConsumer succeeding() {
+    return new BenchmarkPayloadConsumer(null);
+  }
+
+  static BenchmarkPayloadConsumer failing(String queueName) {
+    return new BenchmarkPayloadConsumer(
+        TransactionalQueueError.<BenchmarkQueueElement>builder(queueName)
+            .withCause(new IllegalStateException("Consumer failed."))
+            .withMessage("Failed to consume element payload.")
+            .withType("benchmark-consumer-error")
+            .build());
+  }
+
+  @Override
+  public Result<BenchmarkQueueElement, TransactionalQueueError<BenchmarkQueueElement>>
+      consumeElementPayload(BenchmarkQueueElement element) {
+    if (error != null) {
+      return Result.error(error);
+    }
+    return Result.success(element);
+  }
+}
@@ -0,0 +1,60 @@
+package io.chronoslabs.queue;
+
+import com.github.sviperll.result4j.Result;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Wires a {@link TransactionalQueue} with in-memory fakes, the same way the unit tests do, so the
+ * benchmarks exercise the real {@link Enqueuer}, {@link Dispatcher} and {@link Retrier}.
+ */
+class BenchmarkQueueContext {
+  static final String QUEUE_NAME = "BenchmarkQueue";
+  static final int MAX_DISPATCH_COUNT = 3;
+  static final String PAYLOAD = "{\"entityId\":\"c0a80101-0000-0000-0000-000000000001\"}";
+
+  final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+  final FakeTransactionCreator transactionCreator = new FakeTransactionCreator();
+  final BenchmarkApplicationEventPublisher applicationEventPublisher =
+      new BenchmarkApplicationEventPublisher();
+  final BenchmarkQueueElementRepository repository;
+  final TransactionalQueueConfigurationProperties configurationProperties;
+  final TransactionalQueue<String, BenchmarkQueueElement, BenchmarkQueueElementToEnqueue>
+      transactionalQueue;
+
+  BenchmarkQueueContext(int batchSize, BenchmarkPayloadConsumer payloadConsumer) {
+    this.configurationProperties =
+        TransactionalQueueConfigurationProperties.builder()
+            .withLockTimeout(Duration.ofSeconds(10))
+            .withMaxDispatchCount(MAX_DISPATCH_COUNT)
+            .withRetryDispatchBatchSize(batchSize)
+            .withRetryScheduledRateDelay(Duration.ofMillis(100))
+            .build();
+    this.repository = new BenchmarkQueueElementRepository(batchSize, Instant.now(), PAYLOAD);
+    this.transactionalQueue =
+        TransactionalQueueFactory
+            .<String, BenchmarkQueueElement, BenchmarkQueueElementToEnqueue>factory()
+            .withQueueName(QUEUE_NAME)
+            .withClock(Clock.systemUTC())
+            .withMeterRegistry(meterRegistry)
+            .withTransactionCreator(transactionCreator)
+            .withQueuePayloadConsumer(payloadConsumer)
+            .withQueueRepository(repository)
+            .withQueueDeadLetterRepository(element -> Result.success(element))
+            .withApplicationEventPublisher(applicationEventPublisher)
+            .withConfigurationProperties(configurationProperties)
+            .create();
+  }
+
+  BenchmarkQueueElement anElement(int dispatchCount) {
+    return BenchmarkQueueElement.builder()
+        .withId(1L)
+        .withCreatedAt(Instant.now())
+        .withNextDispatchAfter(Instant.now())
+        .withDispatchCount(dispatchCount)
+        .withPayload(PAYLOAD)
+        .build();
+  }
+}
@@ -0,0 +1,57 @@
+package io.chronoslabs.queue;
+
+import java.time.Instant;
+
+record BenchmarkQueueElement(
+    long id, String payload, Instant createdAt, Instant nextDispatchAfter, int dispatchCount)
+    implements TransactionalQueueElement<String> {
+
+  static Builder builder() {
+    return new Builder();
+  }
+
+  static class Builder implements TransactionalQueueElementBuilder<String, BenchmarkQueueElement> {
+    private long id;
+    private String payload;
+    private Instant createdAt;
+    private Instant nextDispatchAfter;
+    private int dispatchCount;
+
+    private Builder() {}
+
+    @Override
+    public Builder withId(long id) {
+      this.id = id;
+      return this;
+    }
+
+    @Override
+    public Builder withCreatedAt(Instant createdAt) {
+      this.createdAt = createdAt;
+      return this;
+    }
+
+    @Override
+    public Builder withDispatchCount(int dispatchCount) {
+      this.dispatchCount = dispatchCount;
+      return this;
+    }
+
+    @Override
+    public Builder withNextDispatchAfter(Instant nextDispatchAfter) {
+      this.nextDispatchAfter = nextDispatchAfter;
+      return this;
+    }
+
+    @Override
+    public Builder withPayload(String payload) {
+      this.payload = payload;
+      return this;
+    }
+
+    @Override
+    public BenchmarkQueueElement build() {
+      return new BenchmarkQueueElement(id, payload, createdAt, nextDispatchAfter, dispatchCount);
+    }
+  }
+}
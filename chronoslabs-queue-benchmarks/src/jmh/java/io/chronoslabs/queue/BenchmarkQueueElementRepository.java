@@ -0,0 +1,66 @@
+package io.chronoslabs.queue;
+
+import com.github.sviperll.result4j.Result;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Repository that keeps no state: every call succeeds immediately, so the benchmarks measure only
+ * the overhead added by the queue itself and not the cost of a storage.
+ */
+class BenchmarkQueueElementRepository
+    implements TransactionalQueueElementRepository<
+        String, BenchmarkQueueElement, BenchmarkQueueElementToEnqueue> {
+  private final AtomicLong idGenerator = new AtomicLong();
+  private final List<BenchmarkQueueElement> lockedElements;
+
+  BenchmarkQueueElementRepository(int batchSize, Instant createdAt, String payload) {
+    this.lockedElements = new ArrayList<>(batchSize);
+    for (int i = 0; i < batchSize; i++) {
+      lockedElements.add(
+          BenchmarkQueueElement.builder()
+              .withId(i)
+              .withCreatedAt(createdAt)
+              .withNextDispatchAfter(createdAt)
+              .withDispatchCount(1)
+              .withPayload(payload)
+              .build());
+    }
+  }
+
+  @Override
+  public Result<BenchmarkQueueElement, TransactionalQueueError<BenchmarkQueueElementToEnqueue>>
+      insert(
+          BenchmarkQueueElementToEnqueue elementToEnqueue,
+          Instant createdAt,
+          Instant nextDispatchAfter) {
+    return Result.success(
+        elementToEnqueue
+            .toTransactionalQueueElementBuilder()
+            .withId(idGenerator.incrementAndGet())
+            .withCreatedAt(createdAt)
+            .withDispatchCount(INITIAL_DISPATCH_COUNT)
+            .withNextDispatchAfter(nextDispatchAfter)
+            .build());
+  }
+
+  @Override
+  public Result<BenchmarkQueueElement, TransactionalQueueError<Long>> findById(long id) {
+    return Result.success(lockedElements.get((int) (id % lockedElements.size())));
+  }
+
+  @Override
+  public Result<Collection<BenchmarkQueueElement>, TransactionalQueueError<String>>
+      lockForNextDispatch(int batchSize, Instant notDispatchedTill, Instant nextDispatchTime) {
+    return Result.success(lockedElements);
+  }
+
+  @Override
+  public Result<BenchmarkQueueElement, TransactionalQueueError<BenchmarkQueueElement>> delete(
+      BenchmarkQueueElement element) {
+    return Result.success(element);
+  }
+}
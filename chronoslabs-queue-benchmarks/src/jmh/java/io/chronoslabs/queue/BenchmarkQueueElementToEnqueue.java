@@ -0,0 +1,10 @@
+package io.chronoslabs.queue;
+
+record BenchmarkQueueElementToEnqueue(String payload)
+    implements TransactionalQueueElementToEnqueue<String, BenchmarkQueueElement> {
+
+  @Override
+  public BenchmarkQueueElement.Builder toTransactionalQueueElementBuilder() {
+    return BenchmarkQueueElement.builder().withPayload(payload);
+  }
+}
@@ -0,0 +1,35 @@
+package io.chronoslabs.queue;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DispatchBatchBenchmark {
+  @Param({"10", "100"})
+  private int batchSize;
+
+  private BenchmarkQueueContext context;
+
+  @Setup
+  public void setUp() {
+    context = new BenchmarkQueueContext(batchSize, BenchmarkPayloadConsumer.succeeding());
+  }
+
+  @Benchmark
+  public void retryDispatchAndDispatchBatch() {
+    context.transactionalQueue.retryDispatch();
+    for (var publishedElement : context.applicationEventPublisher.publishedElements()) {
+      context.transactionalQueue.dispatch(publishedElement);
+    }
+    context.applicationEventPublisher.reset();
+  }
+}
@@ -0,0 +1,45 @@
+package io.chronoslabs.queue;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DispatchBenchmark {
+  private BenchmarkQueueContext succeedingContext;
+  private BenchmarkQueueContext failingContext;
+  private BenchmarkQueueElement element;
+  private BenchmarkQueueElement elementOnLastDispatch;
+
+  @Setup
+  public void setUp() {
+    succeedingContext = new BenchmarkQueueContext(1, BenchmarkPayloadConsumer.succeeding());
+    failingContext =
+        new BenchmarkQueueContext(
+            1, BenchmarkPayloadConsumer.failing(BenchmarkQueueContext.QUEUE_NAME));
+    element = succeedingContext.anElement(1);
+    elementOnLastDispatch = failingContext.anElement(BenchmarkQueueContext.MAX_DISPATCH_COUNT);
+  }
+
+  @Benchmark
+  public void dispatch() {
+    succeedingContext.transactionalQueue.dispatch(element);
+  }
+
+  @Benchmark
+  public void dispatchWithConsumerError() {
+    failingContext.transactionalQueue.dispatch(element);
+  }
+
+  @Benchmark
+  public void dispatchToDeadLetterQueue() {
+    failingContext.transactionalQueue.dispatch(elementOnLastDispatch);
+  }
+}
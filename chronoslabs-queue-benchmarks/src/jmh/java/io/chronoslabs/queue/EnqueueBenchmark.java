@@ -0,0 +1,47 @@
+package io.chronoslabs.queue;
+
+import com.github.sviperll.result4j.Result;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class EnqueueBenchmark {
+  private BenchmarkQueueContext context;
+  private BenchmarkQueueContext contextWithoutTransaction;
+  private BenchmarkQueueElementToEnqueue elementToEnqueue;
+
+  @Setup
+  public void setUp() {
+    context = new BenchmarkQueueContext(1, BenchmarkPayloadConsumer.succeeding());
+    contextWithoutTransaction = new BenchmarkQueueContext(1, BenchmarkPayloadConsumer.succeeding());
+    contextWithoutTransaction.transactionCreator.willReturnError(
+        "openTransaction",
+        TransactionalQueueError.<String>builder(BenchmarkQueueContext.QUEUE_NAME)
+            .withCause(new IllegalStateException("No existing transaction found."))
+            .withElement(BenchmarkQueueContext.QUEUE_NAME)
+            .withMessage("Failed to open transaction.")
+            .withType("open-transaction-error")
+            .build());
+    elementToEnqueue = new BenchmarkQueueElementToEnqueue(BenchmarkQueueContext.PAYLOAD);
+  }
+
+  @Benchmark
+  public Result<BenchmarkQueueElement, TransactionalQueueError<BenchmarkQueueElementToEnqueue>>
+      enqueue() {
+    return context.transactionalQueue.enqueue(elementToEnqueue);
+  }
+
+  @Benchmark
+  public Result<BenchmarkQueueElement, TransactionalQueueError<BenchmarkQueueElementToEnqueue>>
+      enqueueWithoutTransaction() {
+    return contextWithoutTransaction.transactionalQueue.enqueue(elementToEnqueue);
+  }
+}
@@ -0,0 +1,127 @@
+package io.chronoslabs.queue;
+
+import com.github.sviperll.result4j.Result;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.jdbc.core.simple.JdbcClient;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Compares the Spring {@link JdbcClientTransactionalQueueElementRepository} and {@link
+ * SpringTransactionCreator} with the plain JDBC {@link JdbcTransactionalQueueElementRepository} and
+ * {@link JdbcTransactionCreator} on an embedded Postgres, through the real {@link Enqueuer} and
+ * {@link Dispatcher}. Elements are enqueued in a caller transaction, like an application enqueues
+ * them next to its own writes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class JdbcRepositoryBenchmark {
+  private static final String SPRING = "spring";
+  private static final String JDBC = "jdbc";
+
+  @Param({SPRING, JDBC})
+  public String implementation;
+
+  private BenchmarkDatabase database;
+  private JdbcTransactionCreator jdbcTransactionCreator;
+  private CallerTransaction callerTransaction;
+  private TransactionalQueue<String, BenchmarkQueueElement, BenchmarkQueueElementToEnqueue>
+      transactionalQueue;
+  private BenchmarkQueueElementToEnqueue elementToEnqueue;
+
+  @Setup
+  public void setUp() throws IOException, SQLException {
+    database = BenchmarkDatabase.start();
+    var meterRegistry = new SimpleMeterRegistry();
+    TransactionCreator transactionCreator;
+    TransactionalQueueElementRepository<
+            String, BenchmarkQueueElement, BenchmarkQueueElementToEnqueue>
+        repository;
+    if (JDBC.equals(implementation)) {
+      jdbcTransactionCreator = new JdbcTransactionCreator(database.dataSource());
+      transactionCreator = jdbcTransactionCreator;
+      repository =
+          new BenchmarkJdbcQueueElementRepository(
+              jdbcTransactionCreator, BenchmarkQueueContext.QUEUE_NAME);
+      callerTransaction = action -> jdbcTransactionCreator.executeInTransaction(action);
+    } else {
+      var transactionManager = new DataSourceTransactionManager(database.dataSource());
+      var transactionTemplate = new TransactionTemplate(transactionManager);
+      transactionCreator = new SpringTransactionCreator(meterRegistry, transactionManager);
+      repository =
+          new BenchmarkJdbcClientQueueElementRepository(
+              JdbcClient.create(database.dataSource()), BenchmarkQueueContext.QUEUE_NAME);
+      callerTransaction = action -> transactionTemplate.execute(status -> action.get());
+    }
+    transactionalQueue =
+        TransactionalQueueFactory
+            .<String, BenchmarkQueueElement, BenchmarkQueueElementToEnqueue>factory()
+            .withQueueName(BenchmarkQueueContext.QUEUE_NAME)
+            .withClock(Clock.systemUTC())
+            .withMeterRegistry(meterRegistry)
+            .withTransactionCreator(transactionCreator)
+            .withQueuePayloadConsumer(BenchmarkPayloadConsumer.succeeding())
+            .withQueueRepository(repository)
+            .withQueueDeadLetterRepository(element -> Result.success(element))
+            .withApplicationEventPublisher(new BenchmarkApplicationEventPublisher())
+            .withConfigurationProperties(
+                TransactionalQueueConfigurationProperties.builder()
+                    .withLockTimeout(Duration.ofSeconds(10))
+                    .withMaxDispatchCount(BenchmarkQueueContext.MAX_DISPATCH_COUNT)
+                    .withRetryDispatchBatchSize(1)
+                    .withRetryScheduledRateDelay(Duration.ofMillis(100))
+                    .build())
+            .create();
+    elementToEnqueue = new BenchmarkQueueElementToEnqueue(BenchmarkQueueContext.PAYLOAD);
+  }
+
+  @Setup(Level.Iteration)
+  public void truncate() throws SQLException {
+    database.truncate();
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    if (jdbcTransactionCreator != null) {
+      jdbcTransactionCreator.close();
+    }
+    database.close();
+  }
+
+  @Benchmark
+  public Result<BenchmarkQueueElement, TransactionalQueueError<BenchmarkQueueElementToEnqueue>>
+      enqueue() {
+    return callerTransaction.execute(() -> transactionalQueue.enqueue(elementToEnqueue));
+  }
+
+  @Benchmark
+  public void enqueueAndDispatch() {
+    transactionalQueue.dispatch(enqueue().discardError().orElseThrow());
+  }
+
+  @FunctionalInterface
+  private interface CallerTransaction {
+    Result<BenchmarkQueueElement, TransactionalQueueError<BenchmarkQueueElementToEnqueue>> execute(
+        Supplier<
+                Result<
+                    BenchmarkQueueElement, TransactionalQueueError<BenchmarkQueueElementToEnqueue>>>
+            action);
+  }
+}
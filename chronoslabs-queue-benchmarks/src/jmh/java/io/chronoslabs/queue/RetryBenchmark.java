@@ -0,0 +1,32 @@
+package io.chronoslabs.queue;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RetryBenchmark {
+  @Param({"1", "10", "100"})
+  private int batchSize;
+
+  private BenchmarkQueueContext context;
+
+  @Setup
+  public void setUp() {
+    context = new BenchmarkQueueContext(batchSize, BenchmarkPayloadConsumer.succeeding());
+  }
+
+  @Benchmark
+  public void retryDispatch() {
+    context.transactionalQueue.retryDispatch();
+    context.applicationEventPublisher.reset();
+  }
+}
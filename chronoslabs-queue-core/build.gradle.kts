@@ -7,6 +7,7 @@ plugins {
 dependencies {
     api(libs.result4j)
     api(libs.observability.micrometer.core)
+    api(libs.observability.micrometer.observation)
 
     implementation(libs.logging.slf4j.api)
 
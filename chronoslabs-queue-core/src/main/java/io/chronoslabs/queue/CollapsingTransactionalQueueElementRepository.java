@@ -0,0 +1,37 @@
+package io.chronoslabs.queue;
+
+import com.github.sviperll.result4j.Result;
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * Repository superseding pending elements by their {@link
+ * TransactionalQueueElementToEnqueue#collapseKey() collapse key}. An element with the key of an
+ * element which has never been dispatched replaces that element in a single upsert, keeping its
+ * place in the queue. An element already locked for dispatch is left alone, and the new element is
+ * inserted behind it.
+ */
+public interface CollapsingTransactionalQueueElementRepository<
+        P,
+        E extends TransactionalQueueElement<P>,
+        I extends TransactionalQueueElementToEnqueue<P, E>>
+    extends TransactionalQueueElementRepository<P, E, I> {
+
+  /**
+   * Inserts the element or replaces the pending element with the same collapse key. The replaced
+   * element keeps its {@code createdAt}, is due at the earlier of both {@code nextDispatchAfter}
+   * and gets a new id, so a dispatch of the superseded element, for example published before it was
+   * replaced, deletes nothing and does not consume its outdated payload.
+   */
+  Result<CollapsedElement<E>, TransactionalQueueError<I>> insertOrCollapse(
+      I elementToEnqueue,
+      Instant createdAt,
+      Instant nextDispatchAfter,
+      Map<String, String> traceContext);
+
+  /**
+   * @param element the element as stored.
+   * @param collapsed whether it replaced a pending element.
+   */
+  record CollapsedElement<E>(E element, boolean collapsed) {}
+}
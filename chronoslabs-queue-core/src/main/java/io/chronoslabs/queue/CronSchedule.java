@@ -0,0 +1,219 @@
+package io.chronoslabs.queue;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * {@link RecurringSchedule} of a five field cron expression. The next occurrence is searched from
+ * the largest field down, skipping a whole month, day or hour as soon as it does not match, so a
+ * search takes a few hundred steps at most.
+ *
+ * <p>As in classic cron, a schedule restricted to some hours runs at local times of the zone: a
+ * local time repeated when the clocks go back occurs once, at its earlier offset, and a local time
+ * skipped when they go forward occurs shifted forward by the length of the gap. A schedule matching
+ * every hour runs on elapsed time instead, so its minutes occur in both passes of a repeated hour
+ * and not at all in a skipped one.
+ */
+final class CronSchedule implements RecurringSchedule {
+  private static final Map<String, String> MACROS =
+      Map.of(
+          "@yearly", "0 0 1 1 *",
+          "@annually", "0 0 1 1 *",
+          "@monthly", "0 0 1 * *",
+          "@weekly", "0 0 * * 0",
+          "@daily", "0 0 * * *",
+          "@midnight", "0 0 * * *",
+          "@hourly", "0 * * * *");
+  private static final List<String> MONTH_NAMES =
+      List.of("JAN", "FEB", "MAR", "APR", "MAY", "JUN", "JUL", "AUG", "SEP", "OCT", "NOV", "DEC");
+  private static final List<String> DAY_OF_WEEK_NAMES =
+      List.of("SUN", "MON", "TUE", "WED", "THU", "FRI", "SAT");
+
+  private static final int FIELD_COUNT = 5;
+
+  /** Long enough to contain every day of the year, including February 29 after a century year. */
+  private static final int SEARCH_LIMIT_YEARS = 9;
+
+  private final String expression;
+  private final ZoneId zone;
+  private final BitSet minutes;
+  private final BitSet hours;
+  private final BitSet daysOfMonth;
+  private final BitSet months;
+  private final BitSet daysOfWeek;
+  private final boolean daysOfMonthRestricted;
+  private final boolean daysOfWeekRestricted;
+  private final boolean everyHour;
+
+  @SuppressWarnings("PMD.UseVarargs")
+  private CronSchedule(String expression, ZoneId zone, String[] fields) {
+    this.expression = expression;
+    this.zone = zone;
+    this.minutes = parseField(fields[0], 0, 59, List.of(), 0);
+    this.hours = parseField(fields[1], 0, 23, List.of(), 0);
+    this.daysOfMonth = parseField(fields[2], 1, 31, List.of(), 0);
+    this.months = parseField(fields[3], 1, 12, MONTH_NAMES, 1);
+    this.daysOfWeek = parseField(fields[4], 0, 7, DAY_OF_WEEK_NAMES, 0);
+    if (daysOfWeek.get(7)) {
+      daysOfWeek.set(0);
+    }
+    this.daysOfMonthRestricted = isRestricted(fields[2]);
+    this.daysOfWeekRestricted = isRestricted(fields[4]);
+    this.everyHour = hours.cardinality() == 24;
+  }
+
+  static CronSchedule parse(String expression, ZoneId zone) {
+    var trimmed = expression.trim();
+    var fields = MACROS.getOrDefault(trimmed.toLowerCase(Locale.ROOT), trimmed).split("\\s+");
+    if (fields.length != FIELD_COUNT) {
+      throw invalid(expression, "It must have five fields.", null);
+    }
+    var schedule = new CronSchedule(expression, zone, fields);
+    if (schedule.nextOccurrenceAfter(Instant.EPOCH) == null) {
+      throw invalid(expression, "It never matches.", null);
+    }
+    return schedule;
+  }
+
+  /**
+   * @return the first occurrence after the specified time, or {@code null} when the expression
+   *     matches no day within {@value #SEARCH_LIMIT_YEARS} years, which is only checked by {@link
+   *     #parse(String, ZoneId)}.
+   */
+  @Override
+  public Instant nextOccurrenceAfter(Instant time) {
+    return everyHour ? nextElapsedOccurrenceAfter(time) : nextLocalOccurrenceAfter(time);
+  }
+
+  @Override
+  public String toString() {
+    return "CronSchedule[" + expression + " " + zone + "]";
+  }
+
+  private Instant nextLocalOccurrenceAfter(Instant time) {
+    var candidate =
+        LocalDateTime.ofInstant(time, zone).truncatedTo(ChronoUnit.MINUTES).plusMinutes(1);
+    var limit = candidate.plusYears(SEARCH_LIMIT_YEARS);
+    while (candidate.isBefore(limit)) {
+      if (!months.get(candidate.getMonthValue())) {
+        candidate = startOfDay(candidate.withDayOfMonth(1).plusMonths(1));
+      } else if (!dayMatches(candidate.toLocalDate())) {
+        candidate = startOfDay(candidate.plusDays(1));
+      } else if (!hours.get(candidate.getHour())) {
+        candidate = candidate.truncatedTo(ChronoUnit.HOURS).plusHours(1);
+      } else if (!minutes.get(candidate.getMinute())) {
+        candidate = candidate.plusMinutes(1);
+      } else {
+        // After the clocks went back, the earlier offset of a repeated time has already passed.
+        var occurrence = ZonedDateTime.ofLocal(candidate, zone, null).toInstant();
+        if (occurrence.isAfter(time)) {
+          return occurrence;
+        }
+        candidate = candidate.plusMinutes(1);
+      }
+    }
+    return null;
+  }
+
+  /** Steps on the time-line, which passes a repeated hour twice and a skipped one not at all. */
+  private Instant nextElapsedOccurrenceAfter(Instant time) {
+    var candidate = time.atZone(zone).truncatedTo(ChronoUnit.MINUTES).plusMinutes(1);
+    var limit = candidate.plusYears(SEARCH_LIMIT_YEARS);
+    while (candidate.isBefore(limit)) {
+      var date = candidate.toLocalDate();
+      if (!months.get(date.getMonthValue())) {
+        candidate = date.withDayOfMonth(1).plusMonths(1).atStartOfDay(zone);
+      } else if (!dayMatches(date)) {
+        candidate = date.plusDays(1).atStartOfDay(zone);
+      } else if (!minutes.get(candidate.getMinute())) {
+        candidate = candidate.plusMinutes(1);
+      } else {
+        return candidate.toInstant();
+      }
+    }
+    return null;
+  }
+
+  private static LocalDateTime startOfDay(LocalDateTime time) {
+    return time.toLocalDate().atStartOfDay();
+  }
+
+  private boolean dayMatches(LocalDate date) {
+    var dayOfMonthMatches = daysOfMonth.get(date.getDayOfMonth());
+    var dayOfWeekMatches = daysOfWeek.get(date.getDayOfWeek().getValue() % 7);
+    if (daysOfMonthRestricted && daysOfWeekRestricted) {
+      return dayOfMonthMatches || dayOfWeekMatches;
+    }
+    return dayOfMonthMatches && dayOfWeekMatches;
+  }
+
+  private static boolean isRestricted(String field) {
+    return !"*".equals(field) && !"?".equals(field);
+  }
+
+  private static BitSet parseField(
+      String field, int min, int max, List<String> names, int firstNameValue) {
+    var values = new BitSet(max + 1);
+    for (var part : field.split(",", -1)) {
+      var step = 1;
+      var range = part;
+      var slash = part.indexOf('/');
+      if (slash >= 0) {
+        step = parseNumber(part.substring(slash + 1), field);
+        range = part.substring(0, slash);
+        if (step <= 0) {
+          throw invalid(field, "The step must be positive.", null);
+        }
+      }
+      int from;
+      int to;
+      if ("*".equals(range) || "?".equals(range)) {
+        from = min;
+        to = max;
+      } else {
+        var dash = range.indexOf('-');
+        from =
+            parseValue(dash >= 0 ? range.substring(0, dash) : range, names, firstNameValue, field);
+        to =
+            dash >= 0
+                ? parseValue(range.substring(dash + 1), names, firstNameValue, field)
+                : slash >= 0 ? max : from;
+      }
+      if (from < min || to > max || from > to) {
+        throw invalid(field, "Values must be between %d and %d.".formatted(min, max), null);
+      }
+      for (var value = from; value <= to; value += step) {
+        values.set(value);
+      }
+    }
+    return values;
+  }
+
+  private static int parseValue(
+      String value, List<String> names, int firstNameValue, String field) {
+    var nameIndex = names.indexOf(value.toUpperCase(Locale.ROOT));
+    return nameIndex >= 0 ? nameIndex + firstNameValue : parseNumber(value, field);
+  }
+
+  private static int parseNumber(String value, String field) {
+    try {
+      return Integer.parseInt(value);
+    } catch (NumberFormatException exception) {
+      throw invalid(field, "'%s' is not a number.".formatted(value), exception);
+    }
+  }
+
+  private static IllegalArgumentException invalid(
+      String expression, String reason, Throwable cause) {
+    return new IllegalArgumentException(
+        "Invalid cron expression '%s'. %s".formatted(expression, reason), cause);
+  }
+}
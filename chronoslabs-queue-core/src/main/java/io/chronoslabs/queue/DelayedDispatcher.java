@@ -0,0 +1,262 @@
+package io.chronoslabs.queue;
+
+import static io.chronoslabs.queue.TransactionDefinition.PROPAGATION_REQUIRES_NEW;
+import static java.util.Objects.requireNonNull;
+
+import com.github.sviperll.result4j.Result;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Dispatches elements of a {@link DelayedTransactionalQueueElementRepository} at their exact due
+ * time. {@link #schedule()} locks the elements due within {@link
+ * TransactionalQueueConfigurationProperties#delayedDispatchLookAhead()} into a {@link TimingWheel},
+ * and a dedicated thread publishes each of them when it is due, with a precision of one
+ * millisecond. The lock of an element lasts until {@link
+ * TransactionalQueueConfigurationProperties#lockTimeout()} after its due time, so elements held by
+ * a node which stops are retried once their lock expires, like any other element, unless the node
+ * shuts down with {@link TransactionalQueue#shutdown(java.time.Duration)} and releases them.
+ *
+ * <p>Elements are published from the wheel thread, so application event listeners which dispatch
+ * synchronously delay the elements due after them; asynchronous listeners keep the firing precise.
+ */
+class DelayedDispatcher<
+    P, E extends TransactionalQueueElement<P>, I extends TransactionalQueueElementToEnqueue<P, E>> {
+  private static final Logger logger = LoggerFactory.getLogger(DelayedDispatcher.class);
+  private static final long TICK_MILLIS = 1;
+  private static final int WHEEL_SIZE = 64;
+
+  /** Bounds the elements held in memory to this many batches, when a burst becomes due. */
+  private static final int MAX_PENDING_BATCHES = 16;
+
+  private final String queueName;
+  private final Clock clock;
+  private final MetricHandler metricHandler;
+  private final TransactionCreator transactionCreator;
+  private final TransactionalQueueApplicationEventPublisher applicationEventPublisher;
+  private final DelayedTransactionalQueueElementRepository<P, E, I> queueRepository;
+  private final TransactionalQueueConfigurationProperties configurationProperties;
+  private final LockedElements<E> lockedElements;
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition wheelChanged = lock.newCondition();
+  private TimingWheel<E> wheel;
+  private Thread wheelThread;
+
+  @SuppressWarnings({"java:S107", "unchecked"})
+  DelayedDispatcher(
+      String queueName,
+      Clock clock,
+      MetricHandler metricHandler,
+      TransactionCreator transactionCreator,
+      TransactionalQueueApplicationEventPublisher applicationEventPublisher,
+      TransactionalQueueElementRepository<P, E, I> queueRepository,
+      TransactionalQueueConfigurationProperties configurationProperties,
+      LockedElements<E> lockedElements) {
+    this.queueName = requireNonNull(queueName, "DelayedDispatcher.queueName");
+    this.clock = requireNonNull(clock, "DelayedDispatcher.clock");
+    this.metricHandler = requireNonNull(metricHandler, "DelayedDispatcher.metricHandler");
+    this.transactionCreator =
+        requireNonNull(transactionCreator, "DelayedDispatcher.transactionCreator");
+    this.applicationEventPublisher =
+        requireNonNull(applicationEventPublisher, "DelayedDispatcher.applicationEventPublisher");
+    this.configurationProperties =
+        requireNonNull(configurationProperties, "DelayedDispatcher.configurationProperties");
+    this.lockedElements = requireNonNull(lockedElements, "DelayedDispatcher.lockedElements");
+    requireNonNull(queueRepository, "DelayedDispatcher.queueRepository");
+    if (configurationProperties.isDelayedDispatchEnabled()) {
+      Assert.isTrue(
+          queueRepository instanceof DelayedTransactionalQueueElementRepository,
+          "Configuration property 'delayed-dispatch-look-ahead' of queue %s requires a repository implementing DelayedTransactionalQueueElementRepository."
+              .formatted(queueName));
+      this.queueRepository = (DelayedTransactionalQueueElementRepository<P, E, I>) queueRepository;
+    } else {
+      this.queueRepository = null;
+    }
+  }
+
+  void schedule() {
+    if (!configurationProperties.isDelayedDispatchEnabled()) {
+      return;
+    }
+    var batchSize = configurationProperties.retryDispatchBatchSize();
+    while (pending() < MAX_PENDING_BATCHES * batchSize) {
+      var locked = lockForDelayedDispatch(batchSize);
+      if (Results.isError(locked)) {
+        var error = Results.error(locked);
+        error.logError(logger);
+        metricHandler.registerQueueError(error);
+        return;
+      }
+      var elements = Results.success(locked);
+      addToWheel(elements);
+      if (elements.size() < batchSize) {
+        return;
+      }
+    }
+  }
+
+  /** Stops firing the elements in the wheel, which stay locked until they are released. */
+  void stop() {
+    lock.lock();
+    try {
+      if (wheelThread != null) {
+        wheelThread.interrupt();
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private Result<Collection<E>, TransactionalQueueError<String>> lockForDelayedDispatch(
+      int batchSize) {
+    if (!lockedElements.startLock()) {
+      return Result.success(List.of());
+    }
+    Collection<E> locked = List.of();
+    try {
+      var result = lockForDelayedDispatchInTransaction(batchSize);
+      if (!Results.isError(result)) {
+        locked = Results.success(result);
+      }
+      return result;
+    } finally {
+      lockedElements.locked(locked, Instant.now(clock));
+    }
+  }
+
+  private Result<Collection<E>, TransactionalQueueError<String>>
+      lockForDelayedDispatchInTransaction(int batchSize) {
+    try {
+      var now = Instant.now(clock);
+      var dueBefore = now.plus(configurationProperties.delayedDispatchLookAhead());
+      var openedTransaction =
+          transactionCreator.openTransaction(PROPAGATION_REQUIRES_NEW, queueName);
+      if (Results.isError(openedTransaction)) {
+        return Results.propagateError(openedTransaction);
+      }
+      var transaction = Results.success(openedTransaction);
+      var locked =
+          queueRepository.lockForDelayedDispatch(
+              batchSize, now, dueBefore, configurationProperties.lockTimeout());
+      if (Results.isError(locked)) {
+        transaction.rollback();
+        return locked;
+      }
+      var committed = transaction.commit(Results.success(locked));
+      if (Results.isError(committed)) {
+        transaction.rollback();
+      }
+      return committed;
+    } catch (Exception exception) {
+      return Result.error(
+          TransactionalQueueError.<String>builder(queueName)
+              .withCause(exception)
+              .withElement(queueName)
+              .withMessage("An unexpected error occurred during lock queue elements for delay.")
+              .withType("delayed-dispatcher-unexpected-error-on-lock")
+              .build());
+    }
+  }
+
+  private int pending() {
+    lock.lock();
+    try {
+      return wheel == null ? 0 : wheel.size();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void addToWheel(Collection<E> elements) {
+    if (elements.isEmpty()) {
+      return;
+    }
+    var dueNow = new ArrayList<E>();
+    lock.lock();
+    try {
+      if (wheel == null) {
+        wheel = new TimingWheel<>(TICK_MILLIS, WHEEL_SIZE, clock.millis());
+        startWheelThread();
+      }
+      for (var element : elements) {
+        if (!wheel.add(element, dueMillis(element))) {
+          dueNow.add(element);
+        }
+      }
+      wheelChanged.signalAll();
+    } finally {
+      lock.unlock();
+    }
+    publish(dueNow);
+  }
+
+  private void startWheelThread() {
+    wheelThread =
+        new Thread(this::fireDueElements, "chronoslabs-queue-delayed-dispatch-" + queueName);
+    wheelThread.setDaemon(true);
+    wheelThread.start();
+  }
+
+  private void fireDueElements() {
+    var due = new ArrayList<E>();
+    while (!Thread.currentThread().isInterrupted()) {
+      lock.lock();
+      try {
+        var now = clock.millis();
+        wheel.expire(now, due::add);
+        if (due.isEmpty()) {
+          wheelChanged.await(wheel.nextExpirationMillis() - now, TimeUnit.MILLISECONDS);
+          continue;
+        }
+      } catch (InterruptedException exception) {
+        Thread.currentThread().interrupt();
+        return;
+      } finally {
+        lock.unlock();
+      }
+      publish(due);
+      due.clear();
+    }
+  }
+
+  private void publish(List<E> elements) {
+    for (var element : elements) {
+      metricHandler.registerDelayedDispatchLateness(clock.millis() - dueMillis(element));
+      publishApplicationEvent(element);
+    }
+  }
+
+  private long dueMillis(E element) {
+    return element.nextDispatchAfter().minus(configurationProperties.lockTimeout()).toEpochMilli();
+  }
+
+  private void publishApplicationEvent(E element) {
+    try {
+      var published =
+          applicationEventPublisher.publishElementAsApplicationEvent(element, queueName);
+      if (Results.isError(published)) {
+        var error = Results.error(published);
+        error.logError(logger);
+        metricHandler.registerQueueError(error);
+      }
+    } catch (Exception exception) {
+      ErrorLogLimiter.shared()
+          .logError(
+              logger,
+              queueName,
+              "delayed-dispatcher-unexpected-error-on-publish-application-event",
+              exception,
+              "Error while publishing application event.");
+      metricHandler.registerError(
+          exception, "delayed-dispatcher-unexpected-error-on-publish-application-event");
+    }
+  }
+}
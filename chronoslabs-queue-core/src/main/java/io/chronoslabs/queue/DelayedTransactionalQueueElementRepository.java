@@ -0,0 +1,33 @@
+package io.chronoslabs.queue;
+
+import com.github.sviperll.result4j.Result;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+
+/**
+ * Repository supporting precise delayed dispatch. Elements due soon are locked ahead of their due
+ * time and dispatched from memory at that time, so the lock query of the {@link
+ * TransactionalQueueElementRepository#lockForNextDispatch retry} only ever reads elements which are
+ * already due and far-future elements are not read at all.
+ */
+public interface DelayedTransactionalQueueElementRepository<
+        P,
+        E extends TransactionalQueueElement<P>,
+        I extends TransactionalQueueElementToEnqueue<P, E>>
+    extends TransactionalQueueElementRepository<P, E, I> {
+
+  /**
+   * Locks at most {@code batchSize} elements whose {@code nextDispatchAfter} is at or after {@code
+   * dueFrom} and before {@code dueBefore}, ordered by {@code nextDispatchAfter}. Only elements
+   * which were never locked are considered, since the {@code nextDispatchAfter} of a locked element
+   * is its lock expiry rather than its due time. Each element's {@code nextDispatchAfter} is moved
+   * {@code lockTimeout} past its due time and its dispatch count is incremented, like {@link
+   * #lockForNextDispatch}.
+   *
+   * @return the locked elements as stored after the update, so each element is due at its {@code
+   *     nextDispatchAfter} minus {@code lockTimeout}.
+   */
+  Result<Collection<E>, TransactionalQueueError<String>> lockForDelayedDispatch(
+      int batchSize, Instant dueFrom, Instant dueBefore, Duration lockTimeout);
+}
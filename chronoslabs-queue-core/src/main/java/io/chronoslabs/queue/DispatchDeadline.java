@@ -0,0 +1,76 @@
+package io.chronoslabs.queue;
+
+import java.time.Duration;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deadline of a dispatch running on the current thread. The consumer runs on the dispatching thread
+ * because the dispatch transaction is bound to it, so the deadline is enforced by interrupting that
+ * thread from a shared timer thread. The interrupt status is cleared when the dispatch finishes, so
+ * it does not leak into the next task of the thread.
+ */
+final class DispatchDeadline implements Runnable {
+  private final Thread thread;
+  private final long deadlineNanos;
+  private ScheduledFuture<?> interruption;
+  private boolean finished;
+  private boolean interrupted;
+
+  private DispatchDeadline(Thread thread, long deadlineNanos) {
+    this.thread = thread;
+    this.deadlineNanos = deadlineNanos;
+  }
+
+  static DispatchDeadline start(Duration timeout) {
+    var timeoutNanos = timeout.toNanos();
+    var deadline = new DispatchDeadline(Thread.currentThread(), System.nanoTime() + timeoutNanos);
+    deadline.interruption = Timer.EXECUTOR.schedule(deadline, timeoutNanos, TimeUnit.NANOSECONDS);
+    return deadline;
+  }
+
+  @Override
+  public synchronized void run() {
+    if (!finished) {
+      interrupted = true;
+      thread.interrupt();
+    }
+  }
+
+  /**
+   * Stops the deadline. Must be called on the dispatching thread.
+   *
+   * @return whether the deadline has been exceeded.
+   */
+  boolean finish() {
+    interruption.cancel(false);
+    boolean exceeded;
+    synchronized (this) {
+      finished = true;
+      exceeded = interrupted;
+    }
+    if (exceeded) {
+      // Clear the interrupt status set by run().
+      Thread.interrupted();
+    }
+    return exceeded || System.nanoTime() - deadlineNanos >= 0;
+  }
+
+  private static final class Timer {
+    private static final ScheduledThreadPoolExecutor EXECUTOR = createExecutor();
+
+    private static ScheduledThreadPoolExecutor createExecutor() {
+      var executor =
+          new ScheduledThreadPoolExecutor(
+              1,
+              runnable -> {
+                var thread = new Thread(runnable, "chronoslabs-queue-dispatch-deadline");
+                thread.setDaemon(true);
+                return thread;
+              });
+      executor.setRemoveOnCancelPolicy(true);
+      return executor;
+    }
+  }
+}
@@ -5,8 +5,8 @@ import static java.util.Objects.requireNonNull;
 
 import com.github.sviperll.result4j.Result;
 import java.time.Clock;
-import java.time.Duration;
 import java.time.Instant;
+import java.time.temporal.ChronoUnit;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -17,25 +17,34 @@ class Dispatcher<
   private final String queueName;
   private final Clock clock;
   private final MetricHandler metricHandler;
+  private final ObservationHandler observationHandler;
   private final TransactionCreator transactionCreator;
   private final TransactionalQueueElementPayloadConsumer<E> queueElementPayloadConsumer;
   private final TransactionalQueueElementRepository<P, E, I> queueRepository;
   private final TransactionalQueueDeadLetterRepository<E> queueDeadLetterRepository;
   private final TransactionalQueueConfigurationProperties configurationProperties;
+  private final InFlightDispatches inFlightDispatches;
+  private final DispatchingElements dispatchingElements;
+  private final LockedElements<E> lockedElements;
 
   @SuppressWarnings("java:S107")
   Dispatcher(
       String queueName,
       Clock clock,
       MetricHandler metricHandler,
+      ObservationHandler observationHandler,
       TransactionCreator transactionCreator,
       TransactionalQueueElementPayloadConsumer<E> queueElementPayloadConsumer,
       TransactionalQueueElementRepository<P, E, I> queueRepository,
       TransactionalQueueDeadLetterRepository<E> queueDeadLetterRepository,
-      TransactionalQueueConfigurationProperties configurationProperties) {
+      TransactionalQueueConfigurationProperties configurationProperties,
+      InFlightDispatches inFlightDispatches,
+      DispatchingElements dispatchingElements,
+      LockedElements<E> lockedElements) {
     this.queueName = requireNonNull(queueName, "Dispatcher.queueName");
     this.clock = requireNonNull(clock, "Dispatcher.clock");
     this.metricHandler = requireNonNull(metricHandler, "Dispatcher.metricHandler");
+    this.observationHandler = requireNonNull(observationHandler, "Dispatcher.observationHandler");
     this.transactionCreator = requireNonNull(transactionCreator, "Dispatcher.transactionCreator");
     this.queueElementPayloadConsumer =
         requireNonNull(queueElementPayloadConsumer, "Dispatcher.queueElementPayloadConsumer");
@@ -45,20 +54,73 @@ class Dispatcher<
     this.configurationProperties =
         requireNonNull(configurationProperties, "Dispatcher.configurationProperties");
     configurationProperties.validate(queueName);
+    this.inFlightDispatches = requireNonNull(inFlightDispatches, "Dispatcher.inFlightDispatches");
+    this.dispatchingElements =
+        requireNonNull(dispatchingElements, "Dispatcher.dispatchingElements");
+    this.lockedElements = requireNonNull(lockedElements, "Dispatcher.lockedElements");
   }
 
+  /**
+   * Dispatches the element, unless the queue is shutting down. The element is then left to the
+   * release of the locked elements, or to the retry on another node. An element already dispatching
+   * on this node is left to that dispatch.
+   */
   void dispatch(E element) {
-    dispatchInternal(element)
-        .peekSuccess(this::registerDispatchSuccessMetric)
-        .peekError(error -> error.logError(logger))
-        .peekError(metricHandler::registerQueueError)
-        .peekError(ignored -> handleDispatchError(element));
+    if (!dispatchingElements.start(element.id())) {
+      metricHandler.registerLocalDuplicate(MetricHandler.LOCAL_DUPLICATE_NOT_DISPATCHED);
+      logger
+          .atDebug()
+          .addArgument(element)
+          .addArgument(queueName)
+          .log("Element {} is not dispatched, as it is already dispatching on this node of {}.");
+      return;
+    }
+    if (!lockedElements.startDispatch(element)) {
+      dispatchingElements.finish(element.id());
+      inFlightDispatches.finished(element.id());
+      logger
+          .atDebug()
+          .addArgument(element)
+          .addArgument(queueName)
+          .log("Element {} is not dispatched, as {} is shutting down.");
+      return;
+    }
+    try {
+      dispatchAndHandleError(element);
+    } finally {
+      lockedElements.dispatched();
+      dispatchingElements.finish(element.id());
+      inFlightDispatches.finished(element.id());
+    }
+  }
+
+  private void dispatchAndHandleError(E element) {
+    var result = observedDispatch(element);
+    if (!Results.isError(result)) {
+      registerDispatchSuccessMetric(element);
+      return;
+    }
+    var error = Results.error(result);
+    error.logError(logger);
+    metricHandler.registerQueueError(error);
+    handleDispatchError(element);
+  }
+
+  private Result<E, TransactionalQueueError<E>> observedDispatch(E element) {
+    if (observationHandler.isNoop()) {
+      return dispatchInternal(element);
+    }
+    return observationHandler.observe(
+        observationHandler.dispatchObservation(element), () -> dispatchInternal(element));
   }
 
   Result<E, TransactionalQueueError<E>> dispatchInternal(E element) {
     try {
-      return openTransaction(element)
-          .flatMap(transaction -> dispatchInTransaction(element, transaction));
+      var openedTransaction = openDispatchTransaction();
+      if (Results.isError(openedTransaction)) {
+        return Results.errorWithAnotherElement(openedTransaction, element);
+      }
+      return dispatchInTransaction(element, Results.success(openedTransaction));
     } catch (Exception exception) {
       return Result.error(
           TransactionalQueueError.<E>builder(queueName)
@@ -70,18 +132,63 @@ class Dispatcher<
     }
   }
 
+  private Result<OpenedTransaction, TransactionalQueueError<String>> openDispatchTransaction() {
+    var consumerTimeout = configurationProperties.consumerTimeout();
+    if (consumerTimeout == null) {
+      return transactionCreator.openTransaction(PROPAGATION_REQUIRES_NEW, queueName);
+    }
+    return transactionCreator.openTransaction(PROPAGATION_REQUIRES_NEW, queueName, consumerTimeout);
+  }
+
   private Result<E, TransactionalQueueError<E>> dispatchInTransaction(
       E element, OpenedTransaction transaction) {
-    return tryDispatchInTransactionOrReturnError(element)
-        .flatMap(ignored -> commitTransaction(element, transaction))
-        .peekError(ignored -> transaction.rollback());
+    var result = tryDispatchBeforeDeadline(element);
+    if (Results.isError(result)) {
+      transaction.rollback();
+      return result;
+    }
+    return commitTransaction(element, transaction);
+  }
+
+  /**
+   * Interrupts the dispatch once the consumer timeout has elapsed and turns its result into a
+   * timeout error, so the transaction is rolled back even if the consumer ignored the interrupt.
+   */
+  private Result<E, TransactionalQueueError<E>> tryDispatchBeforeDeadline(E element) {
+    var consumerTimeout = configurationProperties.consumerTimeout();
+    if (consumerTimeout == null) {
+      return tryDispatchInTransactionOrReturnError(element);
+    }
+    var deadline = DispatchDeadline.start(consumerTimeout);
+    Result<E, TransactionalQueueError<E>> result;
+    boolean exceeded;
+    try {
+      result = tryDispatchInTransactionOrReturnError(element);
+    } finally {
+      exceeded = deadline.finish();
+    }
+    if (!exceeded) {
+      return result;
+    }
+    var cause = Results.isError(result) ? Results.error(result).cause() : null;
+    return Result.error(
+        TransactionalQueueError.<E>builder(queueName)
+            .withCause(cause)
+            .withElement(element)
+            .withMessage(
+                "Consuming the element payload exceeded the consumer timeout of %s."
+                    .formatted(consumerTimeout))
+            .withType("consume-element-payload-timeout")
+            .build());
   }
 
   private Result<E, TransactionalQueueError<E>> tryDispatchInTransactionOrReturnError(E element) {
     try {
-      return queueRepository
-          .delete(element)
-          .flatMap(ignored -> queueElementPayloadConsumer.consumeElementPayload(element));
+      var deleted = queueRepository.delete(element);
+      if (Results.isError(deleted)) {
+        return deleted;
+      }
+      return queueElementPayloadConsumer.consumeElementPayload(Results.success(deleted));
     } catch (Exception exception) {
       return Result.error(
           TransactionalQueueError.<E>builder(queueName)
@@ -96,8 +203,8 @@ class Dispatcher<
   }
 
   private void registerDispatchSuccessMetric(E element) {
-    var dispatchDuration = Duration.between(element.createdAt(), Instant.now(clock));
-    metricHandler.registerDispatchSuccess(dispatchDuration, element.dispatchCount());
+    var dispatchDurationNanos = ChronoUnit.NANOS.between(element.createdAt(), Instant.now(clock));
+    metricHandler.registerDispatchSuccess(dispatchDurationNanos, element.dispatchCount());
   }
 
   private void handleDispatchError(E element) {
@@ -116,11 +223,15 @@ class Dispatcher<
         .flatMap(transaction -> moveToDeadLetterQueue(element, transaction))
         .peekError(
             error ->
-                logger
-                    .atError()
-                    .addArgument(element)
-                    .addArgument(error)
-                    .log("Failed to move queue element {} to dead letter queue. {}"))
+                ErrorLogLimiter.shared()
+                    .logError(
+                        logger,
+                        queueName,
+                        "moved-to-dead-letter-queue-error",
+                        null,
+                        "Failed to move queue element {} to dead letter queue. {}",
+                        element,
+                        error))
         .peekError(
             error ->
                 metricHandler.registerError(error.cause(), "moved-to-dead-letter-queue-error"));
@@ -128,18 +239,29 @@ class Dispatcher<
 
   private Result<E, TransactionalQueueError<E>> moveToDeadLetterQueue(
       E element, OpenedTransaction transaction) {
-    return tryMoveToDeadLetterQueueOrReturnError(element)
-        .flatMap(ignored -> commitTransaction(element, transaction))
-        .peekSuccess(ignored -> registerMovedToDeadLetterQueueSuccessMetric(element))
-        .peekError(ignored -> transaction.rollback());
+    var result = tryMoveToDeadLetterQueueOrReturnError(element);
+    if (Results.isError(result)) {
+      transaction.rollback();
+      return result;
+    }
+    var committed = commitTransaction(element, transaction);
+    if (!Results.isError(committed)) {
+      registerMovedToDeadLetterQueueSuccessMetric(element);
+    }
+    return committed;
   }
 
   private Result<E, TransactionalQueueError<E>> tryMoveToDeadLetterQueueOrReturnError(E element) {
     try {
       return queueRepository
           .delete(element)
-          .flatMap(ignored -> queueDeadLetterRepository.insert(element))
-          .flatMap(ignored -> queueElementPayloadConsumer.consumeElementPayloadFallback(element));
+          .flatMap(
+              deleted ->
+                  queueDeadLetterRepository
+                      .insert(deleted)
+                      .flatMap(
+                          ignored ->
+                              queueElementPayloadConsumer.consumeElementPayloadFallback(deleted)));
     } catch (Exception exception) {
       return Result.error(
           TransactionalQueueError.<E>builder(queueName)
@@ -164,8 +286,13 @@ class Dispatcher<
         .mapError(error -> error.withAnotherElement(element));
   }
 
+  /** Commits the transaction, rolling it back when the commit fails. */
   private Result<E, TransactionalQueueError<E>> commitTransaction(
       E element, OpenedTransaction transaction) {
-    return transaction.commit(element).mapError(error -> error.withAnotherElement(element));
+    var committed = transaction.commit(element);
+    if (Results.isError(committed)) {
+      transaction.rollback();
+    }
+    return Results.withAnotherElement(committed, element);
   }
 }
@@ -0,0 +1,38 @@
+package io.chronoslabs.queue;
+
+/**
+ * Elements whose dispatch is running on this node, from the start of the {@link Dispatcher} until
+ * its transaction has completed. The {@link Retrier} skips them when locking, as a new lock would
+ * increment their dispatch count, so the {@code dispatch_count} guard of the delete would roll back
+ * the running dispatch. A repository which cannot skip them may still lock such an element; the
+ * Retrier then does not publish it, so it is not dispatched twice on this node.
+ *
+ * <p>An element id of {@code 0} is not tracked.
+ */
+final class DispatchingElements {
+  private static final long UNTRACKED_ID = 0L;
+  private static final long[] NO_ELEMENT_IDS = {};
+
+  private final LongHashSet elementIds = new LongHashSet();
+
+  /**
+   * @return whether the dispatch may start, {@code false} when the element is already dispatching
+   *     on this node; a started dispatch must be followed by {@link #finish(long)}.
+   */
+  synchronized boolean start(long elementId) {
+    return elementId == UNTRACKED_ID || elementIds.add(elementId);
+  }
+
+  synchronized void finish(long elementId) {
+    elementIds.remove(elementId);
+  }
+
+  /** The ids of the running dispatches, for the lock to skip. */
+  synchronized long[] dispatchingIds() {
+    return elementIds.size() == 0 ? NO_ELEMENT_IDS : elementIds.toArray();
+  }
+
+  synchronized boolean isDispatching(long elementId) {
+    return elementIds.contains(elementId);
+  }
+}
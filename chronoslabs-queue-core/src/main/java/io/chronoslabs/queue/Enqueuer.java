@@ -5,7 +5,10 @@ import static java.util.Objects.requireNonNull;
 
 import com.github.sviperll.result4j.Result;
 import java.time.Clock;
+import java.time.Duration;
 import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -16,35 +19,93 @@ public class Enqueuer<
   private final String queueName;
   private final Clock clock;
   private final MetricHandler metricHandler;
+  private final ObservationHandler observationHandler;
   private final TransactionCreator transactionCreator;
   private final TransactionalQueueElementRepository<P, E, I> queueRepository;
+  private final IdempotentTransactionalQueueElementRepository<P, E, I> idempotentQueueRepository;
+  private final CollapsingTransactionalQueueElementRepository<P, E, I> collapsingQueueRepository;
+  private final IdempotencyKeyFilter idempotencyKeyFilter;
+  private final Duration idempotencyWindow;
 
   Enqueuer(
       String queueName,
       Clock clock,
       MetricHandler metricHandler,
+      ObservationHandler observationHandler,
       TransactionCreator transactionCreator,
-      TransactionalQueueElementRepository<P, E, I> queueRepository) {
+      TransactionalQueueElementRepository<P, E, I> queueRepository,
+      Duration idempotencyWindow) {
     this.queueName = requireNonNull(queueName, "Enqueuer.queueName");
     this.clock = requireNonNull(clock, "Enqueuer.clock");
     this.metricHandler = requireNonNull(metricHandler, "Enqueuer.metricHandler");
+    this.observationHandler = requireNonNull(observationHandler, "Enqueuer.observationHandler");
     this.transactionCreator = requireNonNull(transactionCreator, "Enqueuer.transactionCreator");
     this.queueRepository = requireNonNull(queueRepository, "Enqueuer.queueRepository");
+    if (queueRepository
+        instanceof IdempotentTransactionalQueueElementRepository<P, E, I> idempotent) {
+      this.idempotentQueueRepository = idempotent;
+      this.idempotencyKeyFilter =
+          new IdempotencyKeyFilter(IdempotencyKeyFilter.DEFAULT_KEYS_PER_GENERATION);
+    } else {
+      this.idempotentQueueRepository = null;
+      this.idempotencyKeyFilter = null;
+    }
+    if (queueRepository
+        instanceof CollapsingTransactionalQueueElementRepository<P, E, I> collapsing) {
+      this.collapsingQueueRepository = collapsing;
+    } else {
+      this.collapsingQueueRepository = null;
+    }
+    this.idempotencyWindow = idempotencyWindow;
   }
 
   public Result<E, TransactionalQueueError<I>> enqueue(I elementToEnqueue) {
-    return enqueueInternal(elementToEnqueue)
-        .peekError(error -> error.logError(logger))
-        .peekError(metricHandler::registerQueueError);
+    var result = observedEnqueue(elementToEnqueue);
+    if (Results.isError(result)) {
+      var error = Results.error(result);
+      error.logError(logger);
+      metricHandler.registerQueueError(error);
+    }
+    return result;
+  }
+
+  private Result<E, TransactionalQueueError<I>> observedEnqueue(I elementToEnqueue) {
+    if (observationHandler.isNoop()) {
+      return enqueueInternal(elementToEnqueue, Map.of());
+    }
+    var traceContext = new HashMap<String, String>();
+    return observationHandler.observe(
+        observationHandler.enqueueObservation(traceContext),
+        () -> enqueueInternal(elementToEnqueue, traceContext));
   }
 
-  private Result<E, TransactionalQueueError<I>> enqueueInternal(I elementToEnqueue) {
+  private Result<E, TransactionalQueueError<I>> enqueueInternal(
+      I elementToEnqueue, Map<String, String> traceContext) {
     try {
+      if (elementToEnqueue.idempotencyKey() != null && idempotentQueueRepository == null) {
+        return Result.error(
+            TransactionalQueueError.<I>builder(queueName)
+                .withElement(elementToEnqueue)
+                .withMessage(
+                    "The element has an idempotency key, but the queue repository does not"
+                        + " implement IdempotentTransactionalQueueElementRepository.")
+                .withType("idempotency-not-supported")
+                .build());
+      }
       var now = Instant.now(clock);
       var nextDispatchAfter = now.plus(elementToEnqueue.dispatchDelay());
 
-      return ensureTransactionIsAlreadyOpened(elementToEnqueue)
-          .flatMap(ignored -> queueRepository.insert(elementToEnqueue, now, nextDispatchAfter));
+      var openedTransaction = transactionCreator.openTransaction(PROPAGATION_MANDATORY, queueName);
+      if (Results.isError(openedTransaction)) {
+        return Results.errorWithAnotherElement(openedTransaction, elementToEnqueue);
+      }
+      if (collapsingQueueRepository != null && elementToEnqueue.collapseKey() != null) {
+        return enqueueOrCollapse(elementToEnqueue, now, nextDispatchAfter, traceContext);
+      }
+      if (idempotentQueueRepository != null && elementToEnqueue.idempotencyKey() != null) {
+        return enqueueUnlessDuplicate(elementToEnqueue, now, nextDispatchAfter, traceContext);
+      }
+      return queueRepository.insert(elementToEnqueue, now, nextDispatchAfter, traceContext);
     } catch (Exception exception) {
       return Result.error(
           TransactionalQueueError.<I>builder(queueName)
@@ -56,10 +117,76 @@ public class Enqueuer<
     }
   }
 
-  private Result<OpenedTransaction, TransactionalQueueError<I>> ensureTransactionIsAlreadyOpened(
-      I elementToEnqueue) {
-    return transactionCreator
-        .openTransaction(PROPAGATION_MANDATORY, queueName)
-        .mapError(error -> error.withAnotherElement(elementToEnqueue));
+  private Result<E, TransactionalQueueError<I>> enqueueOrCollapse(
+      I elementToEnqueue,
+      Instant now,
+      Instant nextDispatchAfter,
+      Map<String, String> traceContext) {
+    var stored =
+        collapsingQueueRepository.insertOrCollapse(
+            elementToEnqueue, now, nextDispatchAfter, traceContext);
+    if (Results.isError(stored)) {
+      return Results.propagateError(stored);
+    }
+    var collapsedElement = Results.success(stored);
+    if (collapsedElement.collapsed()) {
+      metricHandler.registerCollapsedEnqueue();
+    }
+    return Result.success(collapsedElement.element());
+  }
+
+  /**
+   * Inserts the element or returns its duplicate. A key contained in the {@link
+   * IdempotencyKeyFilter} is probably a duplicate, so it is looked up before inserting; any other
+   * key is inserted right away and only looked up when the insert conflicts, for example with an
+   * element enqueued by another node.
+   */
+  private Result<E, TransactionalQueueError<I>> enqueueUnlessDuplicate(
+      I elementToEnqueue,
+      Instant now,
+      Instant nextDispatchAfter,
+      Map<String, String> traceContext) {
+    var idempotencyKey = elementToEnqueue.idempotencyKey();
+    var duplicatesCreatedSince = idempotencyWindow == null ? null : now.minus(idempotencyWindow);
+    if (idempotencyKeyFilter.mightContain(idempotencyKey)) {
+      var duplicate =
+          idempotentQueueRepository.findDuplicate(elementToEnqueue, duplicatesCreatedSince);
+      if (Results.isError(duplicate)) {
+        return Results.propagateError(duplicate);
+      }
+      if (Results.success(duplicate).isPresent()) {
+        metricHandler.registerDuplicateEnqueue(MetricHandler.DUPLICATE_PRE_CHECKED);
+        return Result.success(Results.success(duplicate).get());
+      }
+    }
+
+    var inserted =
+        idempotentQueueRepository.insertUnlessDuplicate(
+            elementToEnqueue, now, nextDispatchAfter, traceContext, duplicatesCreatedSince);
+    if (Results.isError(inserted)) {
+      return Results.propagateError(inserted);
+    }
+    idempotencyKeyFilter.add(idempotencyKey);
+    if (Results.success(inserted).isPresent()) {
+      return Result.success(Results.success(inserted).get());
+    }
+
+    var duplicate =
+        idempotentQueueRepository.findDuplicate(elementToEnqueue, duplicatesCreatedSince);
+    if (Results.isError(duplicate)) {
+      return Results.propagateError(duplicate);
+    }
+    if (Results.success(duplicate).isEmpty()) {
+      return Result.error(
+          TransactionalQueueError.<I>builder(queueName)
+              .withElement(elementToEnqueue)
+              .withMessage(
+                  "The duplicate of the element with idempotency key %s has been dispatched concurrently. The element has not been added to the queue."
+                      .formatted(idempotencyKey))
+              .withType("duplicate-element-dispatched")
+              .build());
+    }
+    metricHandler.registerDuplicateEnqueue(MetricHandler.DUPLICATE_CONFLICT);
+    return Result.success(Results.success(duplicate).get());
   }
 }
@@ -0,0 +1,260 @@
+package io.chronoslabs.queue;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Rate limits the error logs of the queues, so an outage failing every element does not turn into a
+ * storm of stack traces saturating the log shipping and the CPU. Metrics are registered apart from
+ * the logs and stay exact.
+ *
+ * <p>Per queue and error type, the first {@code maxLogsPerWindow} errors of each window are logged.
+ * The following ones are suppressed, except one in {@code sampleRate} logged as a sample, and the
+ * number of suppressed errors is logged at warn level once the window has passed. A stack trace is
+ * logged in full only when its fingerprint, made of the exception classes and frames of the cause
+ * chain but not of their messages, has not been logged within {@code stackTraceInterval}; otherwise
+ * the cause is logged with the fingerprint of the stack trace logged before.
+ */
+public final class ErrorLogLimiter {
+  private static final int DEFAULT_MAX_LOGS_PER_WINDOW = 10;
+  private static final Duration DEFAULT_WINDOW = Duration.ofMinutes(1);
+  private static final int DEFAULT_SAMPLE_RATE = 1000;
+  private static final Duration DEFAULT_STACK_TRACE_INTERVAL = Duration.ofMinutes(10);
+  private static final int MAX_FINGERPRINTS = 1024;
+  private static final int MAX_CAUSE_DEPTH = 8;
+  private static final long FNV_OFFSET_BASIS = 0xCBF29CE484222325L;
+  private static final long FNV_PRIME = 0x100000001B3L;
+
+  private final int maxLogsPerWindow;
+  private final Duration window;
+  private final long windowNanos;
+  private final int sampleRate;
+  private final long stackTraceIntervalNanos;
+  private final LongSupplier nanoTime;
+  private final Map<String, Map<String, ErrorTypeLog>> errorTypeLogs = new ConcurrentHashMap<>();
+  private final Map<Long, Long> stackTracesLoggedAt = new ConcurrentHashMap<>();
+
+  ErrorLogLimiter(
+      int maxLogsPerWindow,
+      Duration window,
+      int sampleRate,
+      Duration stackTraceInterval,
+      LongSupplier nanoTime) {
+    Assert.isTrue(maxLogsPerWindow >= 0, "ErrorLogLimiter.maxLogsPerWindow must not be negative.");
+    Assert.isTrue(sampleRate > 0, "ErrorLogLimiter.sampleRate must be greater than zero.");
+    this.maxLogsPerWindow = maxLogsPerWindow;
+    this.window = Assert.requireNonNull(window, "ErrorLogLimiter.window");
+    this.windowNanos = window.toNanos();
+    this.sampleRate = sampleRate;
+    this.stackTraceIntervalNanos =
+        Assert.requireNonNull(stackTraceInterval, "ErrorLogLimiter.stackTraceInterval").toNanos();
+    this.nanoTime = Assert.requireNonNull(nanoTime, "ErrorLogLimiter.nanoTime");
+  }
+
+  /** The limiter of all queues, which logs the suppressed errors of each passed window. */
+  public static ErrorLogLimiter shared() {
+    return Shared.INSTANCE;
+  }
+
+  /**
+   * Logs the error at error level, unless errors of the same queue and type are being suppressed.
+   * The message is formatted by SLF4J, and {@link Supplier} arguments are only called when the
+   * error is logged.
+   */
+  public void logError(
+      Logger logger,
+      String queueName,
+      String errorType,
+      Throwable cause,
+      String message,
+      Object... arguments) {
+    if (!logger.isErrorEnabled()) {
+      return;
+    }
+    var now = nanoTime.getAsLong();
+    var errorTypeLog =
+        errorTypeLogs
+            .computeIfAbsent(String.valueOf(queueName), name -> new ConcurrentHashMap<>())
+            .computeIfAbsent(
+                String.valueOf(errorType), type -> new ErrorTypeLog(queueName, type, now));
+    logSuppressed(errorTypeLog, errorTypeLog.rollWindow(now));
+    var outcome = errorTypeLog.record(logger);
+    if (outcome == Outcome.SUPPRESSED) {
+      return;
+    }
+    var event = logger.atError();
+    for (var argument : arguments) {
+      if (argument instanceof Supplier<?> supplier) {
+        event = event.addArgument(supplier);
+      } else {
+        event = event.addArgument(argument);
+      }
+    }
+    var pattern = new StringBuilder(message);
+    if (outcome == Outcome.SAMPLED) {
+      pattern.append(" Logged as a sample of {} suppressed errors.");
+      event = event.addArgument(sampleRate);
+    }
+    if (cause != null) {
+      var fingerprint = fingerprint(cause);
+      if (isStackTraceDue(fingerprint, now)) {
+        pattern.append(" Stack trace fingerprint: {}.");
+        event = event.setCause(cause);
+      } else {
+        pattern.append(" Cause: {}, with the stack trace logged before with fingerprint {}.");
+        event = event.addArgument(cause);
+      }
+      event = event.addArgument(() -> Long.toHexString(fingerprint));
+    }
+    event.log(pattern.toString());
+  }
+
+  /** Logs the errors suppressed in the windows which have passed since their last error. */
+  void logSuppressedErrors() {
+    var now = nanoTime.getAsLong();
+    for (var errorTypeLogsOfQueue : errorTypeLogs.values()) {
+      for (var errorTypeLog : errorTypeLogsOfQueue.values()) {
+        logSuppressed(errorTypeLog, errorTypeLog.rollWindow(now));
+      }
+    }
+  }
+
+  private void logSuppressed(ErrorTypeLog errorTypeLog, long suppressed) {
+    if (suppressed == 0) {
+      return;
+    }
+    errorTypeLog
+        .lastLogger()
+        .atWarn()
+        .addArgument(suppressed)
+        .addArgument(errorTypeLog.errorType)
+        .addArgument(errorTypeLog.queueName)
+        .addArgument(window)
+        .log("{} similar errors of type {} of queue {} suppressed in the last {}.");
+  }
+
+  private boolean isStackTraceDue(long fingerprint, long now) {
+    var loggedAt = stackTracesLoggedAt.get(fingerprint);
+    if (loggedAt != null && now - loggedAt < stackTraceIntervalNanos) {
+      return false;
+    }
+    if (stackTracesLoggedAt.size() >= MAX_FINGERPRINTS) {
+      stackTracesLoggedAt.clear();
+    }
+    stackTracesLoggedAt.put(fingerprint, now);
+    return true;
+  }
+
+  /** FNV-1a over the classes and frames of the cause chain, which do not vary between elements. */
+  static long fingerprint(Throwable throwable) {
+    var hash = FNV_OFFSET_BASIS;
+    var current = throwable;
+    for (int depth = 0; current != null && depth < MAX_CAUSE_DEPTH; depth++) {
+      hash = (hash ^ current.getClass().getName().hashCode()) * FNV_PRIME;
+      for (var frame : current.getStackTrace()) {
+        hash = (hash ^ frame.getClassName().hashCode()) * FNV_PRIME;
+        hash = (hash ^ frame.getMethodName().hashCode()) * FNV_PRIME;
+        hash = (hash ^ frame.getLineNumber()) * FNV_PRIME;
+      }
+      current = current.getCause();
+    }
+    return hash;
+  }
+
+  private enum Outcome {
+    LOGGED,
+    SAMPLED,
+    SUPPRESSED
+  }
+
+  private final class ErrorTypeLog {
+    private final String queueName;
+    private final String errorType;
+    private Logger logger;
+    private long windowStartNanos;
+    private int logged;
+    private long overLimit;
+    private long suppressed;
+
+    private ErrorTypeLog(String queueName, String errorType, long now) {
+      this.queueName = queueName;
+      this.errorType = errorType;
+      this.windowStartNanos = now;
+    }
+
+    private synchronized Outcome record(Logger errorLogger) {
+      logger = errorLogger;
+      if (logged < maxLogsPerWindow) {
+        logged++;
+        return Outcome.LOGGED;
+      }
+      overLimit++;
+      if (overLimit % sampleRate == 0) {
+        return Outcome.SAMPLED;
+      }
+      suppressed++;
+      return Outcome.SUPPRESSED;
+    }
+
+    /**
+     * @return the number of errors suppressed in the window, when it has passed.
+     */
+    private synchronized long rollWindow(long now) {
+      if (now - windowStartNanos < windowNanos) {
+        return 0;
+      }
+      var suppressedInWindow = suppressed;
+      windowStartNanos = now;
+      logged = 0;
+      overLimit = 0;
+      suppressed = 0;
+      return suppressedInWindow;
+    }
+
+    private synchronized Logger lastLogger() {
+      return Objects.requireNonNull(logger);
+    }
+  }
+
+  private static final class Shared {
+    private static final ErrorLogLimiter INSTANCE =
+        new ErrorLogLimiter(
+            DEFAULT_MAX_LOGS_PER_WINDOW,
+            DEFAULT_WINDOW,
+            DEFAULT_SAMPLE_RATE,
+            DEFAULT_STACK_TRACE_INTERVAL,
+            System::nanoTime);
+
+    static {
+      ScheduledExecutorService executor =
+          Executors.newSingleThreadScheduledExecutor(
+              runnable -> {
+                var thread = new Thread(runnable, "chronoslabs-queue-error-log-limiter");
+                thread.setDaemon(true);
+                return thread;
+              });
+      var windowMillis = DEFAULT_WINDOW.toMillis();
+      executor.scheduleAtFixedRate(
+          () -> {
+            try {
+              INSTANCE.logSuppressedErrors();
+            } catch (RuntimeException exception) {
+              LoggerFactory.getLogger(ErrorLogLimiter.class)
+                  .warn("Failed to log the suppressed errors.", exception);
+            }
+          },
+          windowMillis,
+          windowMillis,
+          TimeUnit.MILLISECONDS);
+    }
+  }
+}
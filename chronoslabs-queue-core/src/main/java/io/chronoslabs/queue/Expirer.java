@@ -0,0 +1,141 @@
+package io.chronoslabs.queue;
+
+import static io.chronoslabs.queue.TransactionDefinition.PROPAGATION_REQUIRES_NEW;
+import static java.util.Objects.requireNonNull;
+
+import com.github.sviperll.result4j.Result;
+import java.time.Clock;
+import java.time.Instant;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Removes the expired elements of an {@link ExpiringTransactionalQueueElementRepository} in chunks
+ * of {@link #CHUNK_SIZE}, each deleted by one set-based statement in a transaction of its own, so
+ * the locks are held briefly and a large backlog of expired elements does not turn into one huge
+ * transaction. With {@link TransactionalQueueConfigurationProperties#expiredToDeadLetterQueue()},
+ * the deleted elements are inserted into the dead letter queue with the {@link
+ * TransactionalQueueDeadLetterRepository#REASON_EXPIRED expired} reason in the same transaction.
+ */
+class Expirer<
+    P, E extends TransactionalQueueElement<P>, I extends TransactionalQueueElementToEnqueue<P, E>> {
+  private static final Logger logger = LoggerFactory.getLogger(Expirer.class);
+  private static final int CHUNK_SIZE = 1000;
+
+  /** Bounds a run, so a backlog is removed over several runs instead of blocking one caller. */
+  private static final int MAX_CHUNKS_PER_RUN = 16;
+
+  private final String queueName;
+  private final Clock clock;
+  private final MetricHandler metricHandler;
+  private final TransactionCreator transactionCreator;
+  private final TransactionalQueueElementRepository<P, E, I> queueRepository;
+  private final TransactionalQueueDeadLetterRepository<E> queueDeadLetterRepository;
+  private final TransactionalQueueConfigurationProperties configurationProperties;
+
+  Expirer(
+      String queueName,
+      Clock clock,
+      MetricHandler metricHandler,
+      TransactionCreator transactionCreator,
+      TransactionalQueueElementRepository<P, E, I> queueRepository,
+      TransactionalQueueDeadLetterRepository<E> queueDeadLetterRepository,
+      TransactionalQueueConfigurationProperties configurationProperties) {
+    this.queueName = requireNonNull(queueName, "Expirer.queueName");
+    this.clock = requireNonNull(clock, "Expirer.clock");
+    this.metricHandler = requireNonNull(metricHandler, "Expirer.metricHandler");
+    this.transactionCreator = requireNonNull(transactionCreator, "Expirer.transactionCreator");
+    this.queueRepository = requireNonNull(queueRepository, "Expirer.queueRepository");
+    this.configurationProperties =
+        requireNonNull(configurationProperties, "Expirer.configurationProperties");
+    this.queueDeadLetterRepository =
+        requireNonNull(queueDeadLetterRepository, "Expirer.queueDeadLetterRepository");
+  }
+
+  void expire() {
+    if (!(queueRepository
+        instanceof ExpiringTransactionalQueueElementRepository<P, E, I> expiringRepository)) {
+      return;
+    }
+    for (int chunk = 0; chunk < MAX_CHUNKS_PER_RUN; chunk++) {
+      var expired = expireChunk(expiringRepository);
+      if (Results.isError(expired)) {
+        var error = Results.error(expired);
+        error.logError(logger);
+        metricHandler.registerQueueError(error);
+        return;
+      }
+      if (Results.success(expired) < CHUNK_SIZE) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * @return the number of expired elements removed.
+   */
+  private Result<Integer, TransactionalQueueError<String>> expireChunk(
+      ExpiringTransactionalQueueElementRepository<P, E, I> expiringRepository) {
+    try {
+      var now = Instant.now(clock);
+      var openedTransaction =
+          transactionCreator.openTransaction(PROPAGATION_REQUIRES_NEW, queueName);
+      if (Results.isError(openedTransaction)) {
+        return Results.propagateError(openedTransaction);
+      }
+      var transaction = Results.success(openedTransaction);
+      var expired =
+          configurationProperties.expiredToDeadLetterQueue()
+              ? moveExpiredToDeadLetterQueue(expiringRepository, now)
+              : expiringRepository.deleteExpired(CHUNK_SIZE, now);
+      if (Results.isError(expired)) {
+        transaction.rollback();
+        return expired;
+      }
+      var committed = transaction.commit(Results.success(expired));
+      if (Results.isError(committed)) {
+        transaction.rollback();
+        return committed;
+      }
+      registerExpiredMetric(Results.success(committed));
+      return committed;
+    } catch (Exception exception) {
+      return Result.error(
+          TransactionalQueueError.<String>builder(queueName)
+              .withCause(exception)
+              .withElement(queueName)
+              .withMessage("An unexpected error occurred during removal of expired queue elements.")
+              .withType("expirer-unexpected-error-on-expire")
+              .build());
+    }
+  }
+
+  private Result<Integer, TransactionalQueueError<String>> moveExpiredToDeadLetterQueue(
+      ExpiringTransactionalQueueElementRepository<P, E, I> expiringRepository, Instant now) {
+    var deleted = expiringRepository.deleteExpiredReturning(CHUNK_SIZE, now);
+    if (Results.isError(deleted)) {
+      return Results.propagateError(deleted);
+    }
+    var elements = Results.success(deleted);
+    for (var element : elements) {
+      var inserted =
+          queueDeadLetterRepository.insert(
+              element, TransactionalQueueDeadLetterRepository.REASON_EXPIRED);
+      if (Results.isError(inserted)) {
+        return Results.errorWithAnotherElement(inserted, queueName);
+      }
+    }
+    return Result.success(elements.size());
+  }
+
+  private void registerExpiredMetric(int count) {
+    if (count == 0) {
+      return;
+    }
+    metricHandler.registerExpired(
+        count,
+        configurationProperties.expiredToDeadLetterQueue()
+            ? MetricHandler.EXPIRED_DEAD_LETTERED
+            : MetricHandler.EXPIRED_DELETED);
+  }
+}
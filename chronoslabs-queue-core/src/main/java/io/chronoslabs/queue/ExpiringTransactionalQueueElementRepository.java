@@ -0,0 +1,39 @@
+package io.chronoslabs.queue;
+
+import com.github.sviperll.result4j.Result;
+import java.time.Instant;
+import java.util.Collection;
+
+/**
+ * Repository storing the expiry of elements enqueued with a {@link
+ * TransactionalQueueElementToEnqueue#timeToLive() time to live}, as their {@code createdAt} plus
+ * the time to live. {@link #lockForNextDispatch} and, for a {@link
+ * DelayedTransactionalQueueElementRepository}, {@code lockForDelayedDispatch} must skip expired
+ * elements, so a backlog of stale elements is never dispatched.
+ *
+ * <p>Expired elements are removed in chunks by set-based deletes, which should be served by an
+ * index on the expiry of the elements which have one.
+ */
+public interface ExpiringTransactionalQueueElementRepository<
+        P,
+        E extends TransactionalQueueElement<P>,
+        I extends TransactionalQueueElementToEnqueue<P, E>>
+    extends TransactionalQueueElementRepository<P, E, I> {
+
+  /**
+   * Deletes at most {@code batchSize} elements which expired at or before {@code now} and are not
+   * locked for dispatch, skipping rows locked by other transactions.
+   *
+   * @return the number of deleted elements.
+   */
+  Result<Integer, TransactionalQueueError<String>> deleteExpired(int batchSize, Instant now);
+
+  /**
+   * Deletes expired elements like {@link #deleteExpired(int, Instant)}, returning them so they can
+   * be moved to the dead letter queue in the same transaction.
+   *
+   * @return the deleted elements.
+   */
+  Result<Collection<E>, TransactionalQueueError<String>> deleteExpiredReturning(
+      int batchSize, Instant now);
+}
@@ -0,0 +1,110 @@
+package io.chronoslabs.queue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bloom filter of the idempotency keys enqueued by this node, so keys which have certainly not been
+ * enqueued before skip the lookup of their duplicate. A key enqueued by another node is not
+ * contained, which only costs the lookup after the insert conflicted on the unique index.
+ *
+ * <p>Keys are added to a generation holding {@code keysPerGeneration} keys at roughly 16 bits per
+ * key. When it is full it replaces the previous generation, so memory is bounded and keys are
+ * forgotten after one to two generations, long after their element has usually been dispatched.
+ * Thread-safe.
+ */
+final class IdempotencyKeyFilter {
+  static final int DEFAULT_KEYS_PER_GENERATION = 1 << 16;
+  private static final int BITS_PER_KEY = 10;
+  private static final int HASH_COUNT = 7;
+  private static final long FNV_OFFSET_BASIS = 0xCBF29CE484222325L;
+  private static final long FNV_PRIME = 0x100000001B3L;
+
+  private final int keysPerGeneration;
+  private final int bitCount;
+  private volatile Generation current;
+  private volatile Generation previous;
+
+  IdempotencyKeyFilter(int keysPerGeneration) {
+    Assert.isTrue(
+        keysPerGeneration > 0, "IdempotencyKeyFilter.keysPerGeneration must be greater than zero.");
+    this.keysPerGeneration = keysPerGeneration;
+    this.bitCount =
+        Math.max(Long.SIZE, Integer.highestOneBit(keysPerGeneration * BITS_PER_KEY - 1) << 1);
+    this.current = new Generation(bitCount);
+  }
+
+  boolean mightContain(String key) {
+    var hash = hash(key);
+    var previousGeneration = previous;
+    return current.mightContain(hash)
+        || previousGeneration != null && previousGeneration.mightContain(hash);
+  }
+
+  void add(String key) {
+    var generation = current;
+    generation.add(hash(key));
+    if (generation.keys.incrementAndGet() == keysPerGeneration) {
+      rotate(generation);
+    }
+  }
+
+  @SuppressWarnings("PMD.CompareObjectsWithEquals")
+  private synchronized void rotate(Generation fullGeneration) {
+    if (current == fullGeneration) {
+      previous = fullGeneration;
+      current = new Generation(bitCount);
+    }
+  }
+
+  /** FNV-1a over the characters, finished with the MurmurHash3 mixer to spread the bits. */
+  private static long hash(String key) {
+    var hash = FNV_OFFSET_BASIS;
+    for (int index = 0; index < key.length(); index++) {
+      hash = (hash ^ key.charAt(index)) * FNV_PRIME;
+    }
+    hash = (hash ^ (hash >>> 33)) * 0xFF51AFD7ED558CCDL;
+    hash = (hash ^ (hash >>> 33)) * 0xC4CEB9FE1A85EC53L;
+    return hash ^ (hash >>> 33);
+  }
+
+  private static final class Generation {
+    private final AtomicLongArray words;
+    private final int mask;
+    private final AtomicInteger keys = new AtomicInteger();
+
+    private Generation(int bitCount) {
+      this.words = new AtomicLongArray(bitCount / Long.SIZE);
+      this.mask = bitCount - 1;
+    }
+
+    private boolean mightContain(long hash) {
+      for (int index = 0; index < HASH_COUNT; index++) {
+        var bit = bitOf(hash, index);
+        if ((words.get(bit >>> 6) & (1L << bit)) == 0) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private void add(long hash) {
+      for (int index = 0; index < HASH_COUNT; index++) {
+        var bit = bitOf(hash, index);
+        var wordMask = 1L << bit;
+        var word = bit >>> 6;
+        var value = words.get(word);
+        while ((value & wordMask) == 0 && !words.compareAndSet(word, value, value | wordMask)) {
+          value = words.get(word);
+        }
+      }
+    }
+
+    /** Double hashing: the {@code index}-th bit is {@code h1 + index * h2}. */
+    private int bitOf(long hash, int index) {
+      var first = (int) hash;
+      var second = (int) (hash >>> 32) | 1;
+      return (first + index * second) & mask;
+    }
+  }
+}
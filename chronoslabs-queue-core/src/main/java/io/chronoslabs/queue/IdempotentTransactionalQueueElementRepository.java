@@ -0,0 +1,42 @@
+package io.chronoslabs.queue;
+
+import com.github.sviperll.result4j.Result;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Repository deduplicating elements by their {@link
+ * TransactionalQueueElementToEnqueue#idempotencyKey() idempotency key}. The key must be enforced by
+ * a unique index, so concurrent enqueues of the same key store a single element. The key is only
+ * held while the element is in the queue; it is free again once the element has been dispatched.
+ */
+public interface IdempotentTransactionalQueueElementRepository<
+        P,
+        E extends TransactionalQueueElement<P>,
+        I extends TransactionalQueueElementToEnqueue<P, E>>
+    extends TransactionalQueueElementRepository<P, E, I> {
+
+  /**
+   * Inserts the element unless an element with the same idempotency key created at or after {@code
+   * duplicatesCreatedSince} is in the queue. The key of an element created before is released, so
+   * that element is kept and the new one is inserted.
+   *
+   * @param duplicatesCreatedSince {@code null} when every element in the queue is a duplicate.
+   * @return the inserted element, or an empty optional when a duplicate is in the queue.
+   */
+  Result<Optional<E>, TransactionalQueueError<I>> insertUnlessDuplicate(
+      I elementToEnqueue,
+      Instant createdAt,
+      Instant nextDispatchAfter,
+      Map<String, String> traceContext,
+      Instant duplicatesCreatedSince);
+
+  /**
+   * @param duplicatesCreatedSince {@code null} when every element in the queue is a duplicate.
+   * @return the element in the queue with the idempotency key of {@code elementToEnqueue}, created
+   *     at or after {@code duplicatesCreatedSince}, or an empty optional when there is none.
+   */
+  Result<Optional<E>, TransactionalQueueError<I>> findDuplicate(
+      I elementToEnqueue, Instant duplicatesCreatedSince);
+}
@@ -0,0 +1,41 @@
+package io.chronoslabs.queue;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Elements published by the {@link Retrier} whose dispatch has not finished yet. The {@link
+ * Dispatcher} removes an element once its dispatch has finished, and the Retrier is notified when
+ * fewer than {@link TransactionalQueueConfigurationProperties#retryPrefetchLowWaterMark()} elements
+ * remain, so it can lock the next batch while these are still dispatching. Nothing is tracked when
+ * prefetching is disabled.
+ */
+final class InFlightDispatches {
+  private final int lowWaterMark;
+  private final Set<Long> elementIds = ConcurrentHashMap.newKeySet();
+  private volatile Runnable belowLowWaterMarkListener = () -> {};
+
+  InFlightDispatches(int lowWaterMark) {
+    this.lowWaterMark = lowWaterMark;
+  }
+
+  void onBelowLowWaterMark(Runnable listener) {
+    this.belowLowWaterMarkListener = listener;
+  }
+
+  void published(long elementId) {
+    if (lowWaterMark > 0) {
+      elementIds.add(elementId);
+    }
+  }
+
+  void finished(long elementId) {
+    if (lowWaterMark > 0 && elementIds.remove(elementId) && isBelowLowWaterMark()) {
+      belowLowWaterMarkListener.run();
+    }
+  }
+
+  boolean isBelowLowWaterMark() {
+    return elementIds.size() < lowWaterMark;
+  }
+}
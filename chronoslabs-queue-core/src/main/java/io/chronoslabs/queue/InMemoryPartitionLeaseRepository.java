@@ -0,0 +1,61 @@
+package io.chronoslabs.queue;
+
+import com.github.sviperll.result4j.Result;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * {@link PartitionLeaseRepository} for nodes sharing one JVM, for example tests of {@link
+ * PartitionLeases} or queues backed by {@link InMemoryTransactionalQueueElementRepository}. Every
+ * operation is atomic on its own and ignores the surrounding transaction.
+ */
+public class InMemoryPartitionLeaseRepository implements PartitionLeaseRepository {
+  private final Map<Integer, PartitionLease> leases = new HashMap<>();
+  private final Map<String, Instant> nodes = new HashMap<>();
+
+  @Override
+  public synchronized Result<Collection<PartitionLease>, TransactionalQueueError<String>> heartbeat(
+      String nodeId, Instant now, Instant expiresAt) {
+    nodes.put(nodeId, expiresAt);
+    leases.replaceAll(
+        (partition, lease) ->
+            lease.isHeldBy(nodeId, now) ? new PartitionLease(partition, nodeId, expiresAt) : lease);
+    return Result.success(new ArrayList<>(leases.values()));
+  }
+
+  @Override
+  public synchronized Result<Integer, TransactionalQueueError<String>> countLiveNodes(Instant now) {
+    nodes.values().removeIf(expiresAt -> !expiresAt.isAfter(now));
+    return Result.success(nodes.size());
+  }
+
+  @Override
+  public synchronized Result<Boolean, TransactionalQueueError<String>> claim(
+      int partition, String nodeId, Instant now, Instant expiresAt) {
+    var lease = leases.get(partition);
+    if (lease != null && !lease.isExpired(now) && !lease.nodeId().equals(nodeId)) {
+      return Result.success(false);
+    }
+    leases.put(partition, new PartitionLease(partition, nodeId, expiresAt));
+    return Result.success(true);
+  }
+
+  @Override
+  public synchronized Result<Boolean, TransactionalQueueError<String>> release(
+      int partition, String nodeId) {
+    var lease = leases.get(partition);
+    if (lease == null || !lease.nodeId().equals(nodeId)) {
+      return Result.success(false);
+    }
+    leases.remove(partition);
+    return Result.success(true);
+  }
+
+  @Override
+  public synchronized Result<Boolean, TransactionalQueueError<String>> deregister(String nodeId) {
+    return Result.success(nodes.remove(nodeId) != null);
+  }
+}
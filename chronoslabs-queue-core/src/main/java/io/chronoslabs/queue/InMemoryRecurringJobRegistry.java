@@ -0,0 +1,18 @@
+package io.chronoslabs.queue;
+
+import com.github.sviperll.result4j.Result;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link RecurringJobRegistry} for queues backed by {@link
+ * InMemoryTransactionalQueueElementRepository}. Registrations ignore the surrounding transaction.
+ */
+public class InMemoryRecurringJobRegistry implements RecurringJobRegistry {
+  private final Set<String> jobNames = ConcurrentHashMap.newKeySet();
+
+  @Override
+  public Result<Boolean, TransactionalQueueError<String>> register(String jobName) {
+    return Result.success(jobNames.add(jobName));
+  }
+}
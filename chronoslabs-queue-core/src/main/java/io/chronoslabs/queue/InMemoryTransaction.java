@@ -0,0 +1,93 @@
+package io.chronoslabs.queue;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * A transaction of {@link InMemoryTransactionCreator}, bound to the thread that opened it. Changes
+ * made by in-memory repositories register a {@link Synchronization} that publishes them on commit
+ * and undoes them on rollback, in reverse order of registration. Durable repositories write their
+ * changes in {@link Synchronization#beforeCommit()}, so a failed write rolls the transaction back.
+ */
+final class InMemoryTransaction {
+  private final InMemoryTransaction suspended;
+  private final List<Synchronization> synchronizations = new ArrayList<>();
+  private Map<Object, Synchronization> keyedSynchronizations;
+  private boolean rollbackOnly;
+
+  InMemoryTransaction(InMemoryTransaction suspendedTransaction) {
+    this.suspended = suspendedTransaction;
+  }
+
+  InMemoryTransaction suspendedTransaction() {
+    return suspended;
+  }
+
+  void registerSynchronization(Synchronization synchronization) {
+    synchronizations.add(synchronization);
+  }
+
+  /**
+   * Returns the synchronization registered for the key, registering the supplied one first when
+   * there is none, so a repository can collect all its changes of the transaction in one place.
+   */
+  @SuppressWarnings("unchecked")
+  <S extends Synchronization> S synchronizationFor(Object key, Supplier<S> synchronization) {
+    if (keyedSynchronizations == null) {
+      keyedSynchronizations = new IdentityHashMap<>();
+    }
+    return (S)
+        keyedSynchronizations.computeIfAbsent(
+            key,
+            ignored -> {
+              var newSynchronization = synchronization.get();
+              registerSynchronization(newSynchronization);
+              return newSynchronization;
+            });
+  }
+
+  void markRollbackOnly() {
+    rollbackOnly = true;
+  }
+
+  boolean isRollbackOnly() {
+    return rollbackOnly;
+  }
+
+  /**
+   * @throws RuntimeException thrown by {@link Synchronization#beforeCommit()}, after the
+   *     transaction has been rolled back.
+   */
+  void commit() {
+    try {
+      for (var synchronization : synchronizations) {
+        synchronization.beforeCommit();
+      }
+    } catch (RuntimeException exception) {
+      rollback();
+      throw exception;
+    }
+    for (var synchronization : synchronizations) {
+      synchronization.afterCommit();
+    }
+    synchronizations.clear();
+  }
+
+  void rollback() {
+    for (int index = synchronizations.size() - 1; index >= 0; index--) {
+      synchronizations.get(index).afterRollback();
+    }
+    synchronizations.clear();
+  }
+
+  interface Synchronization {
+    default void beforeCommit() {}
+
+    void afterCommit();
+
+    void afterRollback();
+  }
+}
@@ -0,0 +1,195 @@
+package io.chronoslabs.queue;
+
+import static io.chronoslabs.queue.Assert.requireNonNull;
+
+import com.github.sviperll.result4j.Result;
+import java.util.function.Supplier;
+
+/**
+ * {@link TransactionCreator} for queues backed by {@link
+ * InMemoryTransactionalQueueElementRepository}. Transactions are bound to the current thread and
+ * follow the propagation rules of the Spring implementation: {@link
+ * TransactionDefinition#PROPAGATION_MANDATORY} joins the current transaction or fails when there is
+ * none, {@link TransactionDefinition#PROPAGATION_REQUIRES_NEW} suspends the current transaction
+ * until the new one completes.
+ *
+ * <p>Elements are enqueued inside {@link #executeInTransaction(Supplier)}, which plays the role of
+ * the caller's database transaction.
+ */
+public class InMemoryTransactionCreator implements TransactionCreator {
+  private final ThreadLocal<InMemoryTransaction> transactionHolder = new ThreadLocal<>();
+
+  @Override
+  public Result<OpenedTransaction, TransactionalQueueError<String>> openTransaction(
+      TransactionDefinition transactionDefinition, String queueName) {
+    var transaction = transactionHolder.get();
+    if (transactionDefinition == TransactionDefinition.PROPAGATION_REQUIRES_NEW) {
+      return Result.success(new InMemoryOpenedTransaction(begin(transaction), queueName));
+    }
+    if (transaction == null) {
+      return Result.error(
+          TransactionalQueueError.<String>builder(queueName)
+              .withElement(queueName)
+              .withMessage(
+                  "Failed to open transaction with propagation behaviour %s for %s. No existing transaction found."
+                      .formatted(transactionDefinition, queueName))
+              .withType("open-transaction-error")
+              .build());
+    }
+    return Result.success(new ParticipatingOpenedTransaction(transaction));
+  }
+
+  /**
+   * Executes the action in the current transaction or, when there is none, in a new one which is
+   * committed when the action returns and rolled back when it throws.
+   *
+   * @throws IllegalStateException when the transaction was marked as rollback-only by a
+   *     participant, for example a failed enqueue, and has been rolled back instead of committed.
+   * @throws RuntimeException when a durable repository failed to write the changes of the
+   *     transaction, which has been rolled back.
+   */
+  public <T> T executeInTransaction(Supplier<T> action) {
+    requireNonNull(action, "InMemoryTransactionCreator.action");
+    var suspendedTransaction = transactionHolder.get();
+    if (suspendedTransaction != null) {
+      return executeInCurrentTransaction(suspendedTransaction, action);
+    }
+    var transaction = begin(null);
+    T result;
+    try {
+      result = action.get();
+    } catch (RuntimeException | Error exception) {
+      complete(transaction);
+      transaction.rollback();
+      throw exception;
+    }
+    complete(transaction);
+    if (transaction.isRollbackOnly()) {
+      transaction.rollback();
+      throw new IllegalStateException(
+          "Transaction has been rolled back because it was marked as rollback-only.");
+    }
+    transaction.commit();
+    return result;
+  }
+
+  InMemoryTransaction currentTransaction() {
+    return transactionHolder.get();
+  }
+
+  /**
+   * Unbinds the current transaction from the thread without completing it, restoring the
+   * transaction it suspended. The caller completes it later with {@link
+   * InMemoryTransaction#commit()} or {@link InMemoryTransaction#rollback()}, which lets a
+   * simulation keep the row locks of a dispatch while simulated time passes.
+   *
+   * @return the detached transaction, or {@code null} when there is none.
+   */
+  InMemoryTransaction detachCurrentTransaction() {
+    var transaction = transactionHolder.get();
+    if (transaction != null) {
+      complete(transaction);
+    }
+    return transaction;
+  }
+
+  private static <T> T executeInCurrentTransaction(
+      InMemoryTransaction transaction, Supplier<T> action) {
+    try {
+      return action.get();
+    } catch (RuntimeException | Error exception) {
+      transaction.markRollbackOnly();
+      throw exception;
+    }
+  }
+
+  private InMemoryTransaction begin(InMemoryTransaction suspendedTransaction) {
+    var transaction = new InMemoryTransaction(suspendedTransaction);
+    transactionHolder.set(transaction);
+    return transaction;
+  }
+
+  @SuppressWarnings("PMD.CompareObjectsWithEquals")
+  private boolean complete(InMemoryTransaction transaction) {
+    if (transactionHolder.get() != transaction) {
+      return false;
+    }
+    var suspendedTransaction = transaction.suspendedTransaction();
+    if (suspendedTransaction == null) {
+      transactionHolder.remove();
+    } else {
+      transactionHolder.set(suspendedTransaction);
+    }
+    return true;
+  }
+
+  private class InMemoryOpenedTransaction implements OpenedTransaction {
+    private final InMemoryTransaction transaction;
+    private final String queueName;
+
+    private InMemoryOpenedTransaction(InMemoryTransaction transaction, String queueName) {
+      this.transaction = transaction;
+      this.queueName = queueName;
+    }
+
+    @Override
+    public <S> Result<S, TransactionalQueueError<String>> commit(S success) {
+      if (!complete(transaction)) {
+        return Result.error(
+            commitError(
+                "Failed to commit transaction for %s. It is already completed or not bound to the current thread."
+                    .formatted(queueName),
+                null));
+      }
+      if (transaction.isRollbackOnly()) {
+        transaction.rollback();
+        return Result.error(
+            commitError(
+                "Transaction for %s has been rolled back because it was marked as rollback-only."
+                    .formatted(queueName),
+                null));
+      }
+      try {
+        transaction.commit();
+      } catch (RuntimeException exception) {
+        return Result.error(
+            commitError("Failed to commit transaction for %s.".formatted(queueName), exception));
+      }
+      return Result.success(success);
+    }
+
+    @Override
+    public void rollback() {
+      if (complete(transaction)) {
+        transaction.rollback();
+      }
+    }
+
+    private TransactionalQueueError<String> commitError(String message, Exception cause) {
+      return TransactionalQueueError.<String>builder(queueName)
+          .withCause(cause)
+          .withElement(queueName)
+          .withMessage(message)
+          .withType("commit-transaction-error")
+          .build();
+    }
+  }
+
+  private static class ParticipatingOpenedTransaction implements OpenedTransaction {
+    private final InMemoryTransaction transaction;
+
+    private ParticipatingOpenedTransaction(InMemoryTransaction transaction) {
+      this.transaction = transaction;
+    }
+
+    @Override
+    public <S> Result<S, TransactionalQueueError<String>> commit(S success) {
+      return Result.success(success);
+    }
+
+    @Override
+    public void rollback() {
+      transaction.markRollbackOnly();
+    }
+  }
+}
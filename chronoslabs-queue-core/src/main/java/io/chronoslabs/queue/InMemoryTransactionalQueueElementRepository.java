@@ -0,0 +1,588 @@
+package io.chronoslabs.queue;
+
+import static io.chronoslabs.queue.Assert.requireNonNull;
+
+import com.github.sviperll.result4j.Result;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Non-durable {@link TransactionalQueueElementRepository} for queues that do not need to survive a
+ * restart, such as cache invalidation or local fan-out.
+ *
+ * <p>Elements are spread over a power-of-two number of stripes by id. Each stripe is guarded by its
+ * own lock and holds an open-addressing table keyed by the primitive id and a binary heap ordered
+ * by {@code nextDispatchAfter}, so every element costs one entry object plus a table and a heap
+ * slot. {@link #lockForNextDispatch} drains due elements from the heads of the heaps, starting at a
+ * different stripe on every call.
+ *
+ * <p>Changes made inside a transaction of the {@link InMemoryTransactionCreator} follow the row
+ * semantics of the JDBC implementation: inserted elements stay invisible to other transactions
+ * until commit, deleted and locked elements are skipped by concurrent {@link #lockForNextDispatch}
+ * calls until commit, and a rollback restores the previous state. Deleting an element that is held
+ * by a concurrent transaction fails immediately, as if the other transaction had committed first,
+ * instead of waiting for its row lock. Outside a transaction every change is applied immediately.
+ */
+public class InMemoryTransactionalQueueElementRepository<
+        P,
+        E extends TransactionalQueueElement<P>,
+        I extends TransactionalQueueElementToEnqueue<P, E>>
+    implements TransactionalQueueElementRepository<P, E, I> {
+  public static final int DEFAULT_STRIPE_COUNT = 16;
+
+  private static final byte COMMITTED = 0;
+  private static final byte INSERTED = 1;
+  private static final byte LOCKED = 2;
+  private static final byte DELETED = 3;
+  private static final long[] NO_SKIPPED_IDS = {};
+
+  private final String queueName;
+  private final InMemoryTransactionCreator transactionCreator;
+  private final AtomicLong idSequence = new AtomicLong();
+  private final AtomicInteger nextStripeToLock = new AtomicInteger();
+  private final List<Stripe> stripes;
+  private final int stripeMask;
+
+  public InMemoryTransactionalQueueElementRepository(
+      String queueName, InMemoryTransactionCreator transactionCreator) {
+    this(queueName, transactionCreator, DEFAULT_STRIPE_COUNT);
+  }
+
+  public InMemoryTransactionalQueueElementRepository(
+      String queueName, InMemoryTransactionCreator transactionCreator, int stripeCount) {
+    this.queueName =
+        requireNonNull(queueName, "InMemoryTransactionalQueueElementRepository.queueName");
+    this.transactionCreator =
+        requireNonNull(
+            transactionCreator, "InMemoryTransactionalQueueElementRepository.transactionCreator");
+    Assert.isTrue(
+        stripeCount > 0 && Integer.bitCount(stripeCount) == 1,
+        "InMemoryTransactionalQueueElementRepository.stripeCount must be a positive power of two");
+    var stripeList = new ArrayList<Stripe>(stripeCount);
+    for (int index = 0; index < stripeCount; index++) {
+      stripeList.add(new Stripe());
+    }
+    this.stripes = List.copyOf(stripeList);
+    this.stripeMask = stripeCount - 1;
+  }
+
+  @Override
+  public Result<E, TransactionalQueueError<I>> insert(
+      I elementToEnqueue, Instant createdAt, Instant nextDispatchAfter) {
+    return insert(elementToEnqueue, createdAt, nextDispatchAfter, Map.of());
+  }
+
+  @Override
+  public Result<E, TransactionalQueueError<I>> insert(
+      I elementToEnqueue,
+      Instant createdAt,
+      Instant nextDispatchAfter,
+      Map<String, String> traceContext) {
+    try {
+      var entry =
+          new Entry<>(
+              idSequence.incrementAndGet(),
+              elementToEnqueue,
+              createdAt,
+              nextDispatchAfter,
+              INITIAL_DISPATCH_COUNT,
+              Map.copyOf(traceContext));
+      var element = toElement(entry);
+      stripeOf(entry.id).insert(entry, transactionCreator.currentTransaction());
+      return Result.success(element);
+    } catch (Exception exception) {
+      return Result.error(
+          TransactionalQueueError.<I>builder(queueName)
+              .withCause(exception)
+              .withElement(elementToEnqueue)
+              .withMessage(
+                  "An unexpected error occurred during insert element into %s. "
+                          .formatted(queueName)
+                      + "Error: "
+                      + exception.getMessage())
+              .withType("queue-insert-error")
+              .build());
+    }
+  }
+
+  @Override
+  public Result<E, TransactionalQueueError<Long>> findById(long id) {
+    try {
+      var element = stripeOf(id).find(id, transactionCreator.currentTransaction());
+      if (element != null) {
+        return Result.success(element);
+      }
+      return Result.error(readElementError(id, null));
+    } catch (Exception exception) {
+      return Result.error(readElementError(id, exception));
+    }
+  }
+
+  @Override
+  public Result<Collection<E>, TransactionalQueueError<String>> lockForNextDispatch(
+      int batchSize, Instant notDispatchedTill, Instant nextDispatchTime) {
+    return lockForNextDispatch(batchSize, notDispatchedTill, nextDispatchTime, NO_SKIPPED_IDS);
+  }
+
+  @Override
+  public Result<Collection<E>, TransactionalQueueError<String>> lockForNextDispatch(
+      int batchSize, Instant notDispatchedTill, Instant nextDispatchTime, long[] skippedIds) {
+    try {
+      var transaction = transactionCreator.currentTransaction();
+      var elements = new ArrayList<E>(batchSize);
+      var firstStripe = nextStripeToLock.getAndIncrement();
+      for (int index = 0; index < stripes.size() && elements.size() < batchSize; index++) {
+        stripes
+            .get((firstStripe + index) & stripeMask)
+            .lockDue(
+                batchSize, notDispatchedTill, nextDispatchTime, skippedIds, transaction, elements);
+      }
+      return Result.success(elements);
+    } catch (Exception exception) {
+      var params =
+          "batchSize=%d, notDispatchedTill=%s, nextDispatchTime=%s"
+              .formatted(batchSize, notDispatchedTill, nextDispatchTime);
+      return Result.error(
+          TransactionalQueueError.<String>builder(queueName)
+              .withCause(exception)
+              .withElement(params)
+              .withMessage(
+                  "Failed to lock %s Elements for retry dispatch. Params: %s"
+                      .formatted(queueName, params))
+              .withType("retry-dispatch-lock-error")
+              .build());
+    }
+  }
+
+  @Override
+  public Result<E, TransactionalQueueError<E>> delete(E element) {
+    try {
+      if (stripeOf(element.id()).delete(element, transactionCreator.currentTransaction())) {
+        return Result.success(element);
+      }
+      return Result.error(
+          TransactionalQueueError.<E>builder(queueName)
+              .withElement(element)
+              .withMessage(
+                  "Failed to delete %s Element with id=%d.".formatted(queueName, element.id()))
+              .withType("zero-rows-deleted")
+              .build());
+    } catch (Exception exception) {
+      return Result.error(
+          TransactionalQueueError.<E>builder(queueName)
+              .withCause(exception)
+              .withElement(element)
+              .withMessage(
+                  "Failed to delete %s Element with id=%d.".formatted(queueName, element.id()))
+              .withType("delete-element-error")
+              .build());
+    }
+  }
+
+  /**
+   * Adds a committed element with a known id, used by durable repositories that rebuild this index
+   * from their storage on startup.
+   */
+  void restore(
+      long id,
+      I elementToEnqueue,
+      Instant createdAt,
+      Instant nextDispatchAfter,
+      int dispatchCount,
+      Map<String, String> traceContext) {
+    idSequence.accumulateAndGet(id, Math::max);
+    stripeOf(id)
+        .insert(
+            new Entry<>(
+                id, elementToEnqueue, createdAt, nextDispatchAfter, dispatchCount, traceContext),
+            null);
+  }
+
+  /** Ensures ids of restored storage, including ids of already deleted elements, are not reused. */
+  void restoreIdSequence(long highestUsedId) {
+    idSequence.accumulateAndGet(highestUsedId, Math::max);
+  }
+
+  private static boolean contains(long[] ids, long id) {
+    for (var candidate : ids) {
+      if (candidate == id) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private Stripe stripeOf(long id) {
+    return stripes.get((int) id & stripeMask);
+  }
+
+  private E toElement(Entry<I> entry) {
+    return entry
+        .elementToEnqueue
+        .toTransactionalQueueElementBuilder()
+        .withId(entry.id)
+        .withCreatedAt(entry.createdAt)
+        .withDispatchCount(entry.dispatchCount)
+        .withNextDispatchAfter(entry.nextDispatchAfter)
+        .withPayload(entry.elementToEnqueue.payload())
+        .withTraceContext(entry.traceContext)
+        .build();
+  }
+
+  private TransactionalQueueError<Long> readElementError(long id, Exception exception) {
+    return TransactionalQueueError.<Long>builder(queueName)
+        .withCause(exception)
+        .withElement(id)
+        .withMessage("Failed to select %s Element with id=%d.".formatted(queueName, id))
+        .withType("read-element-error")
+        .build();
+  }
+
+  @SuppressWarnings("PMD.CompareObjectsWithEquals")
+  private static final class Entry<I> {
+    private final long id;
+    private final I elementToEnqueue;
+    private final Instant createdAt;
+    private final Map<String, String> traceContext;
+    private Instant nextDispatchAfter;
+    private int dispatchCount;
+    private int heapIndex = -1;
+    private byte state = COMMITTED;
+    private InMemoryTransaction owner;
+
+    private Entry(
+        long id,
+        I elementToEnqueue,
+        Instant createdAt,
+        Instant nextDispatchAfter,
+        int dispatchCount,
+        Map<String, String> traceContext) {
+      this.id = id;
+      this.elementToEnqueue = elementToEnqueue;
+      this.createdAt = createdAt;
+      this.nextDispatchAfter = nextDispatchAfter;
+      this.dispatchCount = dispatchCount;
+      this.traceContext = traceContext;
+    }
+
+    private boolean isVisibleTo(InMemoryTransaction transaction) {
+      return switch (state) {
+        case INSERTED -> owner == transaction;
+        case DELETED -> owner != transaction;
+        default -> true;
+      };
+    }
+
+    private boolean isDispatchedBefore(Entry<?> other) {
+      var comparison = nextDispatchAfter.compareTo(other.nextDispatchAfter);
+      return comparison < 0 || (comparison == 0 && id < other.id);
+    }
+  }
+
+  /**
+   * Elements whose id maps to the stripe. Both the id table and the heap shrink again once most of
+   * their elements have been removed.
+   */
+  @SuppressWarnings({"PMD.CompareObjectsWithEquals", "PMD.NullAssignment"})
+  private final class Stripe {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LongObjectHashMap<Entry<I>> entries = new LongObjectHashMap<>();
+    private Entry<I>[] heap = newEntryArray(INITIAL_CAPACITY);
+    private int heapSize;
+
+    private void insert(Entry<I> entry, InMemoryTransaction transaction) {
+      lock.lock();
+      try {
+        entries.put(entry.id, entry);
+        if (transaction == null) {
+          heapAdd(entry);
+          return;
+        }
+        entry.state = INSERTED;
+        entry.owner = transaction;
+        transaction.registerSynchronization(
+            new InMemoryTransaction.Synchronization() {
+              @Override
+              public void afterCommit() {
+                commitInsert(entry);
+              }
+
+              @Override
+              public void afterRollback() {
+                rollbackInsert(entry);
+              }
+            });
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    private E find(long id, InMemoryTransaction transaction) {
+      lock.lock();
+      try {
+        var entry = entries.get(id);
+        return entry != null && entry.isVisibleTo(transaction) ? toElement(entry) : null;
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    @SuppressWarnings("PMD.AvoidInstantiatingObjectsInLoops")
+    private void lockDue(
+        int batchSize,
+        Instant notDispatchedTill,
+        Instant nextDispatchTime,
+        long[] skippedIds,
+        InMemoryTransaction transaction,
+        List<E> elements) {
+      lock.lock();
+      try {
+        var firstLocked = elements.size();
+        List<Entry<I>> skipped = null;
+        while (elements.size() < batchSize
+            && heapSize > 0
+            && heap[0].nextDispatchAfter.isBefore(notDispatchedTill)) {
+          var entry = heap[0];
+          heapRemove(entry);
+          if (contains(skippedIds, entry.id)) {
+            if (skipped == null) {
+              skipped = new ArrayList<>();
+            }
+            skipped.add(entry);
+            continue;
+          }
+          var previousNextDispatchAfter = entry.nextDispatchAfter;
+          entry.nextDispatchAfter = nextDispatchTime;
+          entry.dispatchCount++;
+          elements.add(toElement(entry));
+          if (transaction != null) {
+            lockInTransaction(entry, previousNextDispatchAfter, transaction);
+          }
+        }
+        if (transaction == null) {
+          for (int index = firstLocked; index < elements.size(); index++) {
+            heapAdd(entries.get(elements.get(index).id()));
+          }
+        }
+        if (skipped != null) {
+          skipped.forEach(this::heapAdd);
+        }
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    private void lockInTransaction(
+        Entry<I> entry, Instant previousNextDispatchAfter, InMemoryTransaction transaction) {
+      entry.state = LOCKED;
+      entry.owner = transaction;
+      transaction.registerSynchronization(
+          new InMemoryTransaction.Synchronization() {
+            @Override
+            public void afterCommit() {
+              commitLock(entry);
+            }
+
+            @Override
+            public void afterRollback() {
+              rollbackLock(entry, previousNextDispatchAfter);
+            }
+          });
+    }
+
+    private boolean delete(E element, InMemoryTransaction transaction) {
+      lock.lock();
+      try {
+        var entry = entries.get(element.id());
+        if (entry == null
+            || entry.dispatchCount != element.dispatchCount()
+            || (entry.owner != null && entry.owner != transaction)
+            || entry.state == DELETED) {
+          return false;
+        }
+        if (transaction == null || entry.state == INSERTED) {
+          remove(entry);
+          return true;
+        }
+        var previousState = entry.state;
+        if (entry.heapIndex >= 0) {
+          heapRemove(entry);
+        }
+        entry.state = DELETED;
+        entry.owner = transaction;
+        transaction.registerSynchronization(
+            new InMemoryTransaction.Synchronization() {
+              @Override
+              public void afterCommit() {
+                commitDelete(entry);
+              }
+
+              @Override
+              public void afterRollback() {
+                rollbackDelete(entry, previousState);
+              }
+            });
+        return true;
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    private void commitInsert(Entry<I> entry) {
+      lock.lock();
+      try {
+        if (entries.get(entry.id) == entry && entry.state == INSERTED) {
+          release(entry);
+        }
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    private void rollbackInsert(Entry<I> entry) {
+      lock.lock();
+      try {
+        if (entries.get(entry.id) == entry) {
+          remove(entry);
+        }
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    private void commitLock(Entry<I> entry) {
+      lock.lock();
+      try {
+        if (entry.state == LOCKED) {
+          release(entry);
+        }
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    private void rollbackLock(Entry<I> entry, Instant previousNextDispatchAfter) {
+      lock.lock();
+      try {
+        entry.nextDispatchAfter = previousNextDispatchAfter;
+        entry.dispatchCount--;
+        release(entry);
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    private void commitDelete(Entry<I> entry) {
+      lock.lock();
+      try {
+        remove(entry);
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    private void rollbackDelete(Entry<I> entry, byte previousState) {
+      lock.lock();
+      try {
+        if (previousState == COMMITTED) {
+          release(entry);
+        } else {
+          entry.state = previousState;
+        }
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    private void release(Entry<I> entry) {
+      entry.state = COMMITTED;
+      entry.owner = null;
+      heapAdd(entry);
+    }
+
+    private void remove(Entry<I> entry) {
+      if (entry.heapIndex >= 0) {
+        heapRemove(entry);
+      }
+      entries.remove(entry.id);
+    }
+
+    private void heapAdd(Entry<I> entry) {
+      if (heapSize == heap.length) {
+        heap = Arrays.copyOf(heap, heap.length * 2);
+      }
+      heap[heapSize] = entry;
+      entry.heapIndex = heapSize;
+      heapSize++;
+      siftUp(entry);
+    }
+
+    private void heapRemove(Entry<I> entry) {
+      heapSize--;
+      var last = heap[heapSize];
+      heap[heapSize] = null;
+      if (last != entry) {
+        heap[entry.heapIndex] = last;
+        last.heapIndex = entry.heapIndex;
+        siftDown(last);
+        siftUp(last);
+      }
+      entry.heapIndex = -1;
+      if (heap.length > INITIAL_CAPACITY && heapSize * 4L < heap.length) {
+        heap = Arrays.copyOf(heap, heap.length / 2);
+      }
+    }
+
+    private void siftUp(Entry<I> entry) {
+      var index = entry.heapIndex;
+      while (index > 0) {
+        var parentIndex = (index - 1) >>> 1;
+        var parent = heap[parentIndex];
+        if (!entry.isDispatchedBefore(parent)) {
+          break;
+        }
+        heap[index] = parent;
+        parent.heapIndex = index;
+        index = parentIndex;
+      }
+      heap[index] = entry;
+      entry.heapIndex = index;
+    }
+
+    private void siftDown(Entry<I> entry) {
+      var index = entry.heapIndex;
+      var half = heapSize >>> 1;
+      while (index < half) {
+        var childIndex = 2 * index + 1;
+        var child = heap[childIndex];
+        var rightIndex = childIndex + 1;
+        if (rightIndex < heapSize && heap[rightIndex].isDispatchedBefore(child)) {
+          childIndex = rightIndex;
+          child = heap[childIndex];
+        }
+        if (!child.isDispatchedBefore(entry)) {
+          break;
+        }
+        heap[index] = child;
+        child.heapIndex = index;
+        index = childIndex;
+      }
+      heap[index] = entry;
+      entry.heapIndex = index;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Entry<T>[] newEntryArray(int capacity) {
+      return (Entry<T>[]) new Entry<?>[capacity];
+    }
+  }
+}
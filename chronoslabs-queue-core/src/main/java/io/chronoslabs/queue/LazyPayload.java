@@ -0,0 +1,87 @@
+package io.chronoslabs.queue;
+
+import static io.chronoslabs.queue.Assert.requireNonNull;
+
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Payload of an element kept in its stored form, text or bytes, and decoded on first access. The
+ * decoded payload is cached and the stored form released, so it is decoded once however many
+ * threads access it. An element whose {@link TransactionalQueueElement#payload()} returns {@link
+ * #get()} is therefore locked, published, rejected or dropped by a failed delete without decoding
+ * its payload; only consumers reading the payload pay for it.
+ *
+ * <p>A row mapper creates it from the payload column with {@link #decoding(Object, Function)}. A
+ * failed decoding throws from {@link #get()}, which fails the dispatch like an exception of the
+ * consumer, and is tried again on the next access.
+ */
+public final class LazyPayload<P> {
+  private Supplier<? extends P> decoder;
+  private P payload;
+  private volatile boolean payloadDecoded;
+
+  private LazyPayload(Supplier<? extends P> decoder, P payload, boolean decoded) {
+    this.decoder = decoder;
+    this.payload = payload;
+    this.payloadDecoded = decoded;
+  }
+
+  /**
+   * @return the payload of the stored form, decoded on first access by the decoder.
+   */
+  public static <T, P> LazyPayload<P> decoding(
+      T storedPayload, Function<? super T, ? extends P> decoder) {
+    requireNonNull(decoder, "LazyPayload.decoder");
+    return new LazyPayload<>(() -> decoder.apply(storedPayload), null, false);
+  }
+
+  /**
+   * @return the payload which is decoded already, for example the one just enqueued.
+   */
+  public static <P> LazyPayload<P> decoded(P payload) {
+    return new LazyPayload<>(null, payload, true);
+  }
+
+  @SuppressWarnings("PMD.NullAssignment")
+  public P get() {
+    if (payloadDecoded) {
+      return payload;
+    }
+    synchronized (this) {
+      if (!payloadDecoded) {
+        payload = decoder.get();
+        // Releases the stored form, which may be much larger than the payload.
+        decoder = null;
+        payloadDecoded = true;
+      }
+      return payload;
+    }
+  }
+
+  public boolean isDecoded() {
+    return payloadDecoded;
+  }
+
+  /** Compares the decoded payloads, decoding both of them. */
+  @Override
+  public boolean equals(Object other) {
+    if (this == other) {
+      return true;
+    }
+    return other instanceof LazyPayload<?> otherPayload
+        && Objects.equals(get(), otherPayload.get());
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hashCode(get());
+  }
+
+  /** Does not decode the payload, so logging an element does not either. */
+  @Override
+  public String toString() {
+    return payloadDecoded ? "LazyPayload[" + payload + "]" : "LazyPayload[not decoded]";
+  }
+}
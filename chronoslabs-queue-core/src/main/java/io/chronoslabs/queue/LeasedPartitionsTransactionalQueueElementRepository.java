@@ -0,0 +1,175 @@
+package io.chronoslabs.queue;
+
+import static io.chronoslabs.queue.Assert.requireNonNull;
+
+import com.github.sviperll.result4j.Result;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Locks only the elements of the partitions currently leased by this node through {@link
+ * PartitionLeases}, and nothing while it holds no lease. All other operations are delegated
+ * unchanged, so enqueue and dispatch of elements of any partition keep working.
+ *
+ * <p>The idempotent, collapsing, releasable and expiring capabilities of the delegate are
+ * forwarded; a delegate lacking one behaves like a queue repository lacking it. Delayed dispatch is
+ * not supported, as its lock cannot be limited to the leased partitions: a queue configured with
+ * {@link TransactionalQueueConfigurationProperties#delayedDispatchLookAhead()} rejects this
+ * repository when it is created.
+ */
+public class LeasedPartitionsTransactionalQueueElementRepository<
+        P,
+        E extends TransactionalQueueElement<P>,
+        I extends TransactionalQueueElementToEnqueue<P, E>>
+    implements IdempotentTransactionalQueueElementRepository<P, E, I>,
+        CollapsingTransactionalQueueElementRepository<P, E, I>,
+        ReleasableTransactionalQueueElementRepository<P, E, I>,
+        ExpiringTransactionalQueueElementRepository<P, E, I> {
+  private final PartitionedTransactionalQueueElementRepository<P, E, I> delegate;
+  private final PartitionLeases partitionLeases;
+
+  public LeasedPartitionsTransactionalQueueElementRepository(
+      PartitionedTransactionalQueueElementRepository<P, E, I> delegate,
+      PartitionLeases partitionLeases) {
+    this.delegate =
+        requireNonNull(delegate, "LeasedPartitionsTransactionalQueueElementRepository.delegate");
+    this.partitionLeases =
+        requireNonNull(
+            partitionLeases, "LeasedPartitionsTransactionalQueueElementRepository.partitionLeases");
+  }
+
+  @Override
+  public Result<E, TransactionalQueueError<I>> insert(
+      I elementToEnqueue, Instant createdAt, Instant nextDispatchAfter) {
+    return delegate.insert(elementToEnqueue, createdAt, nextDispatchAfter);
+  }
+
+  @Override
+  public Result<E, TransactionalQueueError<I>> insert(
+      I elementToEnqueue,
+      Instant createdAt,
+      Instant nextDispatchAfter,
+      Map<String, String> traceContext) {
+    return delegate.insert(elementToEnqueue, createdAt, nextDispatchAfter, traceContext);
+  }
+
+  @Override
+  public Result<E, TransactionalQueueError<Long>> findById(long id) {
+    return delegate.findById(id);
+  }
+
+  @Override
+  public Result<Collection<E>, TransactionalQueueError<String>> lockForNextDispatch(
+      int batchSize, Instant notDispatchedTill, Instant nextDispatchTime) {
+    var partitions = partitionLeases.ownedPartitions();
+    if (partitions.length == 0) {
+      return Result.success(List.of());
+    }
+    return delegate.lockForNextDispatch(
+        batchSize,
+        notDispatchedTill,
+        nextDispatchTime,
+        partitionLeases.partitionCount(),
+        partitions);
+  }
+
+  @Override
+  public Result<Collection<E>, TransactionalQueueError<String>> lockForNextDispatch(
+      int batchSize, Instant notDispatchedTill, Instant nextDispatchTime, long[] skippedIds) {
+    var partitions = partitionLeases.ownedPartitions();
+    if (partitions.length == 0) {
+      return Result.success(List.of());
+    }
+    return delegate.lockForNextDispatch(
+        batchSize,
+        notDispatchedTill,
+        nextDispatchTime,
+        partitionLeases.partitionCount(),
+        partitions,
+        skippedIds);
+  }
+
+  @Override
+  public Result<E, TransactionalQueueError<E>> delete(E element) {
+    return delegate.delete(element);
+  }
+
+  @Override
+  public Result<Optional<E>, TransactionalQueueError<I>> insertUnlessDuplicate(
+      I elementToEnqueue,
+      Instant createdAt,
+      Instant nextDispatchAfter,
+      Map<String, String> traceContext,
+      Instant duplicatesCreatedSince) {
+    if (!(delegate instanceof IdempotentTransactionalQueueElementRepository<P, E, I> idempotent)) {
+      return Result.error(idempotencyNotSupportedError(elementToEnqueue));
+    }
+    return idempotent.insertUnlessDuplicate(
+        elementToEnqueue, createdAt, nextDispatchAfter, traceContext, duplicatesCreatedSince);
+  }
+
+  @Override
+  public Result<Optional<E>, TransactionalQueueError<I>> findDuplicate(
+      I elementToEnqueue, Instant duplicatesCreatedSince) {
+    if (!(delegate instanceof IdempotentTransactionalQueueElementRepository<P, E, I> idempotent)) {
+      return Result.error(idempotencyNotSupportedError(elementToEnqueue));
+    }
+    return idempotent.findDuplicate(elementToEnqueue, duplicatesCreatedSince);
+  }
+
+  @Override
+  public Result<CollapsedElement<E>, TransactionalQueueError<I>> insertOrCollapse(
+      I elementToEnqueue,
+      Instant createdAt,
+      Instant nextDispatchAfter,
+      Map<String, String> traceContext) {
+    if (!(delegate instanceof CollapsingTransactionalQueueElementRepository<P, E, I> collapsing)) {
+      return delegate
+          .insert(elementToEnqueue, createdAt, nextDispatchAfter, traceContext)
+          .map(element -> new CollapsedElement<>(element, false));
+    }
+    return collapsing.insertOrCollapse(
+        elementToEnqueue, createdAt, nextDispatchAfter, traceContext);
+  }
+
+  @Override
+  public Result<Integer, TransactionalQueueError<String>> releaseLocks(
+      Collection<E> elements, Duration lockTimeout) {
+    if (!(delegate instanceof ReleasableTransactionalQueueElementRepository<P, E, I> releasable)) {
+      return Result.success(0);
+    }
+    return releasable.releaseLocks(elements, lockTimeout);
+  }
+
+  @Override
+  public Result<Integer, TransactionalQueueError<String>> deleteExpired(
+      int batchSize, Instant now) {
+    if (!(delegate instanceof ExpiringTransactionalQueueElementRepository<P, E, I> expiring)) {
+      return Result.success(0);
+    }
+    return expiring.deleteExpired(batchSize, now);
+  }
+
+  @Override
+  public Result<Collection<E>, TransactionalQueueError<String>> deleteExpiredReturning(
+      int batchSize, Instant now) {
+    if (!(delegate instanceof ExpiringTransactionalQueueElementRepository<P, E, I> expiring)) {
+      return Result.success(List.of());
+    }
+    return expiring.deleteExpiredReturning(batchSize, now);
+  }
+
+  private TransactionalQueueError<I> idempotencyNotSupportedError(I elementToEnqueue) {
+    return TransactionalQueueError.<I>builder(partitionLeases.queueName())
+        .withElement(elementToEnqueue)
+        .withMessage(
+            "The element has an idempotency key, but the delegate does not implement"
+                + " IdempotentTransactionalQueueElementRepository.")
+        .withType("idempotency-not-supported")
+        .build();
+  }
+}
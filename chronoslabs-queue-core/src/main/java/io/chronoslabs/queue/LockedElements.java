@@ -0,0 +1,125 @@
+package io.chronoslabs.queue;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Elements this node has locked for dispatch and not started dispatching yet, whether published,
+ * prefetched or waiting in the timing wheel of the {@link DelayedDispatcher}. Locks and dispatches
+ * in progress are counted, so {@link #close(Duration)} can refuse new ones and wait for the running
+ * ones before the remaining elements are released.
+ *
+ * <p>An element whose published event is lost stays here until its lock has expired and the map has
+ * grown past twice its size at the last pruning, when expired locks are dropped.
+ */
+final class LockedElements<E extends TransactionalQueueElement<?>> {
+  private static final int MIN_PRUNE_SIZE = 1024;
+
+  private final Map<Long, E> elements = new ConcurrentHashMap<>();
+  private final AtomicInteger running = new AtomicInteger();
+  private volatile int pruneSize = MIN_PRUNE_SIZE;
+  private volatile boolean closing;
+
+  /**
+   * @return whether the lock may proceed; it must be followed by {@link #locked(Collection,
+   *     Instant)}.
+   */
+  boolean startLock() {
+    return start();
+  }
+
+  void locked(Collection<E> lockedElements, Instant now) {
+    try {
+      for (var element : lockedElements) {
+        elements.put(element.id(), element);
+      }
+      if (elements.size() >= pruneSize) {
+        elements.values().removeIf(element -> element.nextDispatchAfter().isBefore(now));
+        pruneSize = Math.max(MIN_PRUNE_SIZE, 2 * elements.size());
+      }
+    } finally {
+      finish();
+    }
+  }
+
+  /**
+   * @return whether the dispatch may proceed; it must be followed by {@link #dispatched()}.
+   */
+  boolean startDispatch(E element) {
+    if (!start()) {
+      return false;
+    }
+    elements.remove(element.id());
+    return true;
+  }
+
+  void dispatched() {
+    finish();
+  }
+
+  /** Forgets the elements whose locks were released before their dispatch started. */
+  void released(Collection<E> releasedElements) {
+    for (var element : releasedElements) {
+      elements.remove(element.id(), element);
+    }
+  }
+
+  boolean isClosing() {
+    return closing;
+  }
+
+  /**
+   * Refuses new locks and dispatches and waits at most {@code timeout} for those in progress.
+   *
+   * @return whether they all finished in time.
+   */
+  boolean close(Duration timeout) throws InterruptedException {
+    closing = true;
+    var deadline = System.nanoTime() + timeout.toNanos();
+    synchronized (this) {
+      while (running.get() > 0) {
+        var remaining = deadline - System.nanoTime();
+        if (remaining <= 0) {
+          return false;
+        }
+        TimeUnit.NANOSECONDS.timedWait(this, remaining);
+      }
+    }
+    return true;
+  }
+
+  /** Removes and returns the elements whose dispatch has not started. */
+  Collection<E> takeUnstarted() {
+    var unstarted = new ArrayList<E>(elements.size());
+    for (var id : elements.keySet()) {
+      var element = elements.remove(id);
+      if (element != null) {
+        unstarted.add(element);
+      }
+    }
+    return unstarted;
+  }
+
+  private boolean start() {
+    running.incrementAndGet();
+    if (closing) {
+      finish();
+      return false;
+    }
+    return true;
+  }
+
+  private void finish() {
+    if (running.decrementAndGet() == 0 && closing) {
+      synchronized (this) {
+        notifyAll();
+      }
+    }
+  }
+}
@@ -0,0 +1,114 @@
+package io.chronoslabs.queue;
+
+/**
+ * Open-addressing set of positive {@code long} element ids, without boxing them. It uses linear
+ * probing with backward shift deletion like {@link LongObjectHashMap}, and shrinks again once most
+ * of its ids have been removed. Not thread-safe.
+ */
+final class LongHashSet {
+  private static final int INITIAL_CAPACITY = 16;
+  private static final long EMPTY_KEY = 0L;
+  private static final long FIBONACCI_MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+  private long[] keys = new long[INITIAL_CAPACITY];
+  private int count;
+
+  int size() {
+    return count;
+  }
+
+  boolean contains(long key) {
+    var mask = keys.length - 1;
+    for (int slot = slotOf(key, keys.length); keys[slot] != EMPTY_KEY; slot = (slot + 1) & mask) {
+      if (keys[slot] == key) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return whether the key was added, {@code false} when it was already present.
+   */
+  boolean add(long key) {
+    Assert.isTrue(key != EMPTY_KEY, "LongHashSet.key must not be zero");
+    var mask = keys.length - 1;
+    var slot = slotOf(key, keys.length);
+    for (; keys[slot] != EMPTY_KEY; slot = (slot + 1) & mask) {
+      if (keys[slot] == key) {
+        return false;
+      }
+    }
+    if ((count + 1) * 4L > keys.length * 3L) {
+      rehash(keys.length * 2);
+      insertWithoutResize(key);
+    } else {
+      keys[slot] = key;
+    }
+    count++;
+    return true;
+  }
+
+  /**
+   * @return whether the key was removed, {@code false} when it was not present.
+   */
+  boolean remove(long key) {
+    var mask = keys.length - 1;
+    var hole = slotOf(key, keys.length);
+    while (keys[hole] != key) {
+      if (keys[hole] == EMPTY_KEY) {
+        return false;
+      }
+      hole = (hole + 1) & mask;
+    }
+    for (int slot = (hole + 1) & mask; keys[slot] != EMPTY_KEY; slot = (slot + 1) & mask) {
+      var homeSlot = slotOf(keys[slot], keys.length);
+      if (((slot - homeSlot) & mask) >= ((slot - hole) & mask)) {
+        keys[hole] = keys[slot];
+        hole = slot;
+      }
+    }
+    keys[hole] = EMPTY_KEY;
+    count--;
+    if (keys.length > INITIAL_CAPACITY && count * 8L < keys.length) {
+      rehash(keys.length / 2);
+    }
+    return true;
+  }
+
+  /** The keys, in no particular order. */
+  long[] toArray() {
+    var array = new long[count];
+    var index = 0;
+    for (var key : keys) {
+      if (key != EMPTY_KEY) {
+        array[index++] = key;
+      }
+    }
+    return array;
+  }
+
+  private void rehash(int capacity) {
+    var oldKeys = keys;
+    keys = new long[capacity];
+    for (var key : oldKeys) {
+      if (key != EMPTY_KEY) {
+        insertWithoutResize(key);
+      }
+    }
+  }
+
+  private void insertWithoutResize(long key) {
+    var mask = keys.length - 1;
+    var slot = slotOf(key, keys.length);
+    while (keys[slot] != EMPTY_KEY) {
+      slot = (slot + 1) & mask;
+    }
+    keys[slot] = key;
+  }
+
+  private static int slotOf(long key, int capacity) {
+    return (int)
+        ((key * FIBONACCI_MULTIPLIER) >>> (Long.SIZE - Integer.numberOfTrailingZeros(capacity)));
+  }
+}
@@ -0,0 +1,124 @@
+package io.chronoslabs.queue;
+
+import java.util.function.Consumer;
+
+/**
+ * Open-addressing map from positive {@code long} element ids to values, without boxing the keys. It
+ * uses linear probing with backward shift deletion, so it needs no tombstones, and shrinks again
+ * once most of its values have been removed. Not thread-safe.
+ */
+@SuppressWarnings("unchecked")
+final class LongObjectHashMap<V> {
+  private static final int INITIAL_CAPACITY = 16;
+  private static final long EMPTY_KEY = 0L;
+  private static final long FIBONACCI_MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+  private long[] keys = new long[INITIAL_CAPACITY];
+  private Object[] values = new Object[INITIAL_CAPACITY];
+  private int count;
+
+  int size() {
+    return count;
+  }
+
+  V get(long key) {
+    var mask = keys.length - 1;
+    for (int slot = slotOf(key, keys.length); keys[slot] != EMPTY_KEY; slot = (slot + 1) & mask) {
+      if (keys[slot] == key) {
+        return (V) values[slot];
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @return the previous value of the key, or {@code null} when there was none.
+   */
+  V put(long key, V value) {
+    Assert.isTrue(key != EMPTY_KEY, "LongObjectHashMap.key must not be zero");
+    var mask = keys.length - 1;
+    var slot = slotOf(key, keys.length);
+    for (; keys[slot] != EMPTY_KEY; slot = (slot + 1) & mask) {
+      if (keys[slot] == key) {
+        var previousValue = (V) values[slot];
+        values[slot] = value;
+        return previousValue;
+      }
+    }
+    if ((count + 1) * 4L > keys.length * 3L) {
+      rehash(keys.length * 2);
+      insertWithoutResize(key, value);
+    } else {
+      keys[slot] = key;
+      values[slot] = value;
+    }
+    count++;
+    return null;
+  }
+
+  /**
+   * @return the removed value, or {@code null} when there was none.
+   */
+  @SuppressWarnings("PMD.NullAssignment")
+  V remove(long key) {
+    var mask = keys.length - 1;
+    var hole = slotOf(key, keys.length);
+    while (keys[hole] != key) {
+      if (keys[hole] == EMPTY_KEY) {
+        return null;
+      }
+      hole = (hole + 1) & mask;
+    }
+    var removedValue = (V) values[hole];
+    for (int slot = (hole + 1) & mask; keys[slot] != EMPTY_KEY; slot = (slot + 1) & mask) {
+      var homeSlot = slotOf(keys[slot], keys.length);
+      if (((slot - homeSlot) & mask) >= ((slot - hole) & mask)) {
+        keys[hole] = keys[slot];
+        values[hole] = values[slot];
+        hole = slot;
+      }
+    }
+    keys[hole] = EMPTY_KEY;
+    values[hole] = null;
+    count--;
+    if (keys.length > INITIAL_CAPACITY && count * 8L < keys.length) {
+      rehash(keys.length / 2);
+    }
+    return removedValue;
+  }
+
+  void forEachValue(Consumer<? super V> action) {
+    for (int slot = 0; slot < keys.length; slot++) {
+      if (keys[slot] != EMPTY_KEY) {
+        action.accept((V) values[slot]);
+      }
+    }
+  }
+
+  private void rehash(int capacity) {
+    var oldKeys = keys;
+    var oldValues = values;
+    keys = new long[capacity];
+    values = new Object[capacity];
+    for (int slot = 0; slot < oldKeys.length; slot++) {
+      if (oldKeys[slot] != EMPTY_KEY) {
+        insertWithoutResize(oldKeys[slot], oldValues[slot]);
+      }
+    }
+  }
+
+  private void insertWithoutResize(long key, Object value) {
+    var mask = keys.length - 1;
+    var slot = slotOf(key, keys.length);
+    while (keys[slot] != EMPTY_KEY) {
+      slot = (slot + 1) & mask;
+    }
+    keys[slot] = key;
+    values[slot] = value;
+  }
+
+  private static int slotOf(long key, int capacity) {
+    return (int)
+        ((key * FIBONACCI_MULTIPLIER) >>> (Long.SIZE - Integer.numberOfTrailingZeros(capacity)));
+  }
+}
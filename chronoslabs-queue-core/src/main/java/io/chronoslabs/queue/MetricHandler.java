@@ -3,9 +3,13 @@ package io.chronoslabs.queue;
 import static java.util.Objects.requireNonNull;
 
 import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
 import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.Timer;
-import java.time.Duration;
+import io.micrometer.core.instrument.binder.BaseUnits;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -21,14 +25,72 @@ class MetricHandler {
   private static final String METRIC_NAME_MOVE_TO_DEAD_LETTER_QUEUE =
       METRIC_NAME_PREFIX + ".moveToDeadLetterQueue";
   private static final String METRIC_NAME_SUCCESS = METRIC_NAME_PREFIX + ".success";
+  private static final String METRIC_NAME_RETRY_PREFETCH = METRIC_NAME_PREFIX + ".retryPrefetch";
+  private static final String METRIC_NAME_DELAYED_DISPATCH_LATENESS =
+      METRIC_NAME_PREFIX + ".delayedDispatchLateness";
+  private static final String METRIC_NAME_PAYLOAD_BYTES_WRITTEN =
+      METRIC_NAME_PREFIX + ".payloadBytesWritten";
+  private static final String METRIC_NAME_PAYLOAD_BYTES_READ =
+      METRIC_NAME_PREFIX + ".payloadBytesRead";
+  private static final String METRIC_NAME_PAYLOAD_COMPRESSION_RATIO =
+      METRIC_NAME_PREFIX + ".payloadCompressionRatio";
+  private static final String METRIC_NAME_RECURRING_JOB_MISFIRE =
+      METRIC_NAME_PREFIX + ".recurringJobMisfire";
+  private static final String METRIC_NAME_DUPLICATE_ENQUEUE =
+      METRIC_NAME_PREFIX + ".duplicateEnqueue";
+  private static final String METRIC_NAME_COLLAPSED_ENQUEUE =
+      METRIC_NAME_PREFIX + ".collapsedEnqueue";
+  private static final String METRIC_NAME_RELEASED_LOCKS = METRIC_NAME_PREFIX + ".releasedLocks";
+  private static final String METRIC_NAME_SCHEDULING_DELAY =
+      METRIC_NAME_PREFIX + ".schedulingDelay";
+  private static final String METRIC_NAME_EXPIRED = METRIC_NAME_PREFIX + ".expired";
+  private static final String METRIC_NAME_LOCAL_DUPLICATE = METRIC_NAME_PREFIX + ".localDuplicate";
+
+  /** The batch had been locked in the background before it was needed. */
+  static final String PREFETCH_HIT = "hit";
+
+  /** The batch had to be locked, or waited for, when it was needed. */
+  static final String PREFETCH_MISS = "miss";
+
+  /**
+   * The prefetched batch was taken after half of its lock timeout had passed, so it was released
+   * and locked again.
+   */
+  static final String PREFETCH_LATE = "late";
+
+  /** The duplicate was found before inserting, as the idempotency key filter contained its key. */
+  static final String DUPLICATE_PRE_CHECKED = "pre-check";
+
+  /** The duplicate was found after the insert conflicted on the idempotency key. */
+  static final String DUPLICATE_CONFLICT = "conflict";
+
+  /** The expired element was deleted. */
+  static final String EXPIRED_DELETED = "deleted";
+
+  /** The expired element was moved to the dead letter queue. */
+  static final String EXPIRED_DEAD_LETTERED = "dead-lettered";
+
+  /** The element locked again was not published, as it is still dispatching on this node. */
+  static final String LOCAL_DUPLICATE_NOT_PUBLISHED = "not-published";
+
+  /** The dispatch did not start, as the element is already dispatching on this node. */
+  static final String LOCAL_DUPLICATE_NOT_DISPATCHED = "not-dispatched";
 
   static final String METRIC_TAG_DISPATCH_COUNT = "dispatch-count";
+  private static final String METRIC_TAG_DETECTED_BY = "detected-by";
   private static final String METRIC_TAG_ERROR_CLASS = "error-class";
   private static final String METRIC_TAG_ERROR_TYPE = "error-type";
+  private static final String METRIC_TAG_JOB_NAME = "job-name";
+  private static final String METRIC_TAG_MISFIRE_POLICY = "misfire-policy";
+  private static final String METRIC_TAG_OUTCOME = "outcome";
   private static final String METRIC_TAG_QUEUE_NAME = "queue-name";
 
   private final MeterRegistry meterRegistry;
   private final String queueName;
+  private final ConcurrentMap<Integer, Timer> dispatchSuccessTimers = new ConcurrentHashMap<>();
+  private volatile Timer cachedDelayedDispatchLatenessTimer;
+  private volatile Timer cachedSchedulingDelayTimer;
+  private volatile PayloadSummaries cachedPayloadSummaries;
 
   MetricHandler(MeterRegistry meterRegistry, String queueName) {
     this.meterRegistry = requireNonNull(meterRegistry, "MetricHandler.meterRegistry");
@@ -43,13 +105,9 @@ class MetricHandler {
     }
   }
 
-  void registerDispatchSuccess(Duration duration, int dispatchCount) {
+  void registerDispatchSuccess(long durationNanos, int dispatchCount) {
     try {
-      Timer.builder(METRIC_NAME_SUCCESS)
-          .tag(METRIC_TAG_DISPATCH_COUNT, String.valueOf(dispatchCount))
-          .tag(METRIC_TAG_QUEUE_NAME, queueName)
-          .register(meterRegistry)
-          .record(duration);
+      dispatchSuccessTimer(dispatchCount).record(durationNanos, TimeUnit.NANOSECONDS);
     } catch (Exception exception) {
       logger
           .atWarn()
@@ -64,6 +122,23 @@ class MetricHandler {
     }
   }
 
+  /**
+   * The timer is looked up once per dispatch count, since building the tags and looking up the
+   * meter allocates on every call.
+   */
+  private Timer dispatchSuccessTimer(int dispatchCount) {
+    var timer = dispatchSuccessTimers.get(dispatchCount);
+    if (timer == null) {
+      timer =
+          Timer.builder(METRIC_NAME_SUCCESS)
+              .tag(METRIC_TAG_DISPATCH_COUNT, String.valueOf(dispatchCount))
+              .tag(METRIC_TAG_QUEUE_NAME, queueName)
+              .register(meterRegistry);
+      dispatchSuccessTimers.put(dispatchCount, timer);
+    }
+    return timer;
+  }
+
   void registerRollbackError(Throwable cause) {
     registerError(cause, "database-rollback");
   }
@@ -137,4 +212,267 @@ class MetricHandler {
           .log();
     }
   }
+
+  void registerRetryPrefetch(String outcome) {
+    try {
+      Counter.builder(METRIC_NAME_RETRY_PREFETCH)
+          .tag(METRIC_TAG_OUTCOME, outcome)
+          .tag(METRIC_TAG_QUEUE_NAME, queueName)
+          .register(meterRegistry)
+          .increment();
+    } catch (Exception exception) {
+      logger
+          .atWarn()
+          .setCause(exception)
+          .setMessage(LOG_WITH_2_TAGS)
+          .addArgument(METRIC_NAME_RETRY_PREFETCH)
+          .addArgument(METRIC_TAG_OUTCOME)
+          .addArgument(outcome)
+          .addArgument(METRIC_TAG_QUEUE_NAME)
+          .addArgument(queueName)
+          .log();
+    }
+  }
+
+  void registerCollapsedEnqueue() {
+    try {
+      Counter.builder(METRIC_NAME_COLLAPSED_ENQUEUE)
+          .tag(METRIC_TAG_QUEUE_NAME, queueName)
+          .register(meterRegistry)
+          .increment();
+    } catch (Exception exception) {
+      logger
+          .atWarn()
+          .setCause(exception)
+          .setMessage("An error occurred while incrementing {} metric with tag {}={}.")
+          .addArgument(METRIC_NAME_COLLAPSED_ENQUEUE)
+          .addArgument(METRIC_TAG_QUEUE_NAME)
+          .addArgument(queueName)
+          .log();
+    }
+  }
+
+  void registerReleasedLocks(int count) {
+    try {
+      Counter.builder(METRIC_NAME_RELEASED_LOCKS)
+          .tag(METRIC_TAG_QUEUE_NAME, queueName)
+          .register(meterRegistry)
+          .increment(count);
+    } catch (Exception exception) {
+      logger
+          .atWarn()
+          .setCause(exception)
+          .setMessage("An error occurred while incrementing {} metric with tag {}={}.")
+          .addArgument(METRIC_NAME_RELEASED_LOCKS)
+          .addArgument(METRIC_TAG_QUEUE_NAME)
+          .addArgument(queueName)
+          .log();
+    }
+  }
+
+  void registerExpired(int count, String outcome) {
+    try {
+      Counter.builder(METRIC_NAME_EXPIRED)
+          .tag(METRIC_TAG_OUTCOME, outcome)
+          .tag(METRIC_TAG_QUEUE_NAME, queueName)
+          .register(meterRegistry)
+          .increment(count);
+    } catch (Exception exception) {
+      logger
+          .atWarn()
+          .setCause(exception)
+          .setMessage(LOG_WITH_2_TAGS)
+          .addArgument(METRIC_NAME_EXPIRED)
+          .addArgument(METRIC_TAG_OUTCOME)
+          .addArgument(outcome)
+          .addArgument(METRIC_TAG_QUEUE_NAME)
+          .addArgument(queueName)
+          .log();
+    }
+  }
+
+  void registerLocalDuplicate(String outcome) {
+    try {
+      Counter.builder(METRIC_NAME_LOCAL_DUPLICATE)
+          .tag(METRIC_TAG_OUTCOME, outcome)
+          .tag(METRIC_TAG_QUEUE_NAME, queueName)
+          .register(meterRegistry)
+          .increment();
+    } catch (Exception exception) {
+      logger
+          .atWarn()
+          .setCause(exception)
+          .setMessage(LOG_WITH_2_TAGS)
+          .addArgument(METRIC_NAME_LOCAL_DUPLICATE)
+          .addArgument(METRIC_TAG_OUTCOME)
+          .addArgument(outcome)
+          .addArgument(METRIC_TAG_QUEUE_NAME)
+          .addArgument(queueName)
+          .log();
+    }
+  }
+
+  void registerDuplicateEnqueue(String detectedBy) {
+    try {
+      Counter.builder(METRIC_NAME_DUPLICATE_ENQUEUE)
+          .tag(METRIC_TAG_DETECTED_BY, detectedBy)
+          .tag(METRIC_TAG_QUEUE_NAME, queueName)
+          .register(meterRegistry)
+          .increment();
+    } catch (Exception exception) {
+      logger
+          .atWarn()
+          .setCause(exception)
+          .setMessage(LOG_WITH_2_TAGS)
+          .addArgument(METRIC_NAME_DUPLICATE_ENQUEUE)
+          .addArgument(METRIC_TAG_DETECTED_BY)
+          .addArgument(detectedBy)
+          .addArgument(METRIC_TAG_QUEUE_NAME)
+          .addArgument(queueName)
+          .log();
+    }
+  }
+
+  void registerRecurringJobMisfire(String jobName, MisfirePolicy misfirePolicy) {
+    try {
+      Counter.builder(METRIC_NAME_RECURRING_JOB_MISFIRE)
+          .tag(METRIC_TAG_JOB_NAME, jobName)
+          .tag(METRIC_TAG_MISFIRE_POLICY, misfirePolicy.name())
+          .tag(METRIC_TAG_QUEUE_NAME, queueName)
+          .register(meterRegistry)
+          .increment();
+    } catch (Exception exception) {
+      logger
+          .atWarn()
+          .setCause(exception)
+          .setMessage(LOG_WITH_3_TAGS)
+          .addArgument(METRIC_NAME_RECURRING_JOB_MISFIRE)
+          .addArgument(METRIC_TAG_JOB_NAME)
+          .addArgument(jobName)
+          .addArgument(METRIC_TAG_MISFIRE_POLICY)
+          .addArgument(misfirePolicy)
+          .addArgument(METRIC_TAG_QUEUE_NAME)
+          .addArgument(queueName)
+          .log();
+    }
+  }
+
+  /**
+   * Records the size of a stored payload and its compression ratio, the encoded size divided by the
+   * stored size.
+   */
+  void registerPayloadWritten(int encodedBytes, int storedBytes) {
+    try {
+      var summaries = payloadSummaries();
+      summaries.written().record(storedBytes);
+      summaries.compressionRatio().record((double) encodedBytes / storedBytes);
+    } catch (Exception exception) {
+      logPayloadMetricError(exception, METRIC_NAME_PAYLOAD_BYTES_WRITTEN);
+    }
+  }
+
+  void registerPayloadRead(int storedBytes) {
+    try {
+      payloadSummaries().read().record(storedBytes);
+    } catch (Exception exception) {
+      logPayloadMetricError(exception, METRIC_NAME_PAYLOAD_BYTES_READ);
+    }
+  }
+
+  private PayloadSummaries payloadSummaries() {
+    var summaries = cachedPayloadSummaries;
+    if (summaries == null) {
+      summaries =
+          new PayloadSummaries(
+              payloadBytesSummary(METRIC_NAME_PAYLOAD_BYTES_WRITTEN),
+              payloadBytesSummary(METRIC_NAME_PAYLOAD_BYTES_READ),
+              DistributionSummary.builder(METRIC_NAME_PAYLOAD_COMPRESSION_RATIO)
+                  .tag(METRIC_TAG_QUEUE_NAME, queueName)
+                  .register(meterRegistry));
+      cachedPayloadSummaries = summaries;
+    }
+    return summaries;
+  }
+
+  private DistributionSummary payloadBytesSummary(String name) {
+    return DistributionSummary.builder(name)
+        .baseUnit(BaseUnits.BYTES)
+        .tag(METRIC_TAG_QUEUE_NAME, queueName)
+        .register(meterRegistry);
+  }
+
+  private void logPayloadMetricError(Exception exception, String metricName) {
+    logger
+        .atWarn()
+        .setCause(exception)
+        .setMessage("An error occurred while recording {} metric with tag {}={}.")
+        .addArgument(metricName)
+        .addArgument(METRIC_TAG_QUEUE_NAME)
+        .addArgument(queueName)
+        .log();
+  }
+
+  /** Records how late an element of the delayed dispatch was published after its due time. */
+  void registerDelayedDispatchLateness(long latenessMillis) {
+    try {
+      delayedDispatchLatenessTimer().record(Math.max(0, latenessMillis), TimeUnit.MILLISECONDS);
+    } catch (Exception exception) {
+      logger
+          .atWarn()
+          .setCause(exception)
+          .setMessage("An error occurred while recording {} metric with tag {}={}.")
+          .addArgument(METRIC_NAME_DELAYED_DISPATCH_LATENESS)
+          .addArgument(METRIC_TAG_QUEUE_NAME)
+          .addArgument(queueName)
+          .log();
+    }
+  }
+
+  private Timer delayedDispatchLatenessTimer() {
+    var timer = cachedDelayedDispatchLatenessTimer;
+    if (timer == null) {
+      timer =
+          Timer.builder(METRIC_NAME_DELAYED_DISPATCH_LATENESS)
+              .tag(METRIC_TAG_QUEUE_NAME, queueName)
+              .register(meterRegistry);
+      cachedDelayedDispatchLatenessTimer = timer;
+    }
+    return timer;
+  }
+
+  /**
+   * Records how long a queue of a {@link TransactionalQueueScheduler} waited for its turn to lock
+   * elements after it became due.
+   */
+  void registerSchedulingDelay(long delayNanos) {
+    try {
+      schedulingDelayTimer().record(Math.max(0, delayNanos), TimeUnit.NANOSECONDS);
+    } catch (Exception exception) {
+      logger
+          .atWarn()
+          .setCause(exception)
+          .setMessage("An error occurred while recording {} metric with tag {}={}.")
+          .addArgument(METRIC_NAME_SCHEDULING_DELAY)
+          .addArgument(METRIC_TAG_QUEUE_NAME)
+          .addArgument(queueName)
+          .log();
+    }
+  }
+
+  private Timer schedulingDelayTimer() {
+    var timer = cachedSchedulingDelayTimer;
+    if (timer == null) {
+      timer =
+          Timer.builder(METRIC_NAME_SCHEDULING_DELAY)
+              .tag(METRIC_TAG_QUEUE_NAME, queueName)
+              .register(meterRegistry);
+      cachedSchedulingDelayTimer = timer;
+    }
+    return timer;
+  }
+
+  private record PayloadSummaries(
+      DistributionSummary written,
+      DistributionSummary read,
+      DistributionSummary compressionRatio) {}
 }
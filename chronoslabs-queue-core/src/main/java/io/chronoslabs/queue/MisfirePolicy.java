@@ -0,0 +1,15 @@
+package io.chronoslabs.queue;
+
+/**
+ * What a {@link RecurringJob} does with an occurrence dispatched later than its misfire threshold,
+ * typically after all nodes were down. Either way only the next occurrence after the current time
+ * is scheduled afterwards, so the occurrences missed in between are never run one after another.
+ */
+public enum MisfirePolicy {
+
+  /** Runs the late occurrence once, as a catch-up for all the missed ones. */
+  RUN_ONCE,
+
+  /** Skips the late occurrence and waits for the next one. */
+  SKIP
+}
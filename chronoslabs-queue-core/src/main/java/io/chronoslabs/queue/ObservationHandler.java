@@ -0,0 +1,97 @@
+package io.chronoslabs.queue;
+
+import static java.util.Objects.requireNonNull;
+
+import com.github.sviperll.result4j.Result;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import io.micrometer.observation.transport.ReceiverContext;
+import io.micrometer.observation.transport.SenderContext;
+import java.util.Map;
+import java.util.function.Supplier;
+
+class ObservationHandler {
+  private static final String OBSERVATION_NAME_PREFIX = "TransactionalQueue";
+  static final String OBSERVATION_NAME_DISPATCH = OBSERVATION_NAME_PREFIX + ".dispatch";
+  static final String OBSERVATION_NAME_ENQUEUE = OBSERVATION_NAME_PREFIX + ".enqueue";
+  static final String OBSERVATION_NAME_POLL = OBSERVATION_NAME_PREFIX + ".poll";
+
+  static final String OBSERVATION_KEY_ATTEMPT = "attempt";
+  static final String OBSERVATION_KEY_ERROR_TYPE = "error-type";
+  static final String OBSERVATION_KEY_OUTCOME = "outcome";
+  static final String OBSERVATION_KEY_QUEUE_NAME = "queue-name";
+
+  static final String OUTCOME_ERROR = "error";
+  static final String OUTCOME_SUCCESS = "success";
+
+  private final ObservationRegistry observationRegistry;
+  private final String queueName;
+
+  ObservationHandler(ObservationRegistry observationRegistry, String queueName) {
+    this.observationRegistry =
+        requireNonNull(observationRegistry, "ObservationHandler.observationRegistry");
+    this.queueName = requireNonNull(queueName, "ObservationHandler.queueName");
+  }
+
+  /**
+   * Callers check this before building an observation, so a no-op registry costs a single branch
+   * and no allocation on the hot path.
+   */
+  boolean isNoop() {
+    return observationRegistry.isNoop();
+  }
+
+  Observation enqueueObservation(Map<String, String> traceContext) {
+    var context = new SenderContext<Map<String, String>>(Map::put);
+    context.setCarrier(traceContext);
+    context.setRemoteServiceName(queueName);
+    return Observation.createNotStarted(
+            OBSERVATION_NAME_ENQUEUE, () -> context, observationRegistry)
+        .lowCardinalityKeyValue(OBSERVATION_KEY_QUEUE_NAME, queueName);
+  }
+
+  Observation pollObservation() {
+    return Observation.createNotStarted(OBSERVATION_NAME_POLL, observationRegistry)
+        .lowCardinalityKeyValue(OBSERVATION_KEY_QUEUE_NAME, queueName);
+  }
+
+  <E extends TransactionalQueueElement<?>> Observation dispatchObservation(E element) {
+    var context = new ReceiverContext<E>((carrier, key) -> carrier.traceContext().get(key));
+    context.setCarrier(element);
+    context.setRemoteServiceName(queueName);
+    return Observation.createNotStarted(
+            OBSERVATION_NAME_DISPATCH, () -> context, observationRegistry)
+        .lowCardinalityKeyValue(OBSERVATION_KEY_QUEUE_NAME, queueName)
+        .lowCardinalityKeyValue(OBSERVATION_KEY_ATTEMPT, String.valueOf(element.dispatchCount()));
+  }
+
+  <S, T> Result<S, TransactionalQueueError<T>> observe(
+      Observation observation, Supplier<Result<S, TransactionalQueueError<T>>> action) {
+    observation.start();
+    try (var ignored = observation.openScope()) {
+      return action
+          .get()
+          .peekSuccess(
+              success ->
+                  observation.lowCardinalityKeyValue(OBSERVATION_KEY_OUTCOME, OUTCOME_SUCCESS))
+          .peekError(error -> registerError(observation, error));
+    } catch (RuntimeException exception) {
+      observation.lowCardinalityKeyValue(OBSERVATION_KEY_OUTCOME, OUTCOME_ERROR);
+      observation.error(exception);
+      throw exception;
+    } finally {
+      observation.stop();
+    }
+  }
+
+  private static void registerError(Observation observation, TransactionalQueueError<?> error) {
+    observation.lowCardinalityKeyValue(OBSERVATION_KEY_OUTCOME, OUTCOME_ERROR);
+    if (error.type() != null) {
+      observation.lowCardinalityKeyValue(OBSERVATION_KEY_ERROR_TYPE, error.type());
+    }
+    var cause = error.cause();
+    if (cause != null) {
+      observation.error(cause);
+    }
+  }
+}
@@ -0,0 +1,15 @@
+package io.chronoslabs.queue;
+
+import java.time.Instant;
+
+/** Lease of a partition of {@link PartitionedTransactionalQueueElementRepository} by a node. */
+public record PartitionLease(int partition, String nodeId, Instant expiresAt) {
+
+  boolean isHeldBy(String nodeId, Instant now) {
+    return this.nodeId.equals(nodeId) && expiresAt.isAfter(now);
+  }
+
+  boolean isExpired(Instant now) {
+    return !expiresAt.isAfter(now);
+  }
+}
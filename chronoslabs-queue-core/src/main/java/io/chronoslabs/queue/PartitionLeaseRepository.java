@@ -0,0 +1,43 @@
+package io.chronoslabs.queue;
+
+import com.github.sviperll.result4j.Result;
+import java.time.Instant;
+import java.util.Collection;
+
+/**
+ * Storage of the partition leases of one queue and of the nodes taking part in it. Called by {@link
+ * PartitionLeases} within a new transaction of the queue's {@link TransactionCreator}.
+ */
+public interface PartitionLeaseRepository {
+
+  /**
+   * Registers the node as live until {@code expiresAt} and extends its unexpired leases to the same
+   * time.
+   *
+   * @return the leases of all partitions of the queue, including expired ones.
+   */
+  Result<Collection<PartitionLease>, TransactionalQueueError<String>> heartbeat(
+      String nodeId, Instant now, Instant expiresAt);
+
+  /**
+   * @return the number of nodes whose last heartbeat has not expired.
+   */
+  Result<Integer, TransactionalQueueError<String>> countLiveNodes(Instant now);
+
+  /**
+   * Leases the partition to the node until {@code expiresAt} if it is not leased or its lease has
+   * expired.
+   *
+   * @return whether the node holds the lease.
+   */
+  Result<Boolean, TransactionalQueueError<String>> claim(
+      int partition, String nodeId, Instant now, Instant expiresAt);
+
+  /** Gives up the lease of the partition if the node holds it. */
+  Result<Boolean, TransactionalQueueError<String>> release(int partition, String nodeId);
+
+  /**
+   * Removes the node from the live nodes, so the others rebalance without waiting for it to expire.
+   */
+  Result<Boolean, TransactionalQueueError<String>> deregister(String nodeId);
+}
@@ -0,0 +1,221 @@
+package io.chronoslabs.queue;
+
+import static io.chronoslabs.queue.Assert.requireNonNull;
+import static io.chronoslabs.queue.TransactionDefinition.PROPAGATION_REQUIRES_NEW;
+
+import com.github.sviperll.result4j.Result;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.function.Function;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Leases of one node on the virtual partitions of a {@link
+ * PartitionedTransactionalQueueElementRepository}. Every {@link #refresh()} renews the node's
+ * heartbeat and leases, then rebalances: with {@code n} live nodes each node holds at most {@code
+ * ceil(partitionCount / n)} partitions, releasing the excess when nodes join and claiming unleased
+ * or expired partitions when nodes leave. Partitions of a crashed node are therefore taken over
+ * within one lease duration after its last heartbeat.
+ *
+ * <p>{@link #refresh()} must be scheduled by the application, like {@link
+ * TransactionalQueue#retryDispatch()}, at an interval well below the lease duration, for example a
+ * third of it. Leases not renewed before they expire are dropped locally too, so a node cut off
+ * from the database stops locking partitions another node may have claimed. {@link #releaseAll()}
+ * hands the partitions over immediately on shutdown.
+ */
+@SuppressWarnings("PMD.AvoidFieldNameMatchingMethodName")
+public class PartitionLeases {
+  private static final Logger logger = LoggerFactory.getLogger(PartitionLeases.class);
+  private static final int[] NO_PARTITIONS = new int[0];
+
+  private final String queueName;
+  private final String nodeId;
+  private final int partitionCount;
+  private final Duration leaseDuration;
+  private final Clock clock;
+  private final MetricHandler metricHandler;
+  private final TransactionCreator transactionCreator;
+  private final PartitionLeaseRepository leaseRepository;
+  private volatile Ownership ownership = new Ownership(NO_PARTITIONS, Instant.MIN);
+
+  @SuppressWarnings("java:S107")
+  public PartitionLeases(
+      String queueName,
+      String nodeId,
+      int partitionCount,
+      Duration leaseDuration,
+      Clock clock,
+      MeterRegistry meterRegistry,
+      TransactionCreator transactionCreator,
+      PartitionLeaseRepository leaseRepository) {
+    this.queueName = requireNonNull(queueName, "PartitionLeases.queueName");
+    this.nodeId = requireNonNull(nodeId, "PartitionLeases.nodeId");
+    this.leaseDuration = requireNonNull(leaseDuration, "PartitionLeases.leaseDuration");
+    this.clock = requireNonNull(clock, "PartitionLeases.clock");
+    this.metricHandler =
+        new MetricHandler(
+            requireNonNull(meterRegistry, "PartitionLeases.meterRegistry"), queueName);
+    this.transactionCreator =
+        requireNonNull(transactionCreator, "PartitionLeases.transactionCreator");
+    this.leaseRepository = requireNonNull(leaseRepository, "PartitionLeases.leaseRepository");
+    Assert.isTrue(partitionCount > 0, "PartitionLeases.partitionCount must be positive");
+    Assert.isPositive(leaseDuration, "PartitionLeases.leaseDuration must be positive");
+    this.partitionCount = partitionCount;
+  }
+
+  String queueName() {
+    return queueName;
+  }
+
+  public int partitionCount() {
+    return partitionCount;
+  }
+
+  /**
+   * @return the partitions leased by this node, or none when the leases have not been renewed
+   *     before they expired.
+   */
+  public int[] ownedPartitions() {
+    var current = ownership;
+    if (!current.validUntil().isAfter(Instant.now(clock))) {
+      return NO_PARTITIONS;
+    }
+    return current.partitions().clone();
+  }
+
+  /** Renews the heartbeat and leases of this node and rebalances the partitions between nodes. */
+  public void refresh() {
+    var now = Instant.now(clock);
+    var expiresAt = now.plus(leaseDuration);
+    var refreshed = inNewTransaction(ignored -> rebalance(now, expiresAt));
+    if (Results.isError(refreshed)) {
+      handleError(Results.error(refreshed));
+      return;
+    }
+    var partitions = Results.success(refreshed);
+    if (!Arrays.equals(partitions, ownership.partitions())) {
+      logger
+          .atInfo()
+          .addArgument(nodeId)
+          .addArgument(() -> Arrays.toString(partitions))
+          .addArgument(queueName)
+          .log("Node {} leases partitions {} of {}.");
+    }
+    ownership = new Ownership(partitions, expiresAt);
+  }
+
+  /** Releases all leases of this node and leaves the live nodes, for a graceful shutdown. */
+  public void releaseAll() {
+    var owned = ownership.partitions();
+    ownership = new Ownership(NO_PARTITIONS, Instant.MIN);
+    var released =
+        inNewTransaction(
+            ignored -> {
+              for (var partition : owned) {
+                var release = leaseRepository.release(partition, nodeId);
+                if (Results.isError(release)) {
+                  return Results.propagateError(release);
+                }
+              }
+              return leaseRepository.deregister(nodeId);
+            });
+    if (Results.isError(released)) {
+      handleError(Results.error(released));
+    }
+  }
+
+  private Result<int[], TransactionalQueueError<String>> rebalance(Instant now, Instant expiresAt) {
+    var leases = leaseRepository.heartbeat(nodeId, now, expiresAt);
+    if (Results.isError(leases)) {
+      return Results.propagateError(leases);
+    }
+    var liveNodes = leaseRepository.countLiveNodes(now);
+    if (Results.isError(liveNodes)) {
+      return Results.propagateError(liveNodes);
+    }
+    var nodes = Math.max(1, Results.success(liveNodes));
+    var target = (partitionCount + nodes - 1) / nodes;
+    var owned = new BitSet(partitionCount);
+    var free = new BitSet(partitionCount);
+    free.set(0, partitionCount);
+    for (var lease : Results.success(leases)) {
+      if (lease.partition() < 0 || lease.partition() >= partitionCount) {
+        continue;
+      }
+      if (lease.isHeldBy(nodeId, now)) {
+        owned.set(lease.partition());
+      }
+      if (!lease.isExpired(now)) {
+        free.clear(lease.partition());
+      }
+    }
+    while (owned.cardinality() > target) {
+      var partition = owned.previousSetBit(partitionCount - 1);
+      var released = leaseRepository.release(partition, nodeId);
+      if (Results.isError(released)) {
+        return Results.propagateError(released);
+      }
+      owned.clear(partition);
+    }
+    // Start at a node-specific partition, so nodes joining together rarely race for the same ones.
+    var first = Math.floorMod(nodeId.hashCode(), partitionCount);
+    for (int offset = 0; offset < partitionCount && owned.cardinality() < target; offset++) {
+      var partition = (first + offset) % partitionCount;
+      if (!free.get(partition)) {
+        continue;
+      }
+      var claimed = leaseRepository.claim(partition, nodeId, now, expiresAt);
+      if (Results.isError(claimed)) {
+        return Results.propagateError(claimed);
+      }
+      if (Boolean.TRUE.equals(Results.success(claimed))) {
+        owned.set(partition);
+      }
+    }
+    return Result.success(owned.stream().toArray());
+  }
+
+  private <T> Result<T, TransactionalQueueError<String>> inNewTransaction(
+      Function<OpenedTransaction, Result<T, TransactionalQueueError<String>>> action) {
+    try {
+      var openedTransaction =
+          transactionCreator.openTransaction(PROPAGATION_REQUIRES_NEW, queueName);
+      if (Results.isError(openedTransaction)) {
+        return Results.propagateError(openedTransaction);
+      }
+      var transaction = Results.success(openedTransaction);
+      var result = action.apply(transaction);
+      if (Results.isError(result)) {
+        transaction.rollback();
+        return result;
+      }
+      var committed = transaction.commit(Results.success(result));
+      if (Results.isError(committed)) {
+        transaction.rollback();
+      }
+      return committed;
+    } catch (Exception exception) {
+      return Result.error(
+          TransactionalQueueError.<String>builder(queueName)
+              .withCause(exception)
+              .withElement(nodeId)
+              .withMessage(
+                  "An unexpected error occurred while updating the partition leases of node %s."
+                      .formatted(nodeId))
+              .withType("partition-lease-unexpected-error")
+              .build());
+    }
+  }
+
+  private void handleError(TransactionalQueueError<String> error) {
+    error.logError(logger);
+    metricHandler.registerQueueError(error);
+  }
+
+  private record Ownership(int[] partitions, Instant validUntil) {}
+}
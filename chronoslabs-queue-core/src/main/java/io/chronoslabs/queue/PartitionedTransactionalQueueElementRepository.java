@@ -0,0 +1,52 @@
+package io.chronoslabs.queue;
+
+import com.github.sviperll.result4j.Result;
+import java.time.Instant;
+import java.util.Collection;
+
+/**
+ * Repository whose elements are hashed by id into a fixed number of virtual partitions, so nodes
+ * holding {@link PartitionLeases} lock only the elements of their own partitions instead of all
+ * scanning, and skipping, the same rows. Databases should index the partition expression together
+ * with {@code next_dispatch_after}, for example {@code CREATE INDEX ON queue ((id % 64),
+ * next_dispatch_after)}, so the lock scan reads only the leased partitions.
+ */
+public interface PartitionedTransactionalQueueElementRepository<
+        P,
+        E extends TransactionalQueueElement<P>,
+        I extends TransactionalQueueElementToEnqueue<P, E>>
+    extends TransactionalQueueElementRepository<P, E, I> {
+
+  /**
+   * Locks elements like {@link #lockForNextDispatch(int, Instant, Instant)}, limited to the
+   * elements whose {@link #partitionOf(long, int) partition} is one of the {@code partitions}.
+   */
+  @SuppressWarnings("PMD.UseVarargs")
+  Result<Collection<E>, TransactionalQueueError<String>> lockForNextDispatch(
+      int batchSize,
+      Instant notDispatchedTill,
+      Instant nextDispatchTime,
+      int partitionCount,
+      int[] partitions);
+
+  /**
+   * Locks elements like {@link #lockForNextDispatch(int, Instant, Instant, int, int[])}, skipping
+   * the elements with the specified ids like {@link #lockForNextDispatch(int, Instant, Instant,
+   * long[])}. By default, the ids are not skipped.
+   */
+  @SuppressWarnings("PMD.UseVarargs")
+  default Result<Collection<E>, TransactionalQueueError<String>> lockForNextDispatch(
+      int batchSize,
+      Instant notDispatchedTill,
+      Instant nextDispatchTime,
+      int partitionCount,
+      int[] partitions,
+      long[] skippedIds) {
+    return lockForNextDispatch(
+        batchSize, notDispatchedTill, nextDispatchTime, partitionCount, partitions);
+  }
+
+  static int partitionOf(long id, int partitionCount) {
+    return (int) Math.floorMod(id, (long) partitionCount);
+  }
+}
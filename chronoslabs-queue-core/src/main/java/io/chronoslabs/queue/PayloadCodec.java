@@ -0,0 +1,89 @@
+package io.chronoslabs.queue;
+
+import static io.chronoslabs.queue.Assert.requireNonNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Function;
+
+/**
+ * Encodes payloads to the bytes stored by a repository. Repositories combine codecs in a {@link
+ * VersionedPayloadCodec}, which adds a header with the codec version and compression.
+ */
+public interface PayloadCodec<P> {
+
+  byte[] encode(P payload);
+
+  P decode(byte[] encoded);
+
+  /**
+   * Stores payloads as UTF-8 JSON text written and read by the application's JSON mapper, for
+   * example {@code ObjectMapper::writeValueAsString} and {@code json ->
+   * objectMapper.readValue(json, Payload.class)}.
+   */
+  static <P> PayloadCodec<P> json(
+      Function<? super P, String> writer, Function<String, ? extends P> reader) {
+    requireNonNull(writer, "PayloadCodec.writer");
+    requireNonNull(reader, "PayloadCodec.reader");
+    return new PayloadCodec<>() {
+      @Override
+      public byte[] encode(P payload) {
+        return writer.apply(payload).getBytes(StandardCharsets.UTF_8);
+      }
+
+      @Override
+      public P decode(byte[] encoded) {
+        return reader.apply(new String(encoded, StandardCharsets.UTF_8));
+      }
+    };
+  }
+
+  /**
+   * Stores payloads in a compact binary form written field by field, without field names. Fields
+   * may only be appended by a new codec version; the reader of a version must read exactly what its
+   * writer wrote.
+   */
+  static <P> PayloadCodec<P> binary(
+      BinaryWriter<? super P> writer, BinaryReader<? extends P> reader) {
+    requireNonNull(writer, "PayloadCodec.writer");
+    requireNonNull(reader, "PayloadCodec.reader");
+    return new PayloadCodec<>() {
+      @Override
+      public byte[] encode(P payload) {
+        var bytes = new ByteArrayOutputStream();
+        try (var output = new DataOutputStream(bytes)) {
+          writer.write(payload, output);
+        } catch (IOException exception) {
+          throw new UncheckedIOException(exception);
+        }
+        return bytes.toByteArray();
+      }
+
+      @Override
+      public P decode(byte[] encoded) {
+        try (var input = new DataInputStream(new ByteArrayInputStream(encoded))) {
+          return reader.read(input);
+        } catch (IOException exception) {
+          throw new UncheckedIOException(exception);
+        }
+      }
+    };
+  }
+
+  @FunctionalInterface
+  interface BinaryWriter<P> {
+    void write(P payload, DataOutput output) throws IOException;
+  }
+
+  @FunctionalInterface
+  interface BinaryReader<P> {
+    P read(DataInput input) throws IOException;
+  }
+}
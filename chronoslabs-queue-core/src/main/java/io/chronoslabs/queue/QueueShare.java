@@ -0,0 +1,59 @@
+package io.chronoslabs.queue;
+
+import static io.chronoslabs.queue.Assert.isTrue;
+
+/**
+ * Share of the dispatch capacity of a {@link TransactionalQueueScheduler} given to one queue.
+ *
+ * @param weight share of the capacity relative to the other queues with due elements.
+ * @param minDispatches dispatches reserved for the queue while it has due elements, so busier
+ *     queues cannot take the whole capacity.
+ * @param maxDispatches maximum number of the queue's elements dispatching at the same time.
+ */
+public record QueueShare(int weight, int minDispatches, int maxDispatches) {
+
+  public QueueShare {
+    isTrue(weight > 0, "QueueShare.weight must be greater than zero.");
+    isTrue(minDispatches >= 0, "QueueShare.minDispatches must not be negative.");
+    isTrue(maxDispatches > 0, "QueueShare.maxDispatches must be greater than zero.");
+    isTrue(
+        minDispatches <= maxDispatches,
+        "QueueShare.minDispatches must not be greater than maxDispatches.");
+  }
+
+  /** Weight 1, nothing reserved and no limit other than the capacity of the scheduler. */
+  public static QueueShare defaultShare() {
+    return new QueueShare(1, 0, Integer.MAX_VALUE);
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  public static class Builder {
+    private int weight = 1;
+    private int minDispatches;
+    private int maxDispatches = Integer.MAX_VALUE;
+
+    private Builder() {}
+
+    public Builder withWeight(int weight) {
+      this.weight = weight;
+      return this;
+    }
+
+    public Builder withMinDispatches(int minDispatches) {
+      this.minDispatches = minDispatches;
+      return this;
+    }
+
+    public Builder withMaxDispatches(int maxDispatches) {
+      this.maxDispatches = maxDispatches;
+      return this;
+    }
+
+    public QueueShare build() {
+      return new QueueShare(weight, minDispatches, maxDispatches);
+    }
+  }
+}
@@ -0,0 +1,73 @@
+package io.chronoslabs.queue;
+
+import static io.chronoslabs.queue.Assert.isPositive;
+import static io.chronoslabs.queue.Assert.requireNonNull;
+
+import java.time.Duration;
+
+/**
+ * Job run by {@link RecurringJobs} at every occurrence of its schedule.
+ *
+ * @param name unique name of the job within its queue, stored with every occurrence.
+ * @param consumer runs an occurrence within its dispatch transaction. A failed run is retried like
+ *     any other element, and the next occurrence is only scheduled once it succeeds or has been
+ *     moved to the Dead Letter Queue.
+ * @param misfireThreshold how late an occurrence may be dispatched before {@code misfirePolicy}
+ *     applies.
+ */
+public record RecurringJob<E extends TransactionalQueueElement<?>>(
+    String name,
+    RecurringSchedule schedule,
+    MisfirePolicy misfirePolicy,
+    Duration misfireThreshold,
+    TransactionalQueueElementPayloadConsumer<E> consumer) {
+
+  public RecurringJob {
+    requireNonNull(name, "RecurringJob.name");
+    requireNonNull(schedule, "RecurringJob.schedule");
+    requireNonNull(misfirePolicy, "RecurringJob.misfirePolicy");
+    requireNonNull(misfireThreshold, "RecurringJob.misfireThreshold");
+    isPositive(misfireThreshold, "RecurringJob.misfireThreshold must be positive.");
+    requireNonNull(consumer, "RecurringJob.consumer");
+  }
+
+  public static <E extends TransactionalQueueElement<?>> Builder<E> builder(String name) {
+    return new Builder<>(name);
+  }
+
+  public static class Builder<E extends TransactionalQueueElement<?>> {
+    private final String name;
+    private RecurringSchedule schedule;
+    private MisfirePolicy misfirePolicy = MisfirePolicy.RUN_ONCE;
+    private Duration misfireThreshold = Duration.ofMinutes(1);
+    private TransactionalQueueElementPayloadConsumer<E> consumer;
+
+    private Builder(String name) {
+      this.name = name;
+    }
+
+    public Builder<E> withSchedule(RecurringSchedule schedule) {
+      this.schedule = schedule;
+      return this;
+    }
+
+    public Builder<E> withMisfirePolicy(MisfirePolicy misfirePolicy) {
+      this.misfirePolicy = misfirePolicy;
+      return this;
+    }
+
+    public Builder<E> withMisfireThreshold(Duration misfireThreshold) {
+      this.misfireThreshold = misfireThreshold;
+      return this;
+    }
+
+    public Builder<E> withConsumer(TransactionalQueueElementPayloadConsumer<E> consumer) {
+      this.consumer = consumer;
+      return this;
+    }
+
+    public RecurringJob<E> build() {
+      return new RecurringJob<>(name, schedule, misfirePolicy, misfireThreshold, consumer);
+    }
+  }
+}
@@ -0,0 +1,14 @@
+package io.chronoslabs.queue;
+
+import static io.chronoslabs.queue.Assert.requireNonNull;
+
+import java.time.Instant;
+
+/** Occurrence of a {@link RecurringJob} carried by a queue element. */
+public record RecurringJobOccurrence(String jobName, Instant scheduledAt) {
+
+  public RecurringJobOccurrence {
+    requireNonNull(jobName, "RecurringJobOccurrence.jobName");
+    requireNonNull(scheduledAt, "RecurringJobOccurrence.scheduledAt");
+  }
+}
@@ -0,0 +1,23 @@
+package io.chronoslabs.queue;
+
+import java.time.Duration;
+
+/**
+ * Maps the occurrences of {@link RecurringJob recurring jobs} to and from the elements of the
+ * queue, whose payload type is defined by the application.
+ */
+public interface RecurringJobOccurrences<
+    P, E extends TransactionalQueueElement<P>, I extends TransactionalQueueElementToEnqueue<P, E>> {
+
+  /**
+   * @return the element to enqueue for the occurrence. Its {@link
+   *     TransactionalQueueElementToEnqueue#dispatchDelay()} must be the specified delay.
+   */
+  I toEnqueue(RecurringJobOccurrence occurrence, Duration dispatchDelay);
+
+  /**
+   * @return the occurrence carried by the element, or {@code null} when the element is not an
+   *     occurrence of a recurring job.
+   */
+  RecurringJobOccurrence occurrenceOf(E element);
+}
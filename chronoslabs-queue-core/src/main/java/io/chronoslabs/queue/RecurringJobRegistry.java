@@ -0,0 +1,19 @@
+package io.chronoslabs.queue;
+
+import com.github.sviperll.result4j.Result;
+
+/**
+ * Names of the {@link RecurringJob recurring jobs} of one queue whose first occurrence has been
+ * enqueued. Called by {@link RecurringJobs#scheduleJobs()} within the caller's transaction, so the
+ * registration commits atomically with the first occurrence.
+ */
+@SuppressWarnings("PMD.ImplicitFunctionalInterface")
+public interface RecurringJobRegistry {
+
+  /**
+   * Registers the job unless it is registered already.
+   *
+   * @return whether the job has been registered by this call.
+   */
+  Result<Boolean, TransactionalQueueError<String>> register(String jobName);
+}
@@ -0,0 +1,201 @@
+package io.chronoslabs.queue;
+
+import static io.chronoslabs.queue.Assert.requireNonNull;
+
+import com.github.sviperll.result4j.Result;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs {@link RecurringJob recurring jobs} on the queue instead of a separate scheduler. Each job
+ * has exactly one scheduled occurrence, an element of the queue: this consumer runs it and enqueues
+ * the next occurrence within the same dispatch transaction, so a run which fails or whose node
+ * crashes is retried with the usual backoff and never leaves the job with none or two occurrences.
+ * Elements which are not occurrences are passed to the delegate consumer.
+ *
+ * <p>The next occurrence follows the one just run. When it is already more than the misfire
+ * threshold in the past, for example because all nodes were down, it is replaced by the first
+ * occurrence after the current time, and a late occurrence itself is run once or skipped according
+ * to the {@link MisfirePolicy}, so a downtime never results in a burst of missed runs.
+ *
+ * <p>The instance must be passed to {@link TransactionalQueueFactory#withRecurringJobs}. The first
+ * occurrences are enqueued by {@link #scheduleJobs()}, which the application calls on every start
+ * within its own transaction; jobs are registered in the {@link RecurringJobRegistry} so it
+ * enqueues each of them once. A job whose definition changes keeps its scheduled occurrence and
+ * uses the new schedule from the next one on. Occurrences of jobs no longer defined are dropped.
+ */
+public class RecurringJobs<
+        P,
+        E extends TransactionalQueueElement<P>,
+        I extends TransactionalQueueElementToEnqueue<P, E>>
+    implements TransactionalQueueElementPayloadConsumer<E> {
+  private static final Logger logger = LoggerFactory.getLogger(RecurringJobs.class);
+
+  private final String queueName;
+  private final RecurringJobOccurrences<P, E, I> occurrences;
+  private final RecurringJobRegistry registry;
+  private final Map<String, RecurringJob<E>> jobs;
+  private final TransactionalQueueElementPayloadConsumer<E> delegate;
+  private volatile Binding<P, E, I> binding;
+
+  public RecurringJobs(
+      String queueName,
+      RecurringJobOccurrences<P, E, I> occurrences,
+      RecurringJobRegistry registry,
+      Collection<RecurringJob<E>> jobs,
+      TransactionalQueueElementPayloadConsumer<E> delegate) {
+    this.queueName = requireNonNull(queueName, "RecurringJobs.queueName");
+    this.occurrences = requireNonNull(occurrences, "RecurringJobs.occurrences");
+    this.registry = requireNonNull(registry, "RecurringJobs.registry");
+    this.delegate = requireNonNull(delegate, "RecurringJobs.delegate");
+    var jobsByName = new LinkedHashMap<String, RecurringJob<E>>();
+    for (var job : requireNonNull(jobs, "RecurringJobs.jobs")) {
+      Assert.isTrue(
+          jobsByName.put(job.name(), job) == null,
+          "RecurringJobs.jobs contains the job %s more than once.".formatted(job.name()));
+    }
+    this.jobs = Map.copyOf(jobsByName);
+  }
+
+  void bind(Clock clock, MetricHandler metricHandler, Enqueuer<P, E, I> enqueuer) {
+    this.binding =
+        new Binding<>(
+            requireNonNull(clock, "RecurringJobs.clock"),
+            requireNonNull(metricHandler, "RecurringJobs.metricHandler"),
+            requireNonNull(enqueuer, "RecurringJobs.enqueuer"));
+  }
+
+  /**
+   * Enqueues the first occurrence of every job not registered yet. Must be called within a
+   * transaction, like {@link TransactionalQueue#enqueue}.
+   *
+   * @return the enqueued occurrences.
+   */
+  @SuppressWarnings("PMD.AvoidInstantiatingObjectsInLoops")
+  public Result<List<E>, TransactionalQueueError<String>> scheduleJobs() {
+    var currentBinding = requireBinding();
+    var now = Instant.now(currentBinding.clock());
+    var scheduled = new ArrayList<E>();
+    for (var job : jobs.values()) {
+      var registered = registry.register(job.name());
+      if (Results.isError(registered)) {
+        return Results.propagateError(registered);
+      }
+      if (Boolean.TRUE.equals(Results.success(registered))) {
+        var occurrence =
+            new RecurringJobOccurrence(job.name(), job.schedule().nextOccurrenceAfter(now));
+        var enqueued = enqueue(currentBinding, occurrence, now);
+        if (Results.isError(enqueued)) {
+          return Results.errorWithAnotherElement(enqueued, job.name());
+        }
+        scheduled.add(Results.success(enqueued));
+      }
+    }
+    return Result.success(scheduled);
+  }
+
+  @Override
+  public Result<E, TransactionalQueueError<E>> consumeElementPayload(E element) {
+    var occurrence = occurrences.occurrenceOf(element);
+    if (occurrence == null) {
+      return delegate.consumeElementPayload(element);
+    }
+    var job = jobs.get(occurrence.jobName());
+    if (job == null) {
+      return dropUnknownJob(element, occurrence);
+    }
+    var currentBinding = requireBinding();
+    var now = Instant.now(currentBinding.clock());
+    if (now.isAfter(occurrence.scheduledAt().plus(job.misfireThreshold()))) {
+      currentBinding.metricHandler().registerRecurringJobMisfire(job.name(), job.misfirePolicy());
+      if (job.misfirePolicy() == MisfirePolicy.SKIP) {
+        return scheduleNext(currentBinding, job, occurrence, element);
+      }
+    }
+    var result = job.consumer().consumeElementPayload(element);
+    if (Results.isError(result)) {
+      return result;
+    }
+    return scheduleNext(currentBinding, job, occurrence, element);
+  }
+
+  /** Keeps the job going after an occurrence has failed too many times. */
+  @Override
+  public Result<E, TransactionalQueueError<E>> consumeElementPayloadFallback(E element) {
+    var occurrence = occurrences.occurrenceOf(element);
+    if (occurrence == null) {
+      return delegate.consumeElementPayloadFallback(element);
+    }
+    var job = jobs.get(occurrence.jobName());
+    if (job == null) {
+      return Result.success(element);
+    }
+    var result = job.consumer().consumeElementPayloadFallback(element);
+    if (Results.isError(result)) {
+      return result;
+    }
+    return scheduleNext(requireBinding(), job, occurrence, element);
+  }
+
+  private Result<E, TransactionalQueueError<E>> scheduleNext(
+      Binding<P, E, I> currentBinding,
+      RecurringJob<E> job,
+      RecurringJobOccurrence occurrence,
+      E element) {
+    var now = Instant.now(currentBinding.clock());
+    var next = job.schedule().nextOccurrenceAfter(occurrence.scheduledAt());
+    if (next.isBefore(now.minus(job.misfireThreshold()))) {
+      next = job.schedule().nextOccurrenceAfter(now);
+    }
+    var enqueued = enqueue(currentBinding, new RecurringJobOccurrence(job.name(), next), now);
+    if (Results.isError(enqueued)) {
+      return Results.errorWithAnotherElement(enqueued, element);
+    }
+    return Result.success(element);
+  }
+
+  private Result<E, TransactionalQueueError<I>> enqueue(
+      Binding<P, E, I> currentBinding, RecurringJobOccurrence occurrence, Instant now) {
+    var dispatchDelay = Duration.between(now, occurrence.scheduledAt());
+    return currentBinding
+        .enqueuer()
+        .enqueue(
+            occurrences.toEnqueue(
+                occurrence, dispatchDelay.isNegative() ? Duration.ZERO : dispatchDelay));
+  }
+
+  private Result<E, TransactionalQueueError<E>> dropUnknownJob(
+      E element, RecurringJobOccurrence occurrence) {
+    logger
+        .atWarn()
+        .addArgument(occurrence.jobName())
+        .addArgument(queueName)
+        .log("Dropped an occurrence of the recurring job {} of {}, which is no longer defined.");
+    requireBinding().metricHandler().registerError("recurring-job-unknown");
+    return Result.success(element);
+  }
+
+  private Binding<P, E, I> requireBinding() {
+    var currentBinding = binding;
+    if (currentBinding == null) {
+      throw new IllegalStateException(
+          "RecurringJobs of %s must be passed to TransactionalQueueFactory.withRecurringJobs."
+              .formatted(queueName));
+    }
+    return currentBinding;
+  }
+
+  private record Binding<
+      P,
+      E extends TransactionalQueueElement<P>,
+      I extends TransactionalQueueElementToEnqueue<P, E>>(
+      Clock clock, MetricHandler metricHandler, Enqueuer<P, E, I> enqueuer) {}
+}
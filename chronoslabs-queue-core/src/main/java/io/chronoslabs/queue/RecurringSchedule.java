@@ -0,0 +1,58 @@
+package io.chronoslabs.queue;
+
+import static io.chronoslabs.queue.Assert.isPositive;
+import static io.chronoslabs.queue.Assert.requireNonNull;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+/** Times at which a {@link RecurringJob} runs. */
+@FunctionalInterface
+public interface RecurringSchedule {
+
+  /**
+   * @return the first occurrence strictly after the specified time.
+   */
+  Instant nextOccurrenceAfter(Instant time);
+
+  /**
+   * Runs every {@code period}, aligned to the epoch, so every node computes the same occurrences
+   * whenever the previous run finished.
+   */
+  static RecurringSchedule fixedRate(Duration period) {
+    requireNonNull(period, "RecurringSchedule.period");
+    isPositive(period, "RecurringSchedule.period must be positive.");
+    var periodMillis = period.toMillis();
+    Assert.isTrue(periodMillis > 0, "RecurringSchedule.period must be at least one millisecond.");
+    return time ->
+        Instant.ofEpochMilli(
+            Math.floorDiv(time.toEpochMilli(), periodMillis) * periodMillis + periodMillis);
+  }
+
+  /**
+   * Runs at the times matching a standard five field cron expression, in UTC.
+   *
+   * @see #cron(String, ZoneId)
+   */
+  static RecurringSchedule cron(String expression) {
+    return cron(expression, ZoneOffset.UTC);
+  }
+
+  /**
+   * Runs at the times matching a standard five field cron expression ({@code minute hour
+   * day-of-month month day-of-week}) in the specified zone. Fields accept {@code *}, values,
+   * ranges, lists and steps, months and days of week also their three letter English names, and
+   * Sunday is both {@code 0} and {@code 7}. When both day fields are restricted, a day matching
+   * either of them matches. The macros {@code @yearly}, {@code @monthly}, {@code @weekly},
+   * {@code @daily} and {@code @hourly} are supported as well.
+   *
+   * @throws IllegalArgumentException if the expression is malformed or never matches.
+   */
+  static RecurringSchedule cron(String expression, ZoneId zone) {
+    return CronSchedule.parse(
+        requireNonNull(expression, "RecurringSchedule.expression"),
+        requireNonNull(zone, "RecurringSchedule.zone"));
+  }
+}
@@ -0,0 +1,28 @@
+package io.chronoslabs.queue;
+
+import com.github.sviperll.result4j.Result;
+import java.time.Duration;
+import java.util.Collection;
+
+/**
+ * Repository able to hand locked elements back to the queue. A node shutting down releases the
+ * elements it has locked but not started dispatching, so other nodes dispatch them at once instead
+ * of after their lock timeout.
+ */
+public interface ReleasableTransactionalQueueElementRepository<
+        P,
+        E extends TransactionalQueueElement<P>,
+        I extends TransactionalQueueElementToEnqueue<P, E>>
+    extends TransactionalQueueElementRepository<P, E, I> {
+
+  /**
+   * Undoes the lock of the elements, preferably in one batched statement. Each element which has
+   * not been locked again since, so still has the dispatch count it was locked with, gets its
+   * {@code nextDispatchAfter} moved {@code lockTimeout} back to when it was locked, or to its due
+   * time when locked for delayed dispatch, and its dispatch count decremented.
+   *
+   * @return the number of released elements.
+   */
+  Result<Integer, TransactionalQueueError<String>> releaseLocks(
+      Collection<E> elements, Duration lockTimeout);
+}
@@ -0,0 +1,51 @@
+package io.chronoslabs.queue;
+
+import com.github.sviperll.result4j.Result;
+
+/**
+ * Branching on a {@link Result} for the hot paths of {@link Enqueuer}, {@link Dispatcher} and
+ * {@link Retrier}. Chaining {@code flatMap} and {@code mapError} with lambdas which capture the
+ * element allocates the lambdas on every call, even when the result is a success and they never
+ * run, while {@link Result#discardSuccess()} of a success returns the shared empty {@link
+ * java.util.Optional}.
+ */
+final class Results {
+  private Results() {}
+
+  static boolean isError(Result<?, ?> result) {
+    return result.discardSuccess().isPresent();
+  }
+
+  static <S> S success(Result<S, ?> result) {
+    return result.discardError().orElseThrow();
+  }
+
+  static <E> E error(Result<?, E> result) {
+    return result.discardSuccess().orElseThrow();
+  }
+
+  /** The error of a failed result as a result of another type. */
+  static <S, E> Result<S, E> propagateError(Result<?, E> result) {
+    return Result.error(error(result));
+  }
+
+  /** The error of a failed result, with its element replaced, as a result of another type. */
+  static <S, E> Result<S, TransactionalQueueError<E>> errorWithAnotherElement(
+      Result<?, ? extends TransactionalQueueError<?>> result, E element) {
+    return Result.error(error(result).withAnotherElement(element));
+  }
+
+  /**
+   * Replaces the element of the error of the result. A success is returned as it is, since it
+   * carries no error whose type could differ.
+   */
+  @SuppressWarnings("unchecked")
+  static <S, T, E> Result<S, TransactionalQueueError<E>> withAnotherElement(
+      Result<S, TransactionalQueueError<T>> result, E element) {
+    var error = result.discardSuccess();
+    if (error.isEmpty()) {
+      return (Result<S, TransactionalQueueError<E>>) (Result<S, ?>) result;
+    }
+    return Result.error(error.get().withAnotherElement(element));
+  }
+}
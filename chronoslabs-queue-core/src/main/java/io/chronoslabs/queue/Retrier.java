@@ -5,11 +5,33 @@ import static java.util.Objects.requireNonNull;
 
 import com.github.sviperll.result4j.Result;
 import java.time.Clock;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Locks elements whose dispatch is due again and publishes them for dispatch.
+ *
+ * <p>With {@link TransactionalQueueConfigurationProperties#retryPrefetchLowWaterMark()} set, the
+ * next batch is locked in the background as soon as a full batch has been published and fewer than
+ * the low-water mark of its elements are still dispatching. A batch prefetched before the current
+ * one has been published is published by the same {@link #retry()}, one prefetched later by the
+ * next one, which the configuration guarantees to happen within half of the lock timeout. A batch
+ * taken later than that, when the retry was delayed, is released and locked again, so no element is
+ * published close to its lock expiry; {@link #retry()} waits for a prefetch still locking only
+ * until then, and the batch is released once it completes.
+ */
 class Retrier<
     P, E extends TransactionalQueueElement<P>, I extends TransactionalQueueElementToEnqueue<P, E>> {
   private static final Logger logger = LoggerFactory.getLogger(Retrier.class);
@@ -17,22 +39,34 @@ class Retrier<
   private final String queueName;
   private final Clock clock;
   private final MetricHandler metricHandler;
+  private final ObservationHandler observationHandler;
   private final TransactionCreator transactionCreator;
   private final TransactionalQueueApplicationEventPublisher applicationEventPublisher;
   private final TransactionalQueueElementRepository<P, E, I> queueRepository;
   private final TransactionalQueueConfigurationProperties configurationProperties;
+  private final InFlightDispatches inFlightDispatches;
+  private final DispatchingElements dispatchingElements;
+  private final LockedElements<E> lockedElements;
+  private final AtomicReference<Prefetch<E>> prefetch = new AtomicReference<>();
+  private volatile boolean moreElementsDue;
 
+  @SuppressWarnings("java:S107")
   Retrier(
       String queueName,
       Clock clock,
       MetricHandler metricHandler,
+      ObservationHandler observationHandler,
       TransactionCreator transactionCreator,
       TransactionalQueueApplicationEventPublisher applicationEventPublisher,
       TransactionalQueueElementRepository<P, E, I> queueRepository,
-      TransactionalQueueConfigurationProperties configurationProperties) {
+      TransactionalQueueConfigurationProperties configurationProperties,
+      InFlightDispatches inFlightDispatches,
+      DispatchingElements dispatchingElements,
+      LockedElements<E> lockedElements) {
     this.queueName = requireNonNull(queueName, "Retrier.queueName");
     this.clock = requireNonNull(clock, "Retrier.clock");
     this.metricHandler = requireNonNull(metricHandler, "Retrier.metricHandler");
+    this.observationHandler = requireNonNull(observationHandler, "Retrier.observationHandler");
     this.transactionCreator = requireNonNull(transactionCreator, "Retrier.transactionCreator");
     this.applicationEventPublisher =
         requireNonNull(applicationEventPublisher, "Retrier.applicationEventPublisher");
@@ -40,23 +74,297 @@ class Retrier<
     this.configurationProperties =
         requireNonNull(configurationProperties, "Retrier.configurationProperties");
     configurationProperties.validate(queueName);
+    this.inFlightDispatches = requireNonNull(inFlightDispatches, "Retrier.inFlightDispatches");
+    inFlightDispatches.onBelowLowWaterMark(this::prefetchNextBatch);
+    this.dispatchingElements = requireNonNull(dispatchingElements, "Retrier.dispatchingElements");
+    this.lockedElements = requireNonNull(lockedElements, "Retrier.lockedElements");
   }
 
   void retry() {
-    findAndLockElementsForRetry()
-        .peekSuccess(elements -> elements.forEach(this::publishApplicationEvent))
-        .peekError(error -> error.logError(logger))
-        .peekError(metricHandler::registerQueueError);
+    if (!configurationProperties.isRetryPrefetchEnabled()) {
+      publish(lockElementsForRetry(dispatchBatchSize()));
+      return;
+    }
+    var batch = takePrefetchedBatch();
+    while (publish(batch)) {
+      prefetchNextBatch();
+      var next = prefetch.get();
+      if (next == null || !next.batch().isDone() || !prefetch.compareAndSet(next, null)) {
+        return;
+      }
+      batch = completedPrefetch(next);
+    }
+  }
+
+  /**
+   * @return whether a full batch was published, so more elements may be due.
+   */
+  private boolean publish(Result<Collection<E>, TransactionalQueueError<String>> result) {
+    if (Results.isError(result)) {
+      moreElementsDue = false;
+      var error = Results.error(result);
+      error.logError(logger);
+      metricHandler.registerQueueError(error);
+      return false;
+    }
+    var elements = Results.success(result);
+    var full = elements.size() >= configurationProperties.retryDispatchBatchSize();
+    moreElementsDue = full;
+    for (var element : elements) {
+      publish(element);
+    }
+    return full;
+  }
+
+  /**
+   * Publishes the element, unless it is still dispatching on this node, which only happens when the
+   * repository did not skip it or its dispatch started after the lock had read the running ones.
+   * The running dispatch is then rolled back, and the element is dispatched once the new lock has
+   * expired.
+   */
+  private void publish(E element) {
+    if (dispatchingElements.isDispatching(element.id())) {
+      metricHandler.registerLocalDuplicate(MetricHandler.LOCAL_DUPLICATE_NOT_PUBLISHED);
+      return;
+    }
+    inFlightDispatches.published(element.id());
+    if (!publishApplicationEvent(element)) {
+      inFlightDispatches.finished(element.id());
+    }
+  }
+
+  private Result<Collection<E>, TransactionalQueueError<String>> takePrefetchedBatch() {
+    var taken = prefetch.getAndSet(null);
+    if (taken == null) {
+      metricHandler.registerRetryPrefetch(MetricHandler.PREFETCH_MISS);
+      return lockElementsForRetry(dispatchBatchSize());
+    }
+    if (!taken.batch().isDone()) {
+      metricHandler.registerRetryPrefetch(MetricHandler.PREFETCH_MISS);
+      return awaitPrefetch(taken);
+    }
+    return completedPrefetch(taken);
+  }
+
+  private Result<Collection<E>, TransactionalQueueError<String>> completedPrefetch(
+      Prefetch<E> taken) {
+    if (Instant.now(clock).isAfter(lateAt(taken))) {
+      metricHandler.registerRetryPrefetch(MetricHandler.PREFETCH_LATE);
+      releasePrefetched(taken.batch().join());
+      return lockElementsForRetry(dispatchBatchSize());
+    }
+    metricHandler.registerRetryPrefetch(MetricHandler.PREFETCH_HIT);
+    return taken.batch().join();
+  }
+
+  /** Waits for a prefetch still locking until its batch would be late, then gives it up. */
+  private Result<Collection<E>, TransactionalQueueError<String>> awaitPrefetch(Prefetch<E> taken) {
+    var timeout = Duration.between(Instant.now(clock), lateAt(taken));
+    try {
+      return taken.batch().get(Math.max(0, timeout.toNanos()), TimeUnit.NANOSECONDS);
+    } catch (InterruptedException exception) {
+      Thread.currentThread().interrupt();
+      return abandonedPrefetch(taken, exception);
+    } catch (ExecutionException | TimeoutException exception) {
+      return abandonedPrefetch(taken, exception);
+    }
   }
 
-  private Result<Collection<E>, TransactionalQueueError<String>> findAndLockElementsForRetry() {
+  private Result<Collection<E>, TransactionalQueueError<String>> abandonedPrefetch(
+      Prefetch<E> taken, Exception exception) {
+    taken.batch().thenAccept(this::releasePrefetched);
+    return Result.error(
+        TransactionalQueueError.<String>builder(queueName)
+            .withCause(exception)
+            .withElement(queueName)
+            .withMessage(
+                "The prefetch of queue elements did not complete within half of the lock timeout.")
+            .withType("retrier-prefetch-timeout")
+            .build());
+  }
+
+  private Instant lateAt(Prefetch<E> taken) {
+    return taken.startedAt().plus(configurationProperties.lockTimeout().dividedBy(2));
+  }
+
+  private void releasePrefetched(Result<Collection<E>, TransactionalQueueError<String>> batch) {
+    if (Results.isError(batch) || Results.success(batch).isEmpty()) {
+      return;
+    }
+    var elements = Results.success(batch);
+    lockedElements.released(elements);
+    releaseLocks(elements);
+  }
+
+  /** Locks the next batch in the background once few published elements are still dispatching. */
+  private void prefetchNextBatch() {
+    if (!moreElementsDue || !inFlightDispatches.isBelowLowWaterMark()) {
+      return;
+    }
+    var next = new Prefetch<E>(Instant.now(clock), new CompletableFuture<>());
+    if (!prefetch.compareAndSet(null, next)) {
+      return;
+    }
+    try {
+      PrefetchExecutor.EXECUTOR.execute(() -> next.batch().complete(prefetchBatch()));
+    } catch (RejectedExecutionException exception) {
+      prefetch.compareAndSet(next, null);
+      metricHandler.registerError(exception, "retrier-prefetch-rejected");
+    }
+  }
+
+  private Result<Collection<E>, TransactionalQueueError<String>> prefetchBatch() {
+    try {
+      return lockElementsForRetry(dispatchBatchSize());
+    } catch (RuntimeException exception) {
+      return Result.error(
+          TransactionalQueueError.<String>builder(queueName)
+              .withCause(exception)
+              .withElement(queueName)
+              .withMessage("An unexpected error occurred during prefetch of queue elements.")
+              .withType("retrier-unexpected-error-on-prefetch")
+              .build());
+    }
+  }
+
+  int dispatchBatchSize() {
+    return configurationProperties.retryDispatchBatchSize();
+  }
+
+  Duration pollInterval() {
+    return configurationProperties.retryScheduledRateDelay();
+  }
+
+  /**
+   * Locks at most {@code batchSize} due elements for a {@link TransactionalQueueScheduler}, which
+   * dispatches them itself instead of publishing them.
+   *
+   * @return the locked elements, or none when locking failed, which is logged and registered.
+   */
+  Collection<E> lockForScheduledDispatch(int batchSize, long schedulingDelayNanos) {
+    metricHandler.registerSchedulingDelay(schedulingDelayNanos);
+    var result = lockElementsForRetry(batchSize);
+    if (Results.isError(result)) {
+      var error = Results.error(result);
+      error.logError(logger);
+      metricHandler.registerQueueError(error);
+      return List.of();
+    }
+    return Results.success(result);
+  }
+
+  /**
+   * Stops locking elements, waits at most {@code timeout} for the locks and dispatches in progress
+   * and releases the elements locked but not dispatched.
+   *
+   * @return whether the locks and dispatches in progress finished within the timeout.
+   */
+  boolean shutdown(Duration timeout) {
+    boolean finished;
+    try {
+      finished = lockedElements.close(timeout);
+    } catch (InterruptedException exception) {
+      Thread.currentThread().interrupt();
+      finished = false;
+    }
+    var unstarted = lockedElements.takeUnstarted();
+    if (!unstarted.isEmpty()) {
+      releaseLocks(unstarted);
+    }
+    return finished;
+  }
+
+  private void releaseLocks(Collection<E> elements) {
+    if (!(queueRepository
+        instanceof ReleasableTransactionalQueueElementRepository<P, E, I> releasableRepository)) {
+      logger
+          .atInfo()
+          .addArgument(elements.size())
+          .addArgument(queueName)
+          .log(
+              "{} locked elements of {} are dispatched again after their lock timeout, as the"
+                  + " repository cannot release them.");
+      return;
+    }
+    var released = releaseLocks(releasableRepository, elements);
+    if (Results.isError(released)) {
+      var error = Results.error(released);
+      error.logError(logger);
+      metricHandler.registerQueueError(error);
+      return;
+    }
+    metricHandler.registerReleasedLocks(Results.success(released));
+  }
+
+  private Result<Integer, TransactionalQueueError<String>> releaseLocks(
+      ReleasableTransactionalQueueElementRepository<P, E, I> releasableRepository,
+      Collection<E> elements) {
+    try {
+      var openedTransaction = openNewTransaction();
+      if (Results.isError(openedTransaction)) {
+        return Results.propagateError(openedTransaction);
+      }
+      var transaction = Results.success(openedTransaction);
+      var released =
+          releasableRepository.releaseLocks(elements, configurationProperties.lockTimeout());
+      if (Results.isError(released)) {
+        transaction.rollback();
+        return released;
+      }
+      var committed = transaction.commit(Results.success(released));
+      if (Results.isError(committed)) {
+        transaction.rollback();
+      }
+      return committed;
+    } catch (Exception exception) {
+      return Result.error(
+          TransactionalQueueError.<String>builder(queueName)
+              .withCause(exception)
+              .withElement(queueName)
+              .withMessage("An unexpected error occurred during release of locked queue elements.")
+              .withType("retrier-unexpected-error-on-release-locks")
+              .build());
+    }
+  }
+
+  /** Locks elements unless the queue is shutting down, tracking them until they are dispatched. */
+  private Result<Collection<E>, TransactionalQueueError<String>> lockElementsForRetry(
+      int batchSize) {
+    if (!lockedElements.startLock()) {
+      return Result.success(List.of());
+    }
+    Collection<E> locked = List.of();
+    try {
+      var result = observedFindAndLockElementsForRetry(batchSize);
+      if (!Results.isError(result)) {
+        locked = Results.success(result);
+      }
+      return result;
+    } finally {
+      lockedElements.locked(locked, Instant.now(clock));
+    }
+  }
+
+  private Result<Collection<E>, TransactionalQueueError<String>>
+      observedFindAndLockElementsForRetry(int batchSize) {
+    if (observationHandler.isNoop()) {
+      return findAndLockElementsForRetry(batchSize);
+    }
+    return observationHandler.observe(
+        observationHandler.pollObservation(), () -> findAndLockElementsForRetry(batchSize));
+  }
+
+  private Result<Collection<E>, TransactionalQueueError<String>> findAndLockElementsForRetry(
+      int batchSize) {
     try {
       var now = Instant.now(clock);
       var nextDispatchAfter = now.plus(configurationProperties.lockTimeout());
-      return openNewTransaction()
-          .flatMap(
-              transaction ->
-                  findAndLockElementsForRetryInTransaction(transaction, now, nextDispatchAfter));
+      var openedTransaction = openNewTransaction();
+      if (Results.isError(openedTransaction)) {
+        return Results.propagateError(openedTransaction);
+      }
+      return findAndLockElementsForRetryInTransaction(
+          Results.success(openedTransaction), batchSize, now, nextDispatchAfter);
     } catch (Exception exception) {
       return Result.error(
           TransactionalQueueError.<String>builder(queueName)
@@ -70,28 +378,61 @@ class Retrier<
 
   private Result<Collection<E>, TransactionalQueueError<String>>
       findAndLockElementsForRetryInTransaction(
-          OpenedTransaction transaction, Instant now, Instant nextDispatchAfter) {
-    return queueRepository
-        .lockForNextDispatch(
-            configurationProperties.retryDispatchBatchSize(), now, nextDispatchAfter)
-        .flatMap(transaction::commit)
-        .peekError(ignored -> transaction.rollback());
+          OpenedTransaction transaction, int batchSize, Instant now, Instant nextDispatchAfter) {
+    var lockedElements =
+        queueRepository.lockForNextDispatch(
+            batchSize, now, nextDispatchAfter, dispatchingElements.dispatchingIds());
+    if (Results.isError(lockedElements)) {
+      transaction.rollback();
+      return lockedElements;
+    }
+    var committed = transaction.commit(Results.success(lockedElements));
+    if (Results.isError(committed)) {
+      transaction.rollback();
+    }
+    return committed;
   }
 
-  private void publishApplicationEvent(E element) {
+  private boolean publishApplicationEvent(E element) {
     try {
-      applicationEventPublisher
-          .publishElementAsApplicationEvent(element, queueName)
-          .peekError(error -> error.logError(logger))
-          .peekError(metricHandler::registerQueueError);
+      var published =
+          applicationEventPublisher.publishElementAsApplicationEvent(element, queueName);
+      if (Results.isError(published)) {
+        var error = Results.error(published);
+        error.logError(logger);
+        metricHandler.registerQueueError(error);
+        return false;
+      }
+      return true;
     } catch (Exception exception) {
-      logger.error("Error while publishing application event.", exception);
+      ErrorLogLimiter.shared()
+          .logError(
+              logger,
+              queueName,
+              "retrier-unexpected-error-on-publish-application-event",
+              exception,
+              "Error while publishing application event.");
       metricHandler.registerError(
           exception, "retrier-unexpected-error-on-publish-application-event");
+      return false;
     }
   }
 
   private Result<OpenedTransaction, TransactionalQueueError<String>> openNewTransaction() {
     return transactionCreator.openTransaction(PROPAGATION_REQUIRES_NEW, queueName);
   }
+
+  private record Prefetch<E>(
+      Instant startedAt,
+      CompletableFuture<Result<Collection<E>, TransactionalQueueError<String>>> batch) {}
+
+  private static final class PrefetchExecutor {
+    private static final ExecutorService EXECUTOR =
+        Executors.newCachedThreadPool(
+            runnable -> {
+              var thread = new Thread(runnable, "chronoslabs-queue-retry-prefetch");
+              thread.setDaemon(true);
+              return thread;
+            });
+  }
 }
@@ -0,0 +1,30 @@
+package io.chronoslabs.queue;
+
+import static io.chronoslabs.queue.Assert.requireNonNull;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/** Selects the shard of {@link ShardedTransactionalQueueElementRepository} an element goes to. */
+@FunctionalInterface
+public interface ShardSelector<I extends TransactionalQueueElementToEnqueue<?, ?>> {
+
+  /**
+   * @return the index of the shard, from {@code 0} to {@code shardCount - 1}.
+   */
+  int shardIndex(I elementToEnqueue, int shardCount);
+
+  /** Spreads the elements evenly over the shards, in turn. */
+  static <I extends TransactionalQueueElementToEnqueue<?, ?>> ShardSelector<I> roundRobin() {
+    var nextShard = new AtomicInteger();
+    return (elementToEnqueue, shardCount) -> Math.floorMod(nextShard.getAndIncrement(), shardCount);
+  }
+
+  /** Puts the elements with equal keys into the same shard. */
+  static <I extends TransactionalQueueElementToEnqueue<?, ?>> ShardSelector<I> byKey(
+      Function<? super I, ?> shardKey) {
+    requireNonNull(shardKey, "ShardSelector.shardKey");
+    return (elementToEnqueue, shardCount) ->
+        Math.floorMod(shardKey.apply(elementToEnqueue).hashCode(), shardCount);
+  }
+}
@@ -0,0 +1,413 @@
+package io.chronoslabs.queue;
+
+import static io.chronoslabs.queue.Assert.requireNonNull;
+
+import com.github.sviperll.result4j.Result;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Spreads the elements of one queue over several repositories, for example tables or databases, so
+ * inserts and lock scans of a busy queue do not all contend on one table. The {@link ShardSelector}
+ * picks the shard of each enqueued element. {@link #lockForNextDispatch} visits the shards in a
+ * rotating order, starting at a random shard on every node, until the batch is full. A shard
+ * failing to lock is logged and skipped, so the elements locked in the other shards are still
+ * dispatched; the error is only returned when no shard locked any element.
+ *
+ * <p>Elements are routed back to their shard by id: shard {@code i} of {@code n} must only generate
+ * ids congruent to {@code i} modulo {@code n}, for example an identity column {@code START WITH i
+ * INCREMENT BY n}, or {@code START WITH n} for shard {@code 0}. An insert returning any other id
+ * fails with {@code shard-id-mismatch} after the shard has written the row, so the caller must roll
+ * back its transaction; a shard managing its own transactions keeps the row, which cannot be found
+ * or deleted by id.
+ *
+ * <p>All shards are used within the transactions of the queue's {@link TransactionCreator}. Shards
+ * in the database of that creator are enqueued atomically with the caller's transaction; shards in
+ * other databases must manage their own transactions.
+ *
+ * <p>The optional repository capabilities are forwarded to the shards implementing them. Keys are
+ * only unique within a shard, so elements with an idempotency or collapse key must be routed by a
+ * {@link ShardSelector#byKey selector} sending equal keys to the same shard. A shard lacking a
+ * capability behaves like a queue repository lacking it: an element with an idempotency key is
+ * rejected, an element with a collapse key is inserted, locks are not released, nothing expires,
+ * and locking for delayed dispatch or by partition fails.
+ */
+public class ShardedTransactionalQueueElementRepository<
+        P,
+        E extends TransactionalQueueElement<P>,
+        I extends TransactionalQueueElementToEnqueue<P, E>>
+    implements PartitionedTransactionalQueueElementRepository<P, E, I>,
+        DelayedTransactionalQueueElementRepository<P, E, I>,
+        IdempotentTransactionalQueueElementRepository<P, E, I>,
+        CollapsingTransactionalQueueElementRepository<P, E, I>,
+        ReleasableTransactionalQueueElementRepository<P, E, I>,
+        ExpiringTransactionalQueueElementRepository<P, E, I> {
+  private static final Logger logger =
+      LoggerFactory.getLogger(ShardedTransactionalQueueElementRepository.class);
+  private static final long[] NO_SKIPPED_IDS = {};
+
+  private final String queueName;
+  private final List<TransactionalQueueElementRepository<P, E, I>> shards;
+  private final ShardSelector<? super I> shardSelector;
+  private final AtomicInteger nextShardToLock;
+
+  public ShardedTransactionalQueueElementRepository(
+      String queueName,
+      List<? extends TransactionalQueueElementRepository<P, E, I>> shards,
+      ShardSelector<? super I> shardSelector) {
+    this.queueName =
+        requireNonNull(queueName, "ShardedTransactionalQueueElementRepository.queueName");
+    this.shards =
+        List.copyOf(requireNonNull(shards, "ShardedTransactionalQueueElementRepository.shards"));
+    this.shardSelector =
+        requireNonNull(shardSelector, "ShardedTransactionalQueueElementRepository.shardSelector");
+    Assert.isTrue(
+        !this.shards.isEmpty(),
+        "ShardedTransactionalQueueElementRepository.shards must not be empty");
+    this.nextShardToLock =
+        new AtomicInteger(ThreadLocalRandom.current().nextInt(this.shards.size()));
+  }
+
+  @Override
+  public Result<E, TransactionalQueueError<I>> insert(
+      I elementToEnqueue, Instant createdAt, Instant nextDispatchAfter) {
+    return insert(elementToEnqueue, createdAt, nextDispatchAfter, Map.of());
+  }
+
+  @Override
+  public Result<E, TransactionalQueueError<I>> insert(
+      I elementToEnqueue,
+      Instant createdAt,
+      Instant nextDispatchAfter,
+      Map<String, String> traceContext) {
+    var shardIndex = shardSelector.shardIndex(elementToEnqueue, shards.size());
+    return insert(shardIndex, elementToEnqueue, createdAt, nextDispatchAfter, traceContext);
+  }
+
+  private Result<E, TransactionalQueueError<I>> insert(
+      int shardIndex,
+      I elementToEnqueue,
+      Instant createdAt,
+      Instant nextDispatchAfter,
+      Map<String, String> traceContext) {
+    var inserted =
+        shards.get(shardIndex).insert(elementToEnqueue, createdAt, nextDispatchAfter, traceContext);
+    if (Results.isError(inserted)) {
+      return inserted;
+    }
+    var id = Results.success(inserted).id();
+    if (shardIndexOf(id) != shardIndex) {
+      return Result.error(shardIdMismatchError(elementToEnqueue, shardIndex, id));
+    }
+    return inserted;
+  }
+
+  @Override
+  public Result<Optional<E>, TransactionalQueueError<I>> insertUnlessDuplicate(
+      I elementToEnqueue,
+      Instant createdAt,
+      Instant nextDispatchAfter,
+      Map<String, String> traceContext,
+      Instant duplicatesCreatedSince) {
+    var shardIndex = shardSelector.shardIndex(elementToEnqueue, shards.size());
+    if (!(shards.get(shardIndex)
+        instanceof IdempotentTransactionalQueueElementRepository<P, E, I> idempotentShard)) {
+      return Result.error(idempotencyNotSupportedError(elementToEnqueue, shardIndex));
+    }
+    var inserted =
+        idempotentShard.insertUnlessDuplicate(
+            elementToEnqueue, createdAt, nextDispatchAfter, traceContext, duplicatesCreatedSince);
+    if (Results.isError(inserted) || Results.success(inserted).isEmpty()) {
+      return inserted;
+    }
+    var id = Results.success(inserted).get().id();
+    if (shardIndexOf(id) != shardIndex) {
+      return Result.error(shardIdMismatchError(elementToEnqueue, shardIndex, id));
+    }
+    return inserted;
+  }
+
+  @Override
+  public Result<Optional<E>, TransactionalQueueError<I>> findDuplicate(
+      I elementToEnqueue, Instant duplicatesCreatedSince) {
+    var shardIndex = shardSelector.shardIndex(elementToEnqueue, shards.size());
+    if (!(shards.get(shardIndex)
+        instanceof IdempotentTransactionalQueueElementRepository<P, E, I> idempotentShard)) {
+      return Result.error(idempotencyNotSupportedError(elementToEnqueue, shardIndex));
+    }
+    return idempotentShard.findDuplicate(elementToEnqueue, duplicatesCreatedSince);
+  }
+
+  @Override
+  public Result<CollapsedElement<E>, TransactionalQueueError<I>> insertOrCollapse(
+      I elementToEnqueue,
+      Instant createdAt,
+      Instant nextDispatchAfter,
+      Map<String, String> traceContext) {
+    var shardIndex = shardSelector.shardIndex(elementToEnqueue, shards.size());
+    if (!(shards.get(shardIndex)
+        instanceof CollapsingTransactionalQueueElementRepository<P, E, I> collapsingShard)) {
+      return insert(shardIndex, elementToEnqueue, createdAt, nextDispatchAfter, traceContext)
+          .map(element -> new CollapsedElement<>(element, false));
+    }
+    var stored =
+        collapsingShard.insertOrCollapse(
+            elementToEnqueue, createdAt, nextDispatchAfter, traceContext);
+    if (Results.isError(stored)) {
+      return stored;
+    }
+    var id = Results.success(stored).element().id();
+    if (shardIndexOf(id) != shardIndex) {
+      return Result.error(shardIdMismatchError(elementToEnqueue, shardIndex, id));
+    }
+    return stored;
+  }
+
+  @Override
+  public Result<E, TransactionalQueueError<Long>> findById(long id) {
+    return shards.get(shardIndexOf(id)).findById(id);
+  }
+
+  @Override
+  public Result<Collection<E>, TransactionalQueueError<String>> lockForNextDispatch(
+      int batchSize, Instant notDispatchedTill, Instant nextDispatchTime) {
+    return lockForNextDispatch(batchSize, notDispatchedTill, nextDispatchTime, NO_SKIPPED_IDS);
+  }
+
+  @Override
+  public Result<Collection<E>, TransactionalQueueError<String>> lockForNextDispatch(
+      int batchSize, Instant notDispatchedTill, Instant nextDispatchTime, long[] skippedIds) {
+    return lockInRotatingOrder(
+        batchSize,
+        (shardIndex, remaining) ->
+            shards
+                .get(shardIndex)
+                .lockForNextDispatch(remaining, notDispatchedTill, nextDispatchTime, skippedIds));
+  }
+
+  @Override
+  public Result<Collection<E>, TransactionalQueueError<String>> lockForNextDispatch(
+      int batchSize,
+      Instant notDispatchedTill,
+      Instant nextDispatchTime,
+      int partitionCount,
+      int[] partitions) {
+    return lockForNextDispatch(
+        batchSize, notDispatchedTill, nextDispatchTime, partitionCount, partitions, NO_SKIPPED_IDS);
+  }
+
+  @Override
+  public Result<Collection<E>, TransactionalQueueError<String>> lockForNextDispatch(
+      int batchSize,
+      Instant notDispatchedTill,
+      Instant nextDispatchTime,
+      int partitionCount,
+      int[] partitions,
+      long[] skippedIds) {
+    return lockInRotatingOrder(
+        batchSize,
+        (shardIndex, remaining) -> {
+          if (!(shards.get(shardIndex)
+              instanceof
+              PartitionedTransactionalQueueElementRepository<P, E, I> partitionedShard)) {
+            return Result.error(
+                notSupportedError(
+                    shardIndex,
+                    "partitioned-lock-not-supported",
+                    "PartitionedTransactionalQueueElementRepository"));
+          }
+          return partitionedShard.lockForNextDispatch(
+              remaining,
+              notDispatchedTill,
+              nextDispatchTime,
+              partitionCount,
+              partitions,
+              skippedIds);
+        });
+  }
+
+  @Override
+  public Result<Collection<E>, TransactionalQueueError<String>> lockForDelayedDispatch(
+      int batchSize, Instant dueFrom, Instant dueBefore, Duration lockTimeout) {
+    return lockInRotatingOrder(
+        batchSize,
+        (shardIndex, remaining) -> {
+          if (!(shards.get(shardIndex)
+              instanceof DelayedTransactionalQueueElementRepository<P, E, I> delayedShard)) {
+            return Result.error(
+                notSupportedError(
+                    shardIndex,
+                    "delayed-dispatch-not-supported",
+                    "DelayedTransactionalQueueElementRepository"));
+          }
+          return delayedShard.lockForDelayedDispatch(remaining, dueFrom, dueBefore, lockTimeout);
+        });
+  }
+
+  @Override
+  public Result<E, TransactionalQueueError<E>> delete(E element) {
+    return shards.get(shardIndexOf(element.id())).delete(element);
+  }
+
+  @Override
+  public Result<Integer, TransactionalQueueError<String>> releaseLocks(
+      Collection<E> elements, Duration lockTimeout) {
+    var elementsByShard =
+        elements.stream().collect(Collectors.groupingBy(element -> shardIndexOf(element.id())));
+    var released = 0;
+    for (var shardElements : elementsByShard.entrySet()) {
+      if (!(shards.get(shardElements.getKey())
+          instanceof ReleasableTransactionalQueueElementRepository<P, E, I> releasableShard)) {
+        continue;
+      }
+      var releasedInShard = releasableShard.releaseLocks(shardElements.getValue(), lockTimeout);
+      if (Results.isError(releasedInShard)) {
+        return releasedInShard;
+      }
+      released += Results.success(releasedInShard);
+    }
+    return Result.success(released);
+  }
+
+  @Override
+  public Result<Integer, TransactionalQueueError<String>> deleteExpired(
+      int batchSize, Instant now) {
+    var deleted = 0;
+    for (var shard : shards) {
+      if (deleted >= batchSize) {
+        break;
+      }
+      if (shard instanceof ExpiringTransactionalQueueElementRepository<P, E, I> expiringShard) {
+        var deletedInShard = expiringShard.deleteExpired(batchSize - deleted, now);
+        if (Results.isError(deletedInShard)) {
+          return deletedInShard;
+        }
+        deleted += Results.success(deletedInShard);
+      }
+    }
+    return Result.success(deleted);
+  }
+
+  @Override
+  public Result<Collection<E>, TransactionalQueueError<String>> deleteExpiredReturning(
+      int batchSize, Instant now) {
+    Collection<E> deletedElements = null;
+    for (var shard : shards) {
+      var remaining = batchSize - (deletedElements == null ? 0 : deletedElements.size());
+      if (remaining <= 0) {
+        break;
+      }
+      if (shard instanceof ExpiringTransactionalQueueElementRepository<P, E, I> expiringShard) {
+        var deleted = expiringShard.deleteExpiredReturning(remaining, now);
+        if (Results.isError(deleted)) {
+          return deleted;
+        }
+        deletedElements = merge(deletedElements, Results.success(deleted), batchSize);
+      }
+    }
+    return Result.success(deletedElements == null ? List.of() : deletedElements);
+  }
+
+  /**
+   * Locks from the shards in a rotating order, starting at the next shard on every call, until the
+   * batch is full. The first error of a failing shard is returned only when nothing was locked,
+   * since the elements locked in the other shards must be dispatched rather than wait for their
+   * locks to expire; the other errors are logged.
+   */
+  private Result<Collection<E>, TransactionalQueueError<String>> lockInRotatingOrder(
+      int batchSize, ShardLock<E> shardLock) {
+    var firstShard = Math.floorMod(nextShardToLock.getAndIncrement(), shards.size());
+    Collection<E> lockedElements = null;
+    TransactionalQueueError<String> firstError = null;
+    for (int offset = 0; offset < shards.size(); offset++) {
+      var remaining = batchSize - (lockedElements == null ? 0 : lockedElements.size());
+      if (remaining <= 0) {
+        break;
+      }
+      var locked = shardLock.lock((firstShard + offset) % shards.size(), remaining);
+      if (Results.isError(locked)) {
+        if (firstError == null) {
+          firstError = Results.error(locked);
+        } else {
+          Results.error(locked).logError(logger);
+        }
+        continue;
+      }
+      lockedElements = merge(lockedElements, Results.success(locked), batchSize);
+    }
+    if (firstError == null) {
+      return Result.success(lockedElements == null ? List.of() : lockedElements);
+    }
+    if (lockedElements == null || lockedElements.isEmpty()) {
+      return Result.error(firstError);
+    }
+    firstError.logError(logger);
+    return Result.success(lockedElements);
+  }
+
+  private TransactionalQueueError<I> shardIdMismatchError(
+      I elementToEnqueue, int shardIndex, long id) {
+    return TransactionalQueueError.<I>builder(queueName)
+        .withElement(elementToEnqueue)
+        .withMessage(
+            "Shard %d of %s generated id=%d, which is not congruent to %d modulo %d. The row was written, so the transaction must be rolled back."
+                .formatted(shardIndex, queueName, id, shardIndex, shards.size()))
+        .withType("shard-id-mismatch")
+        .build();
+  }
+
+  private TransactionalQueueError<I> idempotencyNotSupportedError(
+      I elementToEnqueue, int shardIndex) {
+    return TransactionalQueueError.<I>builder(queueName)
+        .withElement(elementToEnqueue)
+        .withMessage(
+            "The element has an idempotency key, but shard %d of %s does not implement IdempotentTransactionalQueueElementRepository."
+                .formatted(shardIndex, queueName))
+        .withType("idempotency-not-supported")
+        .build();
+  }
+
+  private TransactionalQueueError<String> notSupportedError(
+      int shardIndex, String type, String capability) {
+    return TransactionalQueueError.<String>builder(queueName)
+        .withElement(queueName)
+        .withMessage(
+            "Shard %d of %s does not implement %s.".formatted(shardIndex, queueName, capability))
+        .withType(type)
+        .build();
+  }
+
+  private int shardIndexOf(long id) {
+    return (int) Math.floorMod(id, (long) shards.size());
+  }
+
+  /** Avoids copying when a single shard fills the batch, which is the common case under load. */
+  private static <E> Collection<E> merge(
+      Collection<E> lockedElements, Collection<E> locked, int batchSize) {
+    if (lockedElements == null || lockedElements.isEmpty()) {
+      return locked;
+    }
+    if (locked.isEmpty()) {
+      return lockedElements;
+    }
+    var merged = new ArrayList<E>(batchSize);
+    merged.addAll(lockedElements);
+    merged.addAll(locked);
+    return merged;
+  }
+
+  @FunctionalInterface
+  private interface ShardLock<E> {
+    Result<Collection<E>, TransactionalQueueError<String>> lock(int shardIndex, int batchSize);
+  }
+}
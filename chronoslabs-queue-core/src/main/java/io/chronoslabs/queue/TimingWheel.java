@@ -0,0 +1,159 @@
+package io.chronoslabs.queue;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical timing wheel. Each level has {@code wheelSize} buckets of one tick; an item too far
+ * ahead for a level goes to the next level, whose tick spans the whole lower level, and cascades
+ * down as the wheel advances. Only non-empty buckets are kept in a priority queue, so finding the
+ * next expiration costs {@code O(log buckets)} regardless of the number of items, and adding an
+ * item costs {@code O(1)}.
+ *
+ * <p>Items expire at the start of the tick containing their due time. Not thread-safe.
+ */
+@SuppressWarnings("PMD.AvoidFieldNameMatchingMethodName")
+final class TimingWheel<T> {
+  private final long tickMillis;
+  private final int wheelSize;
+  private final long intervalMillis;
+  private final List<Bucket<T>> buckets;
+  private final Queue<Bucket<T>> expiringBuckets;
+  private long currentTimeMillis;
+  private TimingWheel<T> overflowWheel;
+  private int size;
+
+  TimingWheel(long tickMillis, int wheelSize, long startMillis) {
+    this(
+        tickMillis,
+        wheelSize,
+        startMillis,
+        new PriorityQueue<>(Comparator.comparingLong(Bucket::expirationMillis)));
+  }
+
+  private TimingWheel(
+      long tickMillis, int wheelSize, long startMillis, Queue<Bucket<T>> expiringBuckets) {
+    this.tickMillis = tickMillis;
+    this.wheelSize = wheelSize;
+    this.intervalMillis = tickMillis * wheelSize;
+    this.expiringBuckets = expiringBuckets;
+    this.currentTimeMillis = startMillis - Math.floorMod(startMillis, tickMillis);
+    var bucketList = new ArrayList<Bucket<T>>(wheelSize);
+    for (int index = 0; index < wheelSize; index++) {
+      bucketList.add(new Bucket<>());
+    }
+    this.buckets = List.copyOf(bucketList);
+  }
+
+  /**
+   * @return {@code false} when the item is already due and has not been added.
+   */
+  boolean add(T item, long dueMillis) {
+    var added = add(new Entry<>(item, dueMillis));
+    if (added) {
+      size++;
+    }
+    return added;
+  }
+
+  /** Removes the items due at {@code nowMillis} and passes them to the action. */
+  void expire(long nowMillis, Consumer<? super T> action) {
+    var bucket = expiringBuckets.peek();
+    while (bucket != null && bucket.expirationMillis() <= nowMillis) {
+      expiringBuckets.poll();
+      advanceClock(bucket.expirationMillis());
+      for (var entry : bucket.flush()) {
+        if (!add(entry)) {
+          size--;
+          action.accept(entry.item());
+        }
+      }
+      bucket = expiringBuckets.peek();
+    }
+  }
+
+  /**
+   * @return the time at which the next items expire, or {@link Long#MAX_VALUE} when it is empty.
+   */
+  long nextExpirationMillis() {
+    var bucket = expiringBuckets.peek();
+    return bucket == null ? Long.MAX_VALUE : bucket.expirationMillis();
+  }
+
+  int size() {
+    return size;
+  }
+
+  private boolean add(Entry<T> entry) {
+    if (entry.dueMillis() < currentTimeMillis + tickMillis) {
+      return false;
+    }
+    if (entry.dueMillis() < currentTimeMillis + intervalMillis) {
+      var virtualTick = entry.dueMillis() / tickMillis;
+      var bucket = buckets.get((int) (virtualTick % wheelSize));
+      bucket.add(entry);
+      if (bucket.setExpirationMillis(virtualTick * tickMillis)) {
+        expiringBuckets.add(bucket);
+      }
+      return true;
+    }
+    return overflowWheel().add(entry);
+  }
+
+  private TimingWheel<T> overflowWheel() {
+    if (overflowWheel == null) {
+      overflowWheel =
+          new TimingWheel<>(intervalMillis, wheelSize, currentTimeMillis, expiringBuckets);
+    }
+    return overflowWheel;
+  }
+
+  private void advanceClock(long timeMillis) {
+    if (timeMillis >= currentTimeMillis + tickMillis) {
+      currentTimeMillis = timeMillis - Math.floorMod(timeMillis, tickMillis);
+      if (overflowWheel != null) {
+        overflowWheel.advanceClock(currentTimeMillis);
+      }
+    }
+  }
+
+  private record Entry<T>(T item, long dueMillis) {}
+
+  @SuppressWarnings("PMD.AvoidFieldNameMatchingMethodName")
+  private static final class Bucket<T> {
+    private static final long NOT_EXPIRING = -1;
+
+    private List<Entry<T>> entries = new ArrayList<>();
+    private long expirationMillis = NOT_EXPIRING;
+
+    private void add(Entry<T> entry) {
+      entries.add(entry);
+    }
+
+    private long expirationMillis() {
+      return expirationMillis;
+    }
+
+    /**
+     * @return whether the expiration changed, in which case the bucket must be queued again.
+     */
+    private boolean setExpirationMillis(long expirationMillis) {
+      if (this.expirationMillis == expirationMillis) {
+        return false;
+      }
+      this.expirationMillis = expirationMillis;
+      return true;
+    }
+
+    private List<Entry<T>> flush() {
+      var flushed = entries;
+      entries = new ArrayList<>();
+      expirationMillis = NOT_EXPIRING;
+      return flushed;
+    }
+  }
+}
@@ -1,9 +1,20 @@
 package io.chronoslabs.queue;
 
 import com.github.sviperll.result4j.Result;
+import java.time.Duration;
 
 @FunctionalInterface
 public interface TransactionCreator {
   Result<OpenedTransaction, TransactionalQueueError<String>> openTransaction(
       TransactionDefinition transactionDefinition, String queueName);
+
+  /**
+   * Opens a transaction whose statements fail once the timeout has elapsed, so a hung dispatch
+   * releases its row locks and connection. Only applies to new transactions; by default the timeout
+   * is ignored.
+   */
+  default Result<OpenedTransaction, TransactionalQueueError<String>> openTransaction(
+      TransactionDefinition transactionDefinition, String queueName, Duration timeout) {
+    return openTransaction(transactionDefinition, queueName);
+  }
 }
@@ -3,21 +3,30 @@ package io.chronoslabs.queue;
 import static java.util.Objects.requireNonNull;
 
 import com.github.sviperll.result4j.Result;
+import java.time.Duration;
+import java.util.Collection;
 
 public class TransactionalQueue<
     P, E extends TransactionalQueueElement<P>, I extends TransactionalQueueElementToEnqueue<P, E>> {
   private final Enqueuer<P, E, I> enqueuer;
   private final Dispatcher<P, E, I> dispatcher;
   private final Retrier<P, E, I> dispatcherRetrier;
+  private final DelayedDispatcher<P, E, I> delayedDispatcher;
+  private final Expirer<P, E, I> expirer;
 
   TransactionalQueue(
       Enqueuer<P, E, I> enqueuer,
       Dispatcher<P, E, I> dispatcher,
-      Retrier<P, E, I> dispatcherRetrier) {
+      Retrier<P, E, I> dispatcherRetrier,
+      DelayedDispatcher<P, E, I> delayedDispatcher,
+      Expirer<P, E, I> expirer) {
     this.enqueuer = requireNonNull(enqueuer, "TransactionalQueue.enqueuer");
     this.dispatcher = requireNonNull(dispatcher, "TransactionalQueue.dispatcher");
     this.dispatcherRetrier =
         requireNonNull(dispatcherRetrier, "TransactionalQueue.dispatcherRetrier");
+    this.delayedDispatcher =
+        requireNonNull(delayedDispatcher, "TransactionalQueue.delayedDispatcher");
+    this.expirer = requireNonNull(expirer, "TransactionalQueue.expirer");
   }
 
   public Result<E, TransactionalQueueError<I>> enqueue(I elementToEnqueue) {
@@ -31,4 +40,59 @@ public class TransactionalQueue<
   public void retryDispatch() {
     dispatcherRetrier.retry();
   }
+
+  /**
+   * Locks the elements due within {@link
+   * TransactionalQueueConfigurationProperties#delayedDispatchLookAhead()} for dispatch at their
+   * exact due time. Should be scheduled like {@link #retryDispatch()}; does nothing when delayed
+   * dispatch is disabled.
+   */
+  public void scheduleDelayedDispatch() {
+    delayedDispatcher.schedule();
+  }
+
+  /**
+   * Removes the elements whose {@link TransactionalQueueElementToEnqueue#timeToLive() time to live}
+   * has passed, in chunks, moving them to the dead letter queue when {@link
+   * TransactionalQueueConfigurationProperties#expiredToDeadLetterQueue()} is set. Should be
+   * scheduled far less often than {@link #retryDispatch()}, since expired elements are not
+   * dispatched anyway; does nothing unless the repository is an {@link
+   * ExpiringTransactionalQueueElementRepository}.
+   */
+  public void expireElements() {
+    expirer.expire();
+  }
+
+  /**
+   * Shuts the queue down for a graceful stop of the node: stops locking and dispatching elements,
+   * waits at most {@code timeout} for the dispatches in progress and then releases, in one batch,
+   * the elements this node has locked but not started dispatching, so other nodes dispatch them at
+   * once instead of after their lock timeout. Their dispatch count is restored, so the release does
+   * not count as a dispatch attempt.
+   *
+   * <p>Releasing requires a {@link ReleasableTransactionalQueueElementRepository}; with other
+   * repositories the elements are dispatched again once their lock expires. Scheduling of {@link
+   * #retryDispatch()} and {@link #scheduleDelayedDispatch()} should be stopped beforehand; calls
+   * made afterwards lock nothing.
+   *
+   * @return whether the dispatches in progress finished within the timeout. Elements still
+   *     dispatching keep their lock.
+   */
+  public boolean shutdown(Duration timeout) {
+    requireNonNull(timeout, "TransactionalQueue.timeout");
+    delayedDispatcher.stop();
+    return dispatcherRetrier.shutdown(timeout);
+  }
+
+  int retryDispatchBatchSize() {
+    return dispatcherRetrier.dispatchBatchSize();
+  }
+
+  Duration retryScheduledRateDelay() {
+    return dispatcherRetrier.pollInterval();
+  }
+
+  Collection<E> lockForScheduledDispatch(int batchSize, long schedulingDelayNanos) {
+    return dispatcherRetrier.lockForScheduledDispatch(batchSize, schedulingDelayNanos);
+  }
 }
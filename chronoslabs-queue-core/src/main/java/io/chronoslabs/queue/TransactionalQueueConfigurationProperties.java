@@ -5,11 +5,70 @@ import static io.chronoslabs.queue.Assert.isTrue;
 
 import java.time.Duration;
 
+/**
+ * @param consumerTimeout deadline of the dispatch transaction, including the payload consumer. A
+ *     dispatch exceeding it is interrupted and rolled back. It must not be longer than {@code
+ *     lockTimeout}, so the element is not dispatched again while the first dispatch still holds its
+ *     connection. {@code null} disables the deadline.
+ * @param retryPrefetchLowWaterMark number of elements published by the retry which may still be
+ *     dispatching when the next batch is locked in the background, so it is ready when they finish.
+ *     At most one batch is prefetched, and it requires {@code retryScheduledRateDelay} to be at
+ *     most half of {@code lockTimeout}, so prefetched elements are published well before their lock
+ *     expires. {@code 0} disables prefetching.
+ * @param delayedDispatchLookAhead window ahead of the current time in which elements of a {@link
+ *     DelayedTransactionalQueueElementRepository} are locked by {@link
+ *     TransactionalQueue#scheduleDelayedDispatch()} and dispatched at their exact due time. It must
+ *     be longer than {@code retryScheduledRateDelay}, the interval at which it should be called,
+ *     and shorter than {@code lockTimeout}, so the window never reaches the lock expiry of the
+ *     elements it locked. {@code null} disables delayed dispatch.
+ * @param idempotencyWindow time after enqueueing during which an element with the same {@link
+ *     TransactionalQueueElementToEnqueue#idempotencyKey() idempotency key} is a duplicate, provided
+ *     the first element is still in the queue. {@code null} treats every element still in the queue
+ *     as a duplicate.
+ * @param expiredToDeadLetterQueue whether elements whose {@link
+ *     TransactionalQueueElementToEnqueue#timeToLive() time to live} has passed are moved to the
+ *     dead letter queue by {@link TransactionalQueue#expireElements()}, instead of only being
+ *     deleted.
+ */
 public record TransactionalQueueConfigurationProperties(
     Duration lockTimeout,
     int maxDispatchCount,
     int retryDispatchBatchSize,
-    Duration retryScheduledRateDelay) {
+    Duration retryScheduledRateDelay,
+    Duration consumerTimeout,
+    int retryPrefetchLowWaterMark,
+    Duration delayedDispatchLookAhead,
+    Duration idempotencyWindow,
+    boolean expiredToDeadLetterQueue) {
+
+  /**
+   * Creates the configuration without the optional features; they are set through the {@link
+   * Builder}.
+   */
+  public TransactionalQueueConfigurationProperties(
+      Duration lockTimeout,
+      int maxDispatchCount,
+      int retryDispatchBatchSize,
+      Duration retryScheduledRateDelay) {
+    this(
+        lockTimeout,
+        maxDispatchCount,
+        retryDispatchBatchSize,
+        retryScheduledRateDelay,
+        null,
+        0,
+        null,
+        null,
+        false);
+  }
+
+  boolean isRetryPrefetchEnabled() {
+    return retryPrefetchLowWaterMark > 0;
+  }
+
+  boolean isDelayedDispatchEnabled() {
+    return delayedDispatchLookAhead != null;
+  }
 
   void validate(String queueName) {
     isPositive(
@@ -28,6 +87,42 @@ public record TransactionalQueueConfigurationProperties(
         retryScheduledRateDelay,
         "Configuration property 'retry-scheduled-rate-delay' of queue %s must be greater than zero."
             .formatted(queueName));
+    if (consumerTimeout != null) {
+      isPositive(
+          consumerTimeout,
+          "Configuration property 'consumer-timeout' of queue %s must be greater than zero."
+              .formatted(queueName));
+      isTrue(
+          consumerTimeout.compareTo(lockTimeout) <= 0,
+          "Configuration property 'consumer-timeout' of queue %s must not be longer than 'lock-timeout'."
+              .formatted(queueName));
+    }
+    isTrue(
+        retryPrefetchLowWaterMark >= 0,
+        "Configuration property 'retry-prefetch-low-water-mark' of queue %s must not be negative."
+            .formatted(queueName));
+    if (isRetryPrefetchEnabled()) {
+      isTrue(
+          retryScheduledRateDelay.multipliedBy(2).compareTo(lockTimeout) <= 0,
+          "Configuration property 'retry-scheduled-rate-delay' of queue %s must not be longer than half of 'lock-timeout' when 'retry-prefetch-low-water-mark' is set."
+              .formatted(queueName));
+    }
+    if (isDelayedDispatchEnabled()) {
+      isTrue(
+          delayedDispatchLookAhead.compareTo(retryScheduledRateDelay) > 0,
+          "Configuration property 'delayed-dispatch-look-ahead' of queue %s must be longer than 'retry-scheduled-rate-delay'."
+              .formatted(queueName));
+      isTrue(
+          delayedDispatchLookAhead.compareTo(lockTimeout) < 0,
+          "Configuration property 'delayed-dispatch-look-ahead' of queue %s must be shorter than 'lock-timeout'."
+              .formatted(queueName));
+    }
+    if (idempotencyWindow != null) {
+      isPositive(
+          idempotencyWindow,
+          "Configuration property 'idempotency-window' of queue %s must be greater than zero."
+              .formatted(queueName));
+    }
   }
 
   public static TransactionalQueueConfigurationProperties defaultConfiguration() {
@@ -44,6 +139,11 @@ public record TransactionalQueueConfigurationProperties(
     private int maxDispatchCount;
     private int retryDispatchBatchSize;
     private Duration retryScheduledRateDelay;
+    private Duration consumerTimeout;
+    private int retryPrefetchLowWaterMark;
+    private Duration delayedDispatchLookAhead;
+    private Duration idempotencyWindow;
+    private boolean expiredToDeadLetterQueue;
 
     private Builder() {}
 
@@ -67,9 +167,42 @@ public record TransactionalQueueConfigurationProperties(
       return this;
     }
 
+    public Builder withConsumerTimeout(Duration consumerTimeout) {
+      this.consumerTimeout = consumerTimeout;
+      return this;
+    }
+
+    public Builder withRetryPrefetchLowWaterMark(int retryPrefetchLowWaterMark) {
+      this.retryPrefetchLowWaterMark = retryPrefetchLowWaterMark;
+      return this;
+    }
+
+    public Builder withDelayedDispatchLookAhead(Duration delayedDispatchLookAhead) {
+      this.delayedDispatchLookAhead = delayedDispatchLookAhead;
+      return this;
+    }
+
+    public Builder withIdempotencyWindow(Duration idempotencyWindow) {
+      this.idempotencyWindow = idempotencyWindow;
+      return this;
+    }
+
+    public Builder withExpiredToDeadLetterQueue(boolean expiredToDeadLetterQueue) {
+      this.expiredToDeadLetterQueue = expiredToDeadLetterQueue;
+      return this;
+    }
+
     public TransactionalQueueConfigurationProperties build() {
       return new TransactionalQueueConfigurationProperties(
-          lockTimeout, maxDispatchCount, retryDispatchBatchSize, retryScheduledRateDelay);
+          lockTimeout,
+          maxDispatchCount,
+          retryDispatchBatchSize,
+          retryScheduledRateDelay,
+          consumerTimeout,
+          retryPrefetchLowWaterMark,
+          delayedDispatchLookAhead,
+          idempotencyWindow,
+          expiredToDeadLetterQueue);
     }
   }
 }
@@ -4,5 +4,17 @@ import com.github.sviperll.result4j.Result;
 
 @FunctionalInterface
 public interface TransactionalQueueDeadLetterRepository<E extends TransactionalQueueElement<?>> {
+  /** Reason of the elements moved by {@link TransactionalQueue#expireElements()}. */
+  String REASON_EXPIRED = "expired";
+
   Result<E, TransactionalQueueError<E>> insert(E element);
+
+  /**
+   * Inserts an element moved to the dead letter queue for another reason than exceeding the max
+   * dispatch count. Repositories recording the reason override it; by default the reason is
+   * dropped.
+   */
+  default Result<E, TransactionalQueueError<E>> insert(E element, String reason) {
+    return insert(element);
+  }
 }
@@ -1,6 +1,7 @@
 package io.chronoslabs.queue;
 
 import java.time.Instant;
+import java.util.Map;
 
 public interface TransactionalQueueElement<P> {
   long id();
@@ -12,4 +13,15 @@ public interface TransactionalQueueElement<P> {
   int dispatchCount();
 
   P payload();
+
+  /**
+   * Trace context propagated from the enqueuing observation, used to link the dispatch observation
+   * back to the request that enqueued the element. Elements that do not persist the trace context
+   * return an empty map.
+   *
+   * @return the trace context propagation entries, never {@code null}.
+   */
+  default Map<String, String> traceContext() {
+    return Map.of();
+  }
 }
@@ -1,6 +1,7 @@
 package io.chronoslabs.queue;
 
 import java.time.Instant;
+import java.util.Map;
 
 public interface TransactionalQueueElementBuilder<P, E extends TransactionalQueueElement<P>> {
   TransactionalQueueElementBuilder<P, E> withId(long id);
@@ -13,5 +14,10 @@ public interface TransactionalQueueElementBuilder<P, E extends TransactionalQueu
 
   TransactionalQueueElementBuilder<P, E> withPayload(P payload);
 
+  default TransactionalQueueElementBuilder<P, E> withTraceContext(
+      Map<String, String> traceContext) {
+    return this;
+  }
+
   E build();
 }
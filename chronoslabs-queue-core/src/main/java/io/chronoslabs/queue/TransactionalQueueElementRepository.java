@@ -3,6 +3,7 @@ package io.chronoslabs.queue;
 import com.github.sviperll.result4j.Result;
 import java.time.Instant;
 import java.util.Collection;
+import java.util.Map;
 
 public interface TransactionalQueueElementRepository<
     P, E extends TransactionalQueueElement<P>, I extends TransactionalQueueElementToEnqueue<P, E>> {
@@ -11,10 +12,45 @@ public interface TransactionalQueueElementRepository<
   Result<E, TransactionalQueueError<I>> insert(
       I elementToEnqueue, Instant createdAt, Instant nextDispatchAfter);
 
+  /**
+   * Inserts the element together with the trace context of the enqueuing observation. Repositories
+   * that want dispatch observations to link back to the enqueuing request persist the trace context
+   * and return it from {@link TransactionalQueueElement#traceContext()}.
+   *
+   * <p>By default, the trace context is ignored.
+   */
+  default Result<E, TransactionalQueueError<I>> insert(
+      I elementToEnqueue,
+      Instant createdAt,
+      Instant nextDispatchAfter,
+      Map<String, String> traceContext) {
+    return insert(elementToEnqueue, createdAt, nextDispatchAfter);
+  }
+
   Result<E, TransactionalQueueError<Long>> findById(long id);
 
   Result<Collection<E>, TransactionalQueueError<String>> lockForNextDispatch(
       int batchSize, Instant notDispatchedTill, Instant nextDispatchTime);
 
+  /**
+   * Locks elements like {@link #lockForNextDispatch(int, Instant, Instant)}, skipping the elements
+   * with the specified ids, which are still dispatching on this node. Locking one of them would
+   * increment its dispatch count, so the delete of its running dispatch would no longer match it.
+   *
+   * <p>By default, the ids are not skipped. Such an element is then locked, but not published, and
+   * its running dispatch is rolled back.
+   */
+  @SuppressWarnings("PMD.UseVarargs")
+  default Result<Collection<E>, TransactionalQueueError<String>> lockForNextDispatch(
+      int batchSize, Instant notDispatchedTill, Instant nextDispatchTime, long[] skippedIds) {
+    return lockForNextDispatch(batchSize, notDispatchedTill, nextDispatchTime);
+  }
+
+  /**
+   * Deletes the element within the dispatch transaction, just before its payload is consumed.
+   *
+   * @return the deleted element, which is the one consumed. Repositories storing large payloads
+   *     apart from the element load the payload here and return the element carrying it.
+   */
   Result<E, TransactionalQueueError<E>> delete(E element);
 }
@@ -10,5 +10,41 @@ public interface TransactionalQueueElementToEnqueue<P, E extends TransactionalQu
     return Duration.ZERO;
   }
 
+  /**
+   * Key identifying the logical message, so an element enqueued again, for example by a producer
+   * retrying after a timeout, is not stored twice. It is enforced by an {@link
+   * IdempotentTransactionalQueueElementRepository}; enqueueing an element with a key into a queue
+   * whose repository is not one fails with {@code idempotency-not-supported}. The key is ignored
+   * when the element also has a {@link #collapseKey()} applied by the repository, as collapsing
+   * already keeps a single pending element per key.
+   *
+   * @return the key, or {@code null} when the element is never a duplicate.
+   */
+  default String idempotencyKey() {
+    return null;
+  }
+
+  /**
+   * Key of the entity the element refers to, when only its latest pending element needs to be
+   * consumed. It is only applied by a {@link CollapsingTransactionalQueueElementRepository}, and
+   * takes precedence over the {@link #idempotencyKey()}.
+   *
+   * @return the key, or {@code null} when the element never supersedes another one.
+   */
+  default String collapseKey() {
+    return null;
+  }
+
+  /**
+   * Time after enqueueing when the element is no longer worth consuming. An expired element is not
+   * locked for dispatch anymore and is removed by {@link TransactionalQueue#expireElements()}. It
+   * is only applied by an {@link ExpiringTransactionalQueueElementRepository}.
+   *
+   * @return the time to live, or {@code null} when the element never expires.
+   */
+  default Duration timeToLive() {
+    return null;
+  }
+
   TransactionalQueueElementBuilder<P, E> toTransactionalQueueElementBuilder();
 }
@@ -5,15 +5,19 @@ import org.slf4j.Logger;
 public record TransactionalQueueError<E>(
     String name, E element, String type, String message, Throwable cause) {
 
+  /** Logs the error, rate limited per queue and type by the {@link ErrorLogLimiter#shared()}. */
   public void logError(Logger logger) {
-    logger
-        .atError()
-        .addArgument(element)
-        .addArgument(name)
-        .addArgument(type)
-        .addArgument(message)
-        .setCause(cause)
-        .log("Queue error for {}. Name: {}. Type: {}, Error: {}");
+    ErrorLogLimiter.shared()
+        .logError(
+            logger,
+            name,
+            type,
+            cause,
+            "Queue error for {}. Name: {}. Type: {}, Error: {}",
+            element,
+            name,
+            type,
+            message);
   }
 
   public <T> TransactionalQueueError<T> withAnotherElement(T element) {
@@ -1,24 +1,37 @@
 package io.chronoslabs.queue;
 
 import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
 import java.time.Clock;
+import java.util.List;
 
 public class TransactionalQueueFactory<
     P, E extends TransactionalQueueElement<P>, I extends TransactionalQueueElementToEnqueue<P, E>> {
   private String queueName;
   private Clock clock;
   private MeterRegistry meterRegistry;
+  private ObservationRegistry observationRegistry = ObservationRegistry.NOOP;
   private TransactionCreator transactionCreator;
   private TransactionalQueueApplicationEventPublisher applicationEventPublisher;
   private TransactionalQueueElementPayloadConsumer<E> queuePayloadConsumer;
   private TransactionalQueueElementRepository<P, E, I> queueRepository;
+  private List<? extends TransactionalQueueElementRepository<P, E, I>> queueRepositoryShards;
+  private ShardSelector<? super I> shardSelector;
+  private boolean shardedQueueRepositoryCreated;
   private TransactionalQueueDeadLetterRepository<E> queueDeadLetterRepository;
   private TransactionalQueueConfigurationProperties configurationProperties;
+  private RecurringJobs<P, E, I> recurringJobs;
 
   private MetricHandler metricHandler;
+  private ObservationHandler observationHandler;
   private Enqueuer<P, E, I> enqueuer;
   private Retrier<P, E, I> retrier;
   private Dispatcher<P, E, I> dispatcher;
+  private DelayedDispatcher<P, E, I> delayedDispatcher;
+  private Expirer<P, E, I> expirer;
+  private InFlightDispatches inFlightDispatches;
+  private DispatchingElements dispatchingElements;
+  private LockedElements<E> lockedElements;
 
   private TransactionalQueueFactory() {}
 
@@ -33,6 +46,7 @@ public class TransactionalQueueFactory<
   public TransactionalQueueFactory<P, E, I> withQueueName(String queueName) {
     this.queueName = queueName;
     creatMetricHandler();
+    createObservationHandler();
     return this;
   }
 
@@ -47,6 +61,13 @@ public class TransactionalQueueFactory<
     return this;
   }
 
+  public TransactionalQueueFactory<P, E, I> withObservationRegistry(
+      ObservationRegistry observationRegistry) {
+    this.observationRegistry = observationRegistry;
+    createObservationHandler();
+    return this;
+  }
+
   public TransactionalQueueFactory<P, E, I> withTransactionCreator(
       TransactionCreator transactionCreator) {
     this.transactionCreator = transactionCreator;
@@ -65,12 +86,37 @@ public class TransactionalQueueFactory<
     return this;
   }
 
+  /**
+   * Runs the recurring jobs on the queue, replacing the consumer set by {@link
+   * #withQueuePayloadConsumer} with the {@link RecurringJobs}, which delegate the other elements to
+   * their own consumer.
+   */
+  public TransactionalQueueFactory<P, E, I> withRecurringJobs(
+      RecurringJobs<P, E, I> recurringJobs) {
+    this.recurringJobs = recurringJobs;
+    this.queuePayloadConsumer = recurringJobs;
+    return this;
+  }
+
   public TransactionalQueueFactory<P, E, I> withQueueRepository(
       TransactionalQueueElementRepository<P, E, I> queueRepository) {
     this.queueRepository = queueRepository;
     return this;
   }
 
+  /**
+   * Spreads the queue over the shards with a {@link ShardedTransactionalQueueElementRepository},
+   * replacing the repository set by {@link #withQueueRepository}.
+   */
+  public TransactionalQueueFactory<P, E, I> withQueueRepositoryShards(
+      List<? extends TransactionalQueueElementRepository<P, E, I>> queueRepositoryShards,
+      ShardSelector<? super I> shardSelector) {
+    this.queueRepositoryShards = queueRepositoryShards;
+    this.shardSelector = shardSelector;
+    this.shardedQueueRepositoryCreated = false;
+    return this;
+  }
+
   public TransactionalQueueFactory<P, E, I> withQueueDeadLetterRepository(
       TransactionalQueueDeadLetterRepository<E> queueDeadLetterRepository) {
     this.queueDeadLetterRepository = queueDeadLetterRepository;
@@ -83,6 +129,16 @@ public class TransactionalQueueFactory<
     return this;
   }
 
+  private void createShardedQueueRepository() {
+    if (queueRepositoryShards == null || shardedQueueRepositoryCreated) {
+      return;
+    }
+    queueRepository =
+        new ShardedTransactionalQueueElementRepository<>(
+            queueName, queueRepositoryShards, shardSelector);
+    shardedQueueRepositoryCreated = true;
+  }
+
   private void creatMetricHandler() {
     if (meterRegistry == null || queueName == null) {
       return;
@@ -90,18 +146,38 @@ public class TransactionalQueueFactory<
     metricHandler = new MetricHandler(meterRegistry, queueName);
   }
 
+  private void createObservationHandler() {
+    if (observationRegistry == null || queueName == null) {
+      return;
+    }
+    observationHandler = new ObservationHandler(observationRegistry, queueName);
+  }
+
   public TransactionalQueue<P, E, I> create() {
     configurationProperties.validate(queueName);
     createEnqueuer();
+    if (recurringJobs != null) {
+      recurringJobs.bind(clock, metricHandler, enqueuer);
+    }
     createDispatcher();
     createRetrier();
-    return new TransactionalQueue<>(enqueuer, dispatcher, retrier);
+    createDelayedDispatcher();
+    createExpirer();
+    return new TransactionalQueue<>(enqueuer, dispatcher, retrier, delayedDispatcher, expirer);
   }
 
   public Enqueuer<P, E, I> createEnqueuer() {
     if (this.enqueuer == null) {
+      createShardedQueueRepository();
       this.enqueuer =
-          new Enqueuer<>(queueName, clock, metricHandler, transactionCreator, queueRepository);
+          new Enqueuer<>(
+              queueName,
+              clock,
+              metricHandler,
+              observationHandler,
+              transactionCreator,
+              queueRepository,
+              configurationProperties.idempotencyWindow());
     }
     return this.enqueuer;
   }
@@ -109,33 +185,101 @@ public class TransactionalQueueFactory<
   @SuppressWarnings("UnusedReturnValue")
   private Retrier<P, E, I> createRetrier() {
     if (this.retrier == null) {
+      createShardedQueueRepository();
       this.retrier =
           new Retrier<>(
               queueName,
               clock,
               metricHandler,
+              observationHandler,
               transactionCreator,
               applicationEventPublisher,
               queueRepository,
-              configurationProperties);
+              configurationProperties,
+              createInFlightDispatches(),
+              createDispatchingElements(),
+              createLockedElements());
     }
     return this.retrier;
   }
 
+  @SuppressWarnings("UnusedReturnValue")
+  private DelayedDispatcher<P, E, I> createDelayedDispatcher() {
+    if (this.delayedDispatcher == null) {
+      createShardedQueueRepository();
+      this.delayedDispatcher =
+          new DelayedDispatcher<>(
+              queueName,
+              clock,
+              metricHandler,
+              transactionCreator,
+              applicationEventPublisher,
+              queueRepository,
+              configurationProperties,
+              createLockedElements());
+    }
+    return this.delayedDispatcher;
+  }
+
+  private void createExpirer() {
+    if (this.expirer == null) {
+      createShardedQueueRepository();
+      this.expirer =
+          new Expirer<>(
+              queueName,
+              clock,
+              metricHandler,
+              transactionCreator,
+              queueRepository,
+              queueDeadLetterRepository,
+              configurationProperties);
+    }
+  }
+
   @SuppressWarnings("UnusedReturnValue")
   private Dispatcher<P, E, I> createDispatcher() {
     if (this.dispatcher == null) {
+      createShardedQueueRepository();
       this.dispatcher =
           new Dispatcher<>(
               queueName,
               clock,
               metricHandler,
+              observationHandler,
               transactionCreator,
               queuePayloadConsumer,
               queueRepository,
               queueDeadLetterRepository,
-              configurationProperties);
+              configurationProperties,
+              createInFlightDispatches(),
+              createDispatchingElements(),
+              createLockedElements());
     }
     return this.dispatcher;
   }
+
+  /** Shared by the retrier and the dispatcher, which reports the end of retried dispatches. */
+  private InFlightDispatches createInFlightDispatches() {
+    if (this.inFlightDispatches == null) {
+      this.inFlightDispatches =
+          new InFlightDispatches(configurationProperties.retryPrefetchLowWaterMark());
+    }
+    return this.inFlightDispatches;
+  }
+
+  /** Shared by the dispatcher, which registers the running dispatches, and the retrier. */
+  private DispatchingElements createDispatchingElements() {
+    if (this.dispatchingElements == null) {
+      this.dispatchingElements = new DispatchingElements();
+    }
+    return this.dispatchingElements;
+  }
+
+  /** Shared by the components locking elements and the dispatcher, which starts their dispatch. */
+  private LockedElements<E> createLockedElements() {
+    if (this.lockedElements == null) {
+      this.lockedElements = new LockedElements<>();
+    }
+    return this.lockedElements;
+  }
 }
@@ -0,0 +1,366 @@
+package io.chronoslabs.queue;
+
+import static io.chronoslabs.queue.Assert.isTrue;
+import static io.chronoslabs.queue.Assert.requireNonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the retry dispatch of many {@link TransactionalQueue}s on one shared pool of {@code
+ * dispatchCapacity} dispatch threads, so a busy queue cannot take every thread and connection while
+ * other queues wait. The queues must not be driven by {@link TransactionalQueue#retryDispatch()} as
+ * well.
+ *
+ * <p>A single scheduler thread decides which queue locks elements next and how many, with deficit
+ * round-robin: on its turn a queue with due elements is credited {@code weight} times the largest
+ * batch size and may lock elements while its credit, its {@link QueueShare#maxDispatches()} and the
+ * free capacity allow, with no more than a batch per lock. A queue which locked fewer elements than
+ * it asked for has no more due elements; it loses its credit and is polled again after its {@link
+ * TransactionalQueueConfigurationProperties#retryScheduledRateDelay()}. Capacity is held back for
+ * the other queues with due elements below their {@link QueueShare#minDispatches()}.
+ *
+ * <p>While elements are dispatching, a queue locks at least half a batch at a time unless it is
+ * below its minimum, so a saturated pool is not refilled with one lock query per finished element.
+ * The time each queue waits for its turn after it became due is recorded by the {@code
+ * TransactionalQueue.schedulingDelay} timer.
+ */
+public final class TransactionalQueueScheduler implements AutoCloseable {
+  private static final Logger logger = LoggerFactory.getLogger(TransactionalQueueScheduler.class);
+  private static final long CLOSE_TIMEOUT_SECONDS = 30;
+
+  private final int dispatchCapacity;
+  private final List<ScheduledQueue<?, ?, ?>> queues;
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition changed = lock.newCondition();
+  private final ExecutorService dispatchExecutor;
+  private final Thread schedulerThread;
+  private int dispatching;
+  private int current;
+  private volatile boolean running = true;
+
+  private TransactionalQueueScheduler(int dispatchCapacity, List<ScheduledQueue<?, ?, ?>> queues) {
+    this.dispatchCapacity = dispatchCapacity;
+    this.queues = List.copyOf(queues);
+    var largestBatchSize = queues.stream().mapToInt(queue -> queue.batchSize).max().orElse(1);
+    var now = System.nanoTime();
+    for (var queue : queues) {
+      queue.quantum = (long) queue.share.weight() * largestBatchSize;
+      queue.nextPollNanos = now;
+      queue.dueSinceNanos = now;
+    }
+    var threadNumber = new AtomicInteger();
+    this.dispatchExecutor =
+        Executors.newFixedThreadPool(
+            dispatchCapacity,
+            runnable -> {
+              var thread =
+                  new Thread(
+                      runnable, "chronoslabs-queue-dispatch-" + threadNumber.incrementAndGet());
+              thread.setDaemon(true);
+              return thread;
+            });
+    this.schedulerThread = new Thread(this::run, "chronoslabs-queue-scheduler");
+    schedulerThread.setDaemon(true);
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  public void start() {
+    schedulerThread.start();
+  }
+
+  /**
+   * Stops locking elements and waits for the dispatches in progress to finish. Locked elements
+   * whose dispatch has not started are dispatched again after their lock timeout.
+   */
+  @Override
+  public void close() {
+    running = false;
+    schedulerThread.interrupt();
+    dispatchExecutor.shutdown();
+    try {
+      schedulerThread.join(TimeUnit.SECONDS.toMillis(CLOSE_TIMEOUT_SECONDS));
+      if (!dispatchExecutor.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+        logger.warn("Dispatches still running after closing the queue scheduler.");
+      }
+    } catch (InterruptedException exception) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void run() {
+    while (running) {
+      try {
+        scheduleNext();
+      } catch (InterruptedException exception) {
+        Thread.currentThread().interrupt();
+        return;
+      } catch (RuntimeException exception) {
+        logger.error("An unexpected error occurred while scheduling the queues.", exception);
+      }
+    }
+  }
+
+  /** Lets one queue lock and dispatch elements, or waits until one can. */
+  private void scheduleNext() throws InterruptedException {
+    Grant grant;
+    lock.lock();
+    try {
+      var now = System.nanoTime();
+      grant = nextGrant(now);
+      if (grant == null) {
+        awaitChange(now);
+        return;
+      }
+      dispatching += grant.count();
+      grant.queue().dispatching += grant.count();
+    } finally {
+      lock.unlock();
+    }
+
+    var queue = grant.queue();
+    var locked = 0;
+    try {
+      locked =
+          queue.lockAndDispatch(
+              grant.count(), grant.schedulingDelayNanos(), dispatchExecutor, this::finished);
+    } finally {
+      // A failed lock dispatched nothing, so the whole grant is handed back.
+      returnUnused(grant, locked);
+    }
+  }
+
+  private void returnUnused(Grant grant, int locked) {
+    var queue = grant.queue();
+    lock.lock();
+    try {
+      var unused = grant.count() - locked;
+      dispatching -= unused;
+      queue.dispatching -= unused;
+      queue.deficit -= locked;
+      var now = System.nanoTime();
+      if (locked < grant.count()) {
+        queue.drained(now);
+      } else {
+        queue.dueSinceNanos = now;
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Visits the queues in turn, starting with the queue whose turn it is. The turn is kept while the
+   * queue could use more capacity than is free, so it is not lost to the queues after it.
+   */
+  @SuppressWarnings("PMD.ForLoopCanBeForeach")
+  private Grant nextGrant(long now) {
+    var free = dispatchCapacity - dispatching;
+    for (int visited = 0; visited < queues.size(); visited++) {
+      var queue = queues.get(current);
+      if (queue.isDue(now)) {
+        queue.startTurn();
+        var minimum = minimumLock(queue);
+        var wanted = queue.wanted();
+        if (wanted >= minimum) {
+          if (free < minimum) {
+            return null;
+          }
+          var count = Math.min(wanted, free - reservedForOthers(queue, now));
+          if (count >= minimum) {
+            return new Grant(queue, count, now - queue.dueSinceNanos);
+          }
+        }
+      }
+      queue.endTurn();
+      current = (current + 1) % queues.size();
+    }
+    return null;
+  }
+
+  private int minimumLock(ScheduledQueue<?, ?, ?> queue) {
+    if (dispatching == 0 || queue.dispatching < queue.share.minDispatches()) {
+      return 1;
+    }
+    var fullLock =
+        Math.min(Math.min(queue.batchSize, queue.share.maxDispatches()), dispatchCapacity);
+    return Math.max(1, fullLock / 2);
+  }
+
+  @SuppressWarnings("PMD.CompareObjectsWithEquals")
+  private int reservedForOthers(ScheduledQueue<?, ?, ?> queue, long now) {
+    var reserved = 0;
+    for (var other : queues) {
+      if (other != queue && other.isDue(now)) {
+        reserved += Math.max(0, other.share.minDispatches() - other.dispatching);
+      }
+    }
+    return reserved;
+  }
+
+  /** Waits for a finished dispatch, or until the next queue is due to be polled. */
+  private void awaitChange(long now) throws InterruptedException {
+    var untilNextPoll = Long.MAX_VALUE;
+    for (var queue : queues) {
+      if (!queue.isDue(now)) {
+        untilNextPoll = Math.min(untilNextPoll, queue.nextPollNanos - now);
+      }
+    }
+    if (untilNextPoll == Long.MAX_VALUE) {
+      changed.await();
+    } else {
+      changed.awaitNanos(untilNextPoll);
+    }
+  }
+
+  private void finished(ScheduledQueue<?, ?, ?> queue) {
+    lock.lock();
+    try {
+      dispatching--;
+      queue.dispatching--;
+      changed.signal();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private record Grant(ScheduledQueue<?, ?, ?> queue, int count, long schedulingDelayNanos) {}
+
+  /** Scheduling state of a queue, guarded by the lock of the scheduler. */
+  private static final class ScheduledQueue<
+      P,
+      E extends TransactionalQueueElement<P>,
+      I extends TransactionalQueueElementToEnqueue<P, E>> {
+    private final TransactionalQueue<P, E, I> queue;
+    private final QueueShare share;
+    private final int batchSize;
+    private final long pollIntervalNanos;
+    private long quantum;
+    private long deficit;
+    private boolean inTurn;
+    private int dispatching;
+    private long nextPollNanos;
+    private long dueSinceNanos;
+
+    private ScheduledQueue(TransactionalQueue<P, E, I> queue, QueueShare share) {
+      this.queue = queue;
+      this.share = share;
+      this.batchSize = queue.retryDispatchBatchSize();
+      this.pollIntervalNanos = queue.retryScheduledRateDelay().toNanos();
+    }
+
+    private boolean isDue(long now) {
+      return now - nextPollNanos >= 0;
+    }
+
+    /** Credits the quantum once per turn, keeping at most two quanta. */
+    private void startTurn() {
+      if (!inTurn) {
+        deficit = Math.min(deficit + quantum, 2 * quantum);
+        inTurn = true;
+      }
+    }
+
+    private void endTurn() {
+      inTurn = false;
+    }
+
+    private int wanted() {
+      return (int) Math.min(deficit, Math.min(share.maxDispatches() - dispatching, batchSize));
+    }
+
+    private void drained(long now) {
+      deficit = 0;
+      inTurn = false;
+      nextPollNanos = now + pollIntervalNanos;
+      dueSinceNanos = nextPollNanos;
+    }
+
+    /**
+     * Locks at most {@code count} elements and submits their dispatch. Each submitted element calls
+     * {@code finished} once its dispatch has finished or has been rejected.
+     *
+     * @return the number of locked elements.
+     */
+    private int lockAndDispatch(
+        int count,
+        long schedulingDelayNanos,
+        Executor executor,
+        Consumer<ScheduledQueue<?, ?, ?>> finished) {
+      var elements = queue.lockForScheduledDispatch(count, schedulingDelayNanos);
+      for (var element : elements) {
+        try {
+          executor.execute(
+              () -> {
+                try {
+                  queue.dispatch(element);
+                } finally {
+                  finished.accept(this);
+                }
+              });
+        } catch (RejectedExecutionException exception) {
+          finished.accept(this);
+        }
+      }
+      return elements.size();
+    }
+  }
+
+  public static class Builder {
+    private final List<ScheduledQueue<?, ?, ?>> queues = new ArrayList<>();
+    private int dispatchCapacity;
+
+    private Builder() {}
+
+    /** Maximum number of elements of all queues dispatching at the same time. */
+    public Builder withDispatchCapacity(int dispatchCapacity) {
+      this.dispatchCapacity = dispatchCapacity;
+      return this;
+    }
+
+    public <
+            P,
+            E extends TransactionalQueueElement<P>,
+            I extends TransactionalQueueElementToEnqueue<P, E>>
+        Builder withQueue(TransactionalQueue<P, E, I> queue) {
+      return withQueue(queue, QueueShare.defaultShare());
+    }
+
+    public <
+            P,
+            E extends TransactionalQueueElement<P>,
+            I extends TransactionalQueueElementToEnqueue<P, E>>
+        Builder withQueue(TransactionalQueue<P, E, I> queue, QueueShare share) {
+      queues.add(
+          new ScheduledQueue<>(
+              requireNonNull(queue, "TransactionalQueueScheduler.queue"),
+              requireNonNull(share, "TransactionalQueueScheduler.share")));
+      return this;
+    }
+
+    public TransactionalQueueScheduler build() {
+      isTrue(
+          dispatchCapacity > 0,
+          "TransactionalQueueScheduler.dispatchCapacity must be greater than zero.");
+      isTrue(!queues.isEmpty(), "TransactionalQueueScheduler must schedule at least one queue.");
+      isTrue(
+          queues.stream().mapToLong(queue -> queue.share.minDispatches()).sum() <= dispatchCapacity,
+          "The minimum dispatches of the queues must not exceed TransactionalQueueScheduler.dispatchCapacity.");
+      return new TransactionalQueueScheduler(dispatchCapacity, queues);
+    }
+  }
+}
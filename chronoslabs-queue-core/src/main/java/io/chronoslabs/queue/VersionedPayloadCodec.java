@@ -0,0 +1,176 @@
+package io.chronoslabs.queue;
+
+import static io.chronoslabs.queue.Assert.requireNonNull;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * {@link PayloadCodec} prefixing the stored bytes with a header byte. Its lower seven bits hold the
+ * version of the codec which encoded the payload, and its highest bit whether the payload has been
+ * compressed with Deflate. Payloads are encoded with the current version and decoded with the
+ * version of their header, so a queue switches codecs without migrating the stored elements: the
+ * previous version is kept until its elements have been consumed.
+ *
+ * <p>Encoded payloads of at least the compression threshold are compressed, unless that does not
+ * make them smaller. The bytes written and read and the compression ratio are recorded per queue.
+ */
+public final class VersionedPayloadCodec<P> implements PayloadCodec<P> {
+  private static final int COMPRESSED = 0x80;
+  private static final int MAX_VERSION = 0x7F;
+  private static final int HEADER_LENGTH = 1;
+
+  private final Map<Integer, PayloadCodec<P>> codecs;
+  private final int currentVersion;
+  private final PayloadCodec<P> currentCodec;
+  private final int compressionThreshold;
+  private final MetricHandler metricHandler;
+
+  private VersionedPayloadCodec(Builder<P> builder) {
+    requireNonNull(builder.queueName, "VersionedPayloadCodec.queueName");
+    requireNonNull(builder.meterRegistry, "VersionedPayloadCodec.meterRegistry");
+    Assert.isTrue(!builder.codecs.isEmpty(), "VersionedPayloadCodec requires a codec.");
+    Assert.isTrue(
+        builder.codecs.containsKey(builder.currentVersion),
+        "VersionedPayloadCodec.currentVersion %d has no codec.".formatted(builder.currentVersion));
+    Assert.isTrue(
+        builder.compressionThreshold >= 0,
+        "VersionedPayloadCodec.compressionThreshold must not be negative.");
+    this.codecs = Map.copyOf(builder.codecs);
+    this.currentVersion = builder.currentVersion;
+    this.currentCodec = codecs.get(currentVersion);
+    this.compressionThreshold = builder.compressionThreshold;
+    this.metricHandler = new MetricHandler(builder.meterRegistry, builder.queueName);
+  }
+
+  public static <P> Builder<P> builder(String queueName) {
+    return new Builder<>(queueName);
+  }
+
+  @Override
+  public byte[] encode(P payload) {
+    var encoded = currentCodec.encode(payload);
+    var stored = encoded.length >= compressionThreshold ? compress(encoded) : null;
+    if (stored == null) {
+      stored = new byte[HEADER_LENGTH + encoded.length];
+      stored[0] = (byte) currentVersion;
+      System.arraycopy(encoded, 0, stored, HEADER_LENGTH, encoded.length);
+    }
+    metricHandler.registerPayloadWritten(encoded.length, stored.length);
+    return stored;
+  }
+
+  @Override
+  public P decode(byte[] stored) {
+    Assert.isTrue(stored.length >= HEADER_LENGTH, "The stored payload has no header.");
+    metricHandler.registerPayloadRead(stored.length);
+    var header = stored[0] & 0xFF;
+    var version = header & MAX_VERSION;
+    var codec = codecs.get(version);
+    if (codec == null) {
+      throw new IllegalArgumentException(
+          "The stored payload has been encoded with unknown codec version %d.".formatted(version));
+    }
+    var encoded =
+        (header & COMPRESSED) == 0
+            ? Arrays.copyOfRange(stored, HEADER_LENGTH, stored.length)
+            : decompress(stored);
+    return codec.decode(encoded);
+  }
+
+  /**
+   * @return the header and the compressed payload, or {@code null} when compression does not make
+   *     it smaller.
+   */
+  private byte[] compress(byte[] encoded) {
+    var deflater = new Deflater(Deflater.BEST_SPEED);
+    try {
+      deflater.setInput(encoded);
+      deflater.finish();
+      var compressed = new byte[HEADER_LENGTH + encoded.length];
+      compressed[0] = (byte) (currentVersion | COMPRESSED);
+      var length = HEADER_LENGTH;
+      while (!deflater.finished() && length < compressed.length) {
+        length += deflater.deflate(compressed, length, compressed.length - length);
+      }
+      return deflater.finished() && length < compressed.length
+          ? Arrays.copyOf(compressed, length)
+          : null;
+    } finally {
+      deflater.end();
+    }
+  }
+
+  private static byte[] decompress(byte[] stored) {
+    var inflater = new Inflater();
+    try {
+      inflater.setInput(stored, HEADER_LENGTH, stored.length - HEADER_LENGTH);
+      var output = new ByteArrayOutputStream(stored.length * 4);
+      var buffer = new byte[8192];
+      while (!inflater.finished()) {
+        var length = inflater.inflate(buffer);
+        if (length == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+          throw new IllegalArgumentException("The stored payload is truncated.");
+        }
+        output.write(buffer, 0, length);
+      }
+      return output.toByteArray();
+    } catch (DataFormatException exception) {
+      throw new IllegalArgumentException(
+          "The stored payload is not valid Deflate data.", exception);
+    } finally {
+      inflater.end();
+    }
+  }
+
+  public static class Builder<P> {
+    private final String queueName;
+    private final Map<Integer, PayloadCodec<P>> codecs = new HashMap<>();
+    private int currentVersion = -1;
+    private int compressionThreshold = 1024;
+    private MeterRegistry meterRegistry;
+
+    private Builder(String queueName) {
+      this.queueName = queueName;
+    }
+
+    /**
+     * Adds the codec of a version, from {@code 0} to {@code 127}, which becomes the current one
+     * unless {@link #withCurrentVersion(int)} selects another.
+     */
+    public Builder<P> withCodec(int version, PayloadCodec<P> codec) {
+      Assert.isTrue(
+          version >= 0 && version <= MAX_VERSION,
+          "VersionedPayloadCodec.version must be between 0 and %d.".formatted(MAX_VERSION));
+      codecs.put(version, requireNonNull(codec, "VersionedPayloadCodec.codec"));
+      currentVersion = version;
+      return this;
+    }
+
+    public Builder<P> withCurrentVersion(int currentVersion) {
+      this.currentVersion = currentVersion;
+      return this;
+    }
+
+    /** Size of the encoded payload from which it is compressed, 1024 bytes by default. */
+    public Builder<P> withCompressionThreshold(int compressionThreshold) {
+      this.compressionThreshold = compressionThreshold;
+      return this;
+    }
+
+    public Builder<P> withMeterRegistry(MeterRegistry meterRegistry) {
+      this.meterRegistry = meterRegistry;
+      return this;
+    }
+
+    public VersionedPayloadCodec<P> build() {
+      return new VersionedPayloadCodec<>(this);
+    }
+  }
+}
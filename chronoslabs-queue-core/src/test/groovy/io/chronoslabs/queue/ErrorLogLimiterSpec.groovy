@@ -0,0 +1,78 @@
+package io.chronoslabs.queue
+
+import org.slf4j.event.Level
+import spock.lang.Specification
+
+import java.time.Duration
+
+class ErrorLogLimiterSpec extends Specification {
+    long now = 0
+    RecordingLogger logger = new RecordingLogger()
+    ErrorLogLimiter limiter = new ErrorLogLimiter(2, Duration.ofSeconds(10), 3, Duration.ofMinutes(1), { now })
+
+    def "should log the first errors of a window, sample the following ones and summarize the suppressed ones"() {
+        when: "eight errors of the same queue and type occur within the window"
+            (1..8).each { limiter.logError(logger, "TestQueue", "insert-error", null, "Failed to insert element {}.", it) }
+
+        then: "the first two are logged and one in three of the following ones is sampled"
+            logger.events(Level.ERROR)*.message() == [
+                "Failed to insert element 1.",
+                "Failed to insert element 2.",
+                "Failed to insert element 5. Logged as a sample of 3 suppressed errors.",
+                "Failed to insert element 8. Logged as a sample of 3 suppressed errors.",
+            ]
+
+        and: "errors of another type are limited on their own"
+            limiter.logError(logger, "TestQueue", "delete-error", null, "Failed to delete element.")
+            logger.events(Level.ERROR).size() == 5
+
+        when: "the window has passed"
+            logger.reset()
+            now += Duration.ofSeconds(10).toNanos()
+            limiter.logSuppressedErrors()
+
+        then: "the suppressed errors are summarized"
+            logger.events*.message() == ["4 similar errors of type insert-error of queue TestQueue suppressed in the last PT10S."]
+
+        when: "the next error occurs"
+            logger.reset()
+            limiter.logError(logger, "TestQueue", "insert-error", null, "Failed to insert element {}.", 9)
+
+        then: "it is logged in the new window"
+            logger.events*.message() == ["Failed to insert element 9."]
+    }
+
+    def "should log a stack trace once per fingerprint and interval"() {
+        given: "two exceptions thrown at the same place, with different messages"
+            List<IllegalStateException> sameStackTraces = (1..2).collect { newException("Element ${it} failed.") }
+
+        when: "both are logged"
+            sameStackTraces.each { limiter.logError(logger, "TestQueue", "insert-error", it, "Failed to insert element.") }
+
+        then: "the stack trace is logged once, and the second error refers to it"
+            logger.events*.throwable() == [sameStackTraces[0], null]
+            String fingerprint = Long.toHexString(ErrorLogLimiter.fingerprint(sameStackTraces[0]))
+            logger.events[0].message() == "Failed to insert element. Stack trace fingerprint: ${fingerprint}."
+            logger.events[1].message() == "Failed to insert element. Cause: ${sameStackTraces[1]}, with the stack trace logged before with fingerprint ${fingerprint}."
+
+        when: "an exception thrown elsewhere is logged with another type"
+            logger.reset()
+            IllegalArgumentException other = new IllegalArgumentException("Other failure.")
+            limiter.logError(logger, "TestQueue", "delete-error", other, "Failed to delete element.")
+
+        then: "its stack trace is logged"
+            logger.events*.throwable() == [other]
+
+        when: "the interval has passed"
+            logger.reset()
+            now += Duration.ofMinutes(1).toNanos()
+            limiter.logError(logger, "TestQueue", "read-error", sameStackTraces[1], "Failed to read element.")
+
+        then: "the stack trace is logged again"
+            logger.events*.throwable() == [sameStackTraces[1]]
+    }
+
+    private static IllegalStateException newException(String message) {
+        return new IllegalStateException(message)
+    }
+}
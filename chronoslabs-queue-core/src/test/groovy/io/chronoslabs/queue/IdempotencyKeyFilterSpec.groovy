@@ -0,0 +1,33 @@
+package io.chronoslabs.queue
+
+import spock.lang.Specification
+
+class IdempotencyKeyFilterSpec extends Specification {
+
+    def "should contain every added key and rarely a key which has not been added"() {
+        given:
+            IdempotencyKeyFilter filter = new IdempotencyKeyFilter(10_000)
+
+        when:
+            (1..10_000).each { filter.add("added-$it") }
+
+        then: "there are no false negatives"
+            (1..10_000).every { filter.mightContain("added-$it") }
+
+        and: "less than one percent false positives"
+            (1..10_000).count { filter.mightContain("not-added-$it") } < 100
+    }
+
+    def "should forget the keys of the generation before the previous one"() {
+        given:
+            IdempotencyKeyFilter filter = new IdempotencyKeyFilter(100)
+
+        when: "two generations are filled"
+            (1..100).each { filter.add("first-$it") }
+            (1..100).each { filter.add("second-$it") }
+
+        then: "only the keys of the last full generation are kept"
+            (1..100).every { filter.mightContain("second-$it") }
+            (1..100).count { filter.mightContain("first-$it") } < 5
+    }
+}
@@ -0,0 +1,227 @@
+package io.chronoslabs.queue
+
+import com.github.sviperll.result4j.Result
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import spock.lang.Specification
+
+import java.time.Duration
+import java.time.Instant
+
+import static io.chronoslabs.queue.TestTransactionalQueueElementToEnqueue.aTestTransactionalQueueElementToEnqueue
+import static io.chronoslabs.queue.TransactionDefinition.PROPAGATION_REQUIRES_NEW
+
+class InMemoryTransactionalQueueElementRepositorySpec extends Specification {
+    String queueName = "TestQueue"
+    Instant now = Instant.parse("2025-04-25T12:00:00Z")
+    InMemoryTransactionCreator transactionCreator = new InMemoryTransactionCreator()
+    InMemoryTransactionalQueueElementRepository<TestPayload, TestTransactionalQueueElement, TestTransactionalQueueElementToEnqueue> repository =
+        new InMemoryTransactionalQueueElementRepository<>(queueName, transactionCreator, 4)
+
+    def "should publish inserted element on commit and discard it on rollback"() {
+        when: "I insert an element in a transaction which is rolled back"
+            OpenedTransaction rolledBackTransaction = openNewTransaction()
+            TestTransactionalQueueElement rolledBackElement = insert(now)
+            rolledBackTransaction.rollback()
+
+        then: "the element does not exist"
+            Assertions.assertThat(repository.findById(rolledBackElement.id()))
+                .isError()
+                .hasErrorThat()
+                .asInstanceOf(TransactionalQueueInstanceOfAssertFactory.transactionalQueueError(Long.class))
+                .hasType("read-element-error")
+
+        when: "I insert an element in a transaction which is committed"
+            OpenedTransaction committedTransaction = openNewTransaction()
+            TestTransactionalQueueElement committedElement = insert(now - Duration.ofSeconds(1))
+            Assertions.assertThat(committedTransaction.commit(committedElement)).isSuccess()
+
+        then: "the element exists and can be locked for dispatch"
+            Assertions.assertThat(repository.findById(committedElement.id())).isSuccess()
+            lockForNextDispatch(10)*.id() == [committedElement.id()]
+    }
+
+    def "should not see an uncommitted element from another transaction"() {
+        given: "an element is inserted in a transaction which is not committed yet"
+            OpenedTransaction transaction = openNewTransaction()
+            TestTransactionalQueueElement element = insert(now)
+
+        when: "another thread looks for the element"
+            Result<TestTransactionalQueueElement, TransactionalQueueError<Long>> result = null
+            Thread reader = Thread.start { result = repository.findById(element.id()) }
+            reader.join()
+
+        then: "the element is not visible"
+            Assertions.assertThat(result).isError()
+
+        cleanup:
+            transaction.rollback()
+    }
+
+    def "should lock due elements ordered by next dispatch after and restore them on rollback"() {
+        given: "a repository with a single stripe, which orders all elements"
+            repository = new InMemoryTransactionalQueueElementRepository<>(queueName, transactionCreator, 1)
+
+        and: "three elements are inserted with different dispatch times"
+            TestTransactionalQueueElement second = insert(now - Duration.ofSeconds(1))
+            TestTransactionalQueueElement first = insert(now - Duration.ofSeconds(2))
+            insert(now + Duration.ofSeconds(1))
+
+        when: "I lock elements for dispatch in a transaction which is rolled back"
+            OpenedTransaction transaction = openNewTransaction()
+            Collection<TestTransactionalQueueElement> lockedElements = lockForNextDispatch(10)
+            transaction.rollback()
+
+        then: "only due elements were locked, in dispatch order, with incremented dispatch count"
+            lockedElements*.id() == [first.id(), second.id()]
+            lockedElements*.dispatchCount() == [1, 1]
+            lockedElements*.nextDispatchAfter() == [now + Duration.ofSeconds(10), now + Duration.ofSeconds(10)]
+
+        and: "the rollback restored the elements"
+            repository.findById(first.id()).discardError().get() == first
+            repository.findById(second.id()).discardError().get() == second
+
+        when: "I lock elements for dispatch in a transaction which is committed"
+            OpenedTransaction committedTransaction = openNewTransaction()
+            Collection<TestTransactionalQueueElement> committedElements = lockForNextDispatch(10)
+            committedTransaction.commit(committedElements)
+
+        then: "the elements are locked until the lock timeout passes"
+            committedElements*.id() == [first.id(), second.id()]
+            lockForNextDispatch(10).isEmpty()
+    }
+
+    def "should restore deleted element on rollback and skip it while the delete is not committed"() {
+        given: "an element exists"
+            TestTransactionalQueueElement element = insert(now - Duration.ofSeconds(1))
+
+        when: "I delete the element in a transaction"
+            OpenedTransaction transaction = openNewTransaction()
+            Result<TestTransactionalQueueElement, TransactionalQueueError<TestTransactionalQueueElement>> deleteResult = repository.delete(element)
+
+        then: "the element is deleted and another transaction cannot lock it"
+            Assertions.assertThat(deleteResult).isSuccess()
+            Collection<TestTransactionalQueueElement> lockedByAnotherThread = null
+            Thread.start { lockedByAnotherThread = lockForNextDispatch(10) }.join()
+            lockedByAnotherThread.isEmpty()
+
+        when: "the transaction is rolled back"
+            transaction.rollback()
+
+        then: "the element can be locked again"
+            lockForNextDispatch(10)*.id() == [element.id()]
+    }
+
+    def "should skip the specified elements when locking and keep them due"() {
+        given: "a repository with a single stripe and three due elements"
+            repository = new InMemoryTransactionalQueueElementRepository<>(queueName, transactionCreator, 1)
+            TestTransactionalQueueElement first = insert(now - Duration.ofSeconds(3))
+            TestTransactionalQueueElement second = insert(now - Duration.ofSeconds(2))
+            TestTransactionalQueueElement third = insert(now - Duration.ofSeconds(1))
+
+        when: "the first two are skipped"
+            Collection<TestTransactionalQueueElement> locked = repository.lockForNextDispatch(10, now, now + Duration.ofSeconds(10), [first.id(), second.id()] as long[]).discardError().get()
+
+        then: "only the third is locked"
+            locked*.id() == [third.id()]
+
+        and: "the skipped ones are still due, unchanged"
+            lockForNextDispatch(10)*.id() == [first.id(), second.id()]
+            lockForNextDispatch(10).isEmpty()
+    }
+
+    def "should not delete an element which was locked for dispatch again"() {
+        given: "an element exists"
+            TestTransactionalQueueElement element = insert(now - Duration.ofSeconds(1))
+
+        and: "the element was locked for dispatch"
+            lockForNextDispatch(10)
+
+        when: "I delete the element with the previous dispatch count"
+            Result<TestTransactionalQueueElement, TransactionalQueueError<TestTransactionalQueueElement>> deleteResult = repository.delete(element)
+
+        then: "no element is deleted"
+            Assertions.assertThat(deleteResult)
+                .isError()
+                .hasErrorThat()
+                .asInstanceOf(TransactionalQueueInstanceOfAssertFactory.transactionalQueueError(TestTransactionalQueueElement.class))
+                .hasType("zero-rows-deleted")
+            Assertions.assertThat(repository.findById(element.id())).isSuccess()
+    }
+
+    def "should lock and delete many elements spread over all stripes"() {
+        given: "many due elements exist"
+            List<Long> ids = (1..5_000).collect { insert(now - Duration.ofMillis(it)).id() }
+
+        when: "I lock all elements in batches and delete them"
+            List<Long> lockedIds = []
+            Collection<TestTransactionalQueueElement> batch
+            while (!(batch = lockForNextDispatch(128)).isEmpty()) {
+                batch.each { Assertions.assertThat(repository.delete(it)).isSuccess() }
+                lockedIds.addAll(batch*.id())
+            }
+
+        then: "every element was locked exactly once and none is left"
+            lockedIds.sort() == ids.sort()
+            ids.every { repository.findById(it).discardError().isEmpty() }
+    }
+
+    def "should enqueue in a transaction and dispatch through the transactional queue"() {
+        given: "a transactional queue backed by the in-memory repository"
+            UpdatableFixedClock clock = UpdatableFixedClock.defaultUpdatableFixedClock()
+            clock.nowIs("2025-04-25T12:00:00Z")
+            FakeTransactionalQueueApplicationEventPublisher applicationEventPublisher = new FakeTransactionalQueueApplicationEventPublisher()
+            FakeTransactionalQueueElementPayloadConsumer<TestTransactionalQueueElement> payloadConsumer = new FakeTransactionalQueueElementPayloadConsumer<>()
+            TransactionalQueue<TestPayload, TestTransactionalQueueElement, TestTransactionalQueueElementToEnqueue> transactionalQueue =
+                TransactionalQueueFactory.<TestPayload, TestTransactionalQueueElement, TestTransactionalQueueElementToEnqueue> factory()
+                    .withQueueName(queueName)
+                    .withClock(clock)
+                    .withMeterRegistry(new SimpleMeterRegistry())
+                    .withTransactionCreator(transactionCreator)
+                    .withQueuePayloadConsumer(payloadConsumer)
+                    .withQueueRepository(repository)
+                    .withQueueDeadLetterRepository(new TestTransactionalQueueDeadLetterRepository())
+                    .withApplicationEventPublisher(applicationEventPublisher)
+                    .withConfigurationProperties(TransactionalQueueConfigurationProperties.defaultConfiguration())
+                    .create()
+
+        when: "I enqueue an element without a transaction"
+            Result<TestTransactionalQueueElement, TransactionalQueueError<TestTransactionalQueueElementToEnqueue>> withoutTransaction =
+                transactionalQueue.enqueue(aTestTransactionalQueueElementToEnqueue())
+
+        then: "the enqueue fails because a transaction is mandatory"
+            Assertions.assertThat(withoutTransaction)
+                .isError()
+                .hasErrorThat()
+                .asInstanceOf(TransactionalQueueInstanceOfAssertFactory.transactionalQueueError(TestTransactionalQueueElementToEnqueue.class))
+                .hasType("open-transaction-error")
+
+        when: "I enqueue an element in a transaction and retry dispatch one second later"
+            TestTransactionalQueueElement element = transactionCreator.executeInTransaction {
+                transactionalQueue.enqueue(aTestTransactionalQueueElementToEnqueue()).discardError().get()
+            }
+            clock.nowIs(clock.instant() + Duration.ofSeconds(1))
+            transactionalQueue.retryDispatch()
+
+        then: "the locked element is published"
+            applicationEventPublisher.getPublishedEvents()*.id() == [element.id()]
+
+        when: "I dispatch the published element"
+            transactionalQueue.dispatch(applicationEventPublisher.getPublishedEvents().first() as TestTransactionalQueueElement)
+
+        then: "the payload is consumed and the element is removed"
+            payloadConsumer.count() == 1
+            repository.findById(element.id()).discardError().isEmpty()
+    }
+
+    private TestTransactionalQueueElement insert(Instant nextDispatchAfter) {
+        return repository.insert(aTestTransactionalQueueElementToEnqueue(), now, nextDispatchAfter).discardError().get()
+    }
+
+    private Collection<TestTransactionalQueueElement> lockForNextDispatch(int batchSize) {
+        return repository.lockForNextDispatch(batchSize, now, now + Duration.ofSeconds(10)).discardError().get()
+    }
+
+    private OpenedTransaction openNewTransaction() {
+        return transactionCreator.openTransaction(PROPAGATION_REQUIRES_NEW, queueName).discardError().get()
+    }
+}
@@ -0,0 +1,82 @@
+package io.chronoslabs.queue
+
+import spock.lang.Specification
+
+import java.util.concurrent.Callable
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicInteger
+
+class LazyPayloadSpec extends Specification {
+    AtomicInteger decodings = new AtomicInteger()
+
+    def "should decode the payload on first access only"() {
+        given:
+            LazyPayload<TestPayload> payload = LazyPayload.decoding("value1;value2", this::decode)
+
+        expect: "nothing is decoded until the payload is read, even when it is logged"
+            !payload.isDecoded()
+            payload.toString() == "LazyPayload[not decoded]"
+            decodings.get() == 0
+
+        when:
+            TestPayload first = payload.get()
+            TestPayload second = payload.get()
+
+        then:
+            first == new TestPayload("value1", "value2")
+            second.is(first)
+            payload.isDecoded()
+            decodings.get() == 1
+    }
+
+    def "should decode the payload once when it is read by several threads at a time"() {
+        given:
+            LazyPayload<TestPayload> payload = LazyPayload.decoding("value1;value2", this::decode)
+            CountDownLatch start = new CountDownLatch(1)
+            def executor = Executors.newFixedThreadPool(8)
+
+        when:
+            List<TestPayload> payloads = (1..8).collect {
+                executor.submit({ start.await(); payload.get() } as Callable<TestPayload>)
+            }.with { futures ->
+                start.countDown()
+                futures*.get()
+            }
+
+        then:
+            payloads.every { it.is(payloads[0]) }
+            decodings.get() == 1
+
+        cleanup:
+            executor.shutdownNow()
+    }
+
+    def "should try the decoding again after it failed"() {
+        given:
+            LazyPayload<TestPayload> payload = LazyPayload.decoding("malformed", this::decode)
+
+        when:
+            payload.get()
+
+        then:
+            thrown(IllegalArgumentException)
+            !payload.isDecoded()
+
+        when:
+            payload.get()
+
+        then:
+            thrown(IllegalArgumentException)
+            decodings.get() == 2
+    }
+
+    private TestPayload decode(String storedPayload) {
+        decodings.incrementAndGet()
+        String[] properties = storedPayload.split(";")
+        if (properties.length != 2) {
+            throw new IllegalArgumentException("Malformed payload: " + storedPayload)
+        }
+        return new TestPayload(properties[0], properties[1])
+    }
+}
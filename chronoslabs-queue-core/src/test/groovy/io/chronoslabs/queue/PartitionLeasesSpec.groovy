@@ -0,0 +1,153 @@
+package io.chronoslabs.queue
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import spock.lang.Specification
+
+import java.time.Duration
+import java.time.Instant
+
+class PartitionLeasesSpec extends Specification {
+    String queueName = "TestQueue"
+    Duration leaseDuration = Duration.ofSeconds(30)
+    UpdatableFixedClock clock = UpdatableFixedClock.defaultUpdatableFixedClock()
+    InMemoryPartitionLeaseRepository leaseRepository = new InMemoryPartitionLeaseRepository()
+
+    PartitionLeases nodeA = partitionLeases("node-a")
+    PartitionLeases nodeB = partitionLeases("node-b")
+
+    def "should lease all partitions to a single node"() {
+        when:
+            nodeA.refresh()
+
+        then:
+            nodeA.ownedPartitions() as List == (0..7)
+    }
+
+    def "should split the partitions evenly when another node joins"() {
+        given:
+            nodeA.refresh()
+
+        when: "the new node registers, the old one releases its excess and the new one claims it"
+            nodeB.refresh()
+            nodeA.refresh()
+            nodeB.refresh()
+
+        then:
+            nodeA.ownedPartitions().length == 4
+            nodeB.ownedPartitions().length == 4
+            (nodeA.ownedPartitions().toList() + nodeB.ownedPartitions().toList()).sort() == (0..7)
+    }
+
+    def "should take over the partitions of a node within one lease duration after its last heartbeat"() {
+        given:
+            balance()
+
+        when: "node A stops sending heartbeats"
+            clock.nowIs(UpdatableFixedClock.DEFAULT_FIXED_TIME + leaseDuration)
+            nodeB.refresh()
+
+        then:
+            nodeB.ownedPartitions() as List == (0..7)
+
+        and: "node A no longer locks the partitions it failed to renew"
+            nodeA.ownedPartitions().length == 0
+    }
+
+    def "should hand the partitions over immediately when a node releases them"() {
+        given:
+            balance()
+
+        when:
+            nodeA.releaseAll()
+            nodeB.refresh()
+
+        then:
+            nodeA.ownedPartitions().length == 0
+            nodeB.ownedPartitions() as List == (0..7)
+    }
+
+    def "should lock only the elements of the leased partitions"() {
+        given:
+            Instant now = UpdatableFixedClock.DEFAULT_FIXED_TIME
+            TestTransactionalQueueElementRepository repository = new TestTransactionalQueueElementRepository(queueName)
+            (1..16).each {
+                repository.insert(new TestTransactionalQueueElementToEnqueue(new TestPayload("element-$it", "value")), now, now)
+            }
+            LeasedPartitionsTransactionalQueueElementRepository<TestPayload, TestTransactionalQueueElement, TestTransactionalQueueElementToEnqueue> leasedRepository =
+                new LeasedPartitionsTransactionalQueueElementRepository<>(repository, nodeA)
+
+        expect: "nothing is locked before the node leases any partition"
+            lock(leasedRepository, now).isEmpty()
+
+        when:
+            balance()
+            Collection<TestTransactionalQueueElement> locked = lock(leasedRepository, now)
+
+        then:
+            locked.size() == 8
+            locked*.id().collect { (int) (it % 8) }.toSet() == nodeA.ownedPartitions().toList().toSet()
+    }
+
+    def "should release the locks of elements through the delegate"() {
+        given:
+            Instant now = UpdatableFixedClock.DEFAULT_FIXED_TIME
+            TestTransactionalQueueElementRepository repository = new TestTransactionalQueueElementRepository(queueName)
+            (1..8).each {
+                repository.insert(new TestTransactionalQueueElementToEnqueue(new TestPayload("element-$it", "value")), now, now)
+            }
+            LeasedPartitionsTransactionalQueueElementRepository<TestPayload, TestTransactionalQueueElement, TestTransactionalQueueElementToEnqueue> leasedRepository =
+                new LeasedPartitionsTransactionalQueueElementRepository<>(repository, nodeA)
+            nodeA.refresh()
+            Collection<TestTransactionalQueueElement> locked = lock(leasedRepository, now)
+
+        when:
+            int released = leasedRepository.releaseLocks(locked, Duration.ofSeconds(10)).discardError().get()
+
+        then: "the elements are due again"
+            released == 8
+            lock(leasedRepository, now).size() == 8
+    }
+
+    def "should reject delayed dispatch, which cannot be limited to the leased partitions"() {
+        when:
+            TransactionalQueueFactory.<TestPayload, TestTransactionalQueueElement, TestTransactionalQueueElementToEnqueue> factory()
+                .withQueueName(queueName)
+                .withClock(clock)
+                .withMeterRegistry(new SimpleMeterRegistry())
+                .withTransactionCreator(new FakeTransactionCreator())
+                .withQueuePayloadConsumer(new FakeTransactionalQueueElementPayloadConsumer<TestTransactionalQueueElement>())
+                .withQueueRepository(new LeasedPartitionsTransactionalQueueElementRepository<>(new TestTransactionalQueueElementRepository(queueName), nodeA))
+                .withQueueDeadLetterRepository(new TestTransactionalQueueDeadLetterRepository())
+                .withApplicationEventPublisher(new FakeTransactionalQueueApplicationEventPublisher())
+                .withConfigurationProperties(TransactionalQueueConfigurationProperties.builder()
+                    .withLockTimeout(Duration.ofSeconds(10))
+                    .withMaxDispatchCount(3)
+                    .withRetryDispatchBatchSize(10)
+                    .withRetryScheduledRateDelay(Duration.ofMillis(100))
+                    .withDelayedDispatchLookAhead(Duration.ofSeconds(1))
+                    .build())
+                .create()
+
+        then:
+            IllegalArgumentException exception = thrown()
+            exception.message.contains("requires a repository implementing DelayedTransactionalQueueElementRepository")
+    }
+
+    private void balance() {
+        nodeA.refresh()
+        nodeB.refresh()
+        nodeA.refresh()
+        nodeB.refresh()
+    }
+
+    private static Collection<TestTransactionalQueueElement> lock(
+        LeasedPartitionsTransactionalQueueElementRepository<TestPayload, TestTransactionalQueueElement, TestTransactionalQueueElementToEnqueue> repository,
+        Instant now) {
+        return repository.lockForNextDispatch(16, now + Duration.ofSeconds(1), now + Duration.ofSeconds(10)).discardError().get()
+    }
+
+    private PartitionLeases partitionLeases(String nodeId) {
+        return new PartitionLeases(queueName, nodeId, 8, leaseDuration, clock, new SimpleMeterRegistry(),
+            new FakeTransactionCreator(), leaseRepository)
+    }
+}
@@ -0,0 +1,56 @@
+package io.chronoslabs.queue
+
+import spock.lang.Specification
+
+import java.time.Duration
+
+class QueueSimulationSpec extends Specification {
+
+    def "should report the same outcome for the same seed"() {
+        given: "nodes with slow consumers, crashes and skewed clocks"
+            QueueSimulation.Builder builder = QueueSimulation.builder()
+                .withSeed(42)
+                .withNodeCount(3)
+                .withElementCount(300)
+                .withLockTimeout(Duration.ofSeconds(1))
+                .withSlowConsumers(0.05, Duration.ofSeconds(2))
+                .withCrashes(0.01, Duration.ofSeconds(1))
+                .withMaxClockSkew(Duration.ofMillis(50))
+
+        when: "the simulation runs twice"
+            SimulationReport first = builder.build().run()
+            SimulationReport second = builder.build().run()
+
+        then: "both runs consume every element with the same outcome"
+            first.isDrained()
+            first == second
+    }
+
+    def "should redeliver elements whose lock expired without consuming them twice unless a node crashed"() {
+        given: "consumers slower than the lock timeout on nodes which never crash"
+            QueueSimulation.Builder builder = QueueSimulation.builder()
+                .withSeed(7)
+                .withElementCount(200)
+                .withLockTimeout(Duration.ofMillis(500))
+                .withMaxDispatchCount(100)
+                .withBatchSize(20)
+                .withWorkersPerNode(2)
+                .withConsumerDuration(Duration.ofMillis(40), Duration.ofMillis(60))
+
+        when: "it runs with one and with four nodes"
+            List<SimulationReport> reports = builder.runForNodeCounts(1, 4)
+
+        then: "there is one report per node count"
+            reports*.nodeCount() == [1, 4]
+
+        and: "published elements waiting longer than the lock timeout were locked again and discarded by the delete guard"
+            reports.every { it.isDrained() && it.lockExpiryRedeliveries() > 0 && it.staleDispatches() > 0 }
+
+        and: "no element was consumed twice, since the dispatching row stays locked"
+            reports.every { it.duplicateConsumptions() == 0 && it.consumerInvocations() == 200 }
+
+        and: "more nodes drain the queue faster, with every node taking part"
+            reports[1].throughputPerSecond() > reports[0].throughputPerSecond()
+            reports[1].starvedNodes() == 0
+    }
+}
@@ -0,0 +1,64 @@
+package io.chronoslabs.queue
+
+import org.slf4j.Marker
+import org.slf4j.event.Level
+import org.slf4j.helpers.AbstractLogger
+import org.slf4j.helpers.MessageFormatter
+
+class RecordingLogger extends AbstractLogger {
+    final List<LoggedEvent> events = []
+
+    RecordingLogger(String name = "RecordingLogger") {
+        this.name = name
+    }
+
+    List<LoggedEvent> events(Level level) {
+        return events.findAll { it.level() == level }
+    }
+
+    void reset() {
+        events.clear()
+    }
+
+    @Override
+    protected String getFullyQualifiedCallerName() {
+        return null
+    }
+
+    @Override
+    protected void handleNormalizedLoggingCall(Level level, Marker marker, String messagePattern, Object[] arguments, Throwable throwable) {
+        events.add(new LoggedEvent(level, MessageFormatter.basicArrayFormat(messagePattern, arguments), throwable))
+    }
+
+    @Override
+    boolean isTraceEnabled() { true }
+
+    @Override
+    boolean isTraceEnabled(Marker marker) { true }
+
+    @Override
+    boolean isDebugEnabled() { true }
+
+    @Override
+    boolean isDebugEnabled(Marker marker) { true }
+
+    @Override
+    boolean isInfoEnabled() { true }
+
+    @Override
+    boolean isInfoEnabled(Marker marker) { true }
+
+    @Override
+    boolean isWarnEnabled() { true }
+
+    @Override
+    boolean isWarnEnabled(Marker marker) { true }
+
+    @Override
+    boolean isErrorEnabled() { true }
+
+    @Override
+    boolean isErrorEnabled(Marker marker) { true }
+
+    record LoggedEvent(Level level, String message, Throwable throwable) {}
+}
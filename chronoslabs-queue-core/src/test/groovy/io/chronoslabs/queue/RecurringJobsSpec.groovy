@@ -0,0 +1,253 @@
+package io.chronoslabs.queue
+
+import com.github.sviperll.result4j.Result
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import spock.lang.Specification
+
+import java.time.Duration
+import java.time.Instant
+import java.time.ZoneId
+
+class RecurringJobsSpec extends Specification {
+    String queueName = "TestQueue"
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry()
+    UpdatableFixedClock clock = UpdatableFixedClock.defaultUpdatableFixedClock()
+    TestTransactionalQueueElementRepository repository = new TestTransactionalQueueElementRepository(queueName)
+    FakeTransactionalQueueElementPayloadConsumer<TestTransactionalQueueElement> delegate = new FakeTransactionalQueueElementPayloadConsumer<>()
+    FakeTransactionalQueueElementPayloadConsumer<TestTransactionalQueueElement> jobConsumer = new FakeTransactionalQueueElementPayloadConsumer<>()
+    InMemoryRecurringJobRegistry registry = new InMemoryRecurringJobRegistry()
+
+    def "should find the next occurrence of a cron expression"() {
+        expect:
+            RecurringSchedule.cron(expression).nextOccurrenceAfter(Instant.parse(after)) == Instant.parse(next)
+
+        where:
+            expression               | after                  || next
+            "*/15 9-17 * * MON-FRI"  | "2025-04-25T17:50:00Z" || "2025-04-28T09:00:00Z"
+            "0 0 29 2 *"             | "2025-01-01T00:00:00Z" || "2028-02-29T00:00:00Z"
+            "30 2 1,15 * 5"          | "2025-04-25T12:00:00Z" || "2025-05-01T02:30:00Z"
+            "0 12 * JAN-MAR/2 SUN"   | "2025-02-01T00:00:00Z" || "2025-03-02T12:00:00Z"
+            "@hourly"                | "2025-04-25T12:00:00Z" || "2025-04-25T13:00:00Z"
+    }
+
+    def "should shift an occurrence skipped when DST starts forward by the gap"() {
+        given: "a daily schedule at 02:30 in a zone which skips 02:00-03:00 on 2025-03-30"
+            RecurringSchedule schedule = RecurringSchedule.cron("30 2 * * *", ZoneId.of("Europe/Warsaw"))
+
+        expect: "the skipped 02:30 occurs at 03:30 CEST instead of not at all"
+            schedule.nextOccurrenceAfter(Instant.parse(after)) == Instant.parse(next)
+
+        where:
+            after                  || next
+            "2025-03-29T12:00:00Z" || "2025-03-30T01:30:00Z"
+            "2025-03-30T01:30:00Z" || "2025-03-31T00:30:00Z"
+    }
+
+    def "should not fire a time repeated when DST ends twice"() {
+        given: "a zone which repeats 02:00-03:00 on 2025-10-26, first in CEST, then in CET"
+            RecurringSchedule schedule = RecurringSchedule.cron(expression, ZoneId.of("Europe/Warsaw"))
+
+        expect: "the repeated time occurs once, at its earlier offset"
+            schedule.nextOccurrenceAfter(Instant.parse(after)) == Instant.parse(next)
+
+        where:
+            expression     | after                  || next
+            "30 2 * * *"   | "2025-10-25T12:00:00Z" || "2025-10-26T00:30:00Z"
+            "30 2 * * *"   | "2025-10-26T00:30:00Z" || "2025-10-27T01:30:00Z"
+            "30 2 * * *"   | "2025-10-26T01:10:00Z" || "2025-10-27T01:30:00Z"
+            "30 1-3 * * *" | "2025-10-26T00:30:00Z" || "2025-10-26T02:30:00Z"
+    }
+
+    def "should keep a schedule of every hour on elapsed time across DST"() {
+        given: "a half hourly schedule in a zone which skips 02:00-03:00 on 2025-03-30 and repeats it on 2025-10-26"
+            RecurringSchedule schedule = RecurringSchedule.cron("*/30 * * * *", ZoneId.of("Europe/Warsaw"))
+
+        expect: "it occurs every 30 minutes of elapsed time"
+            schedule.nextOccurrenceAfter(Instant.parse(after)) == Instant.parse(next)
+
+        where:
+            after                  || next
+            "2025-03-30T00:30:00Z" || "2025-03-30T01:00:00Z"
+            "2025-10-26T00:30:00Z" || "2025-10-26T01:00:00Z"
+            "2025-10-26T01:00:00Z" || "2025-10-26T01:30:00Z"
+            "2025-10-26T01:30:00Z" || "2025-10-26T02:00:00Z"
+    }
+
+    def "should reject an invalid cron expression"() {
+        when:
+            RecurringSchedule.cron(expression)
+
+        then:
+            thrown(IllegalArgumentException)
+
+        where:
+            expression << ["* * * *", "61 * * * *", "0 0 31 2 *", "x * * * *", "*/0 * * * *"]
+    }
+
+    def "should align a fixed rate schedule to the epoch"() {
+        expect:
+            RecurringSchedule.fixedRate(Duration.ofMinutes(5)).nextOccurrenceAfter(Instant.parse(after)) == Instant.parse(next)
+
+        where:
+            after                  || next
+            "2025-04-25T12:03:10Z" || "2025-04-25T12:05:00Z"
+            "2025-04-25T12:05:00Z" || "2025-04-25T12:10:00Z"
+    }
+
+    def "should enqueue the first occurrence of every job once"() {
+        given:
+            clock.nowIs("2025-04-25T12:03:00Z")
+            RecurringJobs<TestPayload, TestTransactionalQueueElement, TestTransactionalQueueElementToEnqueue> recurringJobs = aQueue(aJob())
+
+        when: "the jobs are scheduled on two starts"
+            List<TestTransactionalQueueElement> first = recurringJobs.scheduleJobs().discardError().get()
+            List<TestTransactionalQueueElement> second = recurringJobs.scheduleJobs().discardError().get()
+
+        then:
+            first.size() == 1
+            first[0].nextDispatchAfter() == Instant.parse("2025-04-25T12:05:00Z")
+            occurrenceOf(first[0]) == new RecurringJobOccurrence("report", Instant.parse("2025-04-25T12:05:00Z"))
+            second.isEmpty()
+            repository.count() == 1
+    }
+
+    def "should run the occurrence and enqueue the next one in the same dispatch"() {
+        given:
+            clock.nowIs("2025-04-25T12:03:00Z")
+            TransactionalQueue<TestPayload, TestTransactionalQueueElement, TestTransactionalQueueElementToEnqueue> queue
+            RecurringJobs<TestPayload, TestTransactionalQueueElement, TestTransactionalQueueElementToEnqueue> recurringJobs = aQueue(aJob()) { queue = it }
+            TestTransactionalQueueElement occurrence = recurringJobs.scheduleJobs().discardError().get()[0]
+            TestTransactionalQueueElement other = queue.enqueue(new TestTransactionalQueueElementToEnqueue(new TestPayload("other", "value"))).discardError().get()
+
+        when: "the occurrence is dispatched at its time, and another element"
+            clock.nowIs("2025-04-25T12:05:00Z")
+            queue.dispatch(occurrence)
+            queue.dispatch(other)
+
+        then: "the job ran the occurrence and the delegate got the other element"
+            jobConsumer.consumedPayloads() == [occurrence.payload()]
+            delegate.consumedPayloads() == [other.payload()]
+
+        and: "the next occurrence is the only element left"
+            repository.count() == 1
+            TestTransactionalQueueElement next = repository.findById(other.id() + 1).discardError().get()
+            occurrenceOf(next) == new RecurringJobOccurrence("report", Instant.parse("2025-04-25T12:10:00Z"))
+            next.nextDispatchAfter() == Instant.parse("2025-04-25T12:10:00Z")
+    }
+
+    def "should not enqueue the next occurrence when the run fails"() {
+        given:
+            clock.nowIs("2025-04-25T12:03:00Z")
+            RecurringJobs<TestPayload, TestTransactionalQueueElement, TestTransactionalQueueElementToEnqueue> recurringJobs = aQueue(aJob())
+            TestTransactionalQueueElement occurrence = recurringJobs.scheduleJobs().discardError().get()[0]
+            jobConsumer.consumeElementPayloadWillReturnError(TransactionalQueueError.<TestTransactionalQueueElement> builder(queueName)
+                .withElement(occurrence)
+                .withType("job-error")
+                .build())
+
+        when:
+            clock.nowIs("2025-04-25T12:05:00Z")
+            Result<TestTransactionalQueueElement, TransactionalQueueError<TestTransactionalQueueElement>> result = recurringJobs.consumeElementPayload(occurrence)
+
+        then:
+            result.discardSuccess().get().type() == "job-error"
+            repository.count() == 1
+    }
+
+    def "should apply the misfire policy to an occurrence dispatched after a downtime, without catching up the missed ones"() {
+        given:
+            clock.nowIs("2025-04-25T12:03:00Z")
+            RecurringJobs<TestPayload, TestTransactionalQueueElement, TestTransactionalQueueElementToEnqueue> recurringJobs =
+                aQueue(aJob().withMisfirePolicy(misfirePolicy).build())
+            TestTransactionalQueueElement occurrence = recurringJobs.scheduleJobs().discardError().get()[0]
+
+        when: "the occurrence is dispatched an hour late"
+            clock.nowIs("2025-04-25T13:07:00Z")
+            recurringJobs.consumeElementPayload(occurrence)
+
+        then:
+            jobConsumer.count() == runs
+            meterRegistry.get("TransactionalQueue.recurringJobMisfire").tag("misfire-policy", misfirePolicy.name()).counter().count() == 1
+
+        and: "the next occurrence is the first one after the current time"
+            occurrenceOf(repository.findById(occurrence.id() + 1).discardError().get()).scheduledAt() == Instant.parse("2025-04-25T13:10:00Z")
+
+        where:
+            misfirePolicy           || runs
+            MisfirePolicy.RUN_ONCE  || 1
+            MisfirePolicy.SKIP      || 0
+    }
+
+    def "should drop an occurrence of a job which is no longer defined"() {
+        given:
+            RecurringJobs<TestPayload, TestTransactionalQueueElement, TestTransactionalQueueElementToEnqueue> recurringJobs = aQueue(aJob())
+            TestTransactionalQueueElement occurrence = TestTransactionalQueueElement.builder()
+                .withId(42)
+                .withPayload(new TestPayload("recurring:removed", "2025-04-25T12:05:00Z"))
+                .build()
+
+        when:
+            Result<TestTransactionalQueueElement, TransactionalQueueError<TestTransactionalQueueElement>> result = recurringJobs.consumeElementPayload(occurrence)
+
+        then:
+            result.discardError().get() == occurrence
+            jobConsumer.count() == 0
+            delegate.count() == 0
+            repository.isEmpty()
+    }
+
+    private RecurringJob.Builder<TestTransactionalQueueElement> aJob() {
+        return RecurringJob.<TestTransactionalQueueElement> builder("report")
+            .withSchedule(RecurringSchedule.fixedRate(Duration.ofMinutes(5)))
+            .withConsumer(jobConsumer)
+    }
+
+    private RecurringJobs<TestPayload, TestTransactionalQueueElement, TestTransactionalQueueElementToEnqueue> aQueue(
+        RecurringJob.Builder<TestTransactionalQueueElement> job, Closure queueCallback = {}) {
+        return aQueue(job.build(), queueCallback)
+    }
+
+    private RecurringJobs<TestPayload, TestTransactionalQueueElement, TestTransactionalQueueElementToEnqueue> aQueue(
+        RecurringJob<TestTransactionalQueueElement> job, Closure queueCallback = {}) {
+        RecurringJobs<TestPayload, TestTransactionalQueueElement, TestTransactionalQueueElementToEnqueue> recurringJobs =
+            new RecurringJobs<>(queueName, new TestOccurrences(), registry, [job], delegate)
+        TransactionalQueue<TestPayload, TestTransactionalQueueElement, TestTransactionalQueueElementToEnqueue> queue =
+            TransactionalQueueFactory.<TestPayload, TestTransactionalQueueElement, TestTransactionalQueueElementToEnqueue> factory()
+                .withQueueName(queueName)
+                .withClock(clock)
+                .withMeterRegistry(meterRegistry)
+                .withTransactionCreator(new FakeTransactionCreator())
+                .withRecurringJobs(recurringJobs)
+                .withQueueRepository(repository)
+                .withQueueDeadLetterRepository(new TestTransactionalQueueDeadLetterRepository())
+                .withApplicationEventPublisher(new FakeTransactionalQueueApplicationEventPublisher())
+                .withConfigurationProperties(TransactionalQueueConfigurationProperties.defaultConfiguration())
+                .create()
+        queueCallback.call(queue)
+        return recurringJobs
+    }
+
+    private static RecurringJobOccurrence occurrenceOf(TestTransactionalQueueElement element) {
+        return new TestOccurrences().occurrenceOf(element)
+    }
+
+    private static class TestOccurrences
+        implements RecurringJobOccurrences<TestPayload, TestTransactionalQueueElement, TestTransactionalQueueElementToEnqueue> {
+        private static final String PREFIX = "recurring:"
+
+        @Override
+        TestTransactionalQueueElementToEnqueue toEnqueue(RecurringJobOccurrence occurrence, Duration dispatchDelay) {
+            return new TestTransactionalQueueElementToEnqueue(
+                new TestPayload(PREFIX + occurrence.jobName(), occurrence.scheduledAt().toString()), dispatchDelay)
+        }
+
+        @Override
+        RecurringJobOccurrence occurrenceOf(TestTransactionalQueueElement element) {
+            String property = element.payload().payloadProperty1()
+            if (!property.startsWith(PREFIX)) {
+                return null
+            }
+            return new RecurringJobOccurrence(property.substring(PREFIX.length()), Instant.parse(element.payload().payloadProperty2()))
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package io.chronoslabs.queue
+
+import com.github.sviperll.result4j.Result
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import spock.lang.Specification
+
+import java.time.Duration
+import java.time.Instant
+
+class ShardedTransactionalQueueElementRepositorySpec extends Specification {
+    String queueName = "TestQueue"
+    Instant now = Instant.parse("2025-04-25T12:00:00Z")
+    List<TestTransactionalQueueElementRepository> shards = [
+        new TestTransactionalQueueElementRepository(queueName, 3, 3),
+        new TestTransactionalQueueElementRepository(queueName, 1, 3),
+        new TestTransactionalQueueElementRepository(queueName, 2, 3),
+    ]
+
+    def "should spread elements over the shards in turn and route them back by id"() {
+        given:
+            ShardedTransactionalQueueElementRepository<TestPayload, TestTransactionalQueueElement, TestTransactionalQueueElementToEnqueue> repository =
+                new ShardedTransactionalQueueElementRepository<>(queueName, shards, ShardSelector.roundRobin())
+
+        when: "six elements are inserted"
+            List<TestTransactionalQueueElement> elements = (1..6).collect { insert(repository, "element-$it") }
+
+        then: "every shard holds two of them"
+            shards*.count() == [2, 2, 2]
+
+        and: "each element is found in and deleted from its own shard"
+            elements.every { repository.findById(it.id()).discardError().get() == it }
+            elements.every { !Results.isError(repository.delete(it)) }
+            shards.every { it.isEmpty() }
+    }
+
+    def "should put elements with equal keys into the same shard"() {
+        given:
+            ShardedTransactionalQueueElementRepository<TestPayload, TestTransactionalQueueElement, TestTransactionalQueueElementToEnqueue> repository =
+                new ShardedTransactionalQueueElementRepository<>(queueName, shards, ShardSelector.byKey { it.payload().payloadProperty1() })
+
+        when:
+            (1..5).each { insert(repository, "customer-42") }
+
+        then:
+            shards*.count().sort() == [0, 0, 5]
+    }
+
+    def "should fill the batch from the following shards, starting at a different shard on every call"() {
+        given: "a repository with two due elements in every shard"
+            ShardedTransactionalQueueElementRepository<TestPayload, TestTransactionalQueueElement, TestTransactionalQueueElementToEnqueue> repository =
+                new ShardedTransactionalQueueElementRepository<>(queueName, shards, ShardSelector.roundRobin())
+            (1..6).each { insert(repository, "element-$it") }
+
+        when: "three elements are locked twice"
+            Collection<TestTransactionalQueueElement> first = lock(repository, 3)
+            Collection<TestTransactionalQueueElement> second = lock(repository, 3)
+
+        then: "each batch is full and spans two shards"
+            first.size() == 3
+            second.size() == 3
+            first*.id().collect { it % 3 }.unique().size() == 2
+            second*.id().collect { it % 3 }.unique().size() == 2
+
+        and: "the second batch starts at the shard after the first one"
+            shardOf(second.first()) == (shardOf(first.first()) + 1) % 3
+
+        and: "all six elements were locked once"
+            (first + second)*.id().toSet().size() == 6
+    }
+
+    def "should return the elements locked in the other shards when a shard fails to lock"() {
+        given: "a repository with one due element in every shard, one of which fails to lock"
+            ShardedTransactionalQueueElementRepository<TestPayload, TestTransactionalQueueElement, TestTransactionalQueueElementToEnqueue> repository =
+                new ShardedTransactionalQueueElementRepository<>(queueName, shards, ShardSelector.roundRobin())
+            (1..3).each { insert(repository, "element-$it") }
+            shards[1].willReturnError("lockForNextDispatch", lockError())
+
+        when:
+            Collection<TestTransactionalQueueElement> locked = lock(repository, 3)
+
+        then: "the batch holds the elements of the two other shards, whichever shard was visited first"
+            locked.size() == 2
+            locked.collect { shardOf(it) }.toSet() == [0, 2].toSet()
+    }
+
+    def "should return the error of a shard when no shard locked any element"() {
+        given: "a repository whose only due element is in a shard failing to lock"
+            ShardedTransactionalQueueElementRepository<TestPayload, TestTransactionalQueueElement, TestTransactionalQueueElementToEnqueue> repository =
+                new ShardedTransactionalQueueElementRepository<>(queueName, shards, { element, shardCount -> 1 } as ShardSelector<TestTransactionalQueueElementToEnqueue>)
+            insert(repository, "element")
+            shards[1].willReturnError("lockForNextDispatch", lockError())
+
+        when:
+            Result<Collection<TestTransactionalQueueElement>, TransactionalQueueError<String>> result =
+                repository.lockForNextDispatch(3, now + Duration.ofSeconds(1), now + Duration.ofSeconds(10))
+
+        then:
+            result.discardSuccess().get().type() == "retry-dispatch-lock-error"
+    }
+
+    def "should return an error when a shard generates an id of another shard"() {
+        given:
+            ShardedTransactionalQueueElementRepository<TestPayload, TestTransactionalQueueElement, TestTransactionalQueueElementToEnqueue> repository =
+                new ShardedTransactionalQueueElementRepository<>(queueName,
+                    [new TestTransactionalQueueElementRepository(queueName), new TestTransactionalQueueElementRepository(queueName)],
+                    { element, shardCount -> 0 } as ShardSelector<TestTransactionalQueueElementToEnqueue>)
+
+        when:
+            Result<TestTransactionalQueueElement, TransactionalQueueError<TestTransactionalQueueElementToEnqueue>> result =
+                repository.insert(elementToEnqueue("element"), now, now)
+
+        then:
+            result.discardSuccess().get().type() == "shard-id-mismatch"
+    }
+
+    def "should deduplicate and collapse elements within the shard of their key"() {
+        given:
+            ShardedTransactionalQueueElementRepository<TestPayload, TestTransactionalQueueElement, TestTransactionalQueueElementToEnqueue> repository =
+                new ShardedTransactionalQueueElementRepository<>(queueName, shards, ShardSelector.byKey { it.idempotencyKey() ?: it.collapseKey() })
+            TestTransactionalQueueElement inserted = repository.insertUnlessDuplicate(withIdempotencyKey("order-1"), now, now, [:], null).discardError().get().get()
+            TestTransactionalQueueElement pending = repository.insertOrCollapse(withCollapseKey("customer-1"), now, now, [:]).discardError().get().element()
+
+        when:
+            Optional<TestTransactionalQueueElement> duplicateInsert = repository.insertUnlessDuplicate(withIdempotencyKey("order-1"), now, now, [:], null).discardError().get()
+            CollapsingTransactionalQueueElementRepository.CollapsedElement<TestTransactionalQueueElement> replacement = repository.insertOrCollapse(withCollapseKey("customer-1"), now, now, [:]).discardError().get()
+
+        then: "the duplicate is found in the shard of its key"
+            duplicateInsert.isEmpty()
+            repository.findDuplicate(withIdempotencyKey("order-1"), null).discardError().get() == Optional.of(inserted)
+
+        and: "the pending element is replaced in the shard of its key"
+            replacement.collapsed()
+            shardOf(replacement.element()) == shardOf(pending)
+            shards*.count().sum() == 2
+    }
+
+    def "should release the locks and delete the expired elements of every shard"() {
+        given: "a repository with one expiring element in every shard, all locked"
+            ShardedTransactionalQueueElementRepository<TestPayload, TestTransactionalQueueElement, TestTransactionalQueueElementToEnqueue> repository =
+                new ShardedTransactionalQueueElementRepository<>(queueName, shards, ShardSelector.roundRobin())
+            (1..3).each { repository.insert(new TestTransactionalQueueElementToEnqueue(new TestPayload("element-$it", "value"), Duration.ZERO, null, null, Duration.ofMinutes(1)), now, now) }
+            Collection<TestTransactionalQueueElement> locked = lock(repository, 3)
+
+        when: "the locks are released"
+            int released = repository.releaseLocks(locked, Duration.ofSeconds(10)).discardError().get()
+
+        then: "each shard released its element"
+            released == 3
+            lock(repository, 3).size() == 3
+
+        when: "the elements have expired and are deleted in batches of two"
+            Instant later = now + Duration.ofMinutes(10)
+            int firstBatch = repository.deleteExpired(2, later).discardError().get()
+            Collection<TestTransactionalQueueElement> secondBatch = repository.deleteExpiredReturning(2, later).discardError().get()
+
+        then: "the batches span the shards"
+            firstBatch == 2
+            secondBatch.size() == 1
+            shards.every { it.isEmpty() }
+    }
+
+    def "should reject an element with an idempotency key routed to a shard which cannot enforce it"() {
+        given:
+            TestTransactionalQueueElementRepository idempotentShard = new TestTransactionalQueueElementRepository(queueName, 2, 2)
+            TransactionalQueueElementRepository<TestPayload, TestTransactionalQueueElement, TestTransactionalQueueElementToEnqueue> plainShard =
+                [insert: { elementToEnqueue, createdAt, nextDispatchAfter -> idempotentShard.insert(elementToEnqueue, createdAt, nextDispatchAfter) }] as TransactionalQueueElementRepository
+            ShardedTransactionalQueueElementRepository<TestPayload, TestTransactionalQueueElement, TestTransactionalQueueElementToEnqueue> repository =
+                new ShardedTransactionalQueueElementRepository<>(queueName, [idempotentShard, plainShard], { element, shardCount -> 1 } as ShardSelector<TestTransactionalQueueElementToEnqueue>)
+
+        when:
+            Result<Optional<TestTransactionalQueueElement>, TransactionalQueueError<TestTransactionalQueueElementToEnqueue>> result =
+                repository.insertUnlessDuplicate(withIdempotencyKey("order-1"), now, now, [:], null)
+
+        then:
+            result.discardSuccess().get().type() == "idempotency-not-supported"
+            idempotentShard.isEmpty()
+    }
+
+    def "should dispatch a queue created with shards through the factory"() {
+        given:
+            FakeTransactionalQueueElementPayloadConsumer<TestTransactionalQueueElement> consumer = new FakeTransactionalQueueElementPayloadConsumer<>()
+            UpdatableFixedClock clock = UpdatableFixedClock.defaultUpdatableFixedClock()
+            clock.nowIs("2025-04-25T12:00:00Z")
+            TransactionalQueueFactory<TestPayload, TestTransactionalQueueElement, TestTransactionalQueueElementToEnqueue> factory =
+                TransactionalQueueFactory.<TestPayload, TestTransactionalQueueElement, TestTransactionalQueueElementToEnqueue> factory()
+                    .withQueueName(queueName)
+                    .withClock(clock)
+                    .withMeterRegistry(new SimpleMeterRegistry())
+                    .withTransactionCreator(new FakeTransactionCreator())
+                    .withQueuePayloadConsumer(consumer)
+                    .withQueueRepositoryShards(shards, ShardSelector.roundRobin())
+                    .withQueueDeadLetterRepository(new TestTransactionalQueueDeadLetterRepository())
+                    .withApplicationEventPublisher(new FakeTransactionalQueueApplicationEventPublisher())
+                    .withConfigurationProperties(TransactionalQueueConfigurationProperties.defaultConfiguration())
+            TransactionalQueue<TestPayload, TestTransactionalQueueElement, TestTransactionalQueueElementToEnqueue> queue = factory.create()
+
+        when: "three elements are enqueued and dispatched"
+            List<TestTransactionalQueueElement> elements = (1..3).collect { queue.enqueue(elementToEnqueue("element-$it")).discardError().get() }
+            elements.each { queue.dispatch(it) }
+
+        then: "each shard received and released one element"
+            consumer.count() == 3
+            shards.every { it.isEmpty() }
+            elements*.id().collect { it % 3 }.toSet() == [0L, 1L, 2L].toSet()
+    }
+
+    private TestTransactionalQueueElement insert(
+        ShardedTransactionalQueueElementRepository<TestPayload, TestTransactionalQueueElement, TestTransactionalQueueElementToEnqueue> repository,
+        String key) {
+        return repository.insert(elementToEnqueue(key), now, now).discardError().get()
+    }
+
+    private Collection<TestTransactionalQueueElement> lock(
+        ShardedTransactionalQueueElementRepository<TestPayload, TestTransactionalQueueElement, TestTransactionalQueueElementToEnqueue> repository,
+        int batchSize) {
+        return repository.lockForNextDispatch(batchSize, now + Duration.ofSeconds(1), now + Duration.ofSeconds(10)).discardError().get()
+    }
+
+    private static int shardOf(TestTransactionalQueueElement element) {
+        return (int) (element.id() % 3)
+    }
+
+    private TransactionalQueueError<String> lockError() {
+        return TransactionalQueueError.<String> builder(queueName)
+            .withElement(queueName)
+            .withMessage("Failed to lock TestQueue Elements for retry dispatch.")
+            .withType("retry-dispatch-lock-error")
+            .build()
+    }
+
+    private static TestTransactionalQueueElementToEnqueue withIdempotencyKey(String idempotencyKey) {
+        return new TestTransactionalQueueElementToEnqueue(new TestPayload(idempotencyKey, "value"), Duration.ZERO, idempotencyKey)
+    }
+
+    private static TestTransactionalQueueElementToEnqueue withCollapseKey(String collapseKey) {
+        return new TestTransactionalQueueElementToEnqueue(new TestPayload(collapseKey, "value"), Duration.ZERO, null, collapseKey)
+    }
+
+    private static TestTransactionalQueueElementToEnqueue elementToEnqueue(String key) {
+        return new TestTransactionalQueueElementToEnqueue(new TestPayload(key, "value"))
+    }
+}
@@ -0,0 +1,53 @@
+package io.chronoslabs.queue
+
+import io.micrometer.observation.Observation
+import io.micrometer.observation.ObservationHandler
+import io.micrometer.observation.transport.ReceiverContext
+import io.micrometer.observation.transport.SenderContext
+
+import java.util.concurrent.ConcurrentLinkedDeque
+
+class TestObservationHandler implements ObservationHandler<Observation.Context> {
+    static final String TRACE_CONTEXT_KEY = "traceparent"
+
+    private final Deque<Observation.Context> stoppedContexts = new ConcurrentLinkedDeque<>()
+    private final Deque<String> receivedTraceContexts = new ConcurrentLinkedDeque<>()
+
+    @Override
+    void onStart(Observation.Context context) {
+        if (context instanceof SenderContext) {
+            SenderContext<Object> senderContext = context as SenderContext<Object>
+            senderContext.getSetter().set(senderContext.getCarrier(), TRACE_CONTEXT_KEY, "trace-of-${context.getName()}")
+        }
+        if (context instanceof ReceiverContext) {
+            ReceiverContext<Object> receiverContext = context as ReceiverContext<Object>
+            String traceContext = receiverContext.getGetter().get(receiverContext.getCarrier(), TRACE_CONTEXT_KEY)
+            if (traceContext != null) {
+                receivedTraceContexts.add(traceContext)
+            }
+        }
+    }
+
+    @Override
+    void onStop(Observation.Context context) {
+        stoppedContexts.add(context)
+    }
+
+    @Override
+    boolean supportsContext(Observation.Context context) {
+        return true
+    }
+
+    List<Observation.Context> stoppedContexts(String name) {
+        return stoppedContexts.findAll { it.getName() == name }
+    }
+
+    List<String> receivedTraceContexts() {
+        return receivedTraceContexts.toList()
+    }
+
+    void reset() {
+        stoppedContexts.clear()
+        receivedTraceContexts.clear()
+    }
+}
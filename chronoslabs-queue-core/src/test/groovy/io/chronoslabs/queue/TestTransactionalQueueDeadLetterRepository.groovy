@@ -7,6 +7,7 @@ import java.util.concurrent.ConcurrentHashMap
 class TestTransactionalQueueDeadLetterRepository implements TransactionalQueueDeadLetterRepository<TestTransactionalQueueElement> {
 
     private final Map<Long, TestTransactionalQueueElement> elements = new ConcurrentHashMap<>()
+    private final Map<Long, String> reasons = new ConcurrentHashMap<>()
     private final Map<String, TransactionalQueueError<?>> errors = [
         "insert": null,
     ] as Map<String, TransactionalQueueError<?>>
@@ -21,6 +22,16 @@ class TestTransactionalQueueDeadLetterRepository implements TransactionalQueueDe
         return Result.success(element.id())
     }
 
+    @Override
+    Result<TestTransactionalQueueElement, TransactionalQueueError<TestTransactionalQueueElement>> insert(TestTransactionalQueueElement element, String reason) {
+        reasons.put(element.id(), reason)
+        return insert(element)
+    }
+
+    String reasonOf(long id) {
+        return reasons.get(id)
+    }
+
     boolean isEmpty() {
         return elements.isEmpty()
     }
@@ -41,6 +52,7 @@ class TestTransactionalQueueDeadLetterRepository implements TransactionalQueueDe
 
     void reset() {
         elements.clear()
+        reasons.clear()
         errors.clear()
     }
 }
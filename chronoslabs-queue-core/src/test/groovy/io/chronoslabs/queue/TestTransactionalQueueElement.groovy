@@ -3,7 +3,8 @@ package io.chronoslabs.queue
 import java.time.Instant
 
 record TestTransactionalQueueElement(
-    long id, TestPayload payload, Instant createdAt, Instant nextDispatchAfter, int dispatchCount)
+    long id, TestPayload payload, Instant createdAt, Instant nextDispatchAfter, int dispatchCount,
+    Map<String, String> traceContext)
     implements TransactionalQueueElement<TestPayload> {
 
     Builder toBuilder() {
@@ -13,6 +14,7 @@ record TestTransactionalQueueElement(
             .withCreatedAt(createdAt)
             .withNextDispatchAfter(nextDispatchAfter)
             .withDispatchCount(dispatchCount)
+            .withTraceContext(traceContext)
     }
 
     static Builder builder() {
@@ -25,6 +27,7 @@ record TestTransactionalQueueElement(
         private Instant createdAt
         private Instant nextDispatchAfter
         private int dispatchCount
+        private Map<String, String> traceContext = [:]
 
         private Builder() {}
 
@@ -53,9 +56,14 @@ record TestTransactionalQueueElement(
             return this
         }
 
+        Builder withTraceContext(Map<String, String> traceContext) {
+            this.traceContext = traceContext
+            return this
+        }
+
         TestTransactionalQueueElement build() {
             return new TestTransactionalQueueElement(
-                id, payload, createdAt, nextDispatchAfter, dispatchCount)
+                id, payload, createdAt, nextDispatchAfter, dispatchCount, traceContext)
         }
     }
 }
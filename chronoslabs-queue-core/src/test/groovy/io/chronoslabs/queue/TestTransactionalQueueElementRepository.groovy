@@ -2,30 +2,52 @@ package io.chronoslabs.queue
 
 import com.github.sviperll.result4j.Result
 
+import java.time.Duration
 import java.time.Instant
 import java.util.concurrent.ConcurrentHashMap
 import java.util.concurrent.atomic.AtomicLong
 
-class TestTransactionalQueueElementRepository implements TransactionalQueueElementRepository<
-    TestPayload, TestTransactionalQueueElement, TestTransactionalQueueElementToEnqueue> {
+class TestTransactionalQueueElementRepository implements PartitionedTransactionalQueueElementRepository<
+    TestPayload, TestTransactionalQueueElement, TestTransactionalQueueElementToEnqueue>,
+    DelayedTransactionalQueueElementRepository<TestPayload, TestTransactionalQueueElement, TestTransactionalQueueElementToEnqueue>,
+    IdempotentTransactionalQueueElementRepository<TestPayload, TestTransactionalQueueElement, TestTransactionalQueueElementToEnqueue>,
+    CollapsingTransactionalQueueElementRepository<TestPayload, TestTransactionalQueueElement, TestTransactionalQueueElementToEnqueue>,
+    ReleasableTransactionalQueueElementRepository<TestPayload, TestTransactionalQueueElement, TestTransactionalQueueElementToEnqueue>,
+    ExpiringTransactionalQueueElementRepository<TestPayload, TestTransactionalQueueElement, TestTransactionalQueueElementToEnqueue> {
 
-    private final AtomicLong ID_GENERATOR = new AtomicLong(0)
+    private final long firstId
+    private final long idIncrement
+    private final AtomicLong ID_GENERATOR
     private final Map<Long, TestTransactionalQueueElement> elements = new ConcurrentHashMap<>()
+    private final Map<String, Long> idempotencyKeys = new ConcurrentHashMap<>()
+    private final Map<String, Long> collapseKeys = new ConcurrentHashMap<>()
+    private final Map<Long, Instant> expiresAt = new ConcurrentHashMap<>()
     private final Map<String, TransactionalQueueError<?>> errors = [
         "delete"             : null,
         "findById"           : null,
+        "findDuplicate"      : null,
         "insert"             : null,
         "lockForNextDispatch": null,
     ] as Map<String, TransactionalQueueError<?>>
 
     private final String queueName
+    private volatile Runnable beforeDeleteCallback
+    private volatile Runnable beforeLockCallback
 
-    TestTransactionalQueueElementRepository(String queueName) {
+    TestTransactionalQueueElementRepository(String queueName, long firstId = 1, long idIncrement = 1) {
         this.queueName = queueName
+        this.firstId = firstId
+        this.idIncrement = idIncrement
+        this.ID_GENERATOR = new AtomicLong(firstId - idIncrement)
     }
 
     @Override
     Result<TestTransactionalQueueElement, TransactionalQueueError<TestTransactionalQueueElementToEnqueue>> insert(TestTransactionalQueueElementToEnqueue elementToEnqueue, Instant createdAt, Instant nextDispatchAfter) {
+        return insert(elementToEnqueue, createdAt, nextDispatchAfter, [:])
+    }
+
+    @Override
+    Result<TestTransactionalQueueElement, TransactionalQueueError<TestTransactionalQueueElementToEnqueue>> insert(TestTransactionalQueueElementToEnqueue elementToEnqueue, Instant createdAt, Instant nextDispatchAfter, Map<String, String> traceContext) {
         TransactionalQueueError<TestTransactionalQueueElementToEnqueue> errorResult = errors.get("insert") as TransactionalQueueError<TestTransactionalQueueElementToEnqueue>
         if (errorResult != null) {
             return Result.error(errorResult)
@@ -33,15 +55,98 @@ class TestTransactionalQueueElementRepository implements TransactionalQueueEleme
 
         TestTransactionalQueueElement element = elementToEnqueue
             .toTransactionalQueueElementBuilder()
-            .withId(ID_GENERATOR.incrementAndGet())
+            .withId(ID_GENERATOR.addAndGet(idIncrement))
             .withCreatedAt(createdAt)
             .withDispatchCount(INITIAL_DISPATCH_COUNT)
             .withNextDispatchAfter(nextDispatchAfter)
+            .withTraceContext(Map.copyOf(traceContext))
             .build()
         elements.put(element.id(), element)
+        if (elementToEnqueue.timeToLive() != null) {
+            expiresAt.put(element.id(), createdAt + elementToEnqueue.timeToLive())
+        }
         return Result.success(element)
     }
 
+    @Override
+    Result<Optional<TestTransactionalQueueElement>, TransactionalQueueError<TestTransactionalQueueElementToEnqueue>> insertUnlessDuplicate(TestTransactionalQueueElementToEnqueue elementToEnqueue, Instant createdAt, Instant nextDispatchAfter, Map<String, String> traceContext, Instant duplicatesCreatedSince) {
+        if (findDuplicate(elementToEnqueue, duplicatesCreatedSince).discardError().get().isPresent()) {
+            return Result.success(Optional.empty())
+        }
+        return insert(elementToEnqueue, createdAt, nextDispatchAfter, traceContext).map { TestTransactionalQueueElement element ->
+            idempotencyKeys.put(elementToEnqueue.idempotencyKey(), element.id())
+            Optional.of(element)
+        }
+    }
+
+    @Override
+    Result<Optional<TestTransactionalQueueElement>, TransactionalQueueError<TestTransactionalQueueElementToEnqueue>> findDuplicate(TestTransactionalQueueElementToEnqueue elementToEnqueue, Instant duplicatesCreatedSince) {
+        TransactionalQueueError<TestTransactionalQueueElementToEnqueue> errorResult = errors.get("findDuplicate") as TransactionalQueueError<TestTransactionalQueueElementToEnqueue>
+        if (errorResult != null) {
+            return Result.error(errorResult)
+        }
+
+        Long id = idempotencyKeys.get(elementToEnqueue.idempotencyKey())
+        TestTransactionalQueueElement element = id == null ? null : elements.get(id)
+        return Result.success(Optional.ofNullable(element)
+            .filter { duplicatesCreatedSince == null || !it.createdAt().isBefore(duplicatesCreatedSince) })
+    }
+
+    @Override
+    synchronized Result<CollapsingTransactionalQueueElementRepository.CollapsedElement<TestTransactionalQueueElement>, TransactionalQueueError<TestTransactionalQueueElementToEnqueue>> insertOrCollapse(TestTransactionalQueueElementToEnqueue elementToEnqueue, Instant createdAt, Instant nextDispatchAfter, Map<String, String> traceContext) {
+        Long pendingId = collapseKeys.get(elementToEnqueue.collapseKey())
+        TestTransactionalQueueElement pending = pendingId == null ? null : elements.get(pendingId)
+        boolean collapsed = pending != null && pending.dispatchCount() == INITIAL_DISPATCH_COUNT
+        if (collapsed) {
+            elements.remove(pending.id())
+        }
+        return insert(elementToEnqueue,
+            collapsed ? pending.createdAt() : createdAt,
+            collapsed && pending.nextDispatchAfter().isBefore(nextDispatchAfter) ? pending.nextDispatchAfter() : nextDispatchAfter,
+            traceContext).map { TestTransactionalQueueElement element ->
+            collapseKeys.put(elementToEnqueue.collapseKey(), element.id())
+            new CollapsingTransactionalQueueElementRepository.CollapsedElement<>(element, collapsed)
+        }
+    }
+
+    @Override
+    synchronized Result<Integer, TransactionalQueueError<String>> releaseLocks(Collection<TestTransactionalQueueElement> lockedElements, Duration lockTimeout) {
+        int released = 0
+        lockedElements.each { TestTransactionalQueueElement locked ->
+            TestTransactionalQueueElement element = elements.get(locked.id())
+            if (element != null && element.dispatchCount() == locked.dispatchCount()) {
+                elements.put(element.id(), element.toBuilder()
+                    .withDispatchCount(element.dispatchCount() - 1)
+                    .withNextDispatchAfter(locked.nextDispatchAfter() - lockTimeout)
+                    .build())
+                released++
+            }
+        }
+        return Result.success(released)
+    }
+
+    @Override
+    Result<Integer, TransactionalQueueError<String>> deleteExpired(int batchSize, Instant now) {
+        return deleteExpiredReturning(batchSize, now).map { it.size() }
+    }
+
+    @Override
+    synchronized Result<Collection<TestTransactionalQueueElement>, TransactionalQueueError<String>> deleteExpiredReturning(int batchSize, Instant now) {
+        var expiredElements = elements.values()
+            .findAll { isExpired(it.id(), now) && (it.dispatchCount() == INITIAL_DISPATCH_COUNT || it.nextDispatchAfter().isBefore(now)) }
+            .take(batchSize)
+        expiredElements.each {
+            elements.remove(it.id())
+            expiresAt.remove(it.id())
+        }
+        return Result.success(expiredElements)
+    }
+
+    private boolean isExpired(long id, Instant now) {
+        Instant expiry = expiresAt.get(id)
+        return expiry != null && !expiry.isAfter(now)
+    }
+
     TestTransactionalQueueElement setElementDispatchCount(TestTransactionalQueueElement element, int maximumNumberOfDispatches) {
         TestTransactionalQueueElement updatedElement = element.toBuilder()
             .withDispatchCount(maximumNumberOfDispatches)
@@ -75,7 +180,10 @@ class TestTransactionalQueueElementRepository implements TransactionalQueueEleme
             return Result.error(errorResult)
         }
 
-        TestTransactionalQueueElement removedElement = elements.remove(element.id())
+        Runnable beforeDelete = beforeDeleteCallback
+        beforeDeleteCallback = null
+        beforeDelete?.run()
+        TestTransactionalQueueElement removedElement = elements[element.id()]?.dispatchCount() == element.dispatchCount() ? elements.remove(element.id()) : null
         if (removedElement == null) {
             return Result.error(TransactionalQueueError.<TestTransactionalQueueElement> builder(queueName)
                 .withElement(element)
@@ -89,13 +197,48 @@ class TestTransactionalQueueElementRepository implements TransactionalQueueEleme
 
     @Override
     Result<Collection<TestTransactionalQueueElement>, TransactionalQueueError<String>> lockForNextDispatch(int batchSize, Instant notDispatchedTill, Instant nextDispatchTime) {
+        return lockMatchingForNextDispatch(batchSize, notDispatchedTill, nextDispatchTime) { true }
+    }
+
+    @Override
+    Result<Collection<TestTransactionalQueueElement>, TransactionalQueueError<String>> lockForNextDispatch(int batchSize, Instant notDispatchedTill, Instant nextDispatchTime, long[] skippedIds) {
+        return lockMatchingForNextDispatch(batchSize, notDispatchedTill, nextDispatchTime) { long id -> !(id in skippedIds) }
+    }
+
+    @Override
+    Result<Collection<TestTransactionalQueueElement>, TransactionalQueueError<String>> lockForNextDispatch(int batchSize, Instant notDispatchedTill, Instant nextDispatchTime, int partitionCount, int[] partitions) {
+        return lockMatchingForNextDispatch(batchSize, notDispatchedTill, nextDispatchTime) { long id ->
+            PartitionedTransactionalQueueElementRepository.partitionOf(id, partitionCount) in partitions
+        }
+    }
+
+    @Override
+    Result<Collection<TestTransactionalQueueElement>, TransactionalQueueError<String>> lockForDelayedDispatch(int batchSize, Instant dueFrom, Instant dueBefore, Duration lockTimeout) {
+        var elementsToDispatch = elements.values()
+            .findAll { it.dispatchCount() == 0 && !it.nextDispatchAfter().isBefore(dueFrom) && it.nextDispatchAfter().isBefore(dueBefore) && !isExpired(it.id(), dueFrom) }
+            .sort { it.nextDispatchAfter() }
+            .take(batchSize)
+            .collect { TestTransactionalQueueElement element ->
+                element.toBuilder()
+                    .withDispatchCount(element.dispatchCount() + 1)
+                    .withNextDispatchAfter(element.nextDispatchAfter() + lockTimeout)
+                    .build()
+            }
+        elementsToDispatch.each { elements.put(it.id(), it) }
+        return Result.success(elementsToDispatch)
+    }
+
+    private Result<Collection<TestTransactionalQueueElement>, TransactionalQueueError<String>> lockMatchingForNextDispatch(int batchSize, Instant notDispatchedTill, Instant nextDispatchTime, Closure<Boolean> idFilter) {
         TransactionalQueueError<String> errorResult = errors.get("lockForNextDispatch") as TransactionalQueueError<String>
         if (errorResult != null) {
             return Result.error(errorResult)
         }
 
+        Runnable beforeLock = beforeLockCallback
+        beforeLockCallback = null
+        beforeLock?.run()
         var elementsToDispatch = elements
-            .findAll { it.getValue().nextDispatchAfter().isBefore(notDispatchedTill) }
+            .findAll { idFilter.call(it.getKey()) && it.getValue().nextDispatchAfter().isBefore(notDispatchedTill) && !isExpired(it.getKey(), notDispatchedTill) }
             .take(batchSize)
             .collectEntries { Long key, TestTransactionalQueueElement element ->
                 [
@@ -123,13 +266,26 @@ class TestTransactionalQueueElementRepository implements TransactionalQueueEleme
         }
     }
 
+    void willRunBeforeDelete(Runnable callback) {
+        beforeDeleteCallback = callback
+    }
+
+    void willRunBeforeLock(Runnable callback) {
+        beforeLockCallback = callback
+    }
+
     void willReturnError(String methodName, TransactionalQueueError<?> error) {
         errors.put(methodName, error)
     }
 
     void reset() {
-        ID_GENERATOR.set(0)
+        ID_GENERATOR.set(firstId - idIncrement)
         elements.clear()
+        idempotencyKeys.clear()
+        collapseKeys.clear()
+        expiresAt.clear()
         errors.clear()
+        beforeDeleteCallback = null
+        beforeLockCallback = null
     }
 }
@@ -1,8 +1,26 @@
 package io.chronoslabs.queue
 
-record TestTransactionalQueueElementToEnqueue(TestPayload payload)
+import java.time.Duration
+
+record TestTransactionalQueueElementToEnqueue(TestPayload payload, Duration dispatchDelay, String idempotencyKey, String collapseKey, Duration timeToLive)
     implements TransactionalQueueElementToEnqueue<TestPayload, TestTransactionalQueueElement> {
 
+    TestTransactionalQueueElementToEnqueue(TestPayload payload) {
+        this(payload, Duration.ZERO)
+    }
+
+    TestTransactionalQueueElementToEnqueue(TestPayload payload, Duration dispatchDelay) {
+        this(payload, dispatchDelay, null)
+    }
+
+    TestTransactionalQueueElementToEnqueue(TestPayload payload, Duration dispatchDelay, String idempotencyKey) {
+        this(payload, dispatchDelay, idempotencyKey, null)
+    }
+
+    TestTransactionalQueueElementToEnqueue(TestPayload payload, Duration dispatchDelay, String idempotencyKey, String collapseKey) {
+        this(payload, dispatchDelay, idempotencyKey, collapseKey, null)
+    }
+
     TestTransactionalQueueElement.Builder toTransactionalQueueElementBuilder() {
         return TestTransactionalQueueElement.builder().withPayload(payload)
     }
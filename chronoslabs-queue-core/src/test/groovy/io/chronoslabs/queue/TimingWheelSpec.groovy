@@ -0,0 +1,56 @@
+package io.chronoslabs.queue
+
+import spock.lang.Specification
+
+class TimingWheelSpec extends Specification {
+    TimingWheel<String> wheel = new TimingWheel<>(1, 8, 1_000)
+
+    def "should expire items at their due time across wheel levels"() {
+        given: "items within the first level and several levels ahead"
+            wheel.add("in 3 ms", 1_003)
+            wheel.add("in 50 ms", 1_050)
+            wheel.add("in 700 ms", 1_700)
+            wheel.add("in 5 ms", 1_005)
+
+        expect:
+            wheel.size() == 4
+            wheel.nextExpirationMillis() == 1_003
+
+        and: "each item expires at its own millisecond"
+            expire(1_002) == []
+            expire(1_005) == ["in 3 ms", "in 5 ms"]
+            expire(1_049) == []
+            expire(1_050) == ["in 50 ms"]
+            expire(1_699) == []
+            expire(1_700) == ["in 700 ms"]
+            wheel.size() == 0
+            wheel.nextExpirationMillis() == Long.MAX_VALUE
+    }
+
+    def "should refuse items which are already due"() {
+        expect:
+            !wheel.add("overdue", 999)
+            !wheel.add("now", 1_000)
+            wheel.add("next tick", 1_001)
+            wheel.size() == 1
+    }
+
+    def "should expire every item when the wheel is advanced past all of them at once"() {
+        given:
+            List<Long> dueTimes = (1..1_000).collect { 1_001L + (it * 7919L) % 100_000L }
+            dueTimes.each { wheel.add("item-$it".toString(), it) }
+
+        when:
+            List<String> expired = expire(200_000)
+
+        then:
+            expired.size() == 1_000
+            wheel.size() == 0
+    }
+
+    private List<String> expire(long nowMillis) {
+        List<String> expired = []
+        wheel.expire(nowMillis) { expired.add(it) }
+        return expired
+    }
+}
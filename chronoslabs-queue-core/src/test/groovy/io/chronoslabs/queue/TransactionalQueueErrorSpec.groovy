@@ -0,0 +1,24 @@
+package io.chronoslabs.queue
+
+import spock.lang.Specification
+
+class TransactionalQueueErrorSpec extends Specification {
+
+    def "should be equal to an error built with the same components"() {
+        given:
+            IllegalStateException cause = new IllegalStateException("Connection refused.")
+
+        when:
+            TransactionalQueueError<Long> error = TransactionalQueueError.<Long> builder("TestQueue")
+                .withElement(1L)
+                .withType("delete-element-error")
+                .withMessage("Failed to delete element.")
+                .withCause(cause)
+                .build()
+
+        then:
+            error == new TransactionalQueueError<>("TestQueue", 1L, "delete-element-error", "Failed to delete element.", cause)
+            error.hashCode() == new TransactionalQueueError<>("TestQueue", 1L, "delete-element-error", "Failed to delete element.", cause).hashCode()
+            error.withAnotherElement(2L) == new TransactionalQueueError<>("TestQueue", 2L, "delete-element-error", "Failed to delete element.", cause)
+    }
+}
@@ -0,0 +1,104 @@
+package io.chronoslabs.queue
+
+import com.github.sviperll.result4j.Result
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import io.micrometer.observation.Observation
+import io.micrometer.observation.ObservationRegistry
+import spock.lang.Specification
+
+import java.time.Duration
+import java.time.Instant
+
+import static io.chronoslabs.queue.TestTransactionalQueueElementToEnqueue.aTestTransactionalQueueElementToEnqueue
+
+class TransactionalQueueObservationSpec extends Specification {
+    String queueName = "TestQueue"
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry()
+    TestObservationHandler observationHandler = new TestObservationHandler()
+    ObservationRegistry observationRegistry = createObservationRegistry(observationHandler)
+    UpdatableFixedClock mutableClock = UpdatableFixedClock.defaultUpdatableFixedClock()
+    TransactionalQueueConfigurationProperties configurationProperties = TransactionalQueueConfigurationProperties.defaultConfiguration()
+    TransactionalQueueUnitTestContext testContext = new TransactionalQueueUnitTestContext(queueName, mutableClock, meterRegistry, configurationProperties, observationRegistry)
+    TransactionalQueue<TestPayload, TestTransactionalQueueElement, TestTransactionalQueueElementToEnqueue> transactionalQueue = testContext.transactionalQueue
+
+    def "should observe enqueue, poll and dispatch and link dispatch to the enqueuing trace context"() {
+        given: "the current time is set"
+            testContext.nowIs("2025-04-25T12:00:00Z")
+
+        when: "I enqueue the queue element"
+            Result<TestTransactionalQueueElement, TransactionalQueueError<TestTransactionalQueueElementToEnqueue>> enqueueResult =
+                transactionalQueue.enqueue(aTestTransactionalQueueElementToEnqueue())
+
+        then: "the enqueue is observed with the trace context stored on the element"
+            Assertions.assertThat(enqueueResult).isSuccess()
+            TestTransactionalQueueElement element = enqueueResult.discardError().get()
+            element.traceContext() == [(TestObservationHandler.TRACE_CONTEXT_KEY): "trace-of-TransactionalQueue.enqueue"]
+            lowCardinalityKeyValues("TransactionalQueue.enqueue") == [
+                ["outcome": "success", "queue-name": "TestQueue"]
+            ]
+
+        when: "one second has passed and I retry dispatch"
+            testContext.tick(Duration.ofSeconds(1))
+            transactionalQueue.retryDispatch()
+
+        then: "the poll is observed"
+            lowCardinalityKeyValues("TransactionalQueue.poll") == [
+                ["outcome": "success", "queue-name": "TestQueue"]
+            ]
+
+        when: "I dispatch the locked element"
+            TestTransactionalQueueElement lockedElement = testContext.repository.findById(element.id()).discardError().get()
+            transactionalQueue.dispatch(lockedElement)
+
+        then: "the dispatch is observed with the attempt and linked to the enqueuing trace context"
+            lowCardinalityKeyValues("TransactionalQueue.dispatch") == [
+                ["attempt": "1", "outcome": "success", "queue-name": "TestQueue"]
+            ]
+            observationHandler.receivedTraceContexts() == ["trace-of-TransactionalQueue.enqueue"]
+    }
+
+    def "should observe dispatch error with error type"() {
+        given: "the current time is set"
+            Instant now = testContext.nowIs("2025-04-25T12:00:00Z")
+
+        and: "I insert the transactional queue element"
+            TestTransactionalQueueElement element = testContext.repository
+                .insert(aTestTransactionalQueueElementToEnqueue(), now, now + Duration.ofSeconds(1))
+                .discardError()
+                .get()
+
+        and: "a Payload Consumer consumeElementPayload method will return error result"
+            testContext.queuePayloadConsumer.consumeElementPayloadWillReturnError(TransactionalQueueError.<TestTransactionalQueueElement> builder(queueName)
+                .withCause(new RuntimeException("An unexpected error occurred during sending a event."))
+                .withElement(element)
+                .withMessage("Failed to consume element payload.")
+                .withType("payload-consumer-error")
+                .build())
+
+        when: "I dispatch the transactional queue element"
+            transactionalQueue.dispatch(element)
+
+        then: "the dispatch is observed as an error"
+            lowCardinalityKeyValues("TransactionalQueue.dispatch") == [
+                ["attempt": "0", "error-type": "payload-consumer-error", "outcome": "error", "queue-name": "TestQueue"]
+            ]
+            observationHandler.stoppedContexts("TransactionalQueue.dispatch").first().getError() instanceof RuntimeException
+    }
+
+    def cleanup() {
+        testContext.reset()
+        observationHandler.reset()
+    }
+
+    private List<Map<String, String>> lowCardinalityKeyValues(String observationName) {
+        return observationHandler.stoppedContexts(observationName).collect { Observation.Context context ->
+            context.getLowCardinalityKeyValues().collectEntries { [(it.getKey()): it.getValue()] } as Map<String, String>
+        }
+    }
+
+    private static ObservationRegistry createObservationRegistry(TestObservationHandler observationHandler) {
+        ObservationRegistry observationRegistry = ObservationRegistry.create()
+        observationRegistry.observationConfig().observationHandler(observationHandler)
+        return observationRegistry
+    }
+}
@@ -0,0 +1,118 @@
+package io.chronoslabs.queue
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
+
+import java.time.Duration
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.atomic.AtomicInteger
+
+import static io.chronoslabs.queue.TestTransactionalQueueElementToEnqueue.aTestTransactionalQueueElementToEnqueue
+
+class TransactionalQueueSchedulerSpec extends Specification {
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry()
+    TransactionalQueueConfigurationProperties configurationProperties = TransactionalQueueConfigurationProperties.defaultConfiguration()
+    TransactionalQueueUnitTestContext firstContext = new TransactionalQueueUnitTestContext("FirstQueue", UpdatableFixedClock.defaultUpdatableFixedClock(), meterRegistry, configurationProperties)
+    TransactionalQueueUnitTestContext secondContext = new TransactionalQueueUnitTestContext("SecondQueue", UpdatableFixedClock.defaultUpdatableFixedClock(), meterRegistry, configurationProperties)
+    PollingConditions conditions = new PollingConditions(timeout: 10)
+    TransactionalQueueScheduler scheduler
+
+    def cleanup() {
+        scheduler?.close()
+    }
+
+    def "should share the dispatch capacity between the queues in proportion to their weights"() {
+        given: "both queues have due elements"
+            enqueueDueElements(firstContext, 80)
+            enqueueDueElements(secondContext, 80)
+
+        and: "the order of the dispatched elements is recorded"
+            List<String> dispatchOrder = new CopyOnWriteArrayList<>()
+            firstContext.queuePayloadConsumer.willRunBeforeConsume { dispatchOrder.add("FirstQueue") }
+            secondContext.queuePayloadConsumer.willRunBeforeConsume { dispatchOrder.add("SecondQueue") }
+
+        when: "the queues are scheduled on one dispatch thread with weights 3 and 1"
+            scheduler = TransactionalQueueScheduler.builder()
+                .withDispatchCapacity(1)
+                .withQueue(firstContext.transactionalQueue, QueueShare.builder().withWeight(3).build())
+                .withQueue(secondContext.transactionalQueue)
+                .build()
+            scheduler.start()
+
+        then: "every element is dispatched"
+            conditions.eventually {
+                assert dispatchOrder.size() == 160
+            }
+
+        and: "each round dispatches three elements of the first queue for every element of the second"
+            dispatchOrder.take(40).count { it == "FirstQueue" } == 30
+            dispatchOrder.take(80).count { it == "FirstQueue" } == 60
+
+        and: "the scheduling delay of both queues is recorded"
+            meterRegistry.get("TransactionalQueue.schedulingDelay").tag("queue-name", "FirstQueue").timer().count() > 0
+            meterRegistry.get("TransactionalQueue.schedulingDelay").tag("queue-name", "SecondQueue").timer().count() > 0
+    }
+
+    def "should not exceed the dispatch capacity nor the max dispatches of a queue"() {
+        given: "both queues have due elements"
+            enqueueDueElements(firstContext, 30)
+            enqueueDueElements(secondContext, 30)
+
+        and: "the concurrent dispatches are tracked"
+            AtomicInteger dispatching = new AtomicInteger()
+            AtomicInteger maxDispatching = new AtomicInteger()
+            AtomicInteger firstDispatching = new AtomicInteger()
+            AtomicInteger maxFirstDispatching = new AtomicInteger()
+            firstContext.queuePayloadConsumer.willRunBeforeConsume {
+                track(dispatching, maxDispatching) { track(firstDispatching, maxFirstDispatching) { Thread.sleep(5) } }
+            }
+            secondContext.queuePayloadConsumer.willRunBeforeConsume {
+                track(dispatching, maxDispatching) { Thread.sleep(5) }
+            }
+
+        when: "the first queue may dispatch one element at a time out of a capacity of four"
+            scheduler = TransactionalQueueScheduler.builder()
+                .withDispatchCapacity(4)
+                .withQueue(firstContext.transactionalQueue, QueueShare.builder().withMinDispatches(1).withMaxDispatches(1).build())
+                .withQueue(secondContext.transactionalQueue)
+                .build()
+            scheduler.start()
+
+        then: "every element is dispatched"
+            conditions.eventually {
+                assert firstContext.queuePayloadConsumer.count() == 30
+                assert secondContext.queuePayloadConsumer.count() == 30
+            }
+
+        and: "the limits were kept"
+            maxDispatching.get() <= 4
+            maxFirstDispatching.get() == 1
+    }
+
+    def "should reject minimum dispatches exceeding the dispatch capacity"() {
+        when: "the minimum dispatches of the queues add up to more than the capacity"
+            TransactionalQueueScheduler.builder()
+                .withDispatchCapacity(2)
+                .withQueue(firstContext.transactionalQueue, QueueShare.builder().withMinDispatches(2).build())
+                .withQueue(secondContext.transactionalQueue, QueueShare.builder().withMinDispatches(1).build())
+                .build()
+
+        then: "the scheduler is not built"
+            thrown(IllegalArgumentException)
+    }
+
+    private static void enqueueDueElements(TransactionalQueueUnitTestContext context, int count) {
+        count.times { context.transactionalQueue.enqueue(aTestTransactionalQueueElementToEnqueue()) }
+        context.tick(Duration.ofSeconds(1))
+    }
+
+    private static void track(AtomicInteger current, AtomicInteger max, Closure<?> dispatch) {
+        max.accumulateAndGet(current.incrementAndGet(), Math::max)
+        try {
+            dispatch.call()
+        } finally {
+            current.decrementAndGet()
+        }
+    }
+}
@@ -3,9 +3,11 @@ package io.chronoslabs.queue
 import com.github.sviperll.result4j.Result
 import io.micrometer.core.instrument.simple.SimpleMeterRegistry
 import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
 
 import java.time.Duration
 import java.time.Instant
+import java.util.concurrent.CountDownLatch
 
 import static io.chronoslabs.queue.TestTransactionalQueueElementToEnqueue.aTestTransactionalQueueElementToEnqueue
 
@@ -96,6 +98,103 @@ class TransactionalQueueSpec extends Specification {
                 "]; count=1.0"
     }
 
+    def "should return the element already in the queue when an element with the same idempotency key is enqueued"() {
+        given: "an element enqueued by this node and one enqueued by another node"
+            Instant now = testContext.nowIs("2025-04-25T12:00:00Z")
+            TestTransactionalQueueElement enqueued = transactionalQueue.enqueue(elementWithIdempotencyKey("order-1")).discardError().get()
+            TestTransactionalQueueElement enqueuedByAnotherNode = testContext.repository
+                .insertUnlessDuplicate(elementWithIdempotencyKey("order-2"), now, now, [:], null).discardError().get().get()
+
+        when: "both are enqueued again"
+            TestTransactionalQueueElement duplicate = transactionalQueue.enqueue(elementWithIdempotencyKey("order-1")).discardError().get()
+            TestTransactionalQueueElement duplicateOfAnotherNode = transactionalQueue.enqueue(elementWithIdempotencyKey("order-2")).discardError().get()
+
+        then: "the elements already in the queue are returned and nothing is inserted"
+            duplicate == enqueued
+            duplicateOfAnotherNode == enqueuedByAnotherNode
+            assertThatTransactionalQueue()
+                .hasInRepositoryRowsCountEqualTo(2)
+
+        and: "the duplicate of this node is found before inserting and the other one after the insert conflicted"
+            meterRegistry.get("TransactionalQueue.duplicateEnqueue").tag("detected-by", "pre-check").counter().count() == 1
+            meterRegistry.get("TransactionalQueue.duplicateEnqueue").tag("detected-by", "conflict").counter().count() == 1
+    }
+
+    def "should enqueue an element with the same idempotency key again once the idempotency window has passed"() {
+        given: "the queue deduplicates elements for a minute"
+            testContext = new TransactionalQueueUnitTestContext(queueName, mutableClock, meterRegistry, TransactionalQueueConfigurationProperties.builder()
+                .withLockTimeout(configurationProperties.lockTimeout())
+                .withMaxDispatchCount(configurationProperties.maxDispatchCount())
+                .withRetryDispatchBatchSize(configurationProperties.retryDispatchBatchSize())
+                .withRetryScheduledRateDelay(configurationProperties.retryScheduledRateDelay())
+                .withIdempotencyWindow(Duration.ofMinutes(1))
+                .build())
+            testContext.nowIs("2025-04-25T12:00:00Z")
+            TestTransactionalQueueElement enqueued = testContext.transactionalQueue.enqueue(elementWithIdempotencyKey("order-1")).discardError().get()
+
+        when: "the element is enqueued again within the window and after it"
+            testContext.tick(Duration.ofSeconds(59))
+            TestTransactionalQueueElement duplicate = testContext.transactionalQueue.enqueue(elementWithIdempotencyKey("order-1")).discardError().get()
+            testContext.tick(Duration.ofSeconds(2))
+            TestTransactionalQueueElement enqueuedAgain = testContext.transactionalQueue.enqueue(elementWithIdempotencyKey("order-1")).discardError().get()
+
+        then: "only the element enqueued after the window is inserted"
+            duplicate == enqueued
+            enqueuedAgain.id() != enqueued.id()
+            testContext.repository.count() == 2
+    }
+
+    def "should fail to enqueue an element with an idempotency key when the repository cannot enforce it"() {
+        given: "a queue whose repository is not idempotent"
+            TransactionalQueueElementRepository<TestPayload, TestTransactionalQueueElement, TestTransactionalQueueElementToEnqueue> plainRepository =
+                [insert: { elementToEnqueue, createdAt, nextDispatchAfter -> testContext.repository.insert(elementToEnqueue, createdAt, nextDispatchAfter) }] as TransactionalQueueElementRepository
+            TransactionalQueue<TestPayload, TestTransactionalQueueElement, TestTransactionalQueueElementToEnqueue> queue = TransactionalQueueFactory.<TestPayload, TestTransactionalQueueElement, TestTransactionalQueueElementToEnqueue> factory()
+                .withQueueName(queueName)
+                .withClock(mutableClock)
+                .withMeterRegistry(meterRegistry)
+                .withTransactionCreator(testContext.transactionCreator)
+                .withQueuePayloadConsumer(testContext.queuePayloadConsumer)
+                .withQueueRepository(plainRepository)
+                .withQueueDeadLetterRepository(testContext.deadLetterRepository)
+                .withApplicationEventPublisher(testContext.applicationEventPublisher)
+                .withConfigurationProperties(configurationProperties)
+                .create()
+
+        when:
+            Result<TestTransactionalQueueElement, TransactionalQueueError<TestTransactionalQueueElementToEnqueue>> enqueueResult = queue.enqueue(elementWithIdempotencyKey("order-1"))
+
+        then: "the key is not silently ignored"
+            enqueueResult.discardSuccess().get().type() == "idempotency-not-supported"
+            testContext.repository.count() == 0
+    }
+
+    def "should replace the pending element with the same collapse key and queue behind the element in flight"() {
+        given: "a pending element of an entity"
+            Instant now = testContext.nowIs("2025-04-25T12:00:00Z")
+            TestTransactionalQueueElement first = transactionalQueue.enqueue(elementWithCollapseKey("entity-1", "v1")).discardError().get()
+
+        when: "the entity is enqueued again"
+            testContext.tick(Duration.ofSeconds(1))
+            TestTransactionalQueueElement second = transactionalQueue.enqueue(elementWithCollapseKey("entity-1", "v2")).discardError().get()
+
+        then: "the pending element is replaced and keeps its place in the queue"
+            testContext.repository.count() == 1
+            second.id() != first.id()
+            second.payload().payloadProperty1() == "v2"
+            second.createdAt() == now
+            meterRegistry.get("TransactionalQueue.collapsedEnqueue").counter().count() == 1
+
+        when: "the element is locked for dispatch and the entity is enqueued again"
+            testContext.repository.setElementDispatchCount(second, 1)
+            TestTransactionalQueueElement third = transactionalQueue.enqueue(elementWithCollapseKey("entity-1", "v3")).discardError().get()
+
+        then: "the element in flight is left alone and the new one is inserted"
+            testContext.repository.count() == 2
+            testContext.repository.findById(second.id()).discardError().get().payload().payloadProperty1() == "v2"
+            third.payload().payloadProperty1() == "v3"
+            meterRegistry.get("TransactionalQueue.collapsedEnqueue").counter().count() == 1
+    }
+
     def "should dispatch again all elements from Transactional Queue when their next_dispatch_after is less than current time"() {
         given: "the initial time is set"
             Instant initialTime = testContext.nowIs("2025-04-25T12:00:00Z")
@@ -190,6 +289,258 @@ class TransactionalQueueSpec extends Specification {
                 .doesNotPublishedQueueEvents()
     }
 
+    def "should lock the next batch in the background once the retried elements have been dispatched"() {
+        given: "the queue prefetches when fewer than one retried element is still dispatching"
+            testContext = new TransactionalQueueUnitTestContext(queueName, mutableClock, meterRegistry, TransactionalQueueConfigurationProperties.builder()
+                .withLockTimeout(configurationProperties.lockTimeout())
+                .withMaxDispatchCount(configurationProperties.maxDispatchCount())
+                .withRetryDispatchBatchSize(2)
+                .withRetryScheduledRateDelay(configurationProperties.retryScheduledRateDelay())
+                .withRetryPrefetchLowWaterMark(1)
+                .build())
+
+        and: "five elements are due for dispatch"
+            Instant now = testContext.nowIs("2025-04-25T12:00:00Z")
+            (1..5).each { testContext.repository.insert(aTestTransactionalQueueElementToEnqueue(), now, now) }
+            testContext.tick(Duration.ofSeconds(1))
+
+        when: "the first batch is retried and dispatched"
+            testContext.transactionalQueue.retryDispatch()
+            testContext.applicationEventPublisher.getPublishedEvents().each {
+                testContext.transactionalQueue.dispatch(it as TestTransactionalQueueElement)
+            }
+
+        then: "the second batch is locked without waiting for the next retry"
+            new PollingConditions(timeout: 5).eventually {
+                assert testContext.repository.count { it.dispatchCount() == 1 } == 2
+            }
+
+        when: "the next retry runs"
+            testContext.transactionalQueue.retryDispatch()
+
+        then: "it publishes the prefetched batch"
+            testContext.applicationEventPublisher.count() == 4
+            meterRegistry.get("TransactionalQueue.retryPrefetch").tag("outcome", "miss").counter().count() == 1
+            meterRegistry.get("TransactionalQueue.retryPrefetch").tag("outcome", "hit").counter().count() == 1
+    }
+
+    def "should release a prefetched batch taken after half of its lock timeout and lock a fresh one"() {
+        given: "the queue prefetches when fewer than one retried element is still dispatching"
+            testContext = new TransactionalQueueUnitTestContext(queueName, mutableClock, meterRegistry, TransactionalQueueConfigurationProperties.builder()
+                .withLockTimeout(configurationProperties.lockTimeout())
+                .withMaxDispatchCount(configurationProperties.maxDispatchCount())
+                .withRetryDispatchBatchSize(2)
+                .withRetryScheduledRateDelay(configurationProperties.retryScheduledRateDelay())
+                .withRetryPrefetchLowWaterMark(1)
+                .build())
+
+        and: "five elements are due for dispatch"
+            Instant now = testContext.nowIs("2025-04-25T12:00:00Z")
+            (1..5).each { testContext.repository.insert(aTestTransactionalQueueElementToEnqueue(), now, now) }
+            Instant prefetchedAt = testContext.tick(Duration.ofSeconds(1))
+
+        and: "the first batch is dispatched and the second one prefetched"
+            testContext.transactionalQueue.retryDispatch()
+            testContext.applicationEventPublisher.getPublishedEvents().each {
+                testContext.transactionalQueue.dispatch(it as TestTransactionalQueueElement)
+            }
+            new PollingConditions(timeout: 5).eventually {
+                assert testContext.repository.count { it.dispatchCount() == 1 } == 2
+            }
+
+        when: "the next retry runs after half of the lock timeout"
+            Instant retriedAt = testContext.tick(configurationProperties.lockTimeout().dividedBy(2) + Duration.ofSeconds(1))
+            testContext.transactionalQueue.retryDispatch()
+
+        then: "the prefetched batch is released and the batch published is locked from now"
+            meterRegistry.get("TransactionalQueue.retryPrefetch").tag("outcome", "late").counter().count() == 1
+            List<TestTransactionalQueueElement> published = testContext.applicationEventPublisher.getPublishedEvents().drop(2) as List<TestTransactionalQueueElement>
+            published.size() == 2
+            published.every { it.dispatchCount() == 1 && it.nextDispatchAfter() == retriedAt + configurationProperties.lockTimeout() }
+            testContext.repository.count { it.dispatchCount() == 1 && it.nextDispatchAfter() == prefetchedAt + configurationProperties.lockTimeout() } == 0
+    }
+
+    def "should stop waiting for a prefetch still locking once its batch would be late and release it"() {
+        given: "the queue prefetches when fewer than one retried element is still dispatching"
+            testContext = new TransactionalQueueUnitTestContext(queueName, mutableClock, meterRegistry, TransactionalQueueConfigurationProperties.builder()
+                .withLockTimeout(configurationProperties.lockTimeout())
+                .withMaxDispatchCount(configurationProperties.maxDispatchCount())
+                .withRetryDispatchBatchSize(2)
+                .withRetryScheduledRateDelay(configurationProperties.retryScheduledRateDelay())
+                .withRetryPrefetchLowWaterMark(1)
+                .build())
+
+        and: "five elements are due for dispatch"
+            Instant now = testContext.nowIs("2025-04-25T12:00:00Z")
+            (1..5).each { testContext.repository.insert(aTestTransactionalQueueElementToEnqueue(), now, now) }
+            testContext.tick(Duration.ofSeconds(1))
+
+        and: "the first batch is dispatched and the prefetch of the second one hangs"
+            CountDownLatch lockResumed = new CountDownLatch(1)
+            testContext.transactionalQueue.retryDispatch()
+            testContext.repository.willRunBeforeLock { lockResumed.await() }
+            testContext.applicationEventPublisher.getPublishedEvents().each {
+                testContext.transactionalQueue.dispatch(it as TestTransactionalQueueElement)
+            }
+
+        when: "the next retry runs after half of the lock timeout"
+            testContext.tick(configurationProperties.lockTimeout().dividedBy(2))
+            testContext.transactionalQueue.retryDispatch()
+
+        then: "it gives up the prefetch without publishing anything"
+            testContext.applicationEventPublisher.count() == 2
+            meterRegistry.get("TransactionalQueue.error").tag("error-type", "retrier-prefetch-timeout").counter().count() == 1
+
+        when: "the prefetch completes"
+            lockResumed.countDown()
+
+        then: "its batch is released"
+            new PollingConditions(timeout: 5).eventually {
+                assert testContext.repository.count { it.dispatchCount() == 0 } == 3
+            }
+    }
+
+    def "should release the locked elements which have not been dispatched when shutting down"() {
+        given: "three elements are due for dispatch"
+            Instant now = testContext.nowIs("2025-04-25T12:00:00Z")
+            (1..3).each { testContext.repository.insert(aTestTransactionalQueueElementToEnqueue(), now, now) }
+            Instant lockedAt = testContext.tick(Duration.ofSeconds(1))
+
+        and: "they are locked and published"
+            transactionalQueue.retryDispatch()
+            List<TestTransactionalQueueElement> published = testContext.applicationEventPublisher.getPublishedEvents() as List<TestTransactionalQueueElement>
+
+        and: "the first of them is dispatched"
+            transactionalQueue.dispatch(published.first())
+
+        when: "the queue shuts down"
+            boolean finished = transactionalQueue.shutdown(Duration.ofSeconds(1))
+
+        then: "no dispatch was left running"
+            finished
+
+        and: "the other elements are due again with the dispatch count they had before being locked"
+            assertThatTransactionalQueue()
+                .hasInRepositoryRowsCountEqualTo(2, { TestTransactionalQueueElement element ->
+                    element.dispatchCount() == 0 && element.nextDispatchAfter() == lockedAt
+                })
+                .hasInRepositoryRowsCountEqualTo(2)
+            meterRegistry.get("TransactionalQueue.releasedLocks").tag("queue-name", queueName).counter().count() == 2
+
+        when: "a released element is dispatched from its event afterwards"
+            transactionalQueue.dispatch(published.last())
+
+        then: "it is left to the other nodes"
+            testContext.queuePayloadConsumer.count() == 1
+            testContext.repository.count() == 2
+
+        when: "the retry runs once more"
+            testContext.applicationEventPublisher.reset()
+            transactionalQueue.retryDispatch()
+
+        then: "it locks nothing"
+            testContext.applicationEventPublisher.hasNoPublishedEvents()
+    }
+
+    def "should not lock again an element which is still dispatching on this node, so its dispatch commits"() {
+        given: "an element is locked and published by the retry"
+            Instant now = testContext.nowIs("2025-04-25T12:00:00Z")
+            testContext.repository.insert(aTestTransactionalQueueElementToEnqueue(), now, now)
+            testContext.tick(Duration.ofSeconds(1))
+            transactionalQueue.retryDispatch()
+            TestTransactionalQueueElement locked = testContext.applicationEventPublisher.getPublishedEvents().first() as TestTransactionalQueueElement
+
+        and: "its lock expires before its dispatch deletes it, while the retry runs again and its event is dispatched again"
+            testContext.repository.willRunBeforeDelete {
+                testContext.applicationEventPublisher.reset()
+                testContext.tick(configurationProperties.lockTimeout() + Duration.ofSeconds(1))
+                transactionalQueue.retryDispatch()
+                transactionalQueue.dispatch(locked)
+            }
+
+        when: "the element is dispatched"
+            transactionalQueue.dispatch(locked)
+
+        then: "the retry has not locked it again"
+            testContext.applicationEventPublisher.hasNoPublishedEvents()
+            meterRegistry.find("TransactionalQueue.localDuplicate").tag("outcome", "not-published").counter() == null
+
+        and: "the running dispatch has deleted it with the dispatch count of its lock and consumed it once"
+            testContext.queuePayloadConsumer.count() == 1
+            testContext.repository.isEmpty()
+
+        and: "the second dispatch has not started"
+            meterRegistry.get("TransactionalQueue.localDuplicate").tag("outcome", "not-dispatched").counter().count() == 1
+    }
+
+    def "should skip expired elements when locking and move them to the dead letter queue when expiring"() {
+        given: "expired elements are moved to the dead letter queue"
+            testContext = new TransactionalQueueUnitTestContext(queueName, mutableClock, meterRegistry, TransactionalQueueConfigurationProperties.builder()
+                .withLockTimeout(configurationProperties.lockTimeout())
+                .withMaxDispatchCount(configurationProperties.maxDispatchCount())
+                .withRetryDispatchBatchSize(configurationProperties.retryDispatchBatchSize())
+                .withRetryScheduledRateDelay(configurationProperties.retryScheduledRateDelay())
+                .withExpiredToDeadLetterQueue(true)
+                .build())
+
+        and: "an element living for a second and one without expiry"
+            Instant now = testContext.nowIs("2025-04-25T12:00:00Z")
+            TestPayload payload = aTestTransactionalQueueElementToEnqueue().payload()
+            TestTransactionalQueueElement expiring = testContext.repository.insert(new TestTransactionalQueueElementToEnqueue(payload, Duration.ZERO, null, null, Duration.ofSeconds(1)), now, now)
+                .discardError().get()
+            testContext.repository.insert(aTestTransactionalQueueElementToEnqueue(), now, now)
+
+        when: "the retry runs after the first element has expired"
+            testContext.tick(Duration.ofSeconds(2))
+            testContext.transactionalQueue.retryDispatch()
+
+        then: "only the element without expiry is locked"
+            testContext.applicationEventPublisher.getPublishedEvents().size() == 1
+            testContext.applicationEventPublisher.getPublishedEvents().first().id() != expiring.id()
+
+        when: "the expired elements are removed"
+            testContext.transactionalQueue.expireElements()
+
+        then: "the expired element is moved to the dead letter queue with the expired reason"
+            testContext.repository.count() == 1
+            testContext.deadLetterRepository.count() == 1
+            testContext.deadLetterRepository.reasonOf(expiring.id()) == TransactionalQueueDeadLetterRepository.REASON_EXPIRED
+            meterRegistry.get("TransactionalQueue.expired").tag("queue-name", queueName).tag("outcome", "dead-lettered").counter().count() == 1
+    }
+
+    def "should publish elements due within the look-ahead at their due time"() {
+        given: "the queue dispatches elements due within five seconds at their due time"
+            testContext = new TransactionalQueueUnitTestContext(queueName, mutableClock, meterRegistry, TransactionalQueueConfigurationProperties.builder()
+                .withLockTimeout(configurationProperties.lockTimeout())
+                .withMaxDispatchCount(configurationProperties.maxDispatchCount())
+                .withRetryDispatchBatchSize(configurationProperties.retryDispatchBatchSize())
+                .withRetryScheduledRateDelay(configurationProperties.retryScheduledRateDelay())
+                .withDelayedDispatchLookAhead(Duration.ofSeconds(5))
+                .build())
+
+        and: "an element due soon, one due in a day and one overdue"
+            Instant now = testContext.nowIs("2025-04-25T12:00:00Z")
+            TestTransactionalQueueElement dueSoon = testContext.repository.insert(aTestTransactionalQueueElementToEnqueue(), now, now + Duration.ofMillis(200))
+                .discardError().get()
+            testContext.repository.insert(aTestTransactionalQueueElementToEnqueue(), now, now + Duration.ofDays(1))
+            testContext.repository.insert(aTestTransactionalQueueElementToEnqueue(), now - Duration.ofMinutes(1), now - Duration.ofSeconds(1))
+
+        when: "the elements due within the look-ahead are scheduled"
+            testContext.transactionalQueue.scheduleDelayedDispatch()
+
+        then: "only the element due soon is locked and nothing is published before it is due"
+            testContext.repository.count { it.dispatchCount() == 1 } == 1
+            testContext.applicationEventPublisher.hasNoPublishedEvents()
+
+        when: "its due time passes"
+            testContext.tick(Duration.ofMillis(200))
+
+        then: "it is published"
+            new PollingConditions(timeout: 5).eventually {
+                assert testContext.applicationEventPublisher.getPublishedEvents()*.id() == [dueSoon.id()]
+            }
+    }
+
     def "should register failure metric when retry dispatch failed on opening database transaction"() {
         given: "the initial time is set"
             Instant initialTime = testContext.nowIs("2025-04-25T12:00:00Z")
@@ -517,6 +868,71 @@ class TransactionalQueueSpec extends Specification {
                 "count=1.0"
     }
 
+    def "should interrupt the dispatch and register timeout metric when TransactionalQueueElementPayloadConsumer.consumeElementPayload method exceeds the consumer timeout"() {
+        given: "the queue has a consumer timeout"
+            testContext = new TransactionalQueueUnitTestContext(queueName, mutableClock, meterRegistry, TransactionalQueueConfigurationProperties.builder()
+                .withLockTimeout(configurationProperties.lockTimeout())
+                .withMaxDispatchCount(configurationProperties.maxDispatchCount())
+                .withRetryDispatchBatchSize(configurationProperties.retryDispatchBatchSize())
+                .withRetryScheduledRateDelay(configurationProperties.retryScheduledRateDelay())
+                .withConsumerTimeout(Duration.ofMillis(50))
+                .build())
+
+        and: "the current time is set"
+            Instant now = testContext.nowIs("2025-04-25T12:00:00Z")
+
+        and: "I insert the transactional queue element"
+            TestTransactionalQueueElement element = testContext.repository.insert(aTestTransactionalQueueElementToEnqueue(), now, now + Duration.ofSeconds(1))
+                .discardError().get()
+
+        and: "a Payload Consumer hangs in consumeElementPayload method"
+            testContext.queuePayloadConsumer.willRunBeforeConsume { Thread.sleep(10_000) }
+
+        when: "I dispatch the transactional queue element"
+            testContext.transactionalQueue.dispatch(element)
+
+        then: "the TransactionalQueue.error metric should be reported"
+            meterRegistry.getMetersAsString() == "TransactionalQueue.error(COUNTER)[" +
+                "error-class='java.lang.InterruptedException', " +
+                "error-type='consume-element-payload-timeout', " +
+                "queue-name='TestQueue']; " +
+                "count=1.0"
+
+        and: "the payload is not consumed and the interrupt does not leak to the dispatching thread"
+            testContext.queuePayloadConsumer.count() == 0
+            !Thread.currentThread().isInterrupted()
+    }
+
+    def "should refuse a consumer timeout longer than the lock timeout"() {
+        when: "I create a queue whose consumer timeout is longer than its lock timeout"
+            new TransactionalQueueUnitTestContext(queueName, mutableClock, meterRegistry, TransactionalQueueConfigurationProperties.builder()
+                .withLockTimeout(Duration.ofSeconds(10))
+                .withMaxDispatchCount(3)
+                .withRetryDispatchBatchSize(10)
+                .withRetryScheduledRateDelay(Duration.ofMillis(100))
+                .withConsumerTimeout(Duration.ofSeconds(11))
+                .build())
+
+        then:
+            IllegalArgumentException exception = thrown()
+            exception.message == "Configuration property 'consumer-timeout' of queue TestQueue must not be longer than 'lock-timeout'."
+    }
+
+    def "should refuse a delayed dispatch look-ahead reaching the lock timeout"() {
+        when: "I create a queue whose look-ahead would lock elements again at their lock expiry"
+            new TransactionalQueueUnitTestContext(queueName, mutableClock, meterRegistry, TransactionalQueueConfigurationProperties.builder()
+                .withLockTimeout(Duration.ofSeconds(10))
+                .withMaxDispatchCount(3)
+                .withRetryDispatchBatchSize(10)
+                .withRetryScheduledRateDelay(Duration.ofMillis(100))
+                .withDelayedDispatchLookAhead(Duration.ofSeconds(10))
+                .build())
+
+        then:
+            IllegalArgumentException exception = thrown()
+            exception.message == "Configuration property 'delayed-dispatch-look-ahead' of queue TestQueue must be shorter than 'lock-timeout'."
+    }
+
     def "should register failure metric when dispatch failed on opened transaction commit"() {
         given: "the current time is set"
             Instant now = testContext.nowIs("2025-04-25T12:00:00Z")
@@ -563,6 +979,14 @@ class TransactionalQueueSpec extends Specification {
         }
     }
 
+    private static TestTransactionalQueueElementToEnqueue elementWithCollapseKey(String collapseKey, String value) {
+        return new TestTransactionalQueueElementToEnqueue(new TestPayload(value, "value"), Duration.ZERO, null, collapseKey)
+    }
+
+    private static TestTransactionalQueueElementToEnqueue elementWithIdempotencyKey(String idempotencyKey) {
+        return new TestTransactionalQueueElementToEnqueue(aTestTransactionalQueueElementToEnqueue().payload(), Duration.ZERO, idempotencyKey)
+    }
+
     protected TransactionalQueueUnitTestContextAssert assertThatTransactionalQueue() {
         return testContext.assertThat()
     }
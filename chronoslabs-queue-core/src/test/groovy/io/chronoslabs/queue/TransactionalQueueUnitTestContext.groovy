@@ -1,6 +1,7 @@
 package io.chronoslabs.queue
 
 import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import io.micrometer.observation.ObservationRegistry
 
 import java.time.Instant
 import java.time.temporal.TemporalAmount
@@ -19,7 +20,8 @@ class TransactionalQueueUnitTestContext {
 
     TransactionalQueueUnitTestContext(String queueName, UpdatableFixedClock mutableClock,
                                       SimpleMeterRegistry meterRegistry,
-                                      TransactionalQueueConfigurationProperties configurationProperties) {
+                                      TransactionalQueueConfigurationProperties configurationProperties,
+                                      ObservationRegistry observationRegistry = ObservationRegistry.NOOP) {
         this.queueName = queueName
         this.mutableClock = mutableClock
         this.meterRegistry = meterRegistry
@@ -30,6 +32,7 @@ class TransactionalQueueUnitTestContext {
             .withQueueName(queueName)
             .withClock(mutableClock)
             .withMeterRegistry(meterRegistry)
+            .withObservationRegistry(observationRegistry)
             .withTransactionCreator(transactionCreator)
             .withQueuePayloadConsumer(queuePayloadConsumer)
             .withQueueRepository(repository)
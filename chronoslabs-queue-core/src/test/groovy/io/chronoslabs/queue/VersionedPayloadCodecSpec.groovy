@@ -0,0 +1,110 @@
+package io.chronoslabs.queue
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import spock.lang.Specification
+
+class VersionedPayloadCodecSpec extends Specification {
+    String queueName = "TestQueue"
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry()
+
+    PayloadCodec<TestPayload> json = PayloadCodec.json(
+        { TestPayload payload -> "{\"payloadProperty1\":\"${payload.payloadProperty1()}\",\"payloadProperty2\":\"${payload.payloadProperty2()}\"}".toString() },
+        { String text -> new TestPayload(text.split("\"")[3], text.split("\"")[7]) })
+    PayloadCodec<TestPayload> binary = PayloadCodec.<TestPayload> binary(
+        { TestPayload payload, DataOutput output ->
+            output.writeUTF(payload.payloadProperty1())
+            output.writeUTF(payload.payloadProperty2())
+        },
+        { DataInput input -> new TestPayload(input.readUTF(), input.readUTF()) })
+
+    def "should prefix the encoded payload with the version of its codec"() {
+        given:
+            VersionedPayloadCodec<TestPayload> codec = aCodec().withCodec(3, binary).build()
+            TestPayload payload = new TestPayload("value1", "value2")
+
+        when:
+            byte[] stored = codec.encode(payload)
+
+        then:
+            stored[0] == (byte) 3
+            stored.length == 1 + binary.encode(payload).length
+            codec.decode(stored) == payload
+    }
+
+    def "should compress payloads from the threshold on and only when they get smaller"() {
+        given:
+            VersionedPayloadCodec<TestPayload> codec = aCodec().withCodec(1, json).withCompressionThreshold(64).build()
+            TestPayload small = new TestPayload("value1", "value2")
+            TestPayload large = new TestPayload("value1" * 100, "value2" * 100)
+            VersionedPayloadCodec<byte[]> bytesCodec = VersionedPayloadCodec.<byte[]> builder(queueName)
+                .withMeterRegistry(meterRegistry)
+                .withCodec(1, [encode: { it }, decode: { it }] as PayloadCodec<byte[]>)
+                .withCompressionThreshold(64)
+                .build()
+            byte[] incompressible = new byte[200]
+            new Random(42).nextBytes(incompressible)
+
+        when:
+            byte[] storedSmall = codec.encode(small)
+            byte[] storedLarge = codec.encode(large)
+            byte[] storedIncompressible = bytesCodec.encode(incompressible)
+
+        then:
+            storedSmall[0] == (byte) 1
+            storedLarge[0] == (byte) 0x81
+            storedLarge.length < json.encode(large).length / 10
+            storedIncompressible[0] == (byte) 1
+            storedIncompressible.length == 201
+
+        and:
+            codec.decode(storedSmall) == small
+            codec.decode(storedLarge) == large
+            bytesCodec.decode(storedIncompressible) == incompressible
+    }
+
+    def "should decode payloads of previous versions after the current codec changed"() {
+        given: "a payload stored with the JSON codec"
+            byte[] storedWithJson = aCodec().withCodec(1, json).build().encode(new TestPayload("value1", "value2"))
+
+        when: "the binary codec becomes the current one"
+            VersionedPayloadCodec<TestPayload> codec = aCodec().withCodec(1, json).withCodec(2, binary).build()
+            byte[] storedWithBinary = codec.encode(new TestPayload("value3", "value4"))
+
+        then:
+            storedWithBinary[0] == (byte) 2
+            codec.decode(storedWithJson) == new TestPayload("value1", "value2")
+            codec.decode(storedWithBinary) == new TestPayload("value3", "value4")
+    }
+
+    def "should reject a payload of an unknown codec version"() {
+        given:
+            byte[] stored = aCodec().withCodec(5, binary).build().encode(new TestPayload("value1", "value2"))
+
+        when:
+            aCodec().withCodec(1, json).build().decode(stored)
+
+        then:
+            IllegalArgumentException exception = thrown()
+            exception.message == "The stored payload has been encoded with unknown codec version 5."
+    }
+
+    def "should record the bytes written and read and the compression ratio of the queue"() {
+        given:
+            VersionedPayloadCodec<TestPayload> codec = aCodec().withCodec(1, json).withCompressionThreshold(64).build()
+            TestPayload large = new TestPayload("value1" * 100, "value2" * 100)
+
+        when:
+            byte[] stored = codec.encode(large)
+            codec.decode(stored)
+
+        then:
+            meterRegistry.get("TransactionalQueue.payloadBytesWritten").tag("queue-name", queueName).summary().totalAmount() == stored.length
+            meterRegistry.get("TransactionalQueue.payloadBytesRead").tag("queue-name", queueName).summary().totalAmount() == stored.length
+            meterRegistry.get("TransactionalQueue.payloadCompressionRatio").tag("queue-name", queueName).summary().max() ==
+                (double) json.encode(large).length / stored.length
+    }
+
+    private VersionedPayloadCodec.Builder<TestPayload> aCodec() {
+        return VersionedPayloadCodec.<TestPayload> builder(queueName).withMeterRegistry(meterRegistry)
+    }
+}
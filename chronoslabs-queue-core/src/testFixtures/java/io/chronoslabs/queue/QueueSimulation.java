@@ -0,0 +1,532 @@
+package io.chronoslabs.queue;
+
+import static io.chronoslabs.queue.Assert.isPositive;
+import static io.chronoslabs.queue.Assert.isTrue;
+import static io.chronoslabs.queue.Assert.requireNonNull;
+
+import com.github.sviperll.result4j.Result;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Deterministic simulation of many nodes competing for one queue, for tuning the lock timeout and
+ * the batch size without a cluster. Each virtual node runs a real {@link TransactionalQueue} with
+ * its own {@link UpdatableFixedClock}, skewed by up to {@code maxClockSkew}, against one shared
+ * {@link InMemoryTransactionalQueueElementRepository}, which models {@code SKIP LOCKED} and the
+ * {@code dispatch_count} guard of the delete.
+ *
+ * <p>Simulated time advances from event to event on the calling thread, and every random choice
+ * comes from the seed, so a run is reproducible. A node calls {@link
+ * TransactionalQueue#retryDispatch()} every {@code retryInterval} from a random offset, and hands
+ * the published elements to {@code workersPerNode} workers. A dispatch deletes the element and
+ * calls the consumer at once, then keeps its transaction, and so its row lock, open for the
+ * consumer duration before committing. A node may crash on a retry tick, rolling back its running
+ * dispatches and losing its published elements, and restarts as a new process after {@code
+ * crashDowntime}.
+ *
+ * <p>The in-memory repository fails a delete of a row held by another transaction at once, where
+ * the database would wait for the other transaction, so such a dispatch is counted as stale even if
+ * the other transaction is later rolled back.
+ */
+public final class QueueSimulation {
+  private static final String QUEUE_NAME = "SimulatedQueue";
+  private static final Instant START = UpdatableFixedClock.DEFAULT_FIXED_TIME;
+
+  private final Builder configuration;
+  private final Random random;
+  private final InMemoryTransactionCreator transactionCreator = new InMemoryTransactionCreator();
+  private final InMemoryTransactionalQueueElementRepository<
+          Long, SimulatedElement, SimulatedElementToEnqueue>
+      repository;
+  private final Queue<Event> events =
+      new PriorityQueue<>(Comparator.comparing(Event::at).thenComparingLong(Event::sequence));
+  private final List<Node> nodes = new ArrayList<>();
+  private final Map<Long, Integer> consumerCalls = new HashMap<>();
+  private final Set<Long> consumed = new HashSet<>();
+  private final Set<Long> deadLettered = new HashSet<>();
+  private Instant now = START;
+  private long sequence;
+  private long consumerInvocations;
+  private long duplicateConsumptions;
+  private long staleDispatches;
+  private long lockExpiryRedeliveries;
+  private int crashes;
+  private Duration maxLatency = Duration.ZERO;
+
+  private QueueSimulation(Builder configuration) {
+    this.configuration = configuration;
+    this.random = new Random(configuration.seed);
+    this.repository =
+        new InMemoryTransactionalQueueElementRepository<>(QUEUE_NAME, transactionCreator);
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /** Enqueues the elements, runs the nodes until they are all consumed and reports the outcome. */
+  @SuppressWarnings("PMD.AvoidInstantiatingObjectsInLoops")
+  public SimulationReport run() {
+    for (long payload = 0; payload < configuration.elementCount; payload++) {
+      repository.insert(new SimulatedElementToEnqueue(payload), START, START);
+    }
+    for (int index = 0; index < configuration.nodeCount; index++) {
+      var clockSkew =
+          randomBetween(configuration.maxClockSkew.negated(), configuration.maxClockSkew);
+      var node = new Node(clockSkew);
+      nodes.add(node);
+      node.start();
+      schedule(randomBetween(Duration.ZERO, configuration.retryInterval), node, node::retryTick);
+    }
+    var end = START.plus(configuration.maxSimulatedTime);
+    while (!events.isEmpty() && !isDrained()) {
+      var event = events.poll();
+      if (event.at().isAfter(end)) {
+        now = end;
+        break;
+      }
+      now = event.at();
+      if (event.node().epoch == event.epoch()) {
+        event.action().run();
+      }
+    }
+    return new SimulationReport(
+        configuration.nodeCount,
+        configuration.elementCount,
+        consumed.size(),
+        deadLettered.size(),
+        consumerInvocations,
+        duplicateConsumptions,
+        staleDispatches,
+        lockExpiryRedeliveries,
+        crashes,
+        nodes.stream().map(node -> node.consumedCount).toList(),
+        Duration.between(START, now),
+        maxLatency);
+  }
+
+  private boolean isDrained() {
+    return consumed.size() + deadLettered.size() == configuration.elementCount;
+  }
+
+  private void schedule(Duration delay, Node node, Runnable action) {
+    events.add(new Event(now.plus(delay), sequence++, node, node.epoch, action));
+  }
+
+  private Duration randomBetween(Duration min, Duration max) {
+    var range = max.minus(min).toNanos();
+    return range <= 0 ? min : min.plusNanos((long) (random.nextDouble() * range));
+  }
+
+  private Duration consumerDuration() {
+    if (random.nextDouble() < configuration.slowConsumerProbability) {
+      return configuration.slowConsumerDuration;
+    }
+    return randomBetween(configuration.minConsumerDuration, configuration.maxConsumerDuration);
+  }
+
+  private Result<SimulatedElement, TransactionalQueueError<SimulatedElement>> deadLetter(
+      SimulatedElement element) {
+    deadLettered.add(element.payload());
+    return Result.success(element);
+  }
+
+  private record Event(Instant at, long sequence, Node node, int epoch, Runnable action) {}
+
+  /** A dispatch holding its transactions open while its consumer runs. */
+  private record RunningDispatch(
+      SimulatedElement element, List<InMemoryTransaction> transactions) {}
+
+  private final class Node {
+    private final Duration clockSkew;
+    private final UpdatableFixedClock clock = UpdatableFixedClock.defaultUpdatableFixedClock();
+    private final FakeTransactionalQueueApplicationEventPublisher applicationEventPublisher =
+        new FakeTransactionalQueueApplicationEventPublisher();
+    private final FakeTransactionalQueueElementPayloadConsumer<SimulatedElement> payloadConsumer =
+        new FakeTransactionalQueueElementPayloadConsumer<>();
+    private final DeferringTransactionCreator nodeTransactionCreator =
+        new DeferringTransactionCreator();
+    private final Deque<SimulatedElement> published = new ArrayDeque<>();
+    private final List<RunningDispatch> running = new ArrayList<>();
+    private TransactionalQueue<Long, SimulatedElement, SimulatedElementToEnqueue> queue;
+    private SimulatedElement dispatching;
+    private boolean consumerCalled;
+    private int epoch;
+    private int consumedCount;
+
+    private Node(Duration clockSkew) {
+      this.clockSkew = clockSkew;
+      payloadConsumer.willRunBeforeConsume(this::onConsume);
+    }
+
+    /** Starts the node as a new process, with nothing locked and nothing published. */
+    private void start() {
+      queue =
+          TransactionalQueueFactory.<Long, SimulatedElement, SimulatedElementToEnqueue>factory()
+              .withQueueName(QUEUE_NAME)
+              .withClock(clock)
+              .withMeterRegistry(new SimpleMeterRegistry())
+              .withTransactionCreator(nodeTransactionCreator)
+              .withApplicationEventPublisher(applicationEventPublisher)
+              .withQueuePayloadConsumer(payloadConsumer)
+              .withQueueRepository(repository)
+              .withQueueDeadLetterRepository(QueueSimulation.this::deadLetter)
+              .withConfigurationProperties(
+                  TransactionalQueueConfigurationProperties.builder()
+                      .withLockTimeout(configuration.lockTimeout)
+                      .withMaxDispatchCount(configuration.maxDispatchCount)
+                      .withRetryDispatchBatchSize(configuration.batchSize)
+                      .withRetryScheduledRateDelay(configuration.retryInterval)
+                      .build())
+              .create();
+    }
+
+    @SuppressWarnings("PMD.AvoidLiteralsInIfCondition")
+    private void retryTick() {
+      if (random.nextDouble() < configuration.crashProbability) {
+        crash();
+        return;
+      }
+      clock.nowIs(now.plus(clockSkew));
+      queue.retryDispatch();
+      for (var event : applicationEventPublisher.getPublishedEvents()) {
+        var element = (SimulatedElement) event;
+        if (element.dispatchCount() > 1) {
+          lockExpiryRedeliveries++;
+        }
+        published.add(element);
+      }
+      applicationEventPublisher.reset();
+      startWorkers();
+      schedule(configuration.retryInterval, this, this::retryTick);
+    }
+
+    private void startWorkers() {
+      while (running.size() < configuration.workersPerNode && !published.isEmpty()) {
+        startDispatch(published.poll());
+      }
+    }
+
+    private void startDispatch(SimulatedElement element) {
+      clock.nowIs(now.plus(clockSkew));
+      dispatching = element;
+      consumerCalled = false;
+      nodeTransactionCreator.deferCommits = true;
+      try {
+        queue.dispatch(element);
+      } finally {
+        nodeTransactionCreator.deferCommits = false;
+      }
+      var transactions = nodeTransactionCreator.takeDeferred();
+      if (!consumerCalled) {
+        staleDispatches++;
+        transactions.forEach(InMemoryTransaction::commit);
+        return;
+      }
+      var dispatch = new RunningDispatch(element, transactions);
+      running.add(dispatch);
+      schedule(consumerDuration(), this, () -> finishDispatch(dispatch));
+    }
+
+    @SuppressWarnings("PMD.AvoidLiteralsInIfCondition")
+    private void onConsume() {
+      consumerCalled = true;
+      consumerInvocations++;
+      if (consumerCalls.merge(dispatching.payload(), 1, Integer::sum) > 1) {
+        duplicateConsumptions++;
+      }
+    }
+
+    private void finishDispatch(RunningDispatch dispatch) {
+      dispatch.transactions().forEach(InMemoryTransaction::commit);
+      running.remove(dispatch);
+      if (consumed.add(dispatch.element().payload())) {
+        var latency = Duration.between(dispatch.element().createdAt(), now);
+        maxLatency = latency.compareTo(maxLatency) > 0 ? latency : maxLatency;
+      }
+      consumedCount++;
+      startWorkers();
+    }
+
+    /** Rolls back the running dispatches, so their elements are locked again once it expires. */
+    private void crash() {
+      crashes++;
+      epoch++;
+      for (var dispatch : running) {
+        var transactions = dispatch.transactions();
+        for (int index = transactions.size() - 1; index >= 0; index--) {
+          transactions.get(index).rollback();
+        }
+      }
+      running.clear();
+      published.clear();
+      schedule(
+          configuration.crashDowntime,
+          this,
+          () -> {
+            start();
+            retryTick();
+          });
+    }
+  }
+
+  /**
+   * Opens the transactions of a node. While {@code deferCommits} is set, a commit detaches the
+   * transaction instead, so the dispatch keeps its row locks until the simulation completes it.
+   */
+  private final class DeferringTransactionCreator implements TransactionCreator {
+    private final List<InMemoryTransaction> deferred = new ArrayList<>();
+    private boolean deferCommits;
+
+    @Override
+    public Result<OpenedTransaction, TransactionalQueueError<String>> openTransaction(
+        TransactionDefinition transactionDefinition, String queueName) {
+      var opened = transactionCreator.openTransaction(transactionDefinition, queueName);
+      if (!deferCommits || Results.isError(opened)) {
+        return opened;
+      }
+      var transaction = Results.success(opened);
+      return Result.success(
+          new OpenedTransaction() {
+            @Override
+            public <S> Result<S, TransactionalQueueError<String>> commit(S success) {
+              deferred.add(transactionCreator.detachCurrentTransaction());
+              return Result.success(success);
+            }
+
+            @Override
+            public void rollback() {
+              transaction.rollback();
+            }
+          });
+    }
+
+    private List<InMemoryTransaction> takeDeferred() {
+      var taken = List.copyOf(deferred);
+      deferred.clear();
+      return taken;
+    }
+  }
+
+  private record SimulatedElement(
+      long id, Instant createdAt, Instant nextDispatchAfter, int dispatchCount, Long payload)
+      implements TransactionalQueueElement<Long> {}
+
+  private record SimulatedElementToEnqueue(Long payload)
+      implements TransactionalQueueElementToEnqueue<Long, SimulatedElement> {
+
+    @Override
+    public TransactionalQueueElementBuilder<Long, SimulatedElement>
+        toTransactionalQueueElementBuilder() {
+      return new SimulatedElementBuilder().withPayload(payload);
+    }
+  }
+
+  private static final class SimulatedElementBuilder
+      implements TransactionalQueueElementBuilder<Long, SimulatedElement> {
+    private long id;
+    private Instant createdAt;
+    private Instant nextDispatchAfter;
+    private int dispatchCount;
+    private Long payload;
+
+    @Override
+    public SimulatedElementBuilder withId(long id) {
+      this.id = id;
+      return this;
+    }
+
+    @Override
+    public SimulatedElementBuilder withCreatedAt(Instant createdAt) {
+      this.createdAt = createdAt;
+      return this;
+    }
+
+    @Override
+    public SimulatedElementBuilder withDispatchCount(int dispatchCount) {
+      this.dispatchCount = dispatchCount;
+      return this;
+    }
+
+    @Override
+    public SimulatedElementBuilder withNextDispatchAfter(Instant nextDispatchAfter) {
+      this.nextDispatchAfter = nextDispatchAfter;
+      return this;
+    }
+
+    @Override
+    public SimulatedElementBuilder withPayload(Long payload) {
+      this.payload = payload;
+      return this;
+    }
+
+    @Override
+    public SimulatedElement build() {
+      return new SimulatedElement(id, createdAt, nextDispatchAfter, dispatchCount, payload);
+    }
+  }
+
+  public static final class Builder {
+    private long seed;
+    private int nodeCount = 1;
+    private int elementCount = 1000;
+    private Duration lockTimeout = Duration.ofSeconds(10);
+    private int maxDispatchCount = 3;
+    private int batchSize = 10;
+    private Duration retryInterval = Duration.ofMillis(100);
+    private int workersPerNode = 4;
+    private Duration minConsumerDuration = Duration.ofMillis(5);
+    private Duration maxConsumerDuration = Duration.ofMillis(20);
+    private double slowConsumerProbability;
+    private Duration slowConsumerDuration = Duration.ZERO;
+    private double crashProbability;
+    private Duration crashDowntime = Duration.ofSeconds(5);
+    private Duration maxClockSkew = Duration.ZERO;
+    private Duration maxSimulatedTime = Duration.ofHours(1);
+
+    private Builder() {}
+
+    public Builder withSeed(long seed) {
+      this.seed = seed;
+      return this;
+    }
+
+    public Builder withNodeCount(int nodeCount) {
+      this.nodeCount = nodeCount;
+      return this;
+    }
+
+    public Builder withElementCount(int elementCount) {
+      this.elementCount = elementCount;
+      return this;
+    }
+
+    public Builder withLockTimeout(Duration lockTimeout) {
+      this.lockTimeout = lockTimeout;
+      return this;
+    }
+
+    public Builder withMaxDispatchCount(int maxDispatchCount) {
+      this.maxDispatchCount = maxDispatchCount;
+      return this;
+    }
+
+    public Builder withBatchSize(int batchSize) {
+      this.batchSize = batchSize;
+      return this;
+    }
+
+    public Builder withRetryInterval(Duration retryInterval) {
+      this.retryInterval = retryInterval;
+      return this;
+    }
+
+    /** Number of elements a node consumes at the same time. */
+    public Builder withWorkersPerNode(int workersPerNode) {
+      this.workersPerNode = workersPerNode;
+      return this;
+    }
+
+    /** Consumer durations are drawn uniformly between both bounds. */
+    public Builder withConsumerDuration(
+        Duration minConsumerDuration, Duration maxConsumerDuration) {
+      this.minConsumerDuration = minConsumerDuration;
+      this.maxConsumerDuration = maxConsumerDuration;
+      return this;
+    }
+
+    /** Share of the dispatches whose consumer takes {@code slowConsumerDuration} instead. */
+    public Builder withSlowConsumers(
+        double slowConsumerProbability, Duration slowConsumerDuration) {
+      this.slowConsumerProbability = slowConsumerProbability;
+      this.slowConsumerDuration = slowConsumerDuration;
+      return this;
+    }
+
+    /** Chance of a node crashing on each of its retry ticks. */
+    public Builder withCrashes(double crashProbability, Duration crashDowntime) {
+      this.crashProbability = crashProbability;
+      this.crashDowntime = crashDowntime;
+      return this;
+    }
+
+    public Builder withMaxClockSkew(Duration maxClockSkew) {
+      this.maxClockSkew = maxClockSkew;
+      return this;
+    }
+
+    /** Stops a run which has not consumed every element by then. */
+    public Builder withMaxSimulatedTime(Duration maxSimulatedTime) {
+      this.maxSimulatedTime = maxSimulatedTime;
+      return this;
+    }
+
+    public QueueSimulation build() {
+      isTrue(nodeCount > 0, "QueueSimulation.nodeCount must be greater than zero.");
+      isTrue(elementCount >= 0, "QueueSimulation.elementCount must not be negative.");
+      isTrue(workersPerNode > 0, "QueueSimulation.workersPerNode must be greater than zero.");
+      isPositive(
+          requireNonNull(retryInterval, "QueueSimulation.retryInterval"),
+          "QueueSimulation.retryInterval must be greater than zero.");
+      isTrue(
+          !requireNonNull(maxConsumerDuration, "QueueSimulation.maxConsumerDuration")
+              .minus(requireNonNull(minConsumerDuration, "QueueSimulation.minConsumerDuration"))
+              .isNegative(),
+          "QueueSimulation.minConsumerDuration must not be longer than maxConsumerDuration.");
+      requireNonNull(lockTimeout, "QueueSimulation.lockTimeout");
+      requireNonNull(slowConsumerDuration, "QueueSimulation.slowConsumerDuration");
+      requireNonNull(crashDowntime, "QueueSimulation.crashDowntime");
+      requireNonNull(maxClockSkew, "QueueSimulation.maxClockSkew");
+      requireNonNull(maxSimulatedTime, "QueueSimulation.maxSimulatedTime");
+      return new QueueSimulation(copy());
+    }
+
+    /** Runs the simulation once per node count, with the same seed and settings otherwise. */
+    public List<SimulationReport> runForNodeCounts(int... nodeCounts) {
+      var reports = new ArrayList<SimulationReport>(nodeCounts.length);
+      var initialNodeCount = nodeCount;
+      try {
+        for (var count : nodeCounts) {
+          reports.add(withNodeCount(count).build().run());
+        }
+      } finally {
+        nodeCount = initialNodeCount;
+      }
+      return reports;
+    }
+
+    private Builder copy() {
+      var copy = new Builder();
+      copy.seed = seed;
+      copy.nodeCount = nodeCount;
+      copy.elementCount = elementCount;
+      copy.lockTimeout = lockTimeout;
+      copy.maxDispatchCount = maxDispatchCount;
+      copy.batchSize = batchSize;
+      copy.retryInterval = retryInterval;
+      copy.workersPerNode = workersPerNode;
+      copy.minConsumerDuration = minConsumerDuration;
+      copy.maxConsumerDuration = maxConsumerDuration;
+      copy.slowConsumerProbability = slowConsumerProbability;
+      copy.slowConsumerDuration = slowConsumerDuration;
+      copy.crashProbability = crashProbability;
+      copy.crashDowntime = crashDowntime;
+      copy.maxClockSkew = maxClockSkew;
+      copy.maxSimulatedTime = maxSimulatedTime;
+      return copy;
+    }
+  }
+}
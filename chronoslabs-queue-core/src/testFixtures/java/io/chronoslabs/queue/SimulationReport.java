@@ -0,0 +1,71 @@
+package io.chronoslabs.queue;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Outcome of a {@link QueueSimulation} run.
+ *
+ * @param consumedElements elements whose consumption has been committed.
+ * @param consumerInvocations calls of the payload consumer, including those rolled back by a crash.
+ * @param duplicateConsumptions consumer calls for elements whose payload had already been consumed,
+ *     because a node crashed before committing.
+ * @param staleDispatches dispatches which did not reach the consumer, since the element had been
+ *     locked again by another node or was being dispatched by it, and were discarded by the {@code
+ *     dispatch_count} guard of the delete.
+ * @param lockExpiryRedeliveries elements locked again after their lock had expired.
+ * @param consumedPerNode committed consumptions of each node, in node order.
+ * @param elapsed simulated time until every element had been consumed or dead lettered, or the
+ *     maximum simulated time.
+ * @param maxLatency longest time from enqueueing to the committed consumption of an element.
+ */
+public record SimulationReport(
+    int nodeCount,
+    int elementCount,
+    int consumedElements,
+    int deadLetteredElements,
+    long consumerInvocations,
+    long duplicateConsumptions,
+    long staleDispatches,
+    long lockExpiryRedeliveries,
+    int crashes,
+    List<Integer> consumedPerNode,
+    Duration elapsed,
+    Duration maxLatency) {
+
+  public SimulationReport {
+    consumedPerNode = List.copyOf(consumedPerNode);
+  }
+
+  public boolean isDrained() {
+    return consumedElements + deadLetteredElements == elementCount;
+  }
+
+  /** Duplicate consumer calls per consumed element. */
+  public double duplicateConsumptionRate() {
+    return consumedElements == 0 ? 0 : (double) duplicateConsumptions / consumedElements;
+  }
+
+  /** Share of the dispatches which were discarded by the delete guard. */
+  public double staleDispatchRate() {
+    var dispatches = consumerInvocations + staleDispatches;
+    return dispatches == 0 ? 0 : (double) staleDispatches / dispatches;
+  }
+
+  /** Consumed elements per simulated second. */
+  public double throughputPerSecond() {
+    return elapsed.isZero() ? 0 : consumedElements * 1_000_000_000d / elapsed.toNanos();
+  }
+
+  /** Nodes which have not committed a single consumption. */
+  public long starvedNodes() {
+    return consumedPerNode.stream().filter(consumed -> consumed == 0).count();
+  }
+
+  /** Consumptions of the least busy node relative to the mean, {@code 1} when evenly spread. */
+  public double minNodeShare() {
+    var mean = (double) consumedElements / nodeCount;
+    var min = consumedPerNode.stream().mapToInt(Integer::intValue).min().orElse(0);
+    return mean == 0 ? 0 : min / mean;
+  }
+}
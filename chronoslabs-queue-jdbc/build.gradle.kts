@@ -0,0 +1,17 @@
+plugins {
+    id("java-library")
+    id("publishing-conventions")
+}
+
+dependencies {
+    api(projects.chronoslabsQueueCore)
+
+    implementation(libs.logging.slf4j.api)
+
+    testImplementation(platform(libs.spring.boot.platform))
+    testImplementation(libs.test.groovy.language)
+    testImplementation(testFixtures(projects.chronoslabsQueueCore))
+    testImplementation(libs.loadtest.embeddedPostgres)
+
+    testRuntimeOnly(libs.loadtest.postgresql)
+}
@@ -0,0 +1,25 @@
+package io.chronoslabs.queue;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Finds the connection of the transaction the caller is running in, so {@link
+ * JdbcTransactionCreator} can enqueue with {@link TransactionDefinition#PROPAGATION_MANDATORY}
+ * inside transactions it did not open, for example a connection bound to the current thread by the
+ * application's own transaction management.
+ */
+@FunctionalInterface
+public interface JdbcConnectionLookup {
+
+  /**
+   * @return the connection of the caller's current transaction, or {@code null} when the caller is
+   *     not in a transaction.
+   */
+  Connection currentConnection() throws SQLException;
+
+  /** Lookup for applications which only use {@link JdbcTransactionCreator} transactions. */
+  static JdbcConnectionLookup none() {
+    return () -> null;
+  }
+}
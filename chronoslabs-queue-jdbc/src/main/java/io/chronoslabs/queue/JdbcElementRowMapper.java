@@ -0,0 +1,14 @@
+package io.chronoslabs.queue;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Maps the current row of a {@link ResultSet} with the table columns of the queue to an element.
+ * Reading the payload column into a {@link LazyPayload} defers its decoding until the consumer
+ * reads it.
+ */
+@FunctionalInterface
+public interface JdbcElementRowMapper<E> {
+  E mapRow(ResultSet resultSet) throws SQLException;
+}
@@ -0,0 +1,171 @@
+package io.chronoslabs.queue;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.sql.DataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A connection together with the prepared statements created on it, keyed by their SQL. The
+ * statements stay open and are reused for as long as the connection is, so the driver can keep them
+ * prepared on the database server instead of parsing and planning every statement again.
+ *
+ * <p>A session either owns its connection, which {@link JdbcTransactionCreator} opened and keeps
+ * between transactions, or wraps the connection of a caller's transaction, which it never commits
+ * or closes. Not thread-safe, a session is only used by the thread running its transaction.
+ */
+@SuppressWarnings({"PMD.AvoidFieldNameMatchingMethodName", "PMD.CloseResource"})
+final class JdbcSession {
+  private static final Logger logger = LoggerFactory.getLogger(JdbcSession.class);
+  private static final String[] GENERATED_ID_COLUMNS = {"id"};
+
+  private final Connection connection;
+  private final boolean ownsConnection;
+  private final Map<String, PreparedStatement> statements = new HashMap<>();
+  private final Map<String, PreparedStatement> statementsReturningId = new HashMap<>();
+  private boolean broken;
+  private boolean hasStatementDeadline;
+  private long statementDeadlineNanos;
+
+  private JdbcSession(Connection connection, boolean ownsConnection) {
+    this.connection = connection;
+    this.ownsConnection = ownsConnection;
+  }
+
+  static JdbcSession open(DataSource dataSource) throws SQLException {
+    Connection connection = dataSource.getConnection();
+    try {
+      connection.setAutoCommit(false);
+    } catch (SQLException exception) {
+      connection.close();
+      throw exception;
+    }
+    return new JdbcSession(connection, true);
+  }
+
+  static JdbcSession ofCallerConnection(Connection connection) {
+    return new JdbcSession(connection, false);
+  }
+
+  Connection connection() {
+    return connection;
+  }
+
+  /** Returns the cached statement for the SQL. Callers must not close it. */
+  PreparedStatement prepare(String sql) throws SQLException {
+    return prepare(statements, sql, false);
+  }
+
+  /** Returns the cached statement for the SQL which returns the generated {@code id} column. */
+  PreparedStatement prepareReturningId(String sql) throws SQLException {
+    return prepare(statementsReturningId, sql, true);
+  }
+
+  /**
+   * Gives the statements prepared until {@link #clearStatementDeadline()} the time remaining until
+   * the deadline, measured by {@link System#nanoTime()}, as their query timeout.
+   */
+  void setStatementDeadline(long deadlineNanos) {
+    hasStatementDeadline = true;
+    statementDeadlineNanos = deadlineNanos;
+  }
+
+  /** Removes the deadline and the query timeouts it set on the cached statements. */
+  void clearStatementDeadline() {
+    if (!hasStatementDeadline) {
+      return;
+    }
+    hasStatementDeadline = false;
+    clearQueryTimeouts(statements);
+    clearQueryTimeouts(statementsReturningId);
+  }
+
+  void commit() throws SQLException {
+    try {
+      connection.commit();
+    } catch (SQLException exception) {
+      broken = true;
+      throw exception;
+    }
+  }
+
+  void rollback() throws SQLException {
+    try {
+      connection.rollback();
+    } catch (SQLException exception) {
+      broken = true;
+      throw exception;
+    }
+  }
+
+  /** Whether the connection failed to complete a transaction and must not be used again. */
+  boolean isBroken() {
+    return broken;
+  }
+
+  /** Closes the cached statements and, when the session owns it, the connection. */
+  void close() {
+    closeStatements(statements);
+    closeStatements(statementsReturningId);
+    if (!ownsConnection) {
+      return;
+    }
+    try {
+      connection.close();
+    } catch (SQLException exception) {
+      logger.atWarn().setCause(exception).log("Failed to close JDBC connection.");
+    }
+  }
+
+  private PreparedStatement prepare(
+      Map<String, PreparedStatement> cache, String sql, boolean returningId) throws SQLException {
+    var statement = cache.get(sql);
+    if (statement == null || statement.isClosed()) {
+      statement =
+          returningId
+              ? connection.prepareStatement(sql, GENERATED_ID_COLUMNS)
+              : connection.prepareStatement(sql);
+      cache.put(sql, statement);
+    }
+    if (hasStatementDeadline) {
+      statement.setQueryTimeout(remainingSeconds());
+    }
+    return statement;
+  }
+
+  private int remainingSeconds() throws SQLTimeoutException {
+    var remainingNanos = statementDeadlineNanos - System.nanoTime();
+    if (remainingNanos <= 0) {
+      throw new SQLTimeoutException("The deadline of the transaction has passed.");
+    }
+    var remainingSeconds = TimeUnit.NANOSECONDS.toSeconds(remainingNanos - 1) + 1;
+    return (int) Math.min(remainingSeconds, Integer.MAX_VALUE);
+  }
+
+  private static void clearQueryTimeouts(Map<String, PreparedStatement> cache) {
+    for (PreparedStatement statement : cache.values()) {
+      try {
+        statement.setQueryTimeout(0);
+      } catch (SQLException exception) {
+        logger.atDebug().setCause(exception).log("Failed to clear query timeout of statement.");
+      }
+    }
+  }
+
+  private static void closeStatements(Map<String, PreparedStatement> cache) {
+    for (PreparedStatement statement : cache.values()) {
+      try {
+        statement.close();
+      } catch (SQLException exception) {
+        logger.atDebug().setCause(exception).log("Failed to close prepared statement.");
+      }
+    }
+    cache.clear();
+  }
+}
@@ -0,0 +1,426 @@
+package io.chronoslabs.queue;
+
+import static io.chronoslabs.queue.Assert.requireNonNull;
+
+import com.github.sviperll.result4j.Result;
+import java.io.Serial;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.function.Supplier;
+import javax.sql.DataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link TransactionCreator} written directly against a {@link DataSource}. Transactions are bound
+ * to the current thread and follow the propagation rules of the Spring implementation: {@link
+ * TransactionDefinition#PROPAGATION_REQUIRES_NEW} suspends the current transaction until the new
+ * one completes, {@link TransactionDefinition#PROPAGATION_MANDATORY} joins the current transaction
+ * of this creator or, when there is none, the connection returned by the {@link
+ * JdbcConnectionLookup}, and fails when there is neither.
+ *
+ * <p>Connections of completed transactions are kept, up to {@code maxIdleSessions}, together with
+ * the prepared statements of {@link JdbcTransactionalQueueElementRepository}, so the next
+ * transaction reuses both instead of preparing every statement again. The data source must allow
+ * for these idle connections next to the ones of the application.
+ */
+public class JdbcTransactionCreator implements TransactionCreator, AutoCloseable {
+  public static final int DEFAULT_MAX_IDLE_SESSIONS = 8;
+
+  private static final Logger logger = LoggerFactory.getLogger(JdbcTransactionCreator.class);
+
+  private final DataSource dataSource;
+  private final JdbcConnectionLookup connectionLookup;
+  private final BlockingDeque<JdbcSession> idleSessions;
+  private final ThreadLocal<JdbcTransaction> transactionHolder = new ThreadLocal<>();
+  private final ThreadLocal<JdbcSession> callerSessionHolder = new ThreadLocal<>();
+  private volatile boolean closed;
+
+  public JdbcTransactionCreator(DataSource dataSource) {
+    this(dataSource, JdbcConnectionLookup.none(), DEFAULT_MAX_IDLE_SESSIONS);
+  }
+
+  public JdbcTransactionCreator(DataSource dataSource, JdbcConnectionLookup connectionLookup) {
+    this(dataSource, connectionLookup, DEFAULT_MAX_IDLE_SESSIONS);
+  }
+
+  public JdbcTransactionCreator(
+      DataSource dataSource, JdbcConnectionLookup connectionLookup, int maxIdleSessions) {
+    this.dataSource = requireNonNull(dataSource, "JdbcTransactionCreator.dataSource");
+    this.connectionLookup =
+        requireNonNull(connectionLookup, "JdbcTransactionCreator.connectionLookup");
+    if (maxIdleSessions <= 0) {
+      throw new IllegalArgumentException(
+          "JdbcTransactionCreator.maxIdleSessions must be positive, was %d."
+              .formatted(maxIdleSessions));
+    }
+    this.idleSessions = new LinkedBlockingDeque<>(maxIdleSessions);
+  }
+
+  @Override
+  public Result<OpenedTransaction, TransactionalQueueError<String>> openTransaction(
+      TransactionDefinition transactionDefinition, String queueName) {
+    if (closed) {
+      return Result.error(
+          openError(transactionDefinition, queueName, "Transaction creator is closed.", null));
+    }
+    var transaction = transactionHolder.get();
+    if (transactionDefinition == TransactionDefinition.PROPAGATION_REQUIRES_NEW) {
+      try {
+        return Result.success(new JdbcOpenedTransaction(begin(transaction), queueName));
+      } catch (SQLException exception) {
+        return Result.error(
+            openError(transactionDefinition, queueName, "Failed to get connection.", exception));
+      }
+    }
+    if (transaction != null) {
+      return Result.success(new ParticipatingOpenedTransaction(transaction));
+    }
+    JdbcSession callerSession;
+    try {
+      callerSession = callerSession();
+    } catch (TransactionException exception) {
+      return Result.error(
+          openError(transactionDefinition, queueName, exception.getMessage(), exception));
+    }
+    if (callerSession == null) {
+      return Result.error(
+          openError(transactionDefinition, queueName, "No existing transaction found.", null));
+    }
+    return Result.success(CallerOpenedTransaction.INSTANCE);
+  }
+
+  /**
+   * Opens the transaction like {@link #openTransaction(TransactionDefinition, String)}. A new
+   * transaction gives the statements of {@link JdbcTransactionalQueueElementRepository} the time
+   * remaining until the timeout as their query timeout; statements the consumer runs on {@link
+   * #currentConnection()} are not covered.
+   */
+  @Override
+  public Result<OpenedTransaction, TransactionalQueueError<String>> openTransaction(
+      TransactionDefinition transactionDefinition, String queueName, Duration timeout) {
+    var openedTransaction = openTransaction(transactionDefinition, queueName);
+    if (transactionDefinition == TransactionDefinition.PROPAGATION_REQUIRES_NEW
+        && !Results.isError(openedTransaction)) {
+      currentSession().setStatementDeadline(System.nanoTime() + timeout.toNanos());
+    }
+    return openedTransaction;
+  }
+
+  /**
+   * Executes the action in the current transaction or, when there is none, in a new one which is
+   * committed when the action returns and rolled back when it throws. The connection of the
+   * transaction is available to the action through {@link #currentConnection()}, so its own
+   * statements commit atomically with the enqueued elements.
+   *
+   * @throws TransactionException when the transaction could not be opened or committed, or when it
+   *     was marked as rollback-only by a participant, for example a failed enqueue, and has been
+   *     rolled back instead of committed.
+   */
+  public <T> T executeInTransaction(Supplier<T> action) {
+    requireNonNull(action, "JdbcTransactionCreator.action");
+    var currentTransaction = transactionHolder.get();
+    if (currentTransaction != null) {
+      return executeInCurrentTransaction(currentTransaction, action);
+    }
+    if (closed) {
+      throw new TransactionException("Transaction creator is closed.", null);
+    }
+    JdbcTransaction transaction;
+    try {
+      transaction = begin(null);
+    } catch (SQLException exception) {
+      throw new TransactionException("Failed to get connection.", exception);
+    }
+    T result;
+    try {
+      result = action.get();
+    } catch (RuntimeException | Error exception) {
+      complete(transaction);
+      rollbackAndRelease(transaction.session());
+      throw exception;
+    }
+    complete(transaction);
+    if (transaction.isRollbackOnly()) {
+      rollbackAndRelease(transaction.session());
+      throw new TransactionException(
+          "Transaction has been rolled back because it was marked as rollback-only.", null);
+    }
+    try {
+      transaction.session().commit();
+    } catch (SQLException exception) {
+      rollbackAndRelease(transaction.session());
+      throw new TransactionException("Failed to commit transaction.", exception);
+    }
+    release(transaction.session());
+    return result;
+  }
+
+  /**
+   * @return the connection of the transaction bound to the current thread, or {@code null} when
+   *     there is none. The connection must not be committed, rolled back or closed.
+   */
+  public Connection currentConnection() {
+    var transaction = transactionHolder.get();
+    return transaction == null ? null : transaction.session().connection();
+  }
+
+  /** Closes the idle connections. Connections in use are closed when their transaction ends. */
+  @Override
+  public void close() {
+    closed = true;
+    closeIdleSessions();
+  }
+
+  /**
+   * @return the session of the transaction bound to the current thread or, when there is none, of
+   *     the connection returned by the {@link JdbcConnectionLookup}, or {@code null} when there is
+   *     neither.
+   * @throws TransactionException when the lookup of the caller's connection failed.
+   */
+  JdbcSession currentSession() {
+    var transaction = transactionHolder.get();
+    return transaction == null ? callerSession() : transaction.session();
+  }
+
+  private static <T> T executeInCurrentTransaction(
+      JdbcTransaction transaction, Supplier<T> action) {
+    try {
+      return action.get();
+    } catch (RuntimeException | Error exception) {
+      transaction.markRollbackOnly();
+      throw exception;
+    }
+  }
+
+  private JdbcTransaction begin(JdbcTransaction suspendedTransaction) throws SQLException {
+    var session = idleSessions.pollFirst();
+    if (session == null) {
+      session = JdbcSession.open(dataSource);
+    }
+    var transaction = new JdbcTransaction(session, suspendedTransaction);
+    transactionHolder.set(transaction);
+    return transaction;
+  }
+
+  /**
+   * Looks up the caller's connection on every call instead of binding it to the current thread, so
+   * it is never used once the caller's transaction has ended. The session of the previous caller
+   * connection is kept while the caller hands out the same connection, so statements are reused for
+   * all elements enqueued in one caller transaction or on a long-lived connection. Once the lookup
+   * returns another connection or none, the previous session's statements are closed, so they are
+   * neither leaked on the server nor keep the connection reachable from a pooled thread.
+   */
+  @SuppressWarnings({"PMD.CloseResource", "PMD.CompareObjectsWithEquals"})
+  private JdbcSession callerSession() {
+    Connection connection;
+    try {
+      connection = connectionLookup.currentConnection();
+    } catch (SQLException exception) {
+      throw new TransactionException(
+          "Failed to look up the connection of the caller's transaction.", exception);
+    }
+    var session = callerSessionHolder.get();
+    if (session != null && session.connection() == connection) {
+      return session;
+    }
+    if (session != null) {
+      callerSessionHolder.remove();
+      session.close();
+    }
+    if (connection == null) {
+      return null;
+    }
+    session = JdbcSession.ofCallerConnection(connection);
+    callerSessionHolder.set(session);
+    return session;
+  }
+
+  @SuppressWarnings("PMD.CompareObjectsWithEquals")
+  private boolean complete(JdbcTransaction transaction) {
+    if (transactionHolder.get() != transaction) {
+      return false;
+    }
+    var suspendedTransaction = transaction.suspendedTransaction();
+    if (suspendedTransaction == null) {
+      transactionHolder.remove();
+    } else {
+      transactionHolder.set(suspendedTransaction);
+    }
+    return true;
+  }
+
+  private void rollbackAndRelease(JdbcSession session) {
+    try {
+      session.rollback();
+    } catch (SQLException exception) {
+      logger.atError().setCause(exception).log("Failed to rollback JDBC transaction.");
+    }
+    release(session);
+  }
+
+  private void release(JdbcSession session) {
+    session.clearStatementDeadline();
+    if (session.isBroken() || closed || !idleSessions.offerFirst(session)) {
+      session.close();
+      return;
+    }
+    if (closed) {
+      closeIdleSessions();
+    }
+  }
+
+  private void closeIdleSessions() {
+    var session = idleSessions.pollFirst();
+    while (session != null) {
+      session.close();
+      session = idleSessions.pollFirst();
+    }
+  }
+
+  private static TransactionalQueueError<String> openError(
+      TransactionDefinition transactionDefinition,
+      String queueName,
+      String reason,
+      Exception cause) {
+    return TransactionalQueueError.<String>builder(queueName)
+        .withCause(cause)
+        .withElement(queueName)
+        .withMessage(
+            "Failed to open transaction with propagation behaviour %s for %s. %s"
+                .formatted(transactionDefinition, queueName, reason))
+        .withType("open-transaction-error")
+        .build();
+  }
+
+  @SuppressWarnings("PMD.AvoidFieldNameMatchingMethodName")
+  private static final class JdbcTransaction {
+    private final JdbcSession session;
+    private final JdbcTransaction suspendedTransaction;
+    private boolean rollbackOnly;
+
+    private JdbcTransaction(JdbcSession session, JdbcTransaction suspendedTransaction) {
+      this.session = session;
+      this.suspendedTransaction = suspendedTransaction;
+    }
+
+    private JdbcSession session() {
+      return session;
+    }
+
+    private JdbcTransaction suspendedTransaction() {
+      return suspendedTransaction;
+    }
+
+    private void markRollbackOnly() {
+      rollbackOnly = true;
+    }
+
+    private boolean isRollbackOnly() {
+      return rollbackOnly;
+    }
+  }
+
+  private class JdbcOpenedTransaction implements OpenedTransaction {
+    private final JdbcTransaction transaction;
+    private final String queueName;
+
+    private JdbcOpenedTransaction(JdbcTransaction transaction, String queueName) {
+      this.transaction = transaction;
+      this.queueName = queueName;
+    }
+
+    @Override
+    public <S> Result<S, TransactionalQueueError<String>> commit(S success) {
+      if (!complete(transaction)) {
+        return Result.error(
+            commitError("It is already completed or not bound to the current thread.", null));
+      }
+      if (transaction.isRollbackOnly()) {
+        rollbackAndRelease(transaction.session());
+        return Result.error(
+            commitError("It has been rolled back because it was marked as rollback-only.", null));
+      }
+      try {
+        transaction.session().commit();
+      } catch (SQLException exception) {
+        ErrorLogLimiter.shared()
+            .logError(
+                logger,
+                queueName,
+                "commit-transaction-error",
+                exception,
+                "Failed to commit transaction for {}.",
+                queueName);
+        rollbackAndRelease(transaction.session());
+        return Result.error(commitError("The database rejected the commit.", exception));
+      }
+      release(transaction.session());
+      return Result.success(success);
+    }
+
+    @Override
+    public void rollback() {
+      if (complete(transaction)) {
+        rollbackAndRelease(transaction.session());
+      }
+    }
+
+    private TransactionalQueueError<String> commitError(String reason, Exception cause) {
+      return TransactionalQueueError.<String>builder(queueName)
+          .withCause(cause)
+          .withElement(queueName)
+          .withMessage("Failed to commit transaction for %s. %s".formatted(queueName, reason))
+          .withType("commit-transaction-error")
+          .build();
+    }
+  }
+
+  private static class ParticipatingOpenedTransaction implements OpenedTransaction {
+    private final JdbcTransaction transaction;
+
+    private ParticipatingOpenedTransaction(JdbcTransaction transaction) {
+      this.transaction = transaction;
+    }
+
+    @Override
+    public <S> Result<S, TransactionalQueueError<String>> commit(S success) {
+      return Result.success(success);
+    }
+
+    @Override
+    public void rollback() {
+      transaction.markRollbackOnly();
+    }
+  }
+
+  /**
+   * Participates in a transaction owned by the caller, which commits or rolls it back on its own.
+   * Nothing is bound to the current thread, so there is nothing to complete.
+   */
+  private static final class CallerOpenedTransaction implements OpenedTransaction {
+    private static final CallerOpenedTransaction INSTANCE = new CallerOpenedTransaction();
+
+    @Override
+    public <S> Result<S, TransactionalQueueError<String>> commit(S success) {
+      return Result.success(success);
+    }
+
+    @Override
+    public void rollback() {
+      // The caller decides on the outcome of its transaction.
+    }
+  }
+
+  /** Failure of a transaction opened by {@link #executeInTransaction(Supplier)}. */
+  public static class TransactionException extends RuntimeException {
+    @Serial private static final long serialVersionUID = -2870375207466104585L;
+
+    public TransactionException(String message, Throwable cause) {
+      super(message, cause);
+    }
+  }
+}
@@ -0,0 +1,926 @@
+package io.chronoslabs.queue;
+
+import static io.chronoslabs.queue.Assert.requireNonNull;
+
+import com.github.sviperll.result4j.Result;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Repository written directly against JDBC, without Spring. Statements use positional parameters
+ * and are prepared once per connection of {@link JdbcTransactionCreator}, which must be the
+ * transaction creator of the queue. Operations called outside a transaction of the creator or of
+ * the caller, found by its {@link JdbcConnectionLookup}, run in a transaction of their own.
+ *
+ * <p>The statements are written for PostgreSQL: they rely on {@code ON CONFLICT}, {@code FOR UPDATE
+ * SKIP LOCKED}, {@code RETURNING} and the {@code xmax} system column. The {@code id} column must
+ * generate its values by default, for example {@code id BIGINT GENERATED BY DEFAULT AS IDENTITY
+ * PRIMARY KEY}, so inserts leave it out and collapsing assigns a new one with {@code DEFAULT}.
+ *
+ * <p>The insert statement sets {@code created_at}, {@code next_dispatch_after} and {@code
+ * dispatch_count}, followed by the {@code insertColumns}, whose values are bound by {@link
+ * #bindInsertParameters(PreparedStatement, int, TransactionalQueueElementToEnqueue, Map)}. {@link
+ * #insertAll(List, Instant, Instant)} and {@link #deleteAll(Collection)} send many elements to the
+ * database in one JDBC batch.
+ *
+ * <p>The {@link TransactionalQueueElementToEnqueue#idempotencyKey() idempotency key} is stored in
+ * the {@code idempotency_key} column, which must have a unique index. Only {@link
+ * #insertUnlessDuplicate} stores it, with {@code ON CONFLICT (idempotency_key) DO NOTHING}, so a
+ * duplicate does not abort the caller's transaction.
+ *
+ * <p>The {@link TransactionalQueueElementToEnqueue#collapseKey() collapse key} is stored by {@link
+ * #insertOrCollapse} in the {@code collapse_key} column, which must have a partial unique index on
+ * pending elements: {@code CREATE UNIQUE INDEX ON <table> (collapse_key) WHERE dispatch_count = 0}.
+ * The upsert conflicts on this index, replaces the pending element with {@code SET id = DEFAULT}
+ * and tells an insert from a replacement by {@code xmax = 0}, which holds only for a row the
+ * statement inserted.
+ *
+ * <p>{@link #releaseLocks} undoes the locks of a node shutting down with one JDBC batch.
+ *
+ * <p>Repositories created with {@code expiresElements} store the expiry of elements enqueued with a
+ * {@link TransactionalQueueElementToEnqueue#timeToLive() time to live} in the {@code expires_at}
+ * column, bound before the {@code insertColumns}, and skip expired elements when locking. {@link
+ * #deleteExpired} deletes them in chunks with one statement each, served by a partial index: {@code
+ * CREATE INDEX ON <table> (expires_at) WHERE expires_at IS NOT NULL}.
+ */
+@SuppressWarnings("PMD.CloseResource")
+public abstract class JdbcTransactionalQueueElementRepository<
+        P,
+        E extends TransactionalQueueElement<P>,
+        I extends TransactionalQueueElementToEnqueue<P, E>>
+    implements IdempotentTransactionalQueueElementRepository<P, E, I>,
+        CollapsingTransactionalQueueElementRepository<P, E, I>,
+        ReleasableTransactionalQueueElementRepository<P, E, I>,
+        ExpiringTransactionalQueueElementRepository<P, E, I> {
+  private static final Logger log =
+      LoggerFactory.getLogger(JdbcTransactionalQueueElementRepository.class);
+  private static final int EXPIRES_AT_PARAMETER_INDEX = 3;
+  private static final String EXPIRES_AT_COLUMN = "expires_at";
+  private static final long[] NO_SKIPPED_IDS = {};
+
+  protected final JdbcTransactionCreator transactionCreator;
+  protected final String queueName;
+  protected final JdbcElementRowMapper<E> rowMapper;
+  private final boolean expiresElements;
+
+  /** Parameter index of the first insert column, which follows {@code expires_at} if stored. */
+  private final int firstInsertColumnParameterIndex;
+
+  private final String insertStatementSql;
+  private final String insertUnlessDuplicateStatementSql;
+
+  /** Parameter index of the idempotency or collapse key, which follows the insert columns. */
+  private final int keyParameterIndex;
+
+  private final String releaseIdempotencyKeyStatementSql;
+  private final String insertOrCollapseStatementSql;
+  private final String findDuplicateStatementSql;
+  private final String findDuplicateCreatedSinceStatementSql;
+  private final String findByIdStatementSql;
+  private final String lockForNextDispatchStatementSql;
+  private final String lockForNextDispatchSkippingStatementSql;
+  private final String deleteStatementSql;
+  private final String releaseLockStatementSql;
+  private final String deleteExpiredStatementSql;
+  private final String deleteExpiredReturningStatementSql;
+
+  protected JdbcTransactionalQueueElementRepository(
+      JdbcTransactionCreator transactionCreator,
+      String queueName,
+      String tableName,
+      String tableColumns,
+      List<String> insertColumns,
+      JdbcElementRowMapper<E> rowMapper) {
+    this(transactionCreator, queueName, tableName, tableColumns, insertColumns, rowMapper, false);
+  }
+
+  /**
+   * @param expiresElements whether the table has the {@code expires_at} column, which enables the
+   *     {@link TransactionalQueueElementToEnqueue#timeToLive() time to live} of elements.
+   */
+  protected JdbcTransactionalQueueElementRepository(
+      JdbcTransactionCreator transactionCreator,
+      String queueName,
+      String tableName,
+      String tableColumns,
+      List<String> insertColumns,
+      JdbcElementRowMapper<E> rowMapper,
+      boolean expiresElements) {
+    this.transactionCreator =
+        requireNonNull(
+            transactionCreator, "JdbcTransactionalQueueElementRepository.transactionCreator");
+    this.queueName = queueName;
+    this.rowMapper = requireNonNull(rowMapper, "JdbcTransactionalQueueElementRepository.rowMapper");
+    requireNonNull(insertColumns, "JdbcTransactionalQueueElementRepository.insertColumns");
+    this.expiresElements = expiresElements;
+    this.firstInsertColumnParameterIndex =
+        expiresElements ? EXPIRES_AT_PARAMETER_INDEX + 1 : EXPIRES_AT_PARAMETER_INDEX;
+    var storedColumns = new ArrayList<String>(insertColumns.size() + 1);
+    if (expiresElements) {
+      storedColumns.add(EXPIRES_AT_COLUMN);
+    }
+    storedColumns.addAll(insertColumns);
+    this.insertStatementSql = anInsertStatementSql(tableName, storedColumns);
+    this.insertUnlessDuplicateStatementSql =
+        anInsertUnlessDuplicateStatementSql(tableName, storedColumns);
+    this.keyParameterIndex = EXPIRES_AT_PARAMETER_INDEX + storedColumns.size();
+    this.releaseIdempotencyKeyStatementSql = aReleaseIdempotencyKeyStatementSql(tableName);
+    this.insertOrCollapseStatementSql = anInsertOrCollapseStatementSql(tableName, storedColumns);
+    this.findDuplicateStatementSql = aFindDuplicateStatementSql(tableName, tableColumns, "");
+    this.findDuplicateCreatedSinceStatementSql =
+        aFindDuplicateStatementSql(tableName, tableColumns, "AND created_at >= ?");
+    this.findByIdStatementSql = aFindByIdStatementSql(tableName, tableColumns);
+    var notExpiredCondition = expiresElements ? "AND (expires_at IS NULL OR expires_at > ?)" : "";
+    this.lockForNextDispatchStatementSql =
+        aLockForNextDispatchStatementSql(tableName, tableColumns, notExpiredCondition);
+    this.lockForNextDispatchSkippingStatementSql =
+        aLockForNextDispatchStatementSql(
+            tableName, tableColumns, notExpiredCondition + " AND id <> ALL (?)");
+    this.deleteStatementSql = aDeleteStatementSql(tableName);
+    this.releaseLockStatementSql = aReleaseLockStatementSql(tableName);
+    this.deleteExpiredStatementSql = aDeleteExpiredStatementSql(tableName, "");
+    this.deleteExpiredReturningStatementSql =
+        aDeleteExpiredStatementSql(tableName, "RETURNING " + tableColumns);
+  }
+
+  @Override
+  public Result<E, TransactionalQueueError<I>> insert(
+      I elementToEnqueue, Instant createdAt, Instant nextDispatchAfter) {
+    return insert(elementToEnqueue, createdAt, nextDispatchAfter, Map.of());
+  }
+
+  @Override
+  public Result<E, TransactionalQueueError<I>> insert(
+      I elementToEnqueue,
+      Instant createdAt,
+      Instant nextDispatchAfter,
+      Map<String, String> traceContext) {
+    var session = transactionCreator.currentSession();
+    if (session == null) {
+      return transactionCreator.executeInTransaction(
+          () -> insert(elementToEnqueue, createdAt, nextDispatchAfter, traceContext));
+    }
+    return executeInsert(
+            session, elementToEnqueue, createdAt, nextDispatchAfter, traceContext, false)
+        .map(
+            id ->
+                anElement(
+                    elementToEnqueue,
+                    id.orElseThrow(),
+                    createdAt,
+                    nextDispatchAfter,
+                    traceContext));
+  }
+
+  @Override
+  public Result<Optional<E>, TransactionalQueueError<I>> insertUnlessDuplicate(
+      I elementToEnqueue,
+      Instant createdAt,
+      Instant nextDispatchAfter,
+      Map<String, String> traceContext,
+      Instant duplicatesCreatedSince) {
+    var session = transactionCreator.currentSession();
+    if (session == null) {
+      return transactionCreator.executeInTransaction(
+          () ->
+              insertUnlessDuplicate(
+                  elementToEnqueue,
+                  createdAt,
+                  nextDispatchAfter,
+                  traceContext,
+                  duplicatesCreatedSince));
+    }
+    var inserted =
+        executeInsert(session, elementToEnqueue, createdAt, nextDispatchAfter, traceContext, true);
+    if (!Results.isError(inserted)
+        && Results.success(inserted).isEmpty()
+        && duplicatesCreatedSince != null) {
+      var released = releaseIdempotencyKey(session, elementToEnqueue, duplicatesCreatedSince);
+      if (Results.isError(released)) {
+        return Results.propagateError(released);
+      }
+      if (Results.success(released)) {
+        inserted =
+            executeInsert(
+                session, elementToEnqueue, createdAt, nextDispatchAfter, traceContext, true);
+      }
+    }
+    return inserted.map(
+        id ->
+            id.map(
+                generatedId ->
+                    anElement(
+                        elementToEnqueue,
+                        generatedId,
+                        createdAt,
+                        nextDispatchAfter,
+                        traceContext)));
+  }
+
+  @Override
+  public Result<Optional<E>, TransactionalQueueError<I>> findDuplicate(
+      I elementToEnqueue, Instant duplicatesCreatedSince) {
+    var session = transactionCreator.currentSession();
+    if (session == null) {
+      return transactionCreator.executeInTransaction(
+          () -> findDuplicate(elementToEnqueue, duplicatesCreatedSince));
+    }
+    try {
+      PreparedStatement statement;
+      if (duplicatesCreatedSince == null) {
+        statement = session.prepare(findDuplicateStatementSql);
+      } else {
+        statement = session.prepare(findDuplicateCreatedSinceStatementSql);
+        statement.setTimestamp(2, Timestamp.from(duplicatesCreatedSince));
+      }
+      statement.setString(1, elementToEnqueue.idempotencyKey());
+      try (var resultSet = statement.executeQuery()) {
+        if (resultSet.next()) {
+          return Result.success(Optional.of(rowMapper.mapRow(resultSet)));
+        }
+      }
+      return Result.success(Optional.empty());
+    } catch (SQLException | RuntimeException exception) {
+      return Result.error(
+          idempotencyKeyError(
+              elementToEnqueue,
+              "find-duplicate-error",
+              "Failed to select the duplicate of %s Element with idempotency key %s.",
+              exception));
+    }
+  }
+
+  @Override
+  public Result<CollapsedElement<E>, TransactionalQueueError<I>> insertOrCollapse(
+      I elementToEnqueue,
+      Instant createdAt,
+      Instant nextDispatchAfter,
+      Map<String, String> traceContext) {
+    var session = transactionCreator.currentSession();
+    if (session == null) {
+      return transactionCreator.executeInTransaction(
+          () -> insertOrCollapse(elementToEnqueue, createdAt, nextDispatchAfter, traceContext));
+    }
+    try {
+      var statement = session.prepare(insertOrCollapseStatementSql);
+      bindInsertStatement(statement, elementToEnqueue, createdAt, nextDispatchAfter, traceContext);
+      statement.setString(keyParameterIndex, elementToEnqueue.collapseKey());
+      try (var resultSet = statement.executeQuery()) {
+        if (!resultSet.next()) {
+          return Result.error(insertCountError(elementToEnqueue, 0));
+        }
+        var element =
+            anElement(
+                elementToEnqueue,
+                resultSet.getLong("id"),
+                resultSet.getTimestamp("created_at").toInstant(),
+                resultSet.getTimestamp("next_dispatch_after").toInstant(),
+                traceContext);
+        return Result.success(new CollapsedElement<>(element, !resultSet.getBoolean("inserted")));
+      }
+    } catch (SQLException | RuntimeException exception) {
+      return Result.error(insertError(elementToEnqueue, exception));
+    }
+  }
+
+  /**
+   * Releases the idempotency key of an element created before {@code duplicatesCreatedSince}, so
+   * the element is no longer a duplicate and the key can be inserted again.
+   *
+   * @return whether the key has been released.
+   */
+  private Result<Boolean, TransactionalQueueError<I>> releaseIdempotencyKey(
+      JdbcSession session, I elementToEnqueue, Instant duplicatesCreatedSince) {
+    try {
+      var statement = session.prepare(releaseIdempotencyKeyStatementSql);
+      statement.setString(1, elementToEnqueue.idempotencyKey());
+      statement.setTimestamp(2, Timestamp.from(duplicatesCreatedSince));
+      return Result.success(statement.executeUpdate() > 0);
+    } catch (SQLException | RuntimeException exception) {
+      return Result.error(
+          idempotencyKeyError(
+              elementToEnqueue,
+              "idempotency-key-release-error",
+              "Failed to release the idempotency key of %s Element with idempotency key %s.",
+              exception));
+    }
+  }
+
+  /**
+   * @param unlessDuplicate whether the idempotency key is stored and a conflicting insert is
+   *     skipped.
+   * @return the generated id, or an empty optional when the insert conflicted.
+   */
+  @SuppressWarnings("PMD.AvoidLiteralsInIfCondition")
+  private Result<Optional<Long>, TransactionalQueueError<I>> executeInsert(
+      JdbcSession session,
+      I elementToEnqueue,
+      Instant createdAt,
+      Instant nextDispatchAfter,
+      Map<String, String> traceContext,
+      boolean unlessDuplicate) {
+    try {
+      var statement =
+          session.prepareReturningId(
+              unlessDuplicate ? insertUnlessDuplicateStatementSql : insertStatementSql);
+      bindInsertStatement(statement, elementToEnqueue, createdAt, nextDispatchAfter, traceContext);
+      if (unlessDuplicate) {
+        statement.setString(keyParameterIndex, elementToEnqueue.idempotencyKey());
+      }
+      int rowsInserted = statement.executeUpdate();
+      if (rowsInserted == 0 && unlessDuplicate) {
+        return Result.success(Optional.empty());
+      }
+      if (rowsInserted != 1) {
+        return Result.error(insertCountError(elementToEnqueue, rowsInserted));
+      }
+      try (var generatedKeys = statement.getGeneratedKeys()) {
+        if (!generatedKeys.next()) {
+          return Result.error(generatedIdError(elementToEnqueue, null));
+        }
+        var key = generatedKeys.getObject(1);
+        if (!(key instanceof Long generatedId)) {
+          return Result.error(generatedIdError(elementToEnqueue, key));
+        }
+        return Result.success(Optional.of(generatedId));
+      }
+    } catch (SQLException | RuntimeException exception) {
+      return Result.error(insertError(elementToEnqueue, exception));
+    }
+  }
+
+  /**
+   * Inserts the elements with one JDBC batch. When the batch fails, the error refers to the first
+   * element and the transaction must be rolled back, since some elements may have been inserted.
+   * Idempotency keys are not stored.
+   *
+   * @return the inserted elements, in the order of {@code elementsToEnqueue}.
+   */
+  public Result<List<E>, TransactionalQueueError<I>> insertAll(
+      List<I> elementsToEnqueue, Instant createdAt, Instant nextDispatchAfter) {
+    if (elementsToEnqueue.isEmpty()) {
+      return Result.success(List.of());
+    }
+    var session = transactionCreator.currentSession();
+    if (session == null) {
+      return transactionCreator.executeInTransaction(
+          () -> insertAll(elementsToEnqueue, createdAt, nextDispatchAfter));
+    }
+    var firstElement = elementsToEnqueue.get(0);
+    var elements = new ArrayList<E>(elementsToEnqueue.size());
+    try {
+      var statement = session.prepareReturningId(insertStatementSql);
+      for (var elementToEnqueue : elementsToEnqueue) {
+        bindInsertStatement(statement, elementToEnqueue, createdAt, nextDispatchAfter, Map.of());
+        statement.addBatch();
+      }
+      statement.executeBatch();
+      try (var generatedKeys = statement.getGeneratedKeys()) {
+        for (var elementToEnqueue : elementsToEnqueue) {
+          if (!generatedKeys.next()) {
+            return Result.error(generatedIdError(elementToEnqueue, null));
+          }
+          var key = generatedKeys.getObject(1);
+          if (!(key instanceof Long generatedId)) {
+            return Result.error(generatedIdError(elementToEnqueue, key));
+          }
+          elements.add(
+              anElement(elementToEnqueue, generatedId, createdAt, nextDispatchAfter, Map.of()));
+        }
+      }
+    } catch (SQLException | RuntimeException exception) {
+      return Result.error(insertError(firstElement, exception));
+    }
+    return Result.success(elements);
+  }
+
+  @Override
+  public Result<E, TransactionalQueueError<Long>> findById(long id) {
+    var session = transactionCreator.currentSession();
+    if (session == null) {
+      return transactionCreator.executeInTransaction(() -> findById(id));
+    }
+    try {
+      var statement = session.prepare(findByIdStatementSql);
+      statement.setLong(1, id);
+      try (var resultSet = statement.executeQuery()) {
+        if (resultSet.next()) {
+          return Result.success(rowMapper.mapRow(resultSet));
+        }
+      }
+      return Result.error(readError(id, null));
+    } catch (SQLException | RuntimeException exception) {
+      ErrorLogLimiter.shared()
+          .logError(
+              log,
+              queueName,
+              "read-element-error",
+              exception,
+              "Failed to select {} element with id={}.",
+              queueName,
+              id);
+      return Result.error(readError(id, exception));
+    }
+  }
+
+  @Override
+  public Result<Collection<E>, TransactionalQueueError<String>> lockForNextDispatch(
+      int batchSize, Instant notDispatchedTill, Instant nextDispatchTime) {
+    return lockForNextDispatch(batchSize, notDispatchedTill, nextDispatchTime, NO_SKIPPED_IDS);
+  }
+
+  /**
+   * Locks elements like {@link #lockForNextDispatch(int, Instant, Instant)}, skipping the ids with
+   * {@code id <> ALL (?)} bound to a {@code bigint} array.
+   */
+  @Override
+  public Result<Collection<E>, TransactionalQueueError<String>> lockForNextDispatch(
+      int batchSize, Instant notDispatchedTill, Instant nextDispatchTime, long[] skippedIds) {
+    var session = transactionCreator.currentSession();
+    if (session == null) {
+      return transactionCreator.executeInTransaction(
+          () -> lockForNextDispatch(batchSize, notDispatchedTill, nextDispatchTime, skippedIds));
+    }
+    try {
+      var skipping = skippedIds.length > 0;
+      var statement =
+          session.prepare(
+              skipping ? lockForNextDispatchSkippingStatementSql : lockForNextDispatchStatementSql);
+      statement.setTimestamp(1, Timestamp.from(notDispatchedTill));
+      var batchSizeParameterIndex = 2;
+      if (expiresElements) {
+        statement.setTimestamp(batchSizeParameterIndex++, Timestamp.from(notDispatchedTill));
+      }
+      if (skipping) {
+        statement.setArray(
+            batchSizeParameterIndex++,
+            session
+                .connection()
+                .createArrayOf("bigint", Arrays.stream(skippedIds).boxed().toArray()));
+      }
+      statement.setInt(batchSizeParameterIndex, batchSize);
+      statement.setTimestamp(batchSizeParameterIndex + 1, Timestamp.from(nextDispatchTime));
+      var elements = new ArrayList<E>(batchSize);
+      try (var resultSet = statement.executeQuery()) {
+        while (resultSet.next()) {
+          elements.add(rowMapper.mapRow(resultSet));
+        }
+      }
+      return Result.success(elements);
+    } catch (SQLException | RuntimeException exception) {
+      return Result.error(lockError(batchSize, notDispatchedTill, nextDispatchTime, exception));
+    }
+  }
+
+  @Override
+  public Result<E, TransactionalQueueError<E>> delete(E element) {
+    var session = transactionCreator.currentSession();
+    if (session == null) {
+      return transactionCreator.executeInTransaction(() -> delete(element));
+    }
+    try {
+      var statement = session.prepare(deleteStatementSql);
+      bindDeleteStatement(statement, element);
+      if (statement.executeUpdate() > 0) {
+        return Result.success(element);
+      }
+      return Result.error(deleteError(element, "zero-rows-deleted", null));
+    } catch (SQLException | RuntimeException exception) {
+      return Result.error(deleteError(element, "delete-element-error", exception));
+    }
+  }
+
+  /**
+   * Deletes the elements with one JDBC batch. Elements which were dispatched again since they were
+   * locked are not deleted, like in {@link #delete(TransactionalQueueElement)}.
+   *
+   * @return the deleted elements. Drivers which do not report the rows affected per statement count
+   *     every element as deleted.
+   */
+  public Result<Collection<E>, TransactionalQueueError<E>> deleteAll(Collection<E> elements) {
+    if (elements.isEmpty()) {
+      return Result.success(List.of());
+    }
+    var session = transactionCreator.currentSession();
+    if (session == null) {
+      return transactionCreator.executeInTransaction(() -> deleteAll(elements));
+    }
+    var firstElement = elements.iterator().next();
+    var deletedElements = new ArrayList<E>(elements.size());
+    try {
+      var statement = session.prepare(deleteStatementSql);
+      for (var element : elements) {
+        bindDeleteStatement(statement, element);
+        statement.addBatch();
+      }
+      var rowsDeleted = statement.executeBatch();
+      var index = 0;
+      for (var element : elements) {
+        var rows = rowsDeleted[index];
+        if (rows > 0 || rows == Statement.SUCCESS_NO_INFO) {
+          deletedElements.add(element);
+        }
+        index++;
+      }
+    } catch (SQLException | RuntimeException exception) {
+      return Result.error(deleteError(firstElement, "delete-element-error", exception));
+    }
+    return Result.success(deletedElements);
+  }
+
+  @Override
+  public Result<Integer, TransactionalQueueError<String>> releaseLocks(
+      Collection<E> elements, Duration lockTimeout) {
+    if (elements.isEmpty()) {
+      return Result.success(0);
+    }
+    var session = transactionCreator.currentSession();
+    if (session == null) {
+      return transactionCreator.executeInTransaction(() -> releaseLocks(elements, lockTimeout));
+    }
+    try {
+      var statement = session.prepare(releaseLockStatementSql);
+      for (var element : elements) {
+        statement.setTimestamp(1, Timestamp.from(element.nextDispatchAfter().minus(lockTimeout)));
+        statement.setLong(2, element.id());
+        statement.setInt(3, element.dispatchCount());
+        statement.addBatch();
+      }
+      var released = 0;
+      for (var rows : statement.executeBatch()) {
+        if (rows > 0 || rows == Statement.SUCCESS_NO_INFO) {
+          released++;
+        }
+      }
+      return Result.success(released);
+    } catch (SQLException | RuntimeException exception) {
+      var params = "elements=%d, lockTimeout=%s".formatted(elements.size(), lockTimeout);
+      return Result.error(
+          TransactionalQueueError.<String>builder(queueName)
+              .withCause(exception)
+              .withElement(params)
+              .withMessage(
+                  "Failed to release the locks of %s Elements. Params: %s"
+                      .formatted(queueName, params))
+              .withType("release-locks-error")
+              .build());
+    }
+  }
+
+  @Override
+  public Result<Integer, TransactionalQueueError<String>> deleteExpired(
+      int batchSize, Instant now) {
+    if (!expiresElements) {
+      return Result.success(0);
+    }
+    var session = transactionCreator.currentSession();
+    if (session == null) {
+      return transactionCreator.executeInTransaction(() -> deleteExpired(batchSize, now));
+    }
+    try {
+      var statement = session.prepare(deleteExpiredStatementSql);
+      bindDeleteExpiredStatement(statement, batchSize, now);
+      return Result.success(statement.executeUpdate());
+    } catch (SQLException | RuntimeException exception) {
+      return Result.error(deleteExpiredError(batchSize, now, exception));
+    }
+  }
+
+  @Override
+  public Result<Collection<E>, TransactionalQueueError<String>> deleteExpiredReturning(
+      int batchSize, Instant now) {
+    if (!expiresElements) {
+      return Result.success(List.of());
+    }
+    var session = transactionCreator.currentSession();
+    if (session == null) {
+      return transactionCreator.executeInTransaction(() -> deleteExpiredReturning(batchSize, now));
+    }
+    try {
+      var statement = session.prepare(deleteExpiredReturningStatementSql);
+      bindDeleteExpiredStatement(statement, batchSize, now);
+      var elements = new ArrayList<E>(batchSize);
+      try (var resultSet = statement.executeQuery()) {
+        while (resultSet.next()) {
+          elements.add(rowMapper.mapRow(resultSet));
+        }
+      }
+      return Result.success(elements);
+    } catch (SQLException | RuntimeException exception) {
+      return Result.error(deleteExpiredError(batchSize, now, exception));
+    }
+  }
+
+  /**
+   * Binds the values of the {@code insertColumns}, starting with the parameter at {@code
+   * firstParameterIndex}. Repositories which persist the trace context of the enqueuing observation
+   * bind it here, so the {@link JdbcElementRowMapper} can restore it for {@link
+   * TransactionalQueueElement#traceContext()}. {@link #insertAll(List, Instant, Instant)} passes an
+   * empty trace context.
+   */
+  protected abstract void bindInsertParameters(
+      PreparedStatement statement,
+      int firstParameterIndex,
+      I elementToEnqueue,
+      Map<String, String> traceContext)
+      throws SQLException;
+
+  private void bindInsertStatement(
+      PreparedStatement statement,
+      I elementToEnqueue,
+      Instant createdAt,
+      Instant nextDispatchAfter,
+      Map<String, String> traceContext)
+      throws SQLException {
+    statement.setTimestamp(1, Timestamp.from(createdAt));
+    statement.setTimestamp(2, Timestamp.from(nextDispatchAfter));
+    if (expiresElements) {
+      var timeToLive = elementToEnqueue.timeToLive();
+      statement.setTimestamp(
+          EXPIRES_AT_PARAMETER_INDEX,
+          timeToLive == null ? null : Timestamp.from(createdAt.plus(timeToLive)));
+    }
+    bindInsertParameters(
+        statement, firstInsertColumnParameterIndex, elementToEnqueue, traceContext);
+  }
+
+  private static void bindDeleteExpiredStatement(
+      PreparedStatement statement, int batchSize, Instant now) throws SQLException {
+    statement.setTimestamp(1, Timestamp.from(now));
+    statement.setTimestamp(2, Timestamp.from(now));
+    statement.setInt(3, batchSize);
+  }
+
+  private static <E extends TransactionalQueueElement<?>> void bindDeleteStatement(
+      PreparedStatement statement, E element) throws SQLException {
+    statement.setLong(1, element.id());
+    statement.setInt(2, element.dispatchCount());
+  }
+
+  private E anElement(
+      I elementToEnqueue,
+      long id,
+      Instant createdAt,
+      Instant nextDispatchAfter,
+      Map<String, String> traceContext) {
+    return elementToEnqueue
+        .toTransactionalQueueElementBuilder()
+        .withId(id)
+        .withCreatedAt(createdAt)
+        .withDispatchCount(INITIAL_DISPATCH_COUNT)
+        .withNextDispatchAfter(nextDispatchAfter)
+        .withPayload(elementToEnqueue.payload())
+        .withTraceContext(traceContext)
+        .build();
+  }
+
+  private TransactionalQueueError<I> insertCountError(I elementToEnqueue, int rowsInserted) {
+    return TransactionalQueueError.<I>builder(queueName)
+        .withElement(elementToEnqueue)
+        .withType("queue-insert-count-rows-inserted")
+        .withMessage(
+            "Failed to insert element into %s. Rows inserted: %d."
+                .formatted(queueName, rowsInserted))
+        .build();
+  }
+
+  private TransactionalQueueError<I> insertError(I elementToEnqueue, Exception exception) {
+    ErrorLogLimiter.shared()
+        .logError(
+            log,
+            queueName,
+            "queue-insert-error",
+            exception,
+            "Failed to insert element into {}. Element: {}.",
+            queueName,
+            elementToEnqueue);
+    return TransactionalQueueError.<I>builder(queueName)
+        .withCause(exception)
+        .withElement(elementToEnqueue)
+        .withMessage(
+            "An unexpected error occurred during insert element into %s. Error: %s"
+                .formatted(queueName, exception.getMessage()))
+        .withType("queue-insert-error")
+        .build();
+  }
+
+  private TransactionalQueueError<I> idempotencyKeyError(
+      I elementToEnqueue, String type, String message, Exception exception) {
+    return TransactionalQueueError.<I>builder(queueName)
+        .withCause(exception)
+        .withElement(elementToEnqueue)
+        .withMessage(message.formatted(queueName, elementToEnqueue.idempotencyKey()))
+        .withType(type)
+        .build();
+  }
+
+  private TransactionalQueueError<I> generatedIdError(I elementToEnqueue, Object key) {
+    if (key == null) {
+      return TransactionalQueueError.<I>builder(queueName)
+          .withElement(elementToEnqueue)
+          .withType("element-id-null")
+          .withMessage("Generated ID for inserted %s Element is null.".formatted(queueName))
+          .build();
+    }
+    return TransactionalQueueError.<I>builder(queueName)
+        .withElement(elementToEnqueue)
+        .withType("element-id-not-long")
+        .withMessage(
+            "Generated ID for inserted %s Element is %s but should be java.lang.Long."
+                .formatted(queueName, key.getClass().getCanonicalName()))
+        .build();
+  }
+
+  private TransactionalQueueError<Long> readError(long id, Exception exception) {
+    return TransactionalQueueError.<Long>builder(queueName)
+        .withCause(exception)
+        .withElement(id)
+        .withMessage("Failed to select %s Element with id=%d.".formatted(queueName, id))
+        .withType("read-element-error")
+        .build();
+  }
+
+  private TransactionalQueueError<String> lockError(
+      int batchSize, Instant notDispatchedTill, Instant nextDispatchTime, Exception exception) {
+    var params =
+        "batchSize=%d, notDispatchedTill=%s, nextDispatchTime=%s"
+            .formatted(batchSize, notDispatchedTill, nextDispatchTime);
+    return TransactionalQueueError.<String>builder(queueName)
+        .withCause(exception)
+        .withElement(params)
+        .withMessage(
+            "Failed to lock %s Elements for retry dispatch. Params: %s"
+                .formatted(queueName, params))
+        .withType("retry-dispatch-lock-error")
+        .build();
+  }
+
+  private TransactionalQueueError<String> deleteExpiredError(
+      int batchSize, Instant now, Exception exception) {
+    var params = "batchSize=%d, now=%s".formatted(batchSize, now);
+    return TransactionalQueueError.<String>builder(queueName)
+        .withCause(exception)
+        .withElement(params)
+        .withMessage(
+            "Failed to delete expired %s Elements. Params: %s".formatted(queueName, params))
+        .withType("delete-expired-error")
+        .build();
+  }
+
+  private TransactionalQueueError<E> deleteError(E element, String type, Exception exception) {
+    return TransactionalQueueError.<E>builder(queueName)
+        .withCause(exception)
+        .withElement(element)
+        .withMessage("Failed to delete %s Element with id=%d.".formatted(queueName, element.id()))
+        .withType(type)
+        .build();
+  }
+
+  private static String anInsertStatementSql(String tableName, List<String> insertColumns) {
+    return """
+    INSERT INTO %1$s (created_at, next_dispatch_after, dispatch_count, %2$s)
+    VALUES (?, ?, 0, %3$s)
+    """
+        .formatted(
+            tableName,
+            String.join(", ", insertColumns),
+            String.join(", ", Collections.nCopies(insertColumns.size(), "?")));
+  }
+
+  private static String anInsertUnlessDuplicateStatementSql(
+      String tableName, List<String> insertColumns) {
+    return """
+    INSERT INTO %1$s (created_at, next_dispatch_after, dispatch_count, %2$s, idempotency_key)
+    VALUES (?, ?, 0, %3$s, ?)
+    ON CONFLICT (idempotency_key) DO NOTHING
+    """
+        .formatted(
+            tableName,
+            String.join(", ", insertColumns),
+            String.join(", ", Collections.nCopies(insertColumns.size(), "?")));
+  }
+
+  /**
+   * Replaces the pending element with the same collapse key, giving it a new id. {@code xmax} is
+   * zero only for a row inserted by the statement, which tells an insert from a replacement.
+   */
+  private static String anInsertOrCollapseStatementSql(
+      String tableName, List<String> insertColumns) {
+    return """
+    INSERT INTO %1$s AS element (created_at, next_dispatch_after, dispatch_count, %2$s, collapse_key)
+    VALUES (?, ?, 0, %3$s, ?)
+    ON CONFLICT (collapse_key) WHERE dispatch_count = 0
+    DO UPDATE SET id                  = DEFAULT,
+                  next_dispatch_after = LEAST(element.next_dispatch_after, EXCLUDED.next_dispatch_after),
+                  %4$s
+    RETURNING id, created_at, next_dispatch_after, xmax = 0 AS inserted
+    """
+        .formatted(
+            tableName,
+            String.join(", ", insertColumns),
+            String.join(", ", Collections.nCopies(insertColumns.size(), "?")),
+            insertColumns.stream()
+                .map(column -> "%1$s = EXCLUDED.%1$s".formatted(column))
+                .collect(Collectors.joining(", ")));
+  }
+
+  private static String aReleaseIdempotencyKeyStatementSql(String tableName) {
+    return """
+    UPDATE %1$s
+    SET idempotency_key = NULL
+    WHERE idempotency_key = ?
+      AND created_at < ?
+    """
+        .formatted(tableName);
+  }
+
+  private static String aFindDuplicateStatementSql(
+      String tableName, String tableColumns, String createdSinceCondition) {
+    return """
+    SELECT %2$s
+    FROM %1$s
+    WHERE idempotency_key = ?
+      %3$s
+    """
+        .formatted(tableName, tableColumns, createdSinceCondition);
+  }
+
+  private static String aFindByIdStatementSql(String tableName, String tableColumns) {
+    return """
+    SELECT %2$s
+    FROM %1$s
+    WHERE id = ?
+    """
+        .formatted(tableName, tableColumns);
+  }
+
+  private static String aLockForNextDispatchStatementSql(
+      String tableName, String tableColumns, String notExpiredCondition) {
+    return """
+    WITH locked_records AS (SELECT id
+                            FROM %1$s
+                            WHERE next_dispatch_after < ?
+                              %3$s
+                            ORDER BY created_at, id
+                            LIMIT ? FOR UPDATE SKIP LOCKED)
+    UPDATE %1$s
+    SET next_dispatch_after = ?,
+        dispatch_count      = dispatch_count + 1
+    WHERE id IN (SELECT id FROM locked_records)
+    RETURNING %2$s
+    """
+        .formatted(tableName, tableColumns, notExpiredCondition);
+  }
+
+  private static String aDeleteStatementSql(String tableName) {
+    return """
+    DELETE FROM %1$s
+    WHERE id = ?
+      AND dispatch_count = ?
+    """
+        .formatted(tableName);
+  }
+
+  private static String aReleaseLockStatementSql(String tableName) {
+    return """
+    UPDATE %1$s
+    SET next_dispatch_after = ?,
+        dispatch_count      = dispatch_count - 1
+    WHERE id = ?
+      AND dispatch_count = ?
+    """
+        .formatted(tableName);
+  }
+
+  /**
+   * Deletes expired elements which are pending or whose lock has expired, so an element being
+   * dispatched is not deleted under its dispatch.
+   */
+  private static String aDeleteExpiredStatementSql(String tableName, String returningClause) {
+    return """
+    WITH expired_records AS (SELECT id
+                             FROM %1$s
+                             WHERE expires_at <= ?
+                               AND (dispatch_count = 0 OR next_dispatch_after < ?)
+                             LIMIT ? FOR UPDATE SKIP LOCKED)
+    DELETE FROM %1$s
+    WHERE id IN (SELECT id FROM expired_records)
+    %2$s
+    """
+        .formatted(tableName, returningClause);
+  }
+}
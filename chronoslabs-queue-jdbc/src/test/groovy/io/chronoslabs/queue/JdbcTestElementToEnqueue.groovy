@@ -0,0 +1,27 @@
+package io.chronoslabs.queue
+
+import java.time.Duration
+
+record JdbcTestElementToEnqueue(String payload, String idempotencyKey, String collapseKey, Duration timeToLive)
+    implements TransactionalQueueElementToEnqueue<String, JdbcTestElement> {
+
+    JdbcTestElementToEnqueue(String payload) {
+        this(payload, null, null, null)
+    }
+
+    static JdbcTestElementToEnqueue withIdempotencyKey(String payload, String idempotencyKey) {
+        return new JdbcTestElementToEnqueue(payload, idempotencyKey, null, null)
+    }
+
+    static JdbcTestElementToEnqueue withCollapseKey(String payload, String collapseKey) {
+        return new JdbcTestElementToEnqueue(payload, null, collapseKey, null)
+    }
+
+    static JdbcTestElementToEnqueue withTimeToLive(String payload, Duration timeToLive) {
+        return new JdbcTestElementToEnqueue(payload, null, null, timeToLive)
+    }
+
+    JdbcTestElement.Builder toTransactionalQueueElementBuilder() {
+        return JdbcTestElement.builder()
+    }
+}
@@ -0,0 +1,201 @@
+package io.chronoslabs.queue
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import spock.lang.Specification
+
+import javax.sql.DataSource
+import java.lang.reflect.InvocationHandler
+import java.lang.reflect.Method
+import java.lang.reflect.Proxy
+import java.sql.Connection
+import java.sql.PreparedStatement
+import java.time.Clock
+import java.time.Instant
+
+import static io.chronoslabs.queue.TransactionDefinition.PROPAGATION_REQUIRES_NEW
+
+class JdbcTransactionCreatorSpec extends Specification {
+    String queueName = "TestQueue"
+    Instant now = Instant.parse("2025-04-25T12:00:00Z")
+    DataSource dataSource = PostgresTestDatabase.dataSource()
+    ThreadLocal<Connection> callerConnection = new ThreadLocal<>()
+    JdbcTransactionCreator transactionCreator = new JdbcTransactionCreator(dataSource, { callerConnection.get() } as JdbcConnectionLookup)
+    PostgresTestElementRepository repository = new PostgresTestElementRepository(transactionCreator, queueName)
+    TransactionalQueue<String, JdbcTestElement, JdbcTestElementToEnqueue> queue = TransactionalQueueFactory.<String, JdbcTestElement, JdbcTestElementToEnqueue> factory()
+        .withQueueName(queueName)
+        .withClock(Clock.systemUTC())
+        .withMeterRegistry(new SimpleMeterRegistry())
+        .withTransactionCreator(transactionCreator)
+        .withApplicationEventPublisher(new FakeTransactionalQueueApplicationEventPublisher())
+        .withQueuePayloadConsumer(new FakeTransactionalQueueElementPayloadConsumer<JdbcTestElement>())
+        .withQueueRepository(repository)
+        .withQueueDeadLetterRepository({ element -> com.github.sviperll.result4j.Result.success(element) } as TransactionalQueueDeadLetterRepository<JdbcTestElement>)
+        .withConfigurationProperties(TransactionalQueueConfigurationProperties.defaultConfiguration())
+        .create()
+
+    def cleanup() {
+        transactionCreator.close()
+        PostgresTestDatabase.truncate()
+    }
+
+    def "should enqueue in each caller transaction on its own connection"() {
+        when: "two elements are enqueued on one thread, each in a transaction of the caller"
+            JdbcTestElement first = inCallerTransaction { queue.enqueue(new JdbcTestElementToEnqueue("first")).discardError().get() }
+            JdbcTestElement second = inCallerTransaction { queue.enqueue(new JdbcTestElementToEnqueue("second")).discardError().get() }
+
+        then: "no connection of the caller is left bound to the thread"
+            transactionCreator.currentConnection() == null
+
+        and: "both elements have been committed by their caller"
+            repository.findById(first.id()).discardError().get().payload() == "first"
+            repository.findById(second.id()).discardError().get().payload() == "second"
+    }
+
+    def "should close the statements prepared on a caller connection once the caller hands out none"() {
+        given: "a long-lived caller connection which records the statements prepared on it"
+            Connection connection = dataSource.getConnection()
+            connection.setAutoCommit(false)
+            List<PreparedStatement> statements = []
+            Connection recordingConnection = Proxy.newProxyInstance(getClass().classLoader, [Connection] as Class[], { proxy, Method method, Object[] arguments ->
+                Object result = method.invoke(connection, arguments)
+                if (result instanceof PreparedStatement) {
+                    statements << result
+                }
+                result
+            } as InvocationHandler) as Connection
+            callerConnection.set(recordingConnection)
+            queue.enqueue(new JdbcTestElementToEnqueue("first")).discardError().get()
+            queue.enqueue(new JdbcTestElementToEnqueue("second")).discardError().get()
+            connection.commit()
+
+        expect: "the statement is prepared once for both elements and kept open"
+            statements.size() == 1
+            !statements[0].isClosed()
+
+        when: "the caller's transaction has ended and the next enqueue finds no connection"
+            callerConnection.remove()
+            queue.enqueue(new JdbcTestElementToEnqueue("outside"))
+
+        then: "the statement is closed, but the caller's connection is not"
+            statements[0].isClosed()
+            !connection.isClosed()
+
+        cleanup:
+            connection.close()
+    }
+
+    def "should not store the elements of a caller transaction which is rolled back"() {
+        when:
+            inCallerTransaction {
+                queue.enqueue(new JdbcTestElementToEnqueue("rolled-back")).discardError().get()
+                throw new IllegalStateException("Caller failed.")
+            }
+
+        then:
+            thrown(IllegalStateException)
+            PostgresTestDatabase.count() == 0
+    }
+
+    def "should join its own transaction, committing the elements only when the action returns"() {
+        when: "an action enqueues and then fails"
+            transactionCreator.executeInTransaction {
+                queue.enqueue(new JdbcTestElementToEnqueue("rolled-back")).discardError().get()
+                throw new IllegalStateException("Action failed.")
+            }
+
+        then: "its element is rolled back with it"
+            thrown(IllegalStateException)
+            PostgresTestDatabase.count() == 0
+
+        when: "an action enqueues and returns"
+            JdbcTestElement committed = transactionCreator.executeInTransaction {
+                queue.enqueue(new JdbcTestElementToEnqueue("committed")).discardError().get()
+            }
+
+        then: "its element is committed with it"
+            repository.findById(committed.id()).discardError().get().payload() == "committed"
+            PostgresTestDatabase.count() == 1
+    }
+
+    def "should fail to enqueue outside of any transaction"() {
+        when:
+            TransactionalQueueError<?> error = queue.enqueue(new JdbcTestElementToEnqueue("payload")).discardSuccess().get()
+
+        then:
+            error.type() == "open-transaction-error"
+            PostgresTestDatabase.count() == 0
+    }
+
+    def "should suspend the current transaction until the new one completes"() {
+        given:
+            OpenedTransaction outer = transactionCreator.openTransaction(PROPAGATION_REQUIRES_NEW, queueName).discardError().get()
+            Connection outerConnection = transactionCreator.currentConnection()
+            repository.insert(new JdbcTestElementToEnqueue("outer"), now, now)
+
+        when: "a new transaction inserts an element and is rolled back"
+            OpenedTransaction rolledBack = transactionCreator.openTransaction(PROPAGATION_REQUIRES_NEW, queueName).discardError().get()
+            Connection innerConnection = transactionCreator.currentConnection()
+            repository.insert(new JdbcTestElementToEnqueue("rolled-back"), now, now)
+            rolledBack.rollback()
+
+        then: "it ran on its own connection and the outer transaction is current again"
+            innerConnection != outerConnection
+            transactionCreator.currentConnection() == outerConnection
+
+        when: "another new transaction inserts an element and commits"
+            OpenedTransaction committed = transactionCreator.openTransaction(PROPAGATION_REQUIRES_NEW, queueName).discardError().get()
+            repository.insert(new JdbcTestElementToEnqueue("inner"), now, now)
+            committed.commit(null)
+
+        then: "its element is visible before the outer transaction completes"
+            PostgresTestDatabase.count() == 1
+            transactionCreator.currentConnection() == outerConnection
+
+        when: "the outer transaction is rolled back"
+            outer.rollback()
+
+        then: "only the element of the committed inner transaction is stored"
+            transactionCreator.currentConnection() == null
+            PostgresTestDatabase.count() == 1
+            PostgresTestDatabase.count("payload = 'inner'") == 1
+    }
+
+    def "should reuse the idle connection of a completed transaction"() {
+        given:
+            OpenedTransaction first = transactionCreator.openTransaction(PROPAGATION_REQUIRES_NEW, queueName).discardError().get()
+            Connection firstConnection = transactionCreator.currentConnection()
+            first.commit(null)
+
+        when:
+            OpenedTransaction second = transactionCreator.openTransaction(PROPAGATION_REQUIRES_NEW, queueName).discardError().get()
+            Connection secondConnection = transactionCreator.currentConnection()
+            second.commit(null)
+
+        then:
+            secondConnection.is(firstConnection)
+            !secondConnection.isClosed()
+
+        when: "the creator is closed"
+            transactionCreator.close()
+
+        then: "its idle connection is closed"
+            firstConnection.isClosed()
+    }
+
+    private <T> T inCallerTransaction(Closure<T> action) {
+        Connection connection = dataSource.getConnection()
+        connection.setAutoCommit(false)
+        callerConnection.set(connection)
+        try {
+            T result = action.call()
+            connection.commit()
+            return result
+        } catch (Exception exception) {
+            connection.rollback()
+            throw exception
+        } finally {
+            callerConnection.remove()
+            connection.close()
+        }
+    }
+}
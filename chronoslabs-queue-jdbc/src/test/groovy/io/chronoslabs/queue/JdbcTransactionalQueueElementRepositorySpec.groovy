@@ -0,0 +1,332 @@
+package io.chronoslabs.queue
+
+import com.github.sviperll.result4j.Result
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import spock.lang.Specification
+
+import java.time.Clock
+import java.time.Duration
+import java.time.Instant
+import java.time.ZoneOffset
+import java.util.concurrent.CompletableFuture
+
+import static io.chronoslabs.queue.CollapsingTransactionalQueueElementRepository.CollapsedElement
+import static io.chronoslabs.queue.TransactionDefinition.PROPAGATION_REQUIRES_NEW
+
+class JdbcTransactionalQueueElementRepositorySpec extends Specification {
+    String queueName = "TestQueue"
+    Instant now = Instant.parse("2025-04-25T12:00:00Z")
+    Duration lockTimeout = Duration.ofSeconds(30)
+    JdbcTransactionCreator transactionCreator = new JdbcTransactionCreator(PostgresTestDatabase.dataSource())
+    PostgresTestElementRepository repository = new PostgresTestElementRepository(transactionCreator, queueName)
+
+    def cleanup() {
+        transactionCreator.close()
+        PostgresTestDatabase.truncate()
+    }
+
+    def "should insert an element and find it by its id"() {
+        when:
+            JdbcTestElement inserted = repository.insert(new JdbcTestElementToEnqueue("payload"), now, now + Duration.ofSeconds(1)).discardError().get()
+
+        then:
+            inserted.id() > 0
+            repository.findById(inserted.id()).discardError().get() == new JdbcTestElement(inserted.id(), "payload", now, now + Duration.ofSeconds(1), 0)
+
+        and: "an unknown id is not found"
+            repository.findById(inserted.id() + 1).discardSuccess().get().type() == "read-element-error"
+    }
+
+    def "should insert many elements in one batch"() {
+        when:
+            List<JdbcTestElement> inserted = repository.insertAll((1..3).collect { new JdbcTestElementToEnqueue("payload-$it") }, now, now).discardError().get() as List
+
+        then:
+            inserted*.payload() == ["payload-1", "payload-2", "payload-3"]
+            inserted*.id().toSet().size() == 3
+            PostgresTestDatabase.count() == 3
+    }
+
+    def "should lock the oldest due elements and skip the ones locked by another transaction"() {
+        given: "three due elements and one due later"
+            List<JdbcTestElement> due = (1..3).collect { insert("due-$it", now + Duration.ofSeconds(it), now) }
+            insert("later", now, now + Duration.ofMinutes(1))
+
+        when: "a transaction locks two elements and has not committed yet"
+            OpenedTransaction transaction = transactionCreator.openTransaction(PROPAGATION_REQUIRES_NEW, queueName).discardError().get()
+            List<JdbcTestElement> locked = lock(2)
+
+        and: "another node locks on its own connection meanwhile"
+            List<JdbcTestElement> lockedByOtherNode = CompletableFuture.supplyAsync { lock(2) }.join()
+            transaction.commit(locked)
+
+        then: "the first transaction locked the two oldest elements, counting the dispatch"
+            locked*.id() == due[0..1]*.id()
+            locked.every { it.dispatchCount() == 1 && it.nextDispatchAfter() == now + lockTimeout }
+
+        and: "the other node skipped them instead of waiting, and did not lock the element due later"
+            lockedByOtherNode*.id() == [due[2].id()]
+
+        and: "no element is due anymore"
+            lock(10).isEmpty()
+    }
+
+    def "should skip the elements still dispatching on this node when locking"() {
+        given: "three due elements, the first two still dispatching on this node"
+            List<JdbcTestElement> due = (1..3).collect { insert("due-$it", now + Duration.ofSeconds(it), now) }
+            long[] dispatching = [due[0].id(), due[1].id()] as long[]
+
+        when:
+            List<JdbcTestElement> locked = repository.lockForNextDispatch(10, now + Duration.ofSeconds(5), now + lockTimeout, dispatching).discardError().get() as List
+
+        then: "only the third element is locked"
+            locked*.id() == [due[2].id()]
+
+        and: "the skipped elements keep the dispatch count of their running dispatch"
+            due[0..1].every { repository.findById(it.id()).discardError().get().dispatchCount() == 0 }
+    }
+
+    def "should delete an element only with the dispatch count it was locked with"() {
+        given: "an element locked twice, the first lock having expired"
+            JdbcTestElement element = insert("payload", now, now)
+            JdbcTestElement firstLock = lock(1).first()
+            JdbcTestElement secondLock = repository.lockForNextDispatch(1, now + lockTimeout + Duration.ofSeconds(1), now + lockTimeout.multipliedBy(2)).discardError().get().first()
+
+        when: "the dispatch of the expired lock deletes it"
+            Result<JdbcTestElement, TransactionalQueueError<JdbcTestElement>> staleDelete = repository.delete(firstLock)
+
+        then: "it is not deleted"
+            staleDelete.discardSuccess().get().type() == "zero-rows-deleted"
+            PostgresTestDatabase.count() == 1
+
+        when: "the dispatch of the current lock deletes it"
+            Result<JdbcTestElement, TransactionalQueueError<JdbcTestElement>> delete = repository.delete(secondLock)
+
+        then:
+            delete.discardError().get() == secondLock
+            repository.findById(element.id()).discardSuccess().isPresent()
+    }
+
+    def "should delete many elements in one batch, except the ones dispatched again"() {
+        given:
+            (1..3).each { insert("payload-$it", now, now) }
+            List<JdbcTestElement> locked = lock(3)
+            JdbcTestElement dispatchedAgain = locked.last().with { new JdbcTestElement(id(), payload(), createdAt(), nextDispatchAfter(), 0) }
+
+        when:
+            Collection<JdbcTestElement> deleted = repository.deleteAll(locked[0..1] + [dispatchedAgain]).discardError().get()
+
+        then:
+            deleted == locked[0..1]
+            PostgresTestDatabase.count() == 1
+    }
+
+    def "should release the locks of elements which have not been dispatched"() {
+        given:
+            JdbcTestElement element = insert("payload", now, now)
+            JdbcTestElement locked = lock(1).first()
+
+        when:
+            int released = repository.releaseLocks([locked], lockTimeout).discardError().get()
+
+        then: "the element is due again with the dispatch count it had before"
+            released == 1
+            repository.findById(element.id()).discardError().get() == element
+    }
+
+    def "should insert an element with an idempotency key only once"() {
+        given:
+            JdbcTestElement inserted = repository.insertUnlessDuplicate(JdbcTestElementToEnqueue.withIdempotencyKey("first", "order-1"), now, now, [:], null).discardError().get().get()
+
+        when: "an element with the same key is inserted"
+            Optional<JdbcTestElement> duplicateInsert = repository.insertUnlessDuplicate(JdbcTestElementToEnqueue.withIdempotencyKey("second", "order-1"), now, now, [:], null).discardError().get()
+
+        then: "the insert conflicts and the element already stored is its duplicate"
+            duplicateInsert.isEmpty()
+            repository.findDuplicate(JdbcTestElementToEnqueue.withIdempotencyKey("second", "order-1"), null).discardError().get() == Optional.of(inserted)
+            PostgresTestDatabase.count() == 1
+
+        and: "a key without an element has no duplicate"
+            repository.findDuplicate(JdbcTestElementToEnqueue.withIdempotencyKey("third", "order-2"), null).discardError().get().isEmpty()
+    }
+
+    def "should release the idempotency key of an element created before the idempotency window and insert again"() {
+        given: "an element created two minutes ago and one created just now"
+            Duration window = Duration.ofMinutes(1)
+            JdbcTestElement old = repository.insertUnlessDuplicate(JdbcTestElementToEnqueue.withIdempotencyKey("old", "order-1"), now - Duration.ofMinutes(2), now, [:], null).discardError().get().get()
+            JdbcTestElement recent = repository.insertUnlessDuplicate(JdbcTestElementToEnqueue.withIdempotencyKey("recent", "order-2"), now, now, [:], null).discardError().get().get()
+
+        when: "both keys are inserted again within a window of a minute"
+            Optional<JdbcTestElement> afterWindow = repository.insertUnlessDuplicate(JdbcTestElementToEnqueue.withIdempotencyKey("again", "order-1"), now, now, [:], now - window).discardError().get()
+            Optional<JdbcTestElement> withinWindow = repository.insertUnlessDuplicate(JdbcTestElementToEnqueue.withIdempotencyKey("again", "order-2"), now, now, [:], now - window).discardError().get()
+
+        then: "the key of the old element is released and inserted again"
+            afterWindow.isPresent()
+            afterWindow.get().id() != old.id()
+            repository.findDuplicate(JdbcTestElementToEnqueue.withIdempotencyKey("again", "order-1"), now - window).discardError().get() == afterWindow
+            PostgresTestDatabase.count("idempotency_key IS NULL") == 1
+            PostgresTestDatabase.count("id = ${old.id()}") == 1
+
+        and: "the recent element is still a duplicate"
+            withinWindow.isEmpty()
+            repository.findDuplicate(JdbcTestElementToEnqueue.withIdempotencyKey("again", "order-2"), now - window).discardError().get() == Optional.of(recent)
+    }
+
+    def "should fail the enqueue when the conflicting duplicate is dispatched before it is found"() {
+        given: "a node whose repository lets another node dispatch the duplicate right after the insert conflicted"
+            boolean dispatchDuplicateBeforeFinding = false
+            PostgresTestElementRepository racingRepository = new PostgresTestElementRepository(transactionCreator, queueName) {
+                @Override
+                Result<Optional<JdbcTestElement>, TransactionalQueueError<JdbcTestElementToEnqueue>> findDuplicate(JdbcTestElementToEnqueue elementToEnqueue, Instant duplicatesCreatedSince) {
+                    if (dispatchDuplicateBeforeFinding) {
+                        dispatchOnAnotherNode()
+                    }
+                    return super.findDuplicate(elementToEnqueue, duplicatesCreatedSince)
+                }
+            }
+            TransactionalQueue<String, JdbcTestElement, JdbcTestElementToEnqueue> queue = aQueue(racingRepository)
+
+        and: "an element enqueued by another node"
+            JdbcTestElement enqueuedByAnotherNode = repository.insertUnlessDuplicate(JdbcTestElementToEnqueue.withIdempotencyKey("first", "order-1"), now, now, [:], null).discardError().get().get()
+
+        when: "the node enqueues its duplicate"
+            JdbcTestElement duplicate = transactionCreator.executeInTransaction { queue.enqueue(JdbcTestElementToEnqueue.withIdempotencyKey("second", "order-1")).discardError().get() }
+
+        then: "the insert conflicts and the element of the other node is returned"
+            duplicate == enqueuedByAnotherNode
+            PostgresTestDatabase.count() == 1
+
+        when: "the node enqueues the duplicate of another element of the other node, which is dispatched between the conflict and the lookup"
+            dispatchOnAnotherNode()
+            repository.insertUnlessDuplicate(JdbcTestElementToEnqueue.withIdempotencyKey("first", "order-2"), now, now, [:], null)
+            dispatchDuplicateBeforeFinding = true
+            TransactionalQueueError<JdbcTestElementToEnqueue> error = transactionCreator.executeInTransaction { queue.enqueue(JdbcTestElementToEnqueue.withIdempotencyKey("second", "order-2")).discardSuccess().get() }
+
+        then: "the enqueue fails instead of losing the element silently"
+            error.type() == "duplicate-element-dispatched"
+            PostgresTestDatabase.count() == 0
+    }
+
+    def "should replace the pending element with the same collapse key, giving it a new id"() {
+        given:
+            CollapsedElement<JdbcTestElement> first = repository.insertOrCollapse(JdbcTestElementToEnqueue.withCollapseKey("first", "customer-1"), now, now + Duration.ofSeconds(10), [:]).discardError().get()
+
+        when: "an element with the same key is enqueued later, due earlier"
+            CollapsedElement<JdbcTestElement> second = repository.insertOrCollapse(JdbcTestElementToEnqueue.withCollapseKey("second", "customer-1"), now + Duration.ofSeconds(1), now + Duration.ofSeconds(5), [:]).discardError().get()
+
+        then: "the first element has been inserted and the second has replaced it"
+            !first.collapsed()
+            second.collapsed()
+
+        and: "the replacement keeps the place in the queue, is due at the earlier time and has a new id"
+            second.element().id() != first.element().id()
+            repository.findById(second.element().id()).discardError().get() == new JdbcTestElement(second.element().id(), "second", now, now + Duration.ofSeconds(5), 0)
+            PostgresTestDatabase.count() == 1
+
+        and: "a dispatch of the superseded element deletes nothing"
+            repository.delete(first.element()).discardSuccess().get().type() == "zero-rows-deleted"
+            PostgresTestDatabase.count() == 1
+    }
+
+    def "should insert an element behind the element with the same collapse key locked for dispatch"() {
+        given:
+            JdbcTestElement inFlight = repository.insertOrCollapse(JdbcTestElementToEnqueue.withCollapseKey("first", "customer-1"), now, now, [:]).discardError().get().element()
+            lock(1)
+
+        when:
+            CollapsedElement<JdbcTestElement> second = repository.insertOrCollapse(JdbcTestElementToEnqueue.withCollapseKey("second", "customer-1"), now, now, [:]).discardError().get()
+            CollapsedElement<JdbcTestElement> third = repository.insertOrCollapse(JdbcTestElementToEnqueue.withCollapseKey("third", "customer-1"), now, now, [:]).discardError().get()
+
+        then: "the element in flight is left alone and only the pending one behind it is replaced"
+            !second.collapsed()
+            third.collapsed()
+            PostgresTestDatabase.count() == 2
+            repository.findById(inFlight.id()).discardError().get().dispatchCount() == 1
+            repository.findById(third.element().id()).discardError().get().payload() == "third"
+    }
+
+    def "should not lock expired elements"() {
+        given:
+            repository.insert(JdbcTestElementToEnqueue.withTimeToLive("expired", Duration.ofMinutes(1)), now - Duration.ofMinutes(2), now)
+            JdbcTestElement alive = repository.insert(JdbcTestElementToEnqueue.withTimeToLive("alive", Duration.ofMinutes(10)), now - Duration.ofMinutes(2), now).discardError().get()
+            JdbcTestElement immortal = insert("immortal", now - Duration.ofMinutes(1), now)
+
+        when:
+            List<JdbcTestElement> locked = lock(10)
+
+        then:
+            locked*.id() == [alive.id(), immortal.id()]
+            PostgresTestDatabase.count() == 3
+    }
+
+    def "should delete expired elements in chunks"() {
+        given: "three expired elements and two which have not expired"
+            List<JdbcTestElement> expired = (1..3).collect { repository.insert(JdbcTestElementToEnqueue.withTimeToLive("expired-$it", Duration.ofMinutes(1)), now - Duration.ofMinutes(2), now).discardError().get() }
+            repository.insert(JdbcTestElementToEnqueue.withTimeToLive("alive", Duration.ofMinutes(2)), now, now)
+            insert("immortal", now - Duration.ofDays(1), now)
+
+        when: "they are deleted in chunks of two"
+            int firstChunk = repository.deleteExpired(2, now).discardError().get()
+            Collection<JdbcTestElement> secondChunk = repository.deleteExpiredReturning(2, now).discardError().get()
+            int thirdChunk = repository.deleteExpired(2, now).discardError().get()
+
+        then: "each chunk deleted at most two of the expired elements"
+            firstChunk == 2
+            secondChunk.size() == 1
+            secondChunk.first().id() in expired*.id()
+            thirdChunk == 0
+
+        and: "the elements which have not expired are kept"
+            PostgresTestDatabase.count() == 2
+            PostgresTestDatabase.count("payload IN ('alive', 'immortal')") == 2
+    }
+
+    def "should not delete an expired element while it is locked for dispatch"() {
+        given: "an element locked for dispatch shortly before it expires"
+            JdbcTestElement element = repository.insert(JdbcTestElementToEnqueue.withTimeToLive("payload", Duration.ofSeconds(10)), now, now).discardError().get()
+            JdbcTestElement locked = lock(1).first()
+
+        when: "it expires while the lock is held"
+            int deletedWhileLocked = repository.deleteExpired(10, now + Duration.ofSeconds(20)).discardError().get()
+
+        then: "it is kept for its dispatch"
+            deletedWhileLocked == 0
+            repository.findById(element.id()).discardError().get() == locked
+
+        when: "the lock has expired as well"
+            int deletedAfterLock = repository.deleteExpired(10, now + lockTimeout + Duration.ofSeconds(1)).discardError().get()
+
+        then:
+            deletedAfterLock == 1
+            PostgresTestDatabase.count() == 0
+    }
+
+    private JdbcTestElement insert(String payload, Instant createdAt, Instant nextDispatchAfter) {
+        return repository.insert(new JdbcTestElementToEnqueue(payload), createdAt, nextDispatchAfter).discardError().get()
+    }
+
+    private List<JdbcTestElement> lock(int batchSize) {
+        return repository.lockForNextDispatch(batchSize, now + Duration.ofSeconds(5), now + lockTimeout).discardError().get() as List
+    }
+
+    /** Locks and deletes the due elements in a transaction of their own, as the dispatch of another node does. */
+    private void dispatchOnAnotherNode() {
+        OpenedTransaction transaction = transactionCreator.openTransaction(PROPAGATION_REQUIRES_NEW, queueName).discardError().get()
+        lock(10).each { repository.delete(it).discardError().get() }
+        transaction.commit(null)
+    }
+
+    private TransactionalQueue<String, JdbcTestElement, JdbcTestElementToEnqueue> aQueue(PostgresTestElementRepository queueRepository) {
+        return TransactionalQueueFactory.<String, JdbcTestElement, JdbcTestElementToEnqueue> factory()
+            .withQueueName(queueName)
+            .withClock(Clock.fixed(now, ZoneOffset.UTC))
+            .withMeterRegistry(new SimpleMeterRegistry())
+            .withTransactionCreator(transactionCreator)
+            .withApplicationEventPublisher(new FakeTransactionalQueueApplicationEventPublisher())
+            .withQueuePayloadConsumer(new FakeTransactionalQueueElementPayloadConsumer<JdbcTestElement>())
+            .withQueueRepository(queueRepository)
+            .withQueueDeadLetterRepository({ element -> Result.success(element) } as TransactionalQueueDeadLetterRepository<JdbcTestElement>)
+            .withConfigurationProperties(TransactionalQueueConfigurationProperties.defaultConfiguration())
+            .create()
+    }
+}
@@ -0,0 +1,43 @@
+package io.chronoslabs.queue
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres
+
+import javax.sql.DataSource
+import java.sql.Connection
+
+/** Embedded Postgres shared by the specs of the module, started once and emptied between tests. */
+class PostgresTestDatabase {
+    private static EmbeddedPostgres embeddedPostgres
+
+    static synchronized DataSource dataSource() {
+        if (embeddedPostgres == null) {
+            embeddedPostgres = EmbeddedPostgres.start()
+            PostgresTestElementRepository.SCHEMA.each { execute(it) }
+        }
+        return embeddedPostgres.getPostgresDatabase()
+    }
+
+    static void truncate() {
+        execute("TRUNCATE ${PostgresTestElementRepository.TABLE_NAME}")
+    }
+
+    static int count(String condition = "TRUE") {
+        Connection connection = dataSource().getConnection()
+        try {
+            def resultSet = connection.createStatement().executeQuery("SELECT count(*) FROM ${PostgresTestElementRepository.TABLE_NAME} WHERE ${condition}")
+            resultSet.next()
+            return resultSet.getInt(1)
+        } finally {
+            connection.close()
+        }
+    }
+
+    static void execute(String sql) {
+        Connection connection = dataSource().getConnection()
+        try {
+            connection.createStatement().execute(sql)
+        } finally {
+            connection.close()
+        }
+    }
+}
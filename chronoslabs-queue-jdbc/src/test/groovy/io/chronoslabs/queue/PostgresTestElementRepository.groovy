@@ -0,0 +1,45 @@
+package io.chronoslabs.queue
+
+import java.sql.PreparedStatement
+import java.sql.ResultSet
+import java.sql.SQLException
+
+class PostgresTestElementRepository extends JdbcTransactionalQueueElementRepository<String, JdbcTestElement, JdbcTestElementToEnqueue> {
+    static final String TABLE_NAME = "jdbc_test_queue"
+    static final String TABLE_COLUMNS = "id, created_at, next_dispatch_after, dispatch_count, payload"
+    static final List<String> SCHEMA = [
+        """
+        CREATE TABLE ${TABLE_NAME} (
+            id                  BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+            created_at          TIMESTAMP WITH TIME ZONE NOT NULL,
+            next_dispatch_after TIMESTAMP WITH TIME ZONE NOT NULL,
+            dispatch_count      INTEGER                  NOT NULL,
+            expires_at          TIMESTAMP WITH TIME ZONE,
+            payload             TEXT                     NOT NULL,
+            idempotency_key     TEXT,
+            collapse_key        TEXT
+        )
+        """.toString(),
+        "CREATE UNIQUE INDEX ON ${TABLE_NAME} (idempotency_key)".toString(),
+        "CREATE UNIQUE INDEX ON ${TABLE_NAME} (collapse_key) WHERE dispatch_count = 0".toString(),
+        "CREATE INDEX ON ${TABLE_NAME} (expires_at) WHERE expires_at IS NOT NULL".toString(),
+    ]
+
+    PostgresTestElementRepository(JdbcTransactionCreator transactionCreator, String queueName) {
+        super(transactionCreator, queueName, TABLE_NAME, TABLE_COLUMNS, ["payload"], PostgresTestElementRepository::mapRow, true)
+    }
+
+    @Override
+    protected void bindInsertParameters(PreparedStatement statement, int firstParameterIndex, JdbcTestElementToEnqueue elementToEnqueue, Map<String, String> traceContext) throws SQLException {
+        statement.setString(firstParameterIndex, elementToEnqueue.payload())
+    }
+
+    static JdbcTestElement mapRow(ResultSet resultSet) throws SQLException {
+        return new JdbcTestElement(
+            resultSet.getLong("id"),
+            resultSet.getString("payload"),
+            resultSet.getTimestamp("created_at").toInstant(),
+            resultSet.getTimestamp("next_dispatch_after").toInstant(),
+            resultSet.getInt("dispatch_count"))
+    }
+}
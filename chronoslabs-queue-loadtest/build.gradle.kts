@@ -0,0 +1,20 @@
+plugins {
+    id("application")
+    id("java-library")
+}
+
+dependencies {
+    implementation(platform(libs.spring.boot.platform))
+    implementation(projects.chronoslabsQueueSpring)
+    implementation(libs.loadtest.embeddedPostgres)
+    implementation(libs.loadtest.hdrHistogram)
+    implementation(libs.loadtest.hikari)
+    implementation(libs.logging.slf4j.api)
+
+    runtimeOnly(libs.loadtest.postgresql)
+    runtimeOnly(libs.logging.slf4j.simple)
+}
+
+application {
+    mainClass = "io.chronoslabs.queue.LoadTestRunner"
+}
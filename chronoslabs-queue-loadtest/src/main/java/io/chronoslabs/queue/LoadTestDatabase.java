@@ -0,0 +1,95 @@
+package io.chronoslabs.queue;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import java.io.IOException;
+import javax.sql.DataSource;
+import org.springframework.jdbc.core.simple.JdbcClient;
+
+/**
+ * Starts an embedded Postgres, or connects to the one given by {@code --jdbc-url}, and creates the
+ * queue and dead letter queue tables used by the load test.
+ */
+class LoadTestDatabase implements AutoCloseable {
+  static final String QUEUE_TABLE_NAME = "load_test_queue";
+  static final String QUEUE_TABLE_COLUMNS =
+      "id, created_at, next_dispatch_after, dispatch_count, sequence, intended_enqueue_nanos";
+  static final String DEAD_LETTER_QUEUE_TABLE_NAME = "load_test_dead_letter_queue";
+
+  private final EmbeddedPostgres embeddedPostgres;
+  private final HikariDataSource pooledDataSource;
+
+  private LoadTestDatabase(EmbeddedPostgres embeddedPostgres, HikariDataSource dataSource) {
+    this.embeddedPostgres = embeddedPostgres;
+    this.pooledDataSource = dataSource;
+  }
+
+  @SuppressWarnings("PMD.CloseResource")
+  static LoadTestDatabase start(LoadTestScenario scenario) throws IOException {
+    var embeddedPostgres = scenario.jdbcUrl() == null ? EmbeddedPostgres.start() : null;
+    var config = new HikariConfig();
+    config.setJdbcUrl(
+        embeddedPostgres == null
+            ? scenario.jdbcUrl()
+            : embeddedPostgres.getJdbcUrl("postgres", "postgres"));
+    config.setMaximumPoolSize(
+        scenario.producers() + scenario.nodes() * (scenario.consumerThreadsPerNode() + 2));
+    config.setPoolName("load-test");
+    var database = new LoadTestDatabase(embeddedPostgres, new HikariDataSource(config));
+    database.createSchema();
+    return database;
+  }
+
+  DataSource dataSource() {
+    return pooledDataSource;
+  }
+
+  JdbcClient jdbcClient() {
+    return JdbcClient.create(pooledDataSource);
+  }
+
+  private void createSchema() {
+    var jdbcClient = jdbcClient();
+    jdbcClient.sql("DROP TABLE IF EXISTS " + QUEUE_TABLE_NAME).update();
+    jdbcClient.sql("DROP TABLE IF EXISTS " + DEAD_LETTER_QUEUE_TABLE_NAME).update();
+    jdbcClient
+        .sql(
+            """
+            CREATE TABLE %s (
+                id                     BIGSERIAL PRIMARY KEY,
+                created_at             TIMESTAMP WITH TIME ZONE NOT NULL,
+                next_dispatch_after    TIMESTAMP WITH TIME ZONE NOT NULL,
+                dispatch_count         INTEGER                  NOT NULL,
+                sequence               BIGINT                   NOT NULL,
+                intended_enqueue_nanos BIGINT                   NOT NULL
+            )
+            """
+                .formatted(QUEUE_TABLE_NAME))
+        .update();
+    jdbcClient
+        .sql(
+            "CREATE INDEX %1$s_next_dispatch_after_idx ON %1$s (next_dispatch_after)"
+                .formatted(QUEUE_TABLE_NAME))
+        .update();
+    jdbcClient
+        .sql(
+            """
+            CREATE TABLE %s (
+                id             BIGINT  PRIMARY KEY,
+                sequence       BIGINT  NOT NULL,
+                dispatch_count INTEGER NOT NULL
+            )
+            """
+                .formatted(DEAD_LETTER_QUEUE_TABLE_NAME))
+        .update();
+  }
+
+  @Override
+  public void close() throws IOException {
+    pooledDataSource.close();
+    if (embeddedPostgres != null) {
+      embeddedPostgres.close();
+    }
+  }
+}
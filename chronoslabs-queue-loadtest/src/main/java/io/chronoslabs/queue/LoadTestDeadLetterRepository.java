@@ -0,0 +1,47 @@
+package io.chronoslabs.queue;
+
+import com.github.sviperll.result4j.Result;
+import java.util.List;
+import org.springframework.jdbc.core.simple.JdbcClient;
+
+class LoadTestDeadLetterRepository
+    implements TransactionalQueueDeadLetterRepository<LoadTestElement> {
+  private final JdbcClient jdbcClient;
+  private final String queueName;
+
+  LoadTestDeadLetterRepository(JdbcClient jdbcClient, String queueName) {
+    this.jdbcClient = jdbcClient;
+    this.queueName = queueName;
+  }
+
+  @Override
+  public Result<LoadTestElement, TransactionalQueueError<LoadTestElement>> insert(
+      LoadTestElement element) {
+    try {
+      jdbcClient
+          .sql(
+              "INSERT INTO %s (id, sequence, dispatch_count) VALUES (:id, :sequence, :dispatchCount)"
+                  .formatted(LoadTestDatabase.DEAD_LETTER_QUEUE_TABLE_NAME))
+          .param("id", element.id())
+          .param("sequence", element.payload().sequence())
+          .param("dispatchCount", element.dispatchCount())
+          .update();
+      return Result.success(element);
+    } catch (Exception exception) {
+      return Result.error(
+          TransactionalQueueError.<LoadTestElement>builder(queueName)
+              .withCause(exception)
+              .withElement(element)
+              .withMessage("Failed to insert element into dead letter queue.")
+              .withType("dead-letter-queue-insert-error")
+              .build());
+    }
+  }
+
+  List<Long> sequences() {
+    return jdbcClient
+        .sql("SELECT sequence FROM " + LoadTestDatabase.DEAD_LETTER_QUEUE_TABLE_NAME)
+        .query(Long.class)
+        .list();
+  }
+}
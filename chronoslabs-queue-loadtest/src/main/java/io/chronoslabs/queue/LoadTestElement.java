@@ -0,0 +1,62 @@
+package io.chronoslabs.queue;
+
+import java.time.Instant;
+
+record LoadTestElement(
+    long id,
+    Instant createdAt,
+    Instant nextDispatchAfter,
+    int dispatchCount,
+    LoadTestPayload payload)
+    implements TransactionalQueueElement<LoadTestPayload> {
+
+  static Builder builder() {
+    return new Builder();
+  }
+
+  static class Builder
+      implements TransactionalQueueElementBuilder<LoadTestPayload, LoadTestElement> {
+    private long id;
+    private Instant createdAt;
+    private Instant nextDispatchAfter;
+    private int dispatchCount;
+    private LoadTestPayload payload;
+
+    private Builder() {}
+
+    @Override
+    public Builder withId(long id) {
+      this.id = id;
+      return this;
+    }
+
+    @Override
+    public Builder withCreatedAt(Instant createdAt) {
+      this.createdAt = createdAt;
+      return this;
+    }
+
+    @Override
+    public Builder withDispatchCount(int dispatchCount) {
+      this.dispatchCount = dispatchCount;
+      return this;
+    }
+
+    @Override
+    public Builder withNextDispatchAfter(Instant nextDispatchAfter) {
+      this.nextDispatchAfter = nextDispatchAfter;
+      return this;
+    }
+
+    @Override
+    public Builder withPayload(LoadTestPayload payload) {
+      this.payload = payload;
+      return this;
+    }
+
+    @Override
+    public LoadTestElement build() {
+      return new LoadTestElement(id, createdAt, nextDispatchAfter, dispatchCount, payload);
+    }
+  }
+}
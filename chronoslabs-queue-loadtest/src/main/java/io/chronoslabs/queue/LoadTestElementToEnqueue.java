@@ -0,0 +1,10 @@
+package io.chronoslabs.queue;
+
+record LoadTestElementToEnqueue(LoadTestPayload payload)
+    implements TransactionalQueueElementToEnqueue<LoadTestPayload, LoadTestElement> {
+
+  @Override
+  public LoadTestElement.Builder toTransactionalQueueElementBuilder() {
+    return LoadTestElement.builder().withPayload(payload);
+  }
+}
@@ -0,0 +1,127 @@
+package io.chronoslabs.queue;
+
+import com.github.sviperll.result4j.Result;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Clock;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * A simulated consumer "pod": its own {@link TransactionalQueue}, retry scheduler and consumer
+ * thread pool, competing with the other nodes for the same queue table.
+ */
+class LoadTestNode {
+  private final String nodeName;
+  private final LoadTestScenario scenario;
+  private final LoadTestRecorder recorder;
+  private final TransactionTemplate transactionTemplate;
+  private final TransactionalQueue<LoadTestPayload, LoadTestElement, LoadTestElementToEnqueue>
+      transactionalQueue;
+  private final ScheduledExecutorService retryScheduler;
+  private final ThreadPoolExecutor consumerExecutor;
+
+  LoadTestNode(
+      int nodeNumber,
+      LoadTestScenario scenario,
+      LoadTestDatabase database,
+      LoadTestRecorder recorder,
+      MeterRegistry meterRegistry) {
+    this.nodeName = "load-test-node-" + nodeNumber;
+    this.scenario = scenario;
+    this.recorder = recorder;
+    var transactionManager = new DataSourceTransactionManager(database.dataSource());
+    this.transactionTemplate = new TransactionTemplate(transactionManager);
+    this.retryScheduler =
+        Executors.newSingleThreadScheduledExecutor(namedThreadFactory(nodeName + "-retry-"));
+    this.consumerExecutor =
+        new ThreadPoolExecutor(
+            scenario.consumerThreadsPerNode(),
+            scenario.consumerThreadsPerNode(),
+            0L,
+            TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(scenario.batchSize() * 2),
+            namedThreadFactory(nodeName + "-consumer-"),
+            new ThreadPoolExecutor.CallerRunsPolicy());
+    this.transactionalQueue =
+        TransactionalQueueFactory
+            .<LoadTestPayload, LoadTestElement, LoadTestElementToEnqueue>factory()
+            .withQueueName(LoadTestDatabase.QUEUE_TABLE_NAME)
+            .withClock(Clock.systemUTC())
+            .withMeterRegistry(meterRegistry)
+            .withTransactionCreator(new SpringTransactionCreator(meterRegistry, transactionManager))
+            .withApplicationEventPublisher(this::dispatchAsynchronously)
+            .withQueuePayloadConsumer(this::consume)
+            .withQueueRepository(
+                new LoadTestQueueElementRepository(
+                    database.jdbcClient(), LoadTestDatabase.QUEUE_TABLE_NAME))
+            .withQueueDeadLetterRepository(
+                new LoadTestDeadLetterRepository(
+                    database.jdbcClient(), LoadTestDatabase.QUEUE_TABLE_NAME))
+            .withConfigurationProperties(scenario.queueConfigurationProperties())
+            .create();
+  }
+
+  void start() {
+    var delay = scenario.retryScheduledRateDelay().toNanos();
+    retryScheduler.scheduleWithFixedDelay(
+        transactionalQueue::retryDispatch, 0, delay, TimeUnit.NANOSECONDS);
+  }
+
+  /** Enqueues the element in a new transaction, the way a producer would inside its own one. */
+  boolean enqueue(LoadTestElementToEnqueue elementToEnqueue) {
+    var enqueued =
+        transactionTemplate.execute(
+            status -> {
+              var result = transactionalQueue.enqueue(elementToEnqueue);
+              if (result.discardError().isEmpty()) {
+                status.setRollbackOnly();
+                return false;
+              }
+              return true;
+            });
+    return Boolean.TRUE.equals(enqueued);
+  }
+
+  @SuppressWarnings("PMD.UnusedFormalParameter")
+  private <E extends TransactionalQueueElement<?>>
+      Result<E, TransactionalQueueError<E>> dispatchAsynchronously(E element, String queueName) {
+    consumerExecutor.execute(() -> transactionalQueue.dispatch((LoadTestElement) element));
+    return Result.success(element);
+  }
+
+  private Result<LoadTestElement, TransactionalQueueError<LoadTestElement>> consume(
+      LoadTestElement element) {
+    recorder.recordConsumeAttempt();
+    if (ThreadLocalRandom.current().nextDouble() < scenario.failureRate()) {
+      recorder.recordInjectedFailure();
+      return Result.error(
+          TransactionalQueueError.<LoadTestElement>builder(LoadTestDatabase.QUEUE_TABLE_NAME)
+              .withElement(element)
+              .withMessage("Injected consumer failure.")
+              .withType("load-test-injected-failure")
+              .build());
+    }
+    recorder.recordDelivery(element.payload(), System.nanoTime());
+    return Result.success(element);
+  }
+
+  private static ThreadFactory namedThreadFactory(String prefix) {
+    var threadNumber = new AtomicInteger();
+    return runnable -> new Thread(runnable, prefix + threadNumber.getAndIncrement());
+  }
+
+  void stop() throws InterruptedException {
+    retryScheduler.shutdown();
+    retryScheduler.awaitTermination(1, TimeUnit.MINUTES);
+    consumerExecutor.shutdown();
+    consumerExecutor.awaitTermination(1, TimeUnit.MINUTES);
+  }
+}
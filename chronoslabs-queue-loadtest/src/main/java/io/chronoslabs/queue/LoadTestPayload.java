@@ -0,0 +1,9 @@
+package io.chronoslabs.queue;
+
+/**
+ * @param sequence unique number of the element within the run, used to check delivery invariants.
+ * @param intendedEnqueueNanos {@link System#nanoTime()} at which the producer was scheduled to
+ *     enqueue the element. Latencies are measured from this point and not from the actual enqueue,
+ *     so a stalled producer does not hide queueing delay (coordinated omission).
+ */
+record LoadTestPayload(long sequence, long intendedEnqueueNanos) {}
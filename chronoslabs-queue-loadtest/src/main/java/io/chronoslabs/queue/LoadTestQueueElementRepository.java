@@ -0,0 +1,74 @@
+package io.chronoslabs.queue;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.List;
+import org.springframework.jdbc.core.simple.JdbcClient;
+
+class LoadTestQueueElementRepository
+    extends JdbcClientTransactionalQueueElementRepository<
+        LoadTestPayload, LoadTestElement, LoadTestElementToEnqueue> {
+  private static final String INSERT_STATEMENT_SQL =
+      """
+      INSERT INTO %s (created_at, next_dispatch_after, dispatch_count, sequence, intended_enqueue_nanos)
+      VALUES (:createdAt, :nextDispatchAfter, 0, :sequence, :intendedEnqueueNanos)
+      """
+          .formatted(LoadTestDatabase.QUEUE_TABLE_NAME);
+
+  LoadTestQueueElementRepository(JdbcClient jdbcClient, String queueName) {
+    super(
+        jdbcClient,
+        queueName,
+        LoadTestDatabase.QUEUE_TABLE_NAME,
+        LoadTestDatabase.QUEUE_TABLE_COLUMNS,
+        (resultSet, rowNumber) ->
+            new LoadTestElement(
+                resultSet.getLong("id"),
+                resultSet.getTimestamp("created_at").toInstant(),
+                resultSet.getTimestamp("next_dispatch_after").toInstant(),
+                resultSet.getInt("dispatch_count"),
+                new LoadTestPayload(
+                    resultSet.getLong("sequence"), resultSet.getLong("intended_enqueue_nanos"))));
+  }
+
+  @Override
+  protected JdbcClient.StatementSpec anInsertStatementSpec(
+      LoadTestElementToEnqueue elementToEnqueue, Instant createdAt, Instant nextDispatchAfter) {
+    return jdbcClient
+        .sql(INSERT_STATEMENT_SQL)
+        .param("createdAt", Timestamp.from(createdAt))
+        .param("nextDispatchAfter", Timestamp.from(nextDispatchAfter))
+        .param("sequence", elementToEnqueue.payload().sequence())
+        .param("intendedEnqueueNanos", elementToEnqueue.payload().intendedEnqueueNanos());
+  }
+
+  /** Inserts the backlog with a single set-based statement, bypassing the {@link Enqueuer}. */
+  int insertBacklog(int backlogDepth, Instant createdAt, long intendedEnqueueNanos) {
+    return jdbcClient
+        .sql(
+            """
+            INSERT INTO %s (created_at, next_dispatch_after, dispatch_count, sequence, intended_enqueue_nanos)
+            SELECT :createdAt, :createdAt, 0, sequence, :intendedEnqueueNanos
+            FROM generate_series(0, :backlogDepth - 1) AS sequence
+            """
+                .formatted(LoadTestDatabase.QUEUE_TABLE_NAME))
+        .param("createdAt", Timestamp.from(createdAt))
+        .param("intendedEnqueueNanos", intendedEnqueueNanos)
+        .param("backlogDepth", backlogDepth)
+        .update();
+  }
+
+  long count() {
+    return jdbcClient
+        .sql("SELECT count(*) FROM " + LoadTestDatabase.QUEUE_TABLE_NAME)
+        .query(Long.class)
+        .single();
+  }
+
+  List<Long> remainingSequences() {
+    return jdbcClient
+        .sql("SELECT sequence FROM " + LoadTestDatabase.QUEUE_TABLE_NAME)
+        .query(Long.class)
+        .list();
+  }
+}
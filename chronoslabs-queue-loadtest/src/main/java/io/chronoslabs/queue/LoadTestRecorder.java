@@ -0,0 +1,98 @@
+package io.chronoslabs.queue;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+/**
+ * Thread-safe bookkeeping of a load test run: which sequences were enqueued and delivered, how many
+ * times, and the enqueue and end-to-end latency distributions.
+ */
+class LoadTestRecorder {
+  private static final int SIGNIFICANT_VALUE_DIGITS = 3;
+
+  private final int backlogDepth;
+  private final AtomicIntegerArray enqueued;
+  private final AtomicIntegerArray deliveryCounts;
+  private final LongAdder consumeAttemptCount = new LongAdder();
+  private final LongAdder injectedFailureCount = new LongAdder();
+  private final LongAdder enqueueErrorCount = new LongAdder();
+  private final Histogram enqueueLatencyHistogram =
+      new ConcurrentHistogram(SIGNIFICANT_VALUE_DIGITS);
+  private final Histogram endToEndLatencyHistogram =
+      new ConcurrentHistogram(SIGNIFICANT_VALUE_DIGITS);
+
+  LoadTestRecorder(int capacity, int backlogDepth) {
+    this.backlogDepth = backlogDepth;
+    this.enqueued = new AtomicIntegerArray(capacity);
+    this.deliveryCounts = new AtomicIntegerArray(capacity);
+  }
+
+  void recordBacklog() {
+    for (int sequence = 0; sequence < backlogDepth; sequence++) {
+      enqueued.set(sequence, 1);
+    }
+  }
+
+  void recordEnqueued(LoadTestPayload payload, long completedNanos) {
+    enqueued.set((int) payload.sequence(), 1);
+    enqueueLatencyHistogram.recordValue(micros(completedNanos - payload.intendedEnqueueNanos()));
+  }
+
+  void recordEnqueueError() {
+    enqueueErrorCount.increment();
+  }
+
+  void recordConsumeAttempt() {
+    consumeAttemptCount.increment();
+  }
+
+  void recordInjectedFailure() {
+    injectedFailureCount.increment();
+  }
+
+  void recordDelivery(LoadTestPayload payload, long deliveredNanos) {
+    var sequence = (int) payload.sequence();
+    if (deliveryCounts.incrementAndGet(sequence) == 1 && sequence >= backlogDepth) {
+      endToEndLatencyHistogram.recordValue(micros(deliveredNanos - payload.intendedEnqueueNanos()));
+    }
+  }
+
+  int capacity() {
+    return enqueued.length();
+  }
+
+  boolean wasEnqueued(int sequence) {
+    return enqueued.get(sequence) > 0;
+  }
+
+  int deliveries(int sequence) {
+    return deliveryCounts.get(sequence);
+  }
+
+  long consumeAttempts() {
+    return consumeAttemptCount.sum();
+  }
+
+  long injectedFailures() {
+    return injectedFailureCount.sum();
+  }
+
+  long enqueueErrors() {
+    return enqueueErrorCount.sum();
+  }
+
+  Histogram enqueueLatencyMicros() {
+    return enqueueLatencyHistogram;
+  }
+
+  Histogram endToEndLatencyMicros() {
+    return endToEndLatencyHistogram;
+  }
+
+  private static long micros(long nanos) {
+    return Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos));
+  }
+}
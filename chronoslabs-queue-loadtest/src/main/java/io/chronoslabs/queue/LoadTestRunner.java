@@ -0,0 +1,235 @@
+package io.chronoslabs.queue;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import org.HdrHistogram.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * End-to-end load test of {@link JdbcClientTransactionalQueueElementRepository} and {@link
+ * SpringTransactionCreator}: open-model producers enqueue at a fixed rate while several nodes
+ * compete for the same queue table, and the run ends with a check that no element was lost.
+ *
+ * <p>Run with {@code ./gradlew :chronoslabs-queue-loadtest:run --args="--producers=8 --nodes=4"}.
+ * See {@link LoadTestScenario} for all properties.
+ */
+public final class LoadTestRunner {
+  private static final Logger logger = LoggerFactory.getLogger(LoadTestRunner.class);
+  private static final double[] PERCENTILES = {50.0, 90.0, 99.0, 99.9, 99.99};
+  private static final Duration DRAIN_POLL_INTERVAL = Duration.ofMillis(200);
+
+  private final LoadTestScenario scenario;
+  private final LoadTestDatabase database;
+  private final LoadTestRecorder recorder;
+  private final LoadTestQueueElementRepository repository;
+  private final LoadTestDeadLetterRepository deadLetterRepository;
+  private final AtomicLong sequenceGenerator;
+  private final List<LoadTestNode> nodes = new ArrayList<>();
+
+  private LoadTestRunner(LoadTestScenario scenario, LoadTestDatabase database) {
+    this.scenario = scenario;
+    this.database = database;
+    this.recorder =
+        new LoadTestRecorder((int) scenario.expectedElementCount(), scenario.backlogDepth());
+    this.repository =
+        new LoadTestQueueElementRepository(
+            database.jdbcClient(), LoadTestDatabase.QUEUE_TABLE_NAME);
+    this.deadLetterRepository =
+        new LoadTestDeadLetterRepository(database.jdbcClient(), LoadTestDatabase.QUEUE_TABLE_NAME);
+    this.sequenceGenerator = new AtomicLong(scenario.backlogDepth());
+  }
+
+  public static void main(String... arguments) throws Exception {
+    var scenario = LoadTestScenario.fromArguments(arguments);
+    logger.atInfo().addArgument(scenario).log("Starting load test {}.");
+    try (var database = LoadTestDatabase.start(scenario)) {
+      var lostElements = new LoadTestRunner(scenario, database).run();
+      if (lostElements > 0) {
+        throw new IllegalStateException("%d elements were lost.".formatted(lostElements));
+      }
+    }
+  }
+
+  private long run() throws InterruptedException {
+    insertBacklog();
+    var meterRegistry = new SimpleMeterRegistry();
+    for (int nodeNumber = 0; nodeNumber < scenario.nodes(); nodeNumber++) {
+      nodes.add(new LoadTestNode(nodeNumber, scenario, database, recorder, meterRegistry));
+    }
+
+    var startNanos = System.nanoTime();
+    nodes.forEach(LoadTestNode::start);
+    var producerThreads = startProducers(startNanos);
+    for (var producerThread : producerThreads) {
+      producerThread.join();
+    }
+    var producedNanos = System.nanoTime() - startNanos;
+    var drained = awaitDrain();
+    var drainedNanos = System.nanoTime() - startNanos;
+    for (var node : nodes) {
+      node.stop();
+    }
+
+    report(producedNanos, drainedNanos, drained);
+    logger.atInfo().addArgument(meterRegistry::getMetersAsString).log("Queue metrics:\n{}");
+    return verifyInvariants();
+  }
+
+  private void insertBacklog() {
+    if (scenario.backlogDepth() == 0) {
+      return;
+    }
+    repository.insertBacklog(scenario.backlogDepth(), Instant.now(), System.nanoTime());
+    recorder.recordBacklog();
+    logger.atInfo().addArgument(scenario.backlogDepth()).log("Inserted backlog of {} elements.");
+  }
+
+  @SuppressWarnings("PMD.AvoidInstantiatingObjectsInLoops")
+  private List<Thread> startProducers(long startNanos) {
+    var producerThreads = new ArrayList<Thread>();
+    for (int producerNumber = 0; producerNumber < scenario.producers(); producerNumber++) {
+      var node = nodes.get(producerNumber % nodes.size());
+      var producerThread =
+          new Thread(() -> produce(node, startNanos), "load-test-producer-" + producerNumber);
+      producerThread.start();
+      producerThreads.add(producerThread);
+    }
+    return producerThreads;
+  }
+
+  /**
+   * Enqueues on a fixed schedule. When the producer falls behind it does not skip the missed slots
+   * but enqueues them back-to-back, and their latency is measured from the intended start, so
+   * stalls are reported instead of being hidden (coordinated omission).
+   */
+  @SuppressWarnings("PMD.AvoidInstantiatingObjectsInLoops")
+  private void produce(LoadTestNode node, long startNanos) {
+    var intervalNanos = TimeUnit.SECONDS.toNanos(1) / scenario.producerRatePerSecond();
+    var endNanos = startNanos + scenario.duration().toNanos();
+    var intendedEnqueueNanos = startNanos;
+    while (intendedEnqueueNanos < endNanos) {
+      var sequence = sequenceGenerator.getAndIncrement();
+      if (sequence >= recorder.capacity()) {
+        return;
+      }
+      var waitNanos = intendedEnqueueNanos - System.nanoTime();
+      if (waitNanos > 0) {
+        LockSupport.parkNanos(waitNanos);
+      }
+      var payload = new LoadTestPayload(sequence, intendedEnqueueNanos);
+      if (node.enqueue(new LoadTestElementToEnqueue(payload))) {
+        recorder.recordEnqueued(payload, System.nanoTime());
+      } else {
+        recorder.recordEnqueueError();
+      }
+      intendedEnqueueNanos += intervalNanos;
+    }
+  }
+
+  private boolean awaitDrain() {
+    var deadlineNanos = System.nanoTime() + scenario.drainTimeout().toNanos();
+    while (System.nanoTime() < deadlineNanos) {
+      if (repository.count() == 0) {
+        return true;
+      }
+      LockSupport.parkNanos(DRAIN_POLL_INTERVAL.toNanos());
+    }
+    return repository.count() == 0;
+  }
+
+  private void report(long producedNanos, long drainedNanos, boolean drained) {
+    long enqueued = 0;
+    long delivered = 0;
+    for (int sequence = 0; sequence < recorder.capacity(); sequence++) {
+      if (sequence >= scenario.backlogDepth() && recorder.wasEnqueued(sequence)) {
+        enqueued++;
+      }
+      if (recorder.deliveries(sequence) > 0) {
+        delivered++;
+      }
+    }
+    logger
+        .atInfo()
+        .addArgument(enqueued)
+        .addArgument("%.1f".formatted(perSecond(enqueued, producedNanos)))
+        .addArgument(recorder::enqueueErrors)
+        .log("Enqueued {} elements ({} elements/s), enqueue errors: {}.");
+    logger
+        .atInfo()
+        .addArgument(delivered)
+        .addArgument("%.1f".formatted(perSecond(delivered, drainedNanos)))
+        .addArgument(recorder::consumeAttempts)
+        .addArgument(recorder::injectedFailures)
+        .addArgument(drained ? "drained" : "NOT drained within the drain timeout")
+        .log(
+            "Delivered {} elements ({} elements/s), consume attempts: {}, injected failures: {}, queue {}.");
+    logLatency("Enqueue latency", recorder.enqueueLatencyMicros());
+    logLatency("End-to-end latency", recorder.endToEndLatencyMicros());
+  }
+
+  private static void logLatency(String name, Histogram histogram) {
+    var percentiles = new StringBuilder();
+    for (var percentile : PERCENTILES) {
+      percentiles
+          .append(" p")
+          .append(percentile)
+          .append('=')
+          .append(histogram.getValueAtPercentile(percentile))
+          .append("us");
+    }
+    logger
+        .atInfo()
+        .addArgument(name)
+        .addArgument(histogram.getTotalCount())
+        .addArgument(percentiles)
+        .addArgument(histogram.getMaxValue())
+        .log("{} (count={}):{} max={}us.");
+  }
+
+  /**
+   * Every enqueued element must have been delivered, moved to the dead letter queue or still be in
+   * the queue table. Duplicate deliveries are allowed by the at-least-once contract, but counted.
+   */
+  private long verifyInvariants() {
+    var deadLettered = toBitSet(deadLetterRepository.sequences());
+    var remaining = toBitSet(repository.remainingSequences());
+    long lost = 0;
+    long duplicates = 0;
+    for (int sequence = 0; sequence < recorder.capacity(); sequence++) {
+      var deliveries = recorder.deliveries(sequence);
+      duplicates += Math.max(0, deliveries - 1);
+      if (recorder.wasEnqueued(sequence)
+          && deliveries == 0
+          && !deadLettered.get(sequence)
+          && !remaining.get(sequence)) {
+        lost++;
+      }
+    }
+    logger
+        .atInfo()
+        .addArgument(lost)
+        .addArgument(duplicates)
+        .addArgument(deadLettered.cardinality())
+        .addArgument(remaining.cardinality())
+        .log("Invariants: lost={}, duplicate deliveries={}, dead lettered={}, remaining={}.");
+    return lost;
+  }
+
+  private static BitSet toBitSet(List<Long> sequences) {
+    var bitSet = new BitSet();
+    sequences.forEach(sequence -> bitSet.set(Math.toIntExact(sequence)));
+    return bitSet;
+  }
+
+  private static double perSecond(long count, long nanos) {
+    return count * (double) TimeUnit.SECONDS.toNanos(1) / nanos;
+  }
+}
@@ -0,0 +1,103 @@
+package io.chronoslabs.queue;
+
+import static io.chronoslabs.queue.Assert.isPositive;
+import static io.chronoslabs.queue.Assert.isTrue;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Parameters of a single load test run. Every property can be overridden with a {@code
+ * --property=value} program argument, e.g. {@code --producers=8 --lock-timeout=PT5S}.
+ */
+record LoadTestScenario(
+    String jdbcUrl,
+    int producers,
+    int producerRatePerSecond,
+    int nodes,
+    int consumerThreadsPerNode,
+    int batchSize,
+    Duration lockTimeout,
+    Duration retryScheduledRateDelay,
+    int maxDispatchCount,
+    double failureRate,
+    int backlogDepth,
+    Duration duration,
+    Duration drainTimeout) {
+
+  static LoadTestScenario fromArguments(String... arguments) {
+    var properties = new HashMap<String, String>();
+    for (var argument : arguments) {
+      isTrue(
+          argument.startsWith("--") && argument.contains("="),
+          "Argument '%s' must have format --property=value.".formatted(argument));
+      var separator = argument.indexOf('=');
+      properties.put(argument.substring(2, separator), argument.substring(separator + 1));
+    }
+    var scenario =
+        new LoadTestScenario(
+            properties.remove("jdbc-url"),
+            intProperty(properties, "producers", 4),
+            intProperty(properties, "producer-rate-per-second", 250),
+            intProperty(properties, "nodes", 3),
+            intProperty(properties, "consumer-threads-per-node", 8),
+            intProperty(properties, "batch-size", 10),
+            durationProperty(properties, "lock-timeout", Duration.ofSeconds(10)),
+            durationProperty(properties, "retry-scheduled-rate-delay", Duration.ofMillis(100)),
+            intProperty(properties, "max-dispatch-count", 3),
+            doubleProperty(properties, "failure-rate", 0.0),
+            intProperty(properties, "backlog-depth", 0),
+            durationProperty(properties, "duration", Duration.ofSeconds(30)),
+            durationProperty(properties, "drain-timeout", Duration.ofSeconds(60)));
+    isTrue(
+        properties.isEmpty(), "Unknown load test properties: %s.".formatted(properties.keySet()));
+    scenario.validate();
+    return scenario;
+  }
+
+  long expectedElementCount() {
+    return backlogDepth + (long) producers * producerRatePerSecond * duration.toSeconds();
+  }
+
+  TransactionalQueueConfigurationProperties queueConfigurationProperties() {
+    return TransactionalQueueConfigurationProperties.builder()
+        .withLockTimeout(lockTimeout)
+        .withMaxDispatchCount(maxDispatchCount)
+        .withRetryDispatchBatchSize(batchSize)
+        .withRetryScheduledRateDelay(retryScheduledRateDelay)
+        .build();
+  }
+
+  private void validate() {
+    isTrue(producers >= 0, "Property 'producers' must not be negative.");
+    isTrue(producerRatePerSecond > 0, "Property 'producer-rate-per-second' must be positive.");
+    isTrue(nodes > 0, "Property 'nodes' must be positive.");
+    isTrue(consumerThreadsPerNode > 0, "Property 'consumer-threads-per-node' must be positive.");
+    isTrue(failureRate >= 0.0 && failureRate < 1.0, "Property 'failure-rate' must be in [0, 1).");
+    isTrue(backlogDepth >= 0, "Property 'backlog-depth' must not be negative.");
+    isPositive(duration, "Property 'duration' must be positive.");
+    isPositive(drainTimeout, "Property 'drain-timeout' must be positive.");
+    isTrue(
+        expectedElementCount() <= Integer.MAX_VALUE,
+        "Scenario would enqueue more than %d elements.".formatted(Integer.MAX_VALUE));
+    queueConfigurationProperties().validate("load-test");
+  }
+
+  private static int intProperty(Map<String, String> properties, String name, int defaultValue) {
+    var value = properties.remove(name);
+    return value == null ? defaultValue : Integer.parseInt(value);
+  }
+
+  private static double doubleProperty(
+      Map<String, String> properties, String name, double defaultValue) {
+    var value = properties.remove(name);
+    return value == null ? defaultValue : Double.parseDouble(value);
+  }
+
+  private static Duration durationProperty(
+      Map<String, String> properties, String name, Duration defaultValue) {
+    var value = properties.remove(name);
+    return value == null ? defaultValue : Duration.parse(value);
+  }
+}
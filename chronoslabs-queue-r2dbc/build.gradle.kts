@@ -0,0 +1,20 @@
+plugins {
+    id("java-library")
+    id("publishing-conventions")
+}
+
+dependencies {
+    api(projects.chronoslabsQueueCore)
+    api(libs.reactive.r2dbc.spi)
+    api(libs.reactive.reactor.core)
+
+    implementation(libs.logging.slf4j.api)
+
+    testImplementation(platform(libs.spring.boot.platform))
+    testImplementation(libs.test.groovy.language)
+    testImplementation(libs.test.r2dbc.h2)
+    testImplementation(libs.loadtest.embeddedPostgres)
+
+    testRuntimeOnly(libs.loadtest.postgresql)
+    testRuntimeOnly(libs.test.r2dbc.postgresql)
+}
@@ -0,0 +1,26 @@
+package io.chronoslabs.queue;
+
+import io.r2dbc.spi.Connection;
+import reactor.core.publisher.Mono;
+import reactor.util.context.ContextView;
+
+/**
+ * Finds the connection of the transaction the caller is running in, so {@link
+ * R2dbcTransactionCreator} can enqueue with {@link TransactionDefinition#PROPAGATION_MANDATORY}
+ * inside transactions it did not open, for example a connection bound to the subscriber context by
+ * the application's own reactive transaction management.
+ */
+@FunctionalInterface
+public interface R2dbcConnectionLookup {
+
+  /**
+   * @return the connection of the caller's current transaction, or an empty {@link Mono} when the
+   *     caller is not in a transaction.
+   */
+  Mono<Connection> currentConnection(ContextView context);
+
+  /** Lookup for applications which only use {@link R2dbcTransactionCreator} transactions. */
+  static R2dbcConnectionLookup none() {
+    return context -> Mono.empty();
+  }
+}
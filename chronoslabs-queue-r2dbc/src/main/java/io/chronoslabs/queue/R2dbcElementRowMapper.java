@@ -0,0 +1,9 @@
+package io.chronoslabs.queue;
+
+import io.r2dbc.spi.Row;
+
+/** Maps a {@link Row} with the table columns of the queue to an element. */
+@FunctionalInterface
+public interface R2dbcElementRowMapper<E> {
+  E mapRow(Row row);
+}
@@ -0,0 +1,312 @@
+package io.chronoslabs.queue;
+
+import static io.chronoslabs.queue.Assert.requireNonNull;
+
+import com.github.sviperll.result4j.Result;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactory;
+import java.io.Serial;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Mono;
+import reactor.util.context.ContextView;
+
+/**
+ * {@link ReactiveTransactionCreator} written directly against an R2DBC {@link ConnectionFactory}.
+ * Transactions are bound to the subscriber context and follow the propagation rules of the Spring
+ * implementation: {@link TransactionDefinition#PROPAGATION_REQUIRES_NEW} runs the action on a new
+ * connection, {@link TransactionDefinition#PROPAGATION_MANDATORY} joins the transaction of this
+ * creator or, when there is none, the connection returned by the {@link R2dbcConnectionLookup}, and
+ * fails when there is neither.
+ *
+ * <p>Elements are enqueued inside {@link #executeInTransaction(Function)}, which plays the role of
+ * the caller's database transaction.
+ */
+public class R2dbcTransactionCreator implements ReactiveTransactionCreator {
+  private static final Logger logger = LoggerFactory.getLogger(R2dbcTransactionCreator.class);
+  private static final Class<R2dbcTransaction> TRANSACTION_KEY = R2dbcTransaction.class;
+
+  private final ConnectionFactory connectionFactory;
+  private final R2dbcConnectionLookup connectionLookup;
+
+  public R2dbcTransactionCreator(ConnectionFactory connectionFactory) {
+    this(connectionFactory, R2dbcConnectionLookup.none());
+  }
+
+  public R2dbcTransactionCreator(
+      ConnectionFactory connectionFactory, R2dbcConnectionLookup connectionLookup) {
+    this.connectionFactory =
+        requireNonNull(connectionFactory, "R2dbcTransactionCreator.connectionFactory");
+    this.connectionLookup =
+        requireNonNull(connectionLookup, "R2dbcTransactionCreator.connectionLookup");
+  }
+
+  @Override
+  public <T, X> Mono<Result<T, TransactionalQueueError<X>>> inTransaction(
+      TransactionDefinition transactionDefinition,
+      String queueName,
+      X element,
+      Supplier<Mono<Result<T, TransactionalQueueError<X>>>> action) {
+    return Mono.deferContextual(
+        context -> {
+          if (transactionDefinition == TransactionDefinition.PROPAGATION_REQUIRES_NEW) {
+            return inNewTransaction(queueName, element, action);
+          }
+          var transaction = currentTransaction(context);
+          if (transaction != null) {
+            return inCurrentTransaction(transaction, action);
+          }
+          return connectionLookup
+              .currentConnection(context)
+              .flatMap(
+                  connection -> withTransaction(action, new R2dbcTransaction(connection)).single())
+              .switchIfEmpty(
+                  Mono.fromSupplier(
+                      () ->
+                          Result.error(
+                              openError(
+                                  transactionDefinition,
+                                  queueName,
+                                  element,
+                                  "No existing transaction found.",
+                                  null))));
+        });
+  }
+
+  /**
+   * Runs the action in the current transaction or, when there is none, in a new one which is
+   * committed when the action completes and rolled back when it signals an error. The connection is
+   * handed to the action, so its own statements commit atomically with the enqueued elements.
+   *
+   * <p>The transaction fails with a {@link TransactionException} when it was marked as
+   * rollback-only by a participant, for example a failed enqueue, and has been rolled back instead
+   * of committed.
+   */
+  public <T> Mono<T> executeInTransaction(Function<Connection, Mono<T>> action) {
+    requireNonNull(action, "R2dbcTransactionCreator.action");
+    return Mono.deferContextual(
+        context -> {
+          var currentTransaction = currentTransaction(context);
+          if (currentTransaction != null) {
+            return action
+                .apply(currentTransaction.connection())
+                .doOnError(exception -> currentTransaction.markRollbackOnly());
+          }
+          return Mono.usingWhen(
+              Mono.from(connectionFactory.create()),
+              connection -> executeInNewTransaction(connection, action),
+              R2dbcTransactionCreator::close,
+              (connection, exception) -> rollbackAndClose(connection),
+              R2dbcTransactionCreator::rollbackAndClose);
+        });
+  }
+
+  /**
+   * @return the connection of the transaction bound to the subscriber context, or {@code null} when
+   *     there is none.
+   */
+  static Connection currentConnection(ContextView context) {
+    var transaction = currentTransaction(context);
+    return transaction == null ? null : transaction.connection();
+  }
+
+  private static R2dbcTransaction currentTransaction(ContextView context) {
+    return context.getOrDefault(TRANSACTION_KEY, null);
+  }
+
+  private static <T, X> Mono<Result<T, TransactionalQueueError<X>>> inCurrentTransaction(
+      R2dbcTransaction transaction, Supplier<Mono<Result<T, TransactionalQueueError<X>>>> action) {
+    return action
+        .get()
+        .doOnNext(
+            result -> {
+              if (Results.isError(result)) {
+                transaction.markRollbackOnly();
+              }
+            })
+        .doOnError(exception -> transaction.markRollbackOnly());
+  }
+
+  private <T, X> Mono<Result<T, TransactionalQueueError<X>>> inNewTransaction(
+      String queueName, X element, Supplier<Mono<Result<T, TransactionalQueueError<X>>>> action) {
+    return Mono.from(connectionFactory.create())
+        .<Result<Connection, TransactionalQueueError<X>>>map(Result::success)
+        .onErrorResume(
+            exception ->
+                Mono.just(
+                    Result.error(
+                        openError(
+                            TransactionDefinition.PROPAGATION_REQUIRES_NEW,
+                            queueName,
+                            element,
+                            "Failed to create connection.",
+                            exception))))
+        .flatMap(
+            connection -> {
+              if (Results.isError(connection)) {
+                return Mono.just(Results.propagateError(connection));
+              }
+              return Mono.usingWhen(
+                  Mono.just(Results.success(connection)),
+                  openedConnection ->
+                      inNewTransaction(openedConnection, queueName, element, action),
+                  R2dbcTransactionCreator::close,
+                  (openedConnection, exception) -> rollbackAndClose(openedConnection),
+                  R2dbcTransactionCreator::rollbackAndClose);
+            });
+  }
+
+  private static <T, X> Mono<Result<T, TransactionalQueueError<X>>> inNewTransaction(
+      Connection connection,
+      String queueName,
+      X element,
+      Supplier<Mono<Result<T, TransactionalQueueError<X>>>> action) {
+    var transaction = new R2dbcTransaction(connection);
+    return Mono.from(connection.beginTransaction())
+        .then(withTransaction(action, transaction))
+        .flatMap(result -> complete(transaction, result, queueName, element));
+  }
+
+  private static <T, X> Mono<Result<T, TransactionalQueueError<X>>> complete(
+      R2dbcTransaction transaction,
+      Result<T, TransactionalQueueError<X>> result,
+      String queueName,
+      X element) {
+    var connection = transaction.connection();
+    if (Results.isError(result)) {
+      return Mono.from(connection.rollbackTransaction()).thenReturn(result);
+    }
+    if (transaction.isRollbackOnly()) {
+      return Mono.from(connection.rollbackTransaction())
+          .thenReturn(
+              Result.error(
+                  commitError(
+                      queueName,
+                      element,
+                      "It has been rolled back because it was marked as rollback-only.",
+                      null)));
+    }
+    return Mono.from(connection.commitTransaction())
+        .thenReturn(result)
+        .onErrorResume(
+            exception -> {
+              logger
+                  .atError()
+                  .addArgument(queueName)
+                  .setCause(exception)
+                  .log("Failed to commit transaction for {}.");
+              return rollback(connection)
+                  .thenReturn(
+                      Result.error(
+                          commitError(
+                              queueName, element, "The database rejected the commit.", exception)));
+            });
+  }
+
+  private static <T> Mono<T> executeInNewTransaction(
+      Connection connection, Function<Connection, Mono<T>> action) {
+    var transaction = new R2dbcTransaction(connection);
+    return Mono.from(connection.beginTransaction())
+        .then(
+            Mono.defer(() -> action.apply(connection))
+                .contextWrite(context -> context.put(TRANSACTION_KEY, transaction)))
+        .singleOptional()
+        .flatMap(
+            value -> {
+              if (transaction.isRollbackOnly()) {
+                return Mono.error(
+                    new TransactionException(
+                        "Transaction has been rolled back because it was marked as rollback-only.",
+                        null));
+              }
+              return Mono.from(connection.commitTransaction()).thenReturn(value);
+            })
+        .flatMap(optional -> Mono.justOrEmpty(optional));
+  }
+
+  private static <T, X> Mono<Result<T, TransactionalQueueError<X>>> withTransaction(
+      Supplier<Mono<Result<T, TransactionalQueueError<X>>>> action, R2dbcTransaction transaction) {
+    return Mono.defer(action).contextWrite(context -> context.put(TRANSACTION_KEY, transaction));
+  }
+
+  private static Mono<Void> rollback(Connection connection) {
+    return Mono.from(connection.rollbackTransaction())
+        .onErrorResume(
+            exception -> {
+              logger.atError().setCause(exception).log("Failed to rollback R2DBC transaction.");
+              return Mono.empty();
+            });
+  }
+
+  private static Mono<Void> rollbackAndClose(Connection connection) {
+    return rollback(connection).then(close(connection));
+  }
+
+  private static Mono<Void> close(Connection connection) {
+    return Mono.from(connection.close())
+        .onErrorResume(
+            exception -> {
+              logger.atWarn().setCause(exception).log("Failed to close R2DBC connection.");
+              return Mono.empty();
+            });
+  }
+
+  private static <X> TransactionalQueueError<X> openError(
+      TransactionDefinition transactionDefinition,
+      String queueName,
+      X element,
+      String reason,
+      Throwable cause) {
+    return TransactionalQueueError.<X>builder(queueName)
+        .withCause(cause)
+        .withElement(element)
+        .withMessage(
+            "Failed to open transaction with propagation behaviour %s for %s. %s"
+                .formatted(transactionDefinition, queueName, reason))
+        .withType("open-transaction-error")
+        .build();
+  }
+
+  private static <X> TransactionalQueueError<X> commitError(
+      String queueName, X element, String reason, Throwable cause) {
+    return TransactionalQueueError.<X>builder(queueName)
+        .withCause(cause)
+        .withElement(element)
+        .withMessage("Failed to commit transaction for %s. %s".formatted(queueName, reason))
+        .withType("commit-transaction-error")
+        .build();
+  }
+
+  @SuppressWarnings("PMD.AvoidFieldNameMatchingMethodName")
+  private static final class R2dbcTransaction {
+    private final Connection connection;
+    private volatile boolean rollbackOnly;
+
+    private R2dbcTransaction(Connection connection) {
+      this.connection = connection;
+    }
+
+    private Connection connection() {
+      return connection;
+    }
+
+    private void markRollbackOnly() {
+      rollbackOnly = true;
+    }
+
+    private boolean isRollbackOnly() {
+      return rollbackOnly;
+    }
+  }
+
+  /** Failure of a transaction run by {@link #executeInTransaction(Function)}. */
+  public static class TransactionException extends RuntimeException {
+    @Serial private static final long serialVersionUID = 5315236480962587409L;
+
+    public TransactionException(String message, Throwable cause) {
+      super(message, cause);
+    }
+  }
+}
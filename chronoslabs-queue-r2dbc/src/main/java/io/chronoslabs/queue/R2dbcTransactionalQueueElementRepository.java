@@ -0,0 +1,395 @@
+package io.chronoslabs.queue;
+
+import static io.chronoslabs.queue.Assert.requireNonNull;
+
+import com.github.sviperll.result4j.Result;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.Statement;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Reactive repository written directly against R2DBC. Statements use {@code $n} parameters, which
+ * are understood by the Postgres and H2 drivers. Operations run on the connection of the
+ * transaction bound to the subscriber context by {@link R2dbcTransactionCreator}, which must be the
+ * transaction creator of the queue, or in a transaction of their own when there is none.
+ *
+ * <p>The insert statement sets {@code created_at}, {@code next_dispatch_after} and {@code
+ * dispatch_count}, followed by the {@code insertColumns}, whose values are bound by {@link
+ * #bindInsertParameters(Statement, int, TransactionalQueueElementToEnqueue, Map)}. The lock
+ * statement is written for Postgres; repositories of other databases pass their own to the
+ * constructor.
+ */
+public abstract class R2dbcTransactionalQueueElementRepository<
+        P,
+        E extends TransactionalQueueElement<P>,
+        I extends TransactionalQueueElementToEnqueue<P, E>>
+    implements ReactiveTransactionalQueueElementRepository<P, E, I> {
+  private static final Logger log =
+      LoggerFactory.getLogger(R2dbcTransactionalQueueElementRepository.class);
+  private static final int FIRST_INSERT_COLUMN_PARAMETER_INDEX = 2;
+  private static final String ID_COLUMN = "id";
+
+  protected final R2dbcTransactionCreator transactionCreator;
+  protected final String queueName;
+  protected final R2dbcElementRowMapper<E> rowMapper;
+  private final String insertStatementSql;
+  private final String findByIdStatementSql;
+  private final String lockForNextDispatchStatementSql;
+  private final String deleteStatementSql;
+
+  protected R2dbcTransactionalQueueElementRepository(
+      R2dbcTransactionCreator transactionCreator,
+      String queueName,
+      String tableName,
+      String tableColumns,
+      List<String> insertColumns,
+      R2dbcElementRowMapper<E> rowMapper) {
+    this(
+        transactionCreator,
+        queueName,
+        tableName,
+        tableColumns,
+        insertColumns,
+        rowMapper,
+        aLockForNextDispatchStatementSql(tableName, tableColumns));
+  }
+
+  /**
+   * @param lockForNextDispatchStatementSql statement which locks up to {@code $2} elements due
+   *     before {@code $1}, sets their {@code next_dispatch_after} to {@code $3}, increments their
+   *     {@code dispatch_count} and returns their {@code tableColumns}, for databases which do not
+   *     run the Postgres statement of {@link #aLockForNextDispatchStatementSql(String, String)}.
+   */
+  protected R2dbcTransactionalQueueElementRepository(
+      R2dbcTransactionCreator transactionCreator,
+      String queueName,
+      String tableName,
+      String tableColumns,
+      List<String> insertColumns,
+      R2dbcElementRowMapper<E> rowMapper,
+      String lockForNextDispatchStatementSql) {
+    this.transactionCreator =
+        requireNonNull(
+            transactionCreator, "R2dbcTransactionalQueueElementRepository.transactionCreator");
+    this.queueName = queueName;
+    this.rowMapper =
+        requireNonNull(rowMapper, "R2dbcTransactionalQueueElementRepository.rowMapper");
+    this.insertStatementSql =
+        anInsertStatementSql(
+            tableName,
+            requireNonNull(
+                insertColumns, "R2dbcTransactionalQueueElementRepository.insertColumns"));
+    this.findByIdStatementSql = aFindByIdStatementSql(tableName, tableColumns);
+    this.lockForNextDispatchStatementSql =
+        requireNonNull(
+            lockForNextDispatchStatementSql,
+            "R2dbcTransactionalQueueElementRepository.lockForNextDispatchStatementSql");
+    this.deleteStatementSql = aDeleteStatementSql(tableName);
+  }
+
+  @Override
+  public Mono<Result<E, TransactionalQueueError<I>>> insert(
+      I elementToEnqueue, Instant createdAt, Instant nextDispatchAfter) {
+    return insert(elementToEnqueue, createdAt, nextDispatchAfter, Map.of());
+  }
+
+  @Override
+  public Mono<Result<E, TransactionalQueueError<I>>> insert(
+      I elementToEnqueue,
+      Instant createdAt,
+      Instant nextDispatchAfter,
+      Map<String, String> traceContext) {
+    return this.<E, I>withConnection(
+            elementToEnqueue,
+            connection -> {
+              var statement =
+                  connection
+                      .createStatement(insertStatementSql)
+                      .bind(0, toOffsetDateTime(createdAt))
+                      .bind(1, toOffsetDateTime(nextDispatchAfter));
+              bindInsertParameters(
+                  statement, FIRST_INSERT_COLUMN_PARAMETER_INDEX, elementToEnqueue, traceContext);
+              return Flux.from(statement.returnGeneratedValues(ID_COLUMN).execute())
+                  .concatMap(
+                      result ->
+                          result.map((row, metadata) -> Optional.ofNullable(row.get(ID_COLUMN))))
+                  .next()
+                  .map(
+                      key ->
+                          generatedId(
+                              elementToEnqueue,
+                              key.orElse(null),
+                              createdAt,
+                              nextDispatchAfter,
+                              traceContext))
+                  .switchIfEmpty(
+                      Mono.fromSupplier(
+                          () -> Result.error(generatedIdError(elementToEnqueue, null))));
+            })
+        .onErrorResume(
+            exception -> Mono.just(Result.error(insertError(elementToEnqueue, exception))));
+  }
+
+  @Override
+  public Mono<Result<E, TransactionalQueueError<Long>>> findById(long id) {
+    return this.<E, Long>withConnection(
+            id,
+            connection ->
+                Flux.from(connection.createStatement(findByIdStatementSql).bind(0, id).execute())
+                    .concatMap(result -> result.map((row, metadata) -> rowMapper.mapRow(row)))
+                    .next()
+                    .<Result<E, TransactionalQueueError<Long>>>map(Result::success)
+                    .switchIfEmpty(Mono.fromSupplier(() -> Result.error(readError(id, null)))))
+        .onErrorResume(
+            exception -> {
+              ErrorLogLimiter.shared()
+                  .logError(
+                      log,
+                      queueName,
+                      "read-element-error",
+                      exception,
+                      "Failed to select {} element with id={}.",
+                      queueName,
+                      id);
+              return Mono.just(Result.error(readError(id, exception)));
+            });
+  }
+
+  @Override
+  public Mono<Result<Collection<E>, TransactionalQueueError<String>>> lockForNextDispatch(
+      int batchSize, Instant notDispatchedTill, Instant nextDispatchTime) {
+    return this.<Collection<E>, String>withConnection(
+            queueName,
+            connection ->
+                Flux.from(
+                        connection
+                            .createStatement(lockForNextDispatchStatementSql)
+                            .bind(0, toOffsetDateTime(notDispatchedTill))
+                            .bind(1, batchSize)
+                            .bind(2, toOffsetDateTime(nextDispatchTime))
+                            .execute())
+                    .concatMap(result -> result.map((row, metadata) -> rowMapper.mapRow(row)))
+                    .collectList()
+                    .map(Result::success))
+        .onErrorResume(
+            exception ->
+                Mono.just(
+                    Result.error(
+                        lockError(batchSize, notDispatchedTill, nextDispatchTime, exception))));
+  }
+
+  @Override
+  public Mono<Result<E, TransactionalQueueError<E>>> delete(E element) {
+    return this.<E, E>withConnection(
+            element,
+            connection ->
+                Flux.from(
+                        connection
+                            .createStatement(deleteStatementSql)
+                            .bind(0, element.id())
+                            .bind(1, element.dispatchCount())
+                            .execute())
+                    .concatMap(io.r2dbc.spi.Result::getRowsUpdated)
+                    .reduce(0L, Long::sum)
+                    .map(
+                        rowsDeleted ->
+                            rowsDeleted > 0
+                                ? Result.success(element)
+                                : Result.error(deleteError(element, "zero-rows-deleted", null))))
+        .onErrorResume(
+            exception ->
+                Mono.just(Result.error(deleteError(element, "delete-element-error", exception))));
+  }
+
+  /**
+   * Binds the values of the {@code insertColumns}, starting with the parameter at the zero-based
+   * {@code firstParameterIndex}. Repositories which persist the trace context of the enqueuing
+   * request bind it here, so the {@link R2dbcElementRowMapper} can restore it for {@link
+   * TransactionalQueueElement#traceContext()}.
+   */
+  protected abstract void bindInsertParameters(
+      Statement statement,
+      int firstParameterIndex,
+      I elementToEnqueue,
+      Map<String, String> traceContext);
+
+  /**
+   * Postgres statement which locks up to {@code $2} elements due before {@code $1}, skipping those
+   * locked by other transactions, sets their {@code next_dispatch_after} to {@code $3}, increments
+   * their {@code dispatch_count} and returns their {@code tableColumns}.
+   */
+  protected static String aLockForNextDispatchStatementSql(String tableName, String tableColumns) {
+    return """
+    WITH locked_records AS (SELECT id
+                            FROM %1$s
+                            WHERE next_dispatch_after < $1
+                            ORDER BY created_at, id
+                            LIMIT $2 FOR UPDATE SKIP LOCKED)
+    UPDATE %1$s
+    SET next_dispatch_after = $3,
+        dispatch_count      = dispatch_count + 1
+    WHERE id IN (SELECT id FROM locked_records)
+    RETURNING %2$s
+    """
+        .formatted(tableName, tableColumns);
+  }
+
+  protected static OffsetDateTime toOffsetDateTime(Instant instant) {
+    return OffsetDateTime.ofInstant(instant, ZoneOffset.UTC);
+  }
+
+  /**
+   * Runs the operation on the connection of the current transaction or, when there is none, in a
+   * transaction of its own.
+   */
+  private <T, X> Mono<Result<T, TransactionalQueueError<X>>> withConnection(
+      X element, Function<Connection, Mono<Result<T, TransactionalQueueError<X>>>> operation) {
+    return Mono.deferContextual(
+        context -> {
+          var connection = R2dbcTransactionCreator.currentConnection(context);
+          if (connection == null) {
+            return transactionCreator.inTransaction(
+                TransactionDefinition.PROPAGATION_REQUIRES_NEW,
+                queueName,
+                element,
+                () -> withConnection(element, operation));
+          }
+          return operation.apply(connection);
+        });
+  }
+
+  private Result<E, TransactionalQueueError<I>> generatedId(
+      I elementToEnqueue,
+      Object key,
+      Instant createdAt,
+      Instant nextDispatchAfter,
+      Map<String, String> traceContext) {
+    if (!(key instanceof Long id)) {
+      return Result.error(generatedIdError(elementToEnqueue, key));
+    }
+    return Result.success(
+        elementToEnqueue
+            .toTransactionalQueueElementBuilder()
+            .withId(id)
+            .withCreatedAt(createdAt)
+            .withDispatchCount(TransactionalQueueElementRepository.INITIAL_DISPATCH_COUNT)
+            .withNextDispatchAfter(nextDispatchAfter)
+            .withPayload(elementToEnqueue.payload())
+            .withTraceContext(traceContext)
+            .build());
+  }
+
+  private TransactionalQueueError<I> insertError(I elementToEnqueue, Throwable exception) {
+    ErrorLogLimiter.shared()
+        .logError(
+            log,
+            queueName,
+            "queue-insert-error",
+            exception,
+            "Failed to insert element into {}. Element: {}.",
+            queueName,
+            elementToEnqueue);
+    return TransactionalQueueError.<I>builder(queueName)
+        .withCause(exception)
+        .withElement(elementToEnqueue)
+        .withMessage(
+            "An unexpected error occurred during insert element into %s. Error: %s"
+                .formatted(queueName, exception.getMessage()))
+        .withType("queue-insert-error")
+        .build();
+  }
+
+  private TransactionalQueueError<I> generatedIdError(I elementToEnqueue, Object key) {
+    if (key == null) {
+      return TransactionalQueueError.<I>builder(queueName)
+          .withElement(elementToEnqueue)
+          .withType("element-id-null")
+          .withMessage("Generated ID for inserted %s Element is null.".formatted(queueName))
+          .build();
+    }
+    return TransactionalQueueError.<I>builder(queueName)
+        .withElement(elementToEnqueue)
+        .withType("element-id-not-long")
+        .withMessage(
+            "Generated ID for inserted %s Element is %s but should be java.lang.Long."
+                .formatted(queueName, key.getClass().getCanonicalName()))
+        .build();
+  }
+
+  private TransactionalQueueError<Long> readError(long id, Throwable exception) {
+    return TransactionalQueueError.<Long>builder(queueName)
+        .withCause(exception)
+        .withElement(id)
+        .withMessage("Failed to select %s Element with id=%d.".formatted(queueName, id))
+        .withType("read-element-error")
+        .build();
+  }
+
+  private TransactionalQueueError<String> lockError(
+      int batchSize, Instant notDispatchedTill, Instant nextDispatchTime, Throwable exception) {
+    var params =
+        "batchSize=%d, notDispatchedTill=%s, nextDispatchTime=%s"
+            .formatted(batchSize, notDispatchedTill, nextDispatchTime);
+    return TransactionalQueueError.<String>builder(queueName)
+        .withCause(exception)
+        .withElement(params)
+        .withMessage(
+            "Failed to lock %s Elements for retry dispatch. Params: %s"
+                .formatted(queueName, params))
+        .withType("retry-dispatch-lock-error")
+        .build();
+  }
+
+  private TransactionalQueueError<E> deleteError(E element, String type, Throwable exception) {
+    return TransactionalQueueError.<E>builder(queueName)
+        .withCause(exception)
+        .withElement(element)
+        .withMessage("Failed to delete %s Element with id=%d.".formatted(queueName, element.id()))
+        .withType(type)
+        .build();
+  }
+
+  private static String anInsertStatementSql(String tableName, List<String> insertColumns) {
+    var parameters = new StringBuilder();
+    for (var index = 0; index < insertColumns.size(); index++) {
+      parameters.append(", $").append(index + FIRST_INSERT_COLUMN_PARAMETER_INDEX + 1);
+    }
+    return """
+    INSERT INTO %1$s (created_at, next_dispatch_after, dispatch_count%2$s)
+    VALUES ($1, $2, 0%3$s)
+    """
+        .formatted(
+            tableName,
+            insertColumns.isEmpty() ? "" : ", " + String.join(", ", insertColumns),
+            parameters);
+  }
+
+  private static String aFindByIdStatementSql(String tableName, String tableColumns) {
+    return """
+    SELECT %2$s
+    FROM %1$s
+    WHERE id = $1
+    """
+        .formatted(tableName, tableColumns);
+  }
+
+  private static String aDeleteStatementSql(String tableName) {
+    return """
+    DELETE FROM %1$s
+    WHERE id = $1
+      AND dispatch_count = $2
+    """
+        .formatted(tableName);
+  }
+}
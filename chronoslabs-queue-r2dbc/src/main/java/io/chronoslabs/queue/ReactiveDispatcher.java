@@ -0,0 +1,206 @@
+package io.chronoslabs.queue;
+
+import static io.chronoslabs.queue.Assert.requireNonNull;
+import static io.chronoslabs.queue.TransactionDefinition.PROPAGATION_REQUIRES_NEW;
+
+import com.github.sviperll.result4j.Result;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.concurrent.TimeoutException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Mono;
+
+class ReactiveDispatcher<
+    P, E extends TransactionalQueueElement<P>, I extends TransactionalQueueElementToEnqueue<P, E>> {
+  private static final Logger logger = LoggerFactory.getLogger(ReactiveDispatcher.class);
+
+  private final String queueName;
+  private final Clock clock;
+  private final MetricHandler metricHandler;
+  private final ReactiveTransactionCreator transactionCreator;
+  private final ReactiveTransactionalQueueElementPayloadConsumer<E> queueElementPayloadConsumer;
+  private final ReactiveTransactionalQueueElementRepository<P, E, I> queueRepository;
+  private final ReactiveTransactionalQueueDeadLetterRepository<E> queueDeadLetterRepository;
+  private final TransactionalQueueConfigurationProperties configurationProperties;
+
+  @SuppressWarnings("java:S107")
+  ReactiveDispatcher(
+      String queueName,
+      Clock clock,
+      MetricHandler metricHandler,
+      ReactiveTransactionCreator transactionCreator,
+      ReactiveTransactionalQueueElementPayloadConsumer<E> queueElementPayloadConsumer,
+      ReactiveTransactionalQueueElementRepository<P, E, I> queueRepository,
+      ReactiveTransactionalQueueDeadLetterRepository<E> queueDeadLetterRepository,
+      TransactionalQueueConfigurationProperties configurationProperties) {
+    this.queueName = requireNonNull(queueName, "ReactiveDispatcher.queueName");
+    this.clock = requireNonNull(clock, "ReactiveDispatcher.clock");
+    this.metricHandler = requireNonNull(metricHandler, "ReactiveDispatcher.metricHandler");
+    this.transactionCreator =
+        requireNonNull(transactionCreator, "ReactiveDispatcher.transactionCreator");
+    this.queueElementPayloadConsumer =
+        requireNonNull(
+            queueElementPayloadConsumer, "ReactiveDispatcher.queueElementPayloadConsumer");
+    this.queueRepository = requireNonNull(queueRepository, "ReactiveDispatcher.queueRepository");
+    this.queueDeadLetterRepository =
+        requireNonNull(queueDeadLetterRepository, "ReactiveDispatcher.queueDeadLetterRepository");
+    this.configurationProperties =
+        requireNonNull(configurationProperties, "ReactiveDispatcher.configurationProperties");
+    configurationProperties.validate(queueName);
+  }
+
+  /**
+   * Dispatches the element and emits the outcome once the dispatch transaction and, after the last
+   * failed dispatch, the move to the dead letter queue are complete.
+   */
+  Mono<Result<E, TransactionalQueueError<E>>> dispatch(E element) {
+    return Mono.defer(() -> dispatchInTransaction(element))
+        .onErrorResume(
+            exception ->
+                Mono.just(
+                    Result.error(
+                        TransactionalQueueError.<E>builder(queueName)
+                            .withCause(exception)
+                            .withElement(element)
+                            .withMessage(
+                                "An unexpected error occurred during dispatching the element.")
+                            .withType("dispatcher-unexpected-error")
+                            .build())))
+        .flatMap(result -> handleDispatchResult(element, result));
+  }
+
+  private Mono<Result<E, TransactionalQueueError<E>>> dispatchInTransaction(E element) {
+    var consumerTimeout = configurationProperties.consumerTimeout();
+    if (consumerTimeout == null) {
+      return deleteAndConsumeInTransaction(element);
+    }
+    return deleteAndConsumeInTransaction(element)
+        .timeout(consumerTimeout)
+        .onErrorResume(
+            TimeoutException.class,
+            exception ->
+                Mono.just(
+                    Result.error(
+                        TransactionalQueueError.<E>builder(queueName)
+                            .withCause(exception)
+                            .withElement(element)
+                            .withMessage(
+                                "Consuming the element payload exceeded the consumer timeout of %s."
+                                    .formatted(consumerTimeout))
+                            .withType("consume-element-payload-timeout")
+                            .build())));
+  }
+
+  /** Cancelling the returned {@link Mono} rolls the transaction back and closes its connection. */
+  private Mono<Result<E, TransactionalQueueError<E>>> deleteAndConsumeInTransaction(E element) {
+    return transactionCreator.inTransaction(
+        PROPAGATION_REQUIRES_NEW,
+        queueName,
+        element,
+        () ->
+            queueRepository
+                .delete(element)
+                .flatMap(
+                    deleted -> {
+                      if (Results.isError(deleted)) {
+                        return Mono.just(deleted);
+                      }
+                      return consumeElementPayload(element);
+                    }));
+  }
+
+  private Mono<Result<E, TransactionalQueueError<E>>> consumeElementPayload(E element) {
+    return Mono.defer(() -> queueElementPayloadConsumer.consumeElementPayload(element))
+        .onErrorResume(
+            exception ->
+                Mono.just(
+                    Result.error(
+                        TransactionalQueueError.<E>builder(queueName)
+                            .withCause(exception)
+                            .withElement(element)
+                            .withMessage(
+                                "An unexpected error occurred while consuming the element payload. Cause: "
+                                    + exception.getMessage())
+                            .withType("consume-element-payload-unexpected-error")
+                            .build())));
+  }
+
+  private Mono<Result<E, TransactionalQueueError<E>>> handleDispatchResult(
+      E element, Result<E, TransactionalQueueError<E>> result) {
+    if (!Results.isError(result)) {
+      var dispatchDurationNanos = ChronoUnit.NANOS.between(element.createdAt(), Instant.now(clock));
+      metricHandler.registerDispatchSuccess(dispatchDurationNanos, element.dispatchCount());
+      return Mono.just(result);
+    }
+    var error = Results.error(result);
+    error.logError(logger);
+    metricHandler.registerQueueError(error);
+    if (element.dispatchCount() < configurationProperties.maxDispatchCount()) {
+      return Mono.just(result);
+    }
+    return moveToDeadLetterQueue(element).thenReturn(result);
+  }
+
+  private Mono<Void> moveToDeadLetterQueue(E element) {
+    return transactionCreator
+        .inTransaction(
+            PROPAGATION_REQUIRES_NEW,
+            queueName,
+            element,
+            () -> moveToDeadLetterQueueInTransaction(element))
+        .onErrorResume(
+            exception ->
+                Mono.just(
+                    Result.error(
+                        TransactionalQueueError.<E>builder(queueName)
+                            .withCause(exception)
+                            .withElement(element)
+                            .withMessage(
+                                "An unexpected error occurred while fallback consume of the element payload."
+                                    + " Cause: "
+                                    + exception.getMessage())
+                            .withType("fallback-consume-element-payload-unexpected-error")
+                            .build())))
+        .doOnNext(
+            result -> {
+              if (!Results.isError(result)) {
+                metricHandler.registerMoveToDeadLetterQueue(element.dispatchCount());
+                return;
+              }
+              var error = Results.error(result);
+              ErrorLogLimiter.shared()
+                  .logError(
+                      logger,
+                      queueName,
+                      "moved-to-dead-letter-queue-error",
+                      null,
+                      "Failed to move queue element {} to dead letter queue. {}",
+                      element,
+                      error);
+              metricHandler.registerError(error.cause(), "moved-to-dead-letter-queue-error");
+            })
+        .then();
+  }
+
+  private Mono<Result<E, TransactionalQueueError<E>>> moveToDeadLetterQueueInTransaction(
+      E element) {
+    return queueRepository
+        .delete(element)
+        .flatMap(
+            deleted -> {
+              if (Results.isError(deleted)) {
+                return Mono.just(deleted);
+              }
+              return queueDeadLetterRepository.insert(element);
+            })
+        .flatMap(
+            inserted -> {
+              if (Results.isError(inserted)) {
+                return Mono.just(inserted);
+              }
+              return queueElementPayloadConsumer.consumeElementPayloadFallback(element);
+            });
+  }
+}
@@ -0,0 +1,69 @@
+package io.chronoslabs.queue;
+
+import static io.chronoslabs.queue.Assert.requireNonNull;
+import static io.chronoslabs.queue.TransactionDefinition.PROPAGATION_MANDATORY;
+
+import com.github.sviperll.result4j.Result;
+import java.time.Clock;
+import java.time.Instant;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Mono;
+
+class ReactiveEnqueuer<
+    P, E extends TransactionalQueueElement<P>, I extends TransactionalQueueElementToEnqueue<P, E>> {
+  private static final Logger logger = LoggerFactory.getLogger(ReactiveEnqueuer.class);
+
+  private final String queueName;
+  private final Clock clock;
+  private final MetricHandler metricHandler;
+  private final ReactiveTransactionCreator transactionCreator;
+  private final ReactiveTransactionalQueueElementRepository<P, E, I> queueRepository;
+
+  ReactiveEnqueuer(
+      String queueName,
+      Clock clock,
+      MetricHandler metricHandler,
+      ReactiveTransactionCreator transactionCreator,
+      ReactiveTransactionalQueueElementRepository<P, E, I> queueRepository) {
+    this.queueName = requireNonNull(queueName, "ReactiveEnqueuer.queueName");
+    this.clock = requireNonNull(clock, "ReactiveEnqueuer.clock");
+    this.metricHandler = requireNonNull(metricHandler, "ReactiveEnqueuer.metricHandler");
+    this.transactionCreator =
+        requireNonNull(transactionCreator, "ReactiveEnqueuer.transactionCreator");
+    this.queueRepository = requireNonNull(queueRepository, "ReactiveEnqueuer.queueRepository");
+  }
+
+  Mono<Result<E, TransactionalQueueError<I>>> enqueue(I elementToEnqueue) {
+    return Mono.defer(() -> enqueueInternal(elementToEnqueue))
+        .onErrorResume(
+            exception ->
+                Mono.just(
+                    Result.error(
+                        TransactionalQueueError.<I>builder(queueName)
+                            .withCause(exception)
+                            .withElement(elementToEnqueue)
+                            .withMessage(
+                                "An unexpected error occurred during adding the element to the queue.")
+                            .withType("enqueue-unexpected-error")
+                            .build())))
+        .doOnNext(
+            result -> {
+              if (Results.isError(result)) {
+                var error = Results.error(result);
+                error.logError(logger);
+                metricHandler.registerQueueError(error);
+              }
+            });
+  }
+
+  private Mono<Result<E, TransactionalQueueError<I>>> enqueueInternal(I elementToEnqueue) {
+    var now = Instant.now(clock);
+    var nextDispatchAfter = now.plus(elementToEnqueue.dispatchDelay());
+    return transactionCreator.inTransaction(
+        PROPAGATION_MANDATORY,
+        queueName,
+        elementToEnqueue,
+        () -> queueRepository.insert(elementToEnqueue, now, nextDispatchAfter));
+  }
+}
@@ -0,0 +1,203 @@
+package io.chronoslabs.queue;
+
+import static io.chronoslabs.queue.Assert.requireNonNull;
+import static io.chronoslabs.queue.TransactionDefinition.PROPAGATION_REQUIRES_NEW;
+
+import com.github.sviperll.result4j.Result;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.publisher.Mono;
+
+/**
+ * Demand-driven counterpart of the {@link Retrier}. Instead of locking a fixed batch on a schedule,
+ * each subscription locks at most as many elements as its subscriber has requested and not yet
+ * received, capped by {@link TransactionalQueueConfigurationProperties#retryDispatchBatchSize()},
+ * and dispatches them with the {@link ReactiveDispatcher}. A slow subscriber therefore stops the
+ * locking instead of letting locked elements pile up in memory until their lock times out.
+ *
+ * <p>When the queue returns fewer elements than requested, or locking fails, the next lock waits
+ * for {@link TransactionalQueueConfigurationProperties#retryScheduledRateDelay()}.
+ */
+class ReactivePoller<
+    P, E extends TransactionalQueueElement<P>, I extends TransactionalQueueElementToEnqueue<P, E>> {
+  private static final Logger logger = LoggerFactory.getLogger(ReactivePoller.class);
+
+  private final String queueName;
+  private final Clock clock;
+  private final MetricHandler metricHandler;
+  private final ReactiveTransactionCreator transactionCreator;
+  private final ReactiveTransactionalQueueElementRepository<P, E, I> queueRepository;
+  private final ReactiveDispatcher<P, E, I> dispatcher;
+  private final TransactionalQueueConfigurationProperties configurationProperties;
+
+  @SuppressWarnings("java:S107")
+  ReactivePoller(
+      String queueName,
+      Clock clock,
+      MetricHandler metricHandler,
+      ReactiveTransactionCreator transactionCreator,
+      ReactiveTransactionalQueueElementRepository<P, E, I> queueRepository,
+      ReactiveDispatcher<P, E, I> dispatcher,
+      TransactionalQueueConfigurationProperties configurationProperties) {
+    this.queueName = requireNonNull(queueName, "ReactivePoller.queueName");
+    this.clock = requireNonNull(clock, "ReactivePoller.clock");
+    this.metricHandler = requireNonNull(metricHandler, "ReactivePoller.metricHandler");
+    this.transactionCreator =
+        requireNonNull(transactionCreator, "ReactivePoller.transactionCreator");
+    this.queueRepository = requireNonNull(queueRepository, "ReactivePoller.queueRepository");
+    this.dispatcher = requireNonNull(dispatcher, "ReactivePoller.dispatcher");
+    this.configurationProperties =
+        requireNonNull(configurationProperties, "ReactivePoller.configurationProperties");
+    configurationProperties.validate(queueName);
+  }
+
+  Flux<Result<E, TransactionalQueueError<E>>> poll() {
+    return Flux.create(sink -> new Polling(sink).start());
+  }
+
+  private Mono<Result<Collection<E>, TransactionalQueueError<String>>> lockForNextDispatch(
+      int batchSize) {
+    return Mono.defer(
+            () -> {
+              var now = Instant.now(clock);
+              var nextDispatchAfter = now.plus(configurationProperties.lockTimeout());
+              return transactionCreator.inTransaction(
+                  PROPAGATION_REQUIRES_NEW,
+                  queueName,
+                  queueName,
+                  () -> queueRepository.lockForNextDispatch(batchSize, now, nextDispatchAfter));
+            })
+        .onErrorResume(
+            exception ->
+                Mono.just(
+                    Result.error(
+                        TransactionalQueueError.<String>builder(queueName)
+                            .withCause(exception)
+                            .withElement(queueName)
+                            .withMessage(
+                                "An unexpected error occurred during lock queue elements for retry.")
+                            .withType("retrier-unexpected-error-on-find-and-lock")
+                            .build())));
+  }
+
+  /**
+   * State of one subscription. Locking is serialized by {@code locking}; every event which may free
+   * capacity (a request, a finished dispatch, the end of a lock or of the delay) calls {@link
+   * #drain()}, which re-checks the capacity after releasing the flag so no wake-up is lost.
+   */
+  private final class Polling {
+    private final FluxSink<Result<E, TransactionalQueueError<E>>> sink;
+    private final AtomicLong demand = new AtomicLong();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicBoolean locking = new AtomicBoolean();
+    private final AtomicBoolean delayed = new AtomicBoolean();
+    private final Disposable.Swap delayedDrain = Disposables.swap();
+    private volatile boolean cancelled;
+
+    private Polling(FluxSink<Result<E, TransactionalQueueError<E>>> sink) {
+      this.sink = sink;
+    }
+
+    private void start() {
+      sink.onRequest(
+          requested -> {
+            addDemand(requested);
+            drain();
+          });
+      sink.onDispose(
+          () -> {
+            cancelled = true;
+            delayedDrain.dispose();
+          });
+    }
+
+    private void drain() {
+      while (!cancelled && !delayed.get() && locking.compareAndSet(false, true)) {
+        var capacity = capacity();
+        if (capacity > 0) {
+          lockForNextDispatch(capacity)
+              .subscribe(locked -> onLocked(capacity, locked), this::onLockFailed);
+          return;
+        }
+        locking.set(false);
+        if (capacity() <= 0) {
+          return;
+        }
+      }
+    }
+
+    private int capacity() {
+      var notYetDispatched = demand.get() - inFlight.get();
+      return (int) Math.min(notYetDispatched, configurationProperties.retryDispatchBatchSize());
+    }
+
+    private void onLocked(
+        int capacity, Result<Collection<E>, TransactionalQueueError<String>> lockedElements) {
+      if (Results.isError(lockedElements)) {
+        var error = Results.error(lockedElements);
+        error.logError(logger);
+        metricHandler.registerQueueError(error);
+        releaseAndDelay();
+        return;
+      }
+      var elements = Results.success(lockedElements);
+      inFlight.addAndGet(elements.size());
+      for (var element : elements) {
+        dispatcher.dispatch(element).subscribe(this::onDispatched, this::onDispatchFailed);
+      }
+      if (elements.size() < capacity) {
+        releaseAndDelay();
+        return;
+      }
+      locking.set(false);
+      drain();
+    }
+
+    private void onLockFailed(Throwable exception) {
+      logger.error("Error while locking queue elements for dispatch.", exception);
+      metricHandler.registerError(exception, "retrier-unexpected-error-on-find-and-lock");
+      releaseAndDelay();
+    }
+
+    private void onDispatched(Result<E, TransactionalQueueError<E>> result) {
+      demand.getAndUpdate(current -> current == Long.MAX_VALUE ? current : current - 1);
+      inFlight.decrementAndGet();
+      sink.next(result);
+      drain();
+    }
+
+    private void onDispatchFailed(Throwable exception) {
+      logger.error("Error while dispatching queue element.", exception);
+      metricHandler.registerError(exception, "dispatcher-unexpected-error");
+      inFlight.decrementAndGet();
+      drain();
+    }
+
+    private void releaseAndDelay() {
+      delayed.set(true);
+      locking.set(false);
+      delayedDrain.update(
+          Mono.delay(configurationProperties.retryScheduledRateDelay())
+              .subscribe(
+                  ignored -> {
+                    delayed.set(false);
+                    drain();
+                  }));
+    }
+
+    private void addDemand(long requested) {
+      demand.getAndUpdate(
+          current -> current > Long.MAX_VALUE - requested ? Long.MAX_VALUE : current + requested);
+    }
+  }
+}
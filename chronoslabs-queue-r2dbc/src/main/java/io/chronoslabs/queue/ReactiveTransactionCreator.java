@@ -0,0 +1,29 @@
+package io.chronoslabs.queue;
+
+import com.github.sviperll.result4j.Result;
+import java.util.function.Supplier;
+import reactor.core.publisher.Mono;
+
+/**
+ * Reactive counterpart of {@link TransactionCreator}. A reactive transaction cannot be bound to the
+ * current thread, so instead of opening a transaction the caller commits, the creator runs an
+ * action with the transaction bound to the subscriber context of the action.
+ */
+@SuppressWarnings("PMD.ImplicitFunctionalInterface")
+public interface ReactiveTransactionCreator {
+
+  /**
+   * Runs the action in a transaction with the given propagation behaviour. A new transaction is
+   * committed when the action emits a success and rolled back when it emits an error result or
+   * signals an error. A joined transaction is marked as rollback-only instead.
+   *
+   * @param element the element of the queue operation, used for errors of the transaction itself.
+   * @return the result of the action, or an {@code open-transaction-error} or {@code
+   *     commit-transaction-error} for {@code element}.
+   */
+  <T, X> Mono<Result<T, TransactionalQueueError<X>>> inTransaction(
+      TransactionDefinition transactionDefinition,
+      String queueName,
+      X element,
+      Supplier<Mono<Result<T, TransactionalQueueError<X>>>> action);
+}
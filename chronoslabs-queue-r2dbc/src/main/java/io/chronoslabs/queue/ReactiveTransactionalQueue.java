@@ -0,0 +1,45 @@
+package io.chronoslabs.queue;
+
+import static io.chronoslabs.queue.Assert.requireNonNull;
+
+import com.github.sviperll.result4j.Result;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Reactive counterpart of {@link TransactionalQueue}. Elements are enqueued in the transaction
+ * bound to the subscriber context and dispatched by subscribing to {@link #poll()}, which locks
+ * only as many elements as the subscriber has requested.
+ */
+public class ReactiveTransactionalQueue<
+    P, E extends TransactionalQueueElement<P>, I extends TransactionalQueueElementToEnqueue<P, E>> {
+  private final ReactiveEnqueuer<P, E, I> enqueuer;
+  private final ReactiveDispatcher<P, E, I> dispatcher;
+  private final ReactivePoller<P, E, I> poller;
+
+  ReactiveTransactionalQueue(
+      ReactiveEnqueuer<P, E, I> enqueuer,
+      ReactiveDispatcher<P, E, I> dispatcher,
+      ReactivePoller<P, E, I> poller) {
+    this.enqueuer = requireNonNull(enqueuer, "ReactiveTransactionalQueue.enqueuer");
+    this.dispatcher = requireNonNull(dispatcher, "ReactiveTransactionalQueue.dispatcher");
+    this.poller = requireNonNull(poller, "ReactiveTransactionalQueue.poller");
+  }
+
+  public Mono<Result<E, TransactionalQueueError<I>>> enqueue(I elementToEnqueue) {
+    return enqueuer.enqueue(elementToEnqueue);
+  }
+
+  public Mono<Result<E, TransactionalQueueError<E>>> dispatch(E element) {
+    return dispatcher.dispatch(element);
+  }
+
+  /**
+   * Locks and dispatches elements due for dispatch, emitting the outcome of each dispatch. At most
+   * as many elements as requested and not yet emitted are locked or being dispatched at any time.
+   * The flux never completes; cancel the subscription to stop polling.
+   */
+  public Flux<Result<E, TransactionalQueueError<E>>> poll() {
+    return poller.poll();
+  }
+}
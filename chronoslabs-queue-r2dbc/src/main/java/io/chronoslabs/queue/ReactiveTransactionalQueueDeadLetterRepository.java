@@ -0,0 +1,10 @@
+package io.chronoslabs.queue;
+
+import com.github.sviperll.result4j.Result;
+import reactor.core.publisher.Mono;
+
+@FunctionalInterface
+public interface ReactiveTransactionalQueueDeadLetterRepository<
+    E extends TransactionalQueueElement<?>> {
+  Mono<Result<E, TransactionalQueueError<E>>> insert(E element);
+}
@@ -0,0 +1,30 @@
+package io.chronoslabs.queue;
+
+import com.github.sviperll.result4j.Result;
+import reactor.core.publisher.Mono;
+
+/**
+ * Reactive counterpart of {@link TransactionalQueueElementPayloadConsumer}. The returned {@link
+ * Mono} runs in the dispatch transaction, so the consumer can write to the database atomically with
+ * the removal of the element from the queue.
+ */
+@FunctionalInterface
+public interface ReactiveTransactionalQueueElementPayloadConsumer<
+    E extends TransactionalQueueElement<?>> {
+
+  /**
+   * Consumes the payload of the specified queue element within a new transaction.
+   *
+   * @return a success if the payload was consumed, or an error result which rolls back the
+   *     transaction, so the element is dispatched again after the lock timeout.
+   */
+  Mono<Result<E, TransactionalQueueError<E>>> consumeElementPayload(E element);
+
+  /**
+   * Fallback invoked when the element has failed the maximum allowed number of attempts and is
+   * being moved to the dead letter queue. By default, it emits a success with the element.
+   */
+  default Mono<Result<E, TransactionalQueueError<E>>> consumeElementPayloadFallback(E element) {
+    return Mono.just(Result.success(element));
+  }
+}
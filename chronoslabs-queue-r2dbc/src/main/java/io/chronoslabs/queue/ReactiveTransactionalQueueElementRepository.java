@@ -0,0 +1,38 @@
+package io.chronoslabs.queue;
+
+import com.github.sviperll.result4j.Result;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Map;
+import reactor.core.publisher.Mono;
+
+/**
+ * Reactive counterpart of {@link TransactionalQueueElementRepository}. Operations run in the
+ * transaction of the subscriber context set up by the {@link ReactiveTransactionCreator} of the
+ * queue and emit exactly one result.
+ */
+public interface ReactiveTransactionalQueueElementRepository<
+    P, E extends TransactionalQueueElement<P>, I extends TransactionalQueueElementToEnqueue<P, E>> {
+
+  Mono<Result<E, TransactionalQueueError<I>>> insert(
+      I elementToEnqueue, Instant createdAt, Instant nextDispatchAfter);
+
+  /**
+   * Inserts the element together with the trace context of the enqueuing request. By default, the
+   * trace context is ignored.
+   */
+  default Mono<Result<E, TransactionalQueueError<I>>> insert(
+      I elementToEnqueue,
+      Instant createdAt,
+      Instant nextDispatchAfter,
+      Map<String, String> traceContext) {
+    return insert(elementToEnqueue, createdAt, nextDispatchAfter);
+  }
+
+  Mono<Result<E, TransactionalQueueError<Long>>> findById(long id);
+
+  Mono<Result<Collection<E>, TransactionalQueueError<String>>> lockForNextDispatch(
+      int batchSize, Instant notDispatchedTill, Instant nextDispatchTime);
+
+  Mono<Result<E, TransactionalQueueError<E>>> delete(E element);
+}
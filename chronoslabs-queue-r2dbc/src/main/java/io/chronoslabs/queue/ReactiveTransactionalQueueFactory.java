@@ -0,0 +1,99 @@
+package io.chronoslabs.queue;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Clock;
+
+public class ReactiveTransactionalQueueFactory<
+    P, E extends TransactionalQueueElement<P>, I extends TransactionalQueueElementToEnqueue<P, E>> {
+  private String queueName;
+  private Clock clock;
+  private MeterRegistry meterRegistry;
+  private ReactiveTransactionCreator transactionCreator;
+  private ReactiveTransactionalQueueElementPayloadConsumer<E> queuePayloadConsumer;
+  private ReactiveTransactionalQueueElementRepository<P, E, I> queueRepository;
+  private ReactiveTransactionalQueueDeadLetterRepository<E> queueDeadLetterRepository;
+  private TransactionalQueueConfigurationProperties configurationProperties;
+
+  private ReactiveTransactionalQueueFactory() {}
+
+  public static <
+          P,
+          E extends TransactionalQueueElement<P>,
+          I extends TransactionalQueueElementToEnqueue<P, E>>
+      ReactiveTransactionalQueueFactory<P, E, I> factory() {
+    return new ReactiveTransactionalQueueFactory<>();
+  }
+
+  public ReactiveTransactionalQueueFactory<P, E, I> withQueueName(String queueName) {
+    this.queueName = queueName;
+    return this;
+  }
+
+  public ReactiveTransactionalQueueFactory<P, E, I> withClock(Clock clock) {
+    this.clock = clock;
+    return this;
+  }
+
+  public ReactiveTransactionalQueueFactory<P, E, I> withMeterRegistry(MeterRegistry meterRegistry) {
+    this.meterRegistry = meterRegistry;
+    return this;
+  }
+
+  public ReactiveTransactionalQueueFactory<P, E, I> withTransactionCreator(
+      ReactiveTransactionCreator transactionCreator) {
+    this.transactionCreator = transactionCreator;
+    return this;
+  }
+
+  public ReactiveTransactionalQueueFactory<P, E, I> withQueuePayloadConsumer(
+      ReactiveTransactionalQueueElementPayloadConsumer<E> queuePayloadConsumer) {
+    this.queuePayloadConsumer = queuePayloadConsumer;
+    return this;
+  }
+
+  public ReactiveTransactionalQueueFactory<P, E, I> withQueueRepository(
+      ReactiveTransactionalQueueElementRepository<P, E, I> queueRepository) {
+    this.queueRepository = queueRepository;
+    return this;
+  }
+
+  public ReactiveTransactionalQueueFactory<P, E, I> withQueueDeadLetterRepository(
+      ReactiveTransactionalQueueDeadLetterRepository<E> queueDeadLetterRepository) {
+    this.queueDeadLetterRepository = queueDeadLetterRepository;
+    return this;
+  }
+
+  public ReactiveTransactionalQueueFactory<P, E, I> withConfigurationProperties(
+      TransactionalQueueConfigurationProperties configurationProperties) {
+    this.configurationProperties = configurationProperties;
+    return this;
+  }
+
+  public ReactiveTransactionalQueue<P, E, I> create() {
+    configurationProperties.validate(queueName);
+    var metricHandler = new MetricHandler(meterRegistry, queueName);
+    var enqueuer =
+        new ReactiveEnqueuer<>(
+            queueName, clock, metricHandler, transactionCreator, queueRepository);
+    var dispatcher =
+        new ReactiveDispatcher<>(
+            queueName,
+            clock,
+            metricHandler,
+            transactionCreator,
+            queuePayloadConsumer,
+            queueRepository,
+            queueDeadLetterRepository,
+            configurationProperties);
+    var poller =
+        new ReactivePoller<>(
+            queueName,
+            clock,
+            metricHandler,
+            transactionCreator,
+            queueRepository,
+            dispatcher,
+            configurationProperties);
+    return new ReactiveTransactionalQueue<>(enqueuer, dispatcher, poller);
+  }
+}
@@ -0,0 +1,49 @@
+package io.chronoslabs.queue
+
+import io.r2dbc.spi.Row
+import io.r2dbc.spi.Statement
+
+import java.time.OffsetDateTime
+
+/** Repository of the tests, running on H2 which does not support {@code UPDATE ... RETURNING}. */
+class H2TestElementRepository
+    extends R2dbcTransactionalQueueElementRepository<String, R2dbcTestElement, R2dbcTestElementToEnqueue> {
+    static final String TABLE_NAME = "test_queue"
+    static final String TABLE_COLUMNS = "id, created_at, next_dispatch_after, dispatch_count, payload"
+
+    H2TestElementRepository(R2dbcTransactionCreator transactionCreator, String queueName) {
+        super(transactionCreator, queueName, TABLE_NAME, TABLE_COLUMNS, ["payload"], H2TestElementRepository::mapRow,
+            aH2LockForNextDispatchStatementSql(TABLE_NAME, TABLE_COLUMNS))
+    }
+
+    @Override
+    protected void bindInsertParameters(
+        Statement statement, int firstParameterIndex, R2dbcTestElementToEnqueue elementToEnqueue,
+        Map<String, String> traceContext) {
+        statement.bind(firstParameterIndex, elementToEnqueue.payload())
+    }
+
+    private static String aH2LockForNextDispatchStatementSql(String tableName, String tableColumns) {
+        return """
+        SELECT $tableColumns
+        FROM FINAL TABLE (UPDATE $tableName
+                          SET next_dispatch_after = \$3,
+                              dispatch_count      = dispatch_count + 1
+                          WHERE id IN (SELECT id
+                                       FROM $tableName
+                                       WHERE next_dispatch_after < \$1
+                                       ORDER BY created_at, id
+                                       LIMIT \$2))
+        """
+    }
+
+    private static R2dbcTestElement mapRow(Row row) {
+        return R2dbcTestElement.builder()
+            .withId(row.get("id", Long))
+            .withCreatedAt(row.get("created_at", OffsetDateTime).toInstant())
+            .withNextDispatchAfter(row.get("next_dispatch_after", OffsetDateTime).toInstant())
+            .withDispatchCount(row.get("dispatch_count", Integer))
+            .withPayload(row.get("payload", String))
+            .build()
+    }
+}
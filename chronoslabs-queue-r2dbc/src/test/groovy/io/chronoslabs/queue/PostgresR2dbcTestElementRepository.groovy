@@ -0,0 +1,43 @@
+package io.chronoslabs.queue
+
+import io.r2dbc.spi.Row
+import io.r2dbc.spi.Statement
+
+import java.time.OffsetDateTime
+
+/** Repository of the tests running on Postgres, with the lock statement of the repository. */
+class PostgresR2dbcTestElementRepository
+    extends R2dbcTransactionalQueueElementRepository<String, R2dbcTestElement, R2dbcTestElementToEnqueue> {
+    static final String TABLE_NAME = "r2dbc_test_queue"
+    static final String TABLE_COLUMNS = "id, created_at, next_dispatch_after, dispatch_count, payload"
+    static final String SCHEMA = """
+        CREATE TABLE ${TABLE_NAME} (
+            id                  BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+            created_at          TIMESTAMP WITH TIME ZONE NOT NULL,
+            next_dispatch_after TIMESTAMP WITH TIME ZONE NOT NULL,
+            dispatch_count      INTEGER                  NOT NULL,
+            payload             TEXT                     NOT NULL
+        )
+        """.toString()
+
+    PostgresR2dbcTestElementRepository(R2dbcTransactionCreator transactionCreator, String queueName) {
+        super(transactionCreator, queueName, TABLE_NAME, TABLE_COLUMNS, ["payload"], PostgresR2dbcTestElementRepository::mapRow)
+    }
+
+    @Override
+    protected void bindInsertParameters(
+        Statement statement, int firstParameterIndex, R2dbcTestElementToEnqueue elementToEnqueue,
+        Map<String, String> traceContext) {
+        statement.bind(firstParameterIndex, elementToEnqueue.payload())
+    }
+
+    private static R2dbcTestElement mapRow(Row row) {
+        return R2dbcTestElement.builder()
+            .withId(row.get("id", Long))
+            .withCreatedAt(row.get("created_at", OffsetDateTime).toInstant())
+            .withNextDispatchAfter(row.get("next_dispatch_after", OffsetDateTime).toInstant())
+            .withDispatchCount(row.get("dispatch_count", Integer))
+            .withPayload(row.get("payload", String))
+            .build()
+    }
+}
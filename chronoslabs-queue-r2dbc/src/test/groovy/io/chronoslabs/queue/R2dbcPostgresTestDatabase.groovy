@@ -0,0 +1,33 @@
+package io.chronoslabs.queue
+
+import io.r2dbc.spi.ConnectionFactories
+import io.r2dbc.spi.ConnectionFactory
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres
+
+import java.sql.Connection
+
+/** Embedded Postgres shared by the specs of the module, started once and emptied between tests. */
+class R2dbcPostgresTestDatabase {
+    private static EmbeddedPostgres embeddedPostgres
+
+    static synchronized ConnectionFactory connectionFactory() {
+        if (embeddedPostgres == null) {
+            embeddedPostgres = EmbeddedPostgres.start()
+            execute(PostgresR2dbcTestElementRepository.SCHEMA)
+        }
+        return ConnectionFactories.get("r2dbc:postgresql://postgres@localhost:${embeddedPostgres.getPort()}/postgres")
+    }
+
+    static void truncate() {
+        execute("TRUNCATE ${PostgresR2dbcTestElementRepository.TABLE_NAME}")
+    }
+
+    private static void execute(String sql) {
+        Connection connection = embeddedPostgres.getPostgresDatabase().getConnection()
+        try {
+            connection.createStatement().execute(sql)
+        } finally {
+            connection.close()
+        }
+    }
+}
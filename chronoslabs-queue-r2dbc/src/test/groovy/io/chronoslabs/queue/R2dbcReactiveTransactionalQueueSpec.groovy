@@ -0,0 +1,184 @@
+package io.chronoslabs.queue
+
+import com.github.sviperll.result4j.Result
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import io.r2dbc.spi.ConnectionFactories
+import io.r2dbc.spi.ConnectionFactory
+import org.reactivestreams.Subscription
+import reactor.core.publisher.BaseSubscriber
+import reactor.core.publisher.Flux
+import reactor.core.publisher.Mono
+import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
+
+import java.time.Clock
+import java.time.Duration
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.atomic.AtomicInteger
+
+class R2dbcReactiveTransactionalQueueSpec extends Specification {
+    String queueName = "TestQueue"
+    PollingConditions conditions = new PollingConditions(timeout: 10)
+    Clock clock = Clock.tick(Clock.systemUTC(), Duration.ofNanos(1000))
+
+    ConnectionFactory connectionFactory = ConnectionFactories.get("r2dbc:h2:mem:///${UUID.randomUUID()};DB_CLOSE_DELAY=-1")
+    R2dbcTransactionCreator transactionCreator = new R2dbcTransactionCreator(connectionFactory)
+    H2TestElementRepository repository = new H2TestElementRepository(transactionCreator, queueName)
+
+    List<R2dbcTestElement> deadLetters = new CopyOnWriteArrayList<>()
+    AtomicInteger dispatching = new AtomicInteger()
+    AtomicInteger maxDispatching = new AtomicInteger()
+    boolean consumerFails
+
+    def setup() {
+        transactionCreator.executeInTransaction { connection ->
+            Flux.from(connection.createStatement("""
+                CREATE TABLE ${H2TestElementRepository.TABLE_NAME} (
+                    id                  BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+                    created_at          TIMESTAMP WITH TIME ZONE NOT NULL,
+                    next_dispatch_after TIMESTAMP WITH TIME ZONE NOT NULL,
+                    dispatch_count      INT                      NOT NULL,
+                    payload             VARCHAR(255)             NOT NULL
+                )
+                """).execute()).flatMap { it.getRowsUpdated() }.then()
+        }.block()
+    }
+
+    def "should enqueue the element in the transaction of the caller"() {
+        given:
+            ReactiveTransactionalQueue<String, R2dbcTestElement, R2dbcTestElementToEnqueue> queue = aQueue(3)
+
+        when: "an element is enqueued in a committed transaction and another in a failed one"
+            R2dbcTestElement committed = transactionCreator.executeInTransaction {
+                queue.enqueue(new R2dbcTestElementToEnqueue("committed")).map { it.discardError().get() }
+            }.block()
+            transactionCreator.executeInTransaction {
+                queue.enqueue(new R2dbcTestElementToEnqueue("rolled back"))
+                    .then(Mono.error(new IllegalStateException("Caller failed.")))
+            }.onErrorResume { Mono.empty() }.block()
+
+        then: "only the committed element is stored"
+            repository.findById(committed.id()).block().discardError().get() == committed
+            countElements() == 1
+    }
+
+    def "should not enqueue the element without a transaction"() {
+        given:
+            ReactiveTransactionalQueue<String, R2dbcTestElement, R2dbcTestElementToEnqueue> queue = aQueue(3)
+
+        when:
+            Result<R2dbcTestElement, TransactionalQueueError<R2dbcTestElementToEnqueue>> result =
+                queue.enqueue(new R2dbcTestElementToEnqueue("no transaction")).block()
+
+        then:
+            result.discardSuccess().get().type() == "open-transaction-error"
+            countElements() == 0
+    }
+
+    def "should dispatch no more elements at a time than the subscriber requested"() {
+        given: "a subscriber which has at most two elements outstanding"
+            ReactiveTransactionalQueue<String, R2dbcTestElement, R2dbcTestElementToEnqueue> queue = aQueue(3)
+            enqueue(queue, (1..6).collect { "element-$it" })
+            List<R2dbcTestElement> dispatched = new CopyOnWriteArrayList<>()
+            BaseSubscriber<Result<R2dbcTestElement, TransactionalQueueError<R2dbcTestElement>>> subscriber =
+                new BaseSubscriber<Result<R2dbcTestElement, TransactionalQueueError<R2dbcTestElement>>>() {
+                    @Override
+                    protected void hookOnSubscribe(Subscription subscription) {
+                        request(2)
+                    }
+
+                    @Override
+                    protected void hookOnNext(Result<R2dbcTestElement, TransactionalQueueError<R2dbcTestElement>> result) {
+                        dispatched.add(result.discardError().get())
+                        request(1)
+                    }
+                }
+
+        when:
+            queue.poll().subscribe(subscriber)
+
+        then: "every element is dispatched and removed from the queue"
+            conditions.eventually {
+                assert dispatched*.payload() as Set == (1..6).collect { "element-$it".toString() } as Set
+            }
+            countElements() == 0
+
+        and: "no more than the outstanding demand was dispatched concurrently"
+            maxDispatching.get() <= 2
+
+        cleanup:
+            subscriber.dispose()
+    }
+
+    def "should move the element to the dead letter queue after the last failed dispatch"() {
+        given:
+            consumerFails = true
+            ReactiveTransactionalQueue<String, R2dbcTestElement, R2dbcTestElementToEnqueue> queue = aQueue(1)
+            enqueue(queue, ["failing"])
+
+        when:
+            Result<R2dbcTestElement, TransactionalQueueError<R2dbcTestElement>> result = queue.poll().blockFirst()
+
+        then:
+            result.discardSuccess().get().type() == "consumer-error"
+            deadLetters*.payload() == ["failing"]
+            countElements() == 0
+    }
+
+    private ReactiveTransactionalQueue<String, R2dbcTestElement, R2dbcTestElementToEnqueue> aQueue(int maxDispatchCount) {
+        return ReactiveTransactionalQueueFactory.<String, R2dbcTestElement, R2dbcTestElementToEnqueue> factory()
+            .withQueueName(queueName)
+            .withClock(clock)
+            .withMeterRegistry(new SimpleMeterRegistry())
+            .withTransactionCreator(transactionCreator)
+            .withQueuePayloadConsumer(this::consume)
+            .withQueueRepository(repository)
+            .withQueueDeadLetterRepository { element ->
+                deadLetters.add(element)
+                Mono.just(Result.success(element))
+            }
+            .withConfigurationProperties(TransactionalQueueConfigurationProperties.builder()
+                .withLockTimeout(Duration.ofSeconds(10))
+                .withMaxDispatchCount(maxDispatchCount)
+                .withRetryDispatchBatchSize(10)
+                .withRetryScheduledRateDelay(Duration.ofMillis(20))
+                .build())
+            .create()
+    }
+
+    private Mono<Result<R2dbcTestElement, TransactionalQueueError<R2dbcTestElement>>> consume(R2dbcTestElement element) {
+        return Mono.fromRunnable {
+            int current = dispatching.incrementAndGet()
+            maxDispatching.accumulateAndGet(current, Math::max)
+        }
+            .then(Mono.delay(Duration.ofMillis(20)))
+            .then(Mono.fromSupplier {
+                dispatching.decrementAndGet()
+                if (consumerFails) {
+                    return Result.error(TransactionalQueueError.<R2dbcTestElement> builder(queueName)
+                        .withElement(element)
+                        .withType("consumer-error")
+                        .withMessage("Consumer failed.")
+                        .build())
+                }
+                return Result.success(element)
+            })
+    }
+
+    private void enqueue(
+        ReactiveTransactionalQueue<String, R2dbcTestElement, R2dbcTestElementToEnqueue> queue, List<String> payloads) {
+        transactionCreator.executeInTransaction {
+            Flux.fromIterable(payloads)
+                .concatMap { queue.enqueue(new R2dbcTestElementToEnqueue(it)) }
+                .then()
+        }.block()
+    }
+
+    private long countElements() {
+        return transactionCreator.executeInTransaction { connection ->
+            Flux.from(connection.createStatement("SELECT COUNT(*) AS elements FROM ${H2TestElementRepository.TABLE_NAME}").execute())
+                .flatMap { it.map { row, metadata -> row.get("elements", Long) } }
+                .next()
+        }.block()
+    }
+}
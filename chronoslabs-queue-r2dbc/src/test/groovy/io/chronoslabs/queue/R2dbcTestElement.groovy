@@ -0,0 +1,50 @@
+package io.chronoslabs.queue
+
+import java.time.Instant
+
+record R2dbcTestElement(long id, String payload, Instant createdAt, Instant nextDispatchAfter, int dispatchCount)
+    implements TransactionalQueueElement<String> {
+
+    static Builder builder() {
+        return new Builder()
+    }
+
+    static class Builder implements TransactionalQueueElementBuilder<String, R2dbcTestElement> {
+        private long id
+        private String payload
+        private Instant createdAt
+        private Instant nextDispatchAfter
+        private int dispatchCount
+
+        private Builder() {}
+
+        Builder withId(long id) {
+            this.id = id
+            return this
+        }
+
+        Builder withPayload(String payload) {
+            this.payload = payload
+            return this
+        }
+
+        Builder withCreatedAt(Instant createdAt) {
+            this.createdAt = createdAt
+            return this
+        }
+
+        Builder withNextDispatchAfter(Instant nextDispatchAfter) {
+            this.nextDispatchAfter = nextDispatchAfter
+            return this
+        }
+
+        Builder withDispatchCount(int dispatchCount) {
+            this.dispatchCount = dispatchCount
+            return this
+        }
+
+        R2dbcTestElement build() {
+            return new R2dbcTestElement(id, payload, createdAt, nextDispatchAfter, dispatchCount)
+        }
+    }
+}
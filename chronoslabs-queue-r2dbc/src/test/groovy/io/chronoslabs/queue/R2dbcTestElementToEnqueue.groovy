@@ -0,0 +1,9 @@
+package io.chronoslabs.queue
+
+record R2dbcTestElementToEnqueue(String payload)
+    implements TransactionalQueueElementToEnqueue<String, R2dbcTestElement> {
+
+    R2dbcTestElement.Builder toTransactionalQueueElementBuilder() {
+        return R2dbcTestElement.builder()
+    }
+}
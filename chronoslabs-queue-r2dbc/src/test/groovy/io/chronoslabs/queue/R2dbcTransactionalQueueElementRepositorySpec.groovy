@@ -0,0 +1,73 @@
+package io.chronoslabs.queue
+
+import reactor.core.publisher.Mono
+import reactor.core.scheduler.Schedulers
+import spock.lang.Specification
+
+import java.time.Duration
+import java.time.Instant
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+class R2dbcTransactionalQueueElementRepositorySpec extends Specification {
+    String queueName = "TestQueue"
+    Instant now = Instant.parse("2025-04-25T12:00:00Z")
+    Duration lockTimeout = Duration.ofSeconds(30)
+    R2dbcTransactionCreator transactionCreator = new R2dbcTransactionCreator(R2dbcPostgresTestDatabase.connectionFactory())
+    PostgresR2dbcTestElementRepository repository = new PostgresR2dbcTestElementRepository(transactionCreator, queueName)
+
+    def cleanup() {
+        R2dbcPostgresTestDatabase.truncate()
+    }
+
+    def "should insert an element, find it by its id and delete it at its dispatch count"() {
+        given:
+            R2dbcTestElement inserted = insert("payload", now + Duration.ofSeconds(1))
+
+        expect:
+            inserted.id() > 0
+            repository.findById(inserted.id()).block().discardError().get() == new R2dbcTestElement(inserted.id(), "payload", now, now + Duration.ofSeconds(1), 0)
+
+        and: "it is not deleted at another dispatch count"
+            repository.delete(new R2dbcTestElement(inserted.id(), "payload", now, now, 1)).block().discardSuccess().get().type() == "zero-rows-deleted"
+            repository.delete(inserted).block().discardError().get() == inserted
+            repository.findById(inserted.id()).block().discardSuccess().get().type() == "read-element-error"
+    }
+
+    def "should lock the oldest due elements and skip the ones locked by another transaction"() {
+        given: "three due elements and one due later"
+            List<R2dbcTestElement> due = (1..3).collect { insert("due-$it", now) }
+            insert("later", now + Duration.ofMinutes(1))
+
+        and: "a transaction which holds its lock of two elements until released"
+            CountDownLatch locked = new CountDownLatch(1)
+            CountDownLatch released = new CountDownLatch(1)
+            CompletableFuture<Collection<R2dbcTestElement>> holding = transactionCreator.executeInTransaction {
+                lock(2)
+                    .doOnNext { locked.countDown() }
+                    .delayUntil { Mono.fromRunnable { released.await() }.subscribeOn(Schedulers.boundedElastic()) }
+            }.toFuture()
+
+        when: "another transaction locks meanwhile"
+            locked.await(10, TimeUnit.SECONDS)
+            Collection<R2dbcTestElement> lockedByOther = transactionCreator.executeInTransaction { lock(2) }.block()
+            released.countDown()
+            Collection<R2dbcTestElement> lockedFirst = holding.get(10, TimeUnit.SECONDS)
+
+        then: "the first transaction locked the two oldest elements, counting the dispatch"
+            lockedFirst*.id() == due[0..1]*.id()
+            lockedFirst.every { it.dispatchCount() == 1 && it.nextDispatchAfter() == now + lockTimeout }
+
+        and: "the other one skipped them instead of waiting, and did not lock the element due later"
+            lockedByOther*.id() == [due[2].id()]
+    }
+
+    private R2dbcTestElement insert(String payload, Instant nextDispatchAfter) {
+        return repository.insert(new R2dbcTestElementToEnqueue(payload), now, nextDispatchAfter).block().discardError().get()
+    }
+
+    private Mono<Collection<R2dbcTestElement>> lock(int batchSize) {
+        return repository.lockForNextDispatch(batchSize, now + Duration.ofSeconds(1), now + lockTimeout).map { it.discardError().get() }
+    }
+}
@@ -13,4 +13,7 @@ dependencies {
     implementation(libs.logging.slf4j.api)
 
     testImplementation(libs.test.groovy.language)
+    testImplementation(libs.loadtest.embeddedPostgres)
+
+    testRuntimeOnly(libs.loadtest.postgresql)
 }
@@ -0,0 +1,221 @@
+package io.chronoslabs.queue;
+
+import static io.chronoslabs.queue.Assert.requireNonNull;
+
+import com.github.sviperll.result4j.Result;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.function.Supplier;
+import org.springframework.jdbc.core.simple.JdbcClient;
+
+/**
+ * {@link PartitionLeaseRepository} for PostgreSQL. The tables may be shared by several queues:
+ *
+ * <pre>{@code
+ * CREATE TABLE queue_partition_lease (
+ *     queue_name TEXT        NOT NULL,
+ *     partition  INT         NOT NULL,
+ *     node_id    TEXT        NOT NULL,
+ *     expires_at TIMESTAMPTZ NOT NULL,
+ *     PRIMARY KEY (queue_name, partition)
+ * );
+ * CREATE TABLE queue_node (
+ *     queue_name TEXT        NOT NULL,
+ *     node_id    TEXT        NOT NULL,
+ *     expires_at TIMESTAMPTZ NOT NULL,
+ *     PRIMARY KEY (queue_name, node_id)
+ * );
+ * }</pre>
+ */
+public class JdbcClientPartitionLeaseRepository implements PartitionLeaseRepository {
+  private static final String NODE_ID = "nodeId";
+  private static final String QUEUE_NAME = "queueName";
+  private static final String EXPIRES_AT = "expiresAt";
+
+  private final JdbcClient jdbcClient;
+  private final String queueName;
+  private final String registerNodeStatementSql;
+  private final String renewLeasesStatementSql;
+  private final String findLeasesStatementSql;
+  private final String countLiveNodesStatementSql;
+  private final String claimStatementSql;
+  private final String releaseStatementSql;
+  private final String deregisterStatementSql;
+
+  public JdbcClientPartitionLeaseRepository(
+      JdbcClient jdbcClient, String queueName, String leaseTableName, String nodeTableName) {
+    this.jdbcClient = requireNonNull(jdbcClient, "JdbcClientPartitionLeaseRepository.jdbcClient");
+    this.queueName = requireNonNull(queueName, "JdbcClientPartitionLeaseRepository.queueName");
+    requireNonNull(leaseTableName, "JdbcClientPartitionLeaseRepository.leaseTableName");
+    requireNonNull(nodeTableName, "JdbcClientPartitionLeaseRepository.nodeTableName");
+    this.registerNodeStatementSql =
+        """
+        INSERT INTO %1$s (queue_name, node_id, expires_at)
+        VALUES (:queueName, :nodeId, :expiresAt)
+        ON CONFLICT (queue_name, node_id) DO UPDATE SET expires_at = EXCLUDED.expires_at
+        """
+            .formatted(nodeTableName);
+    this.renewLeasesStatementSql =
+        """
+        UPDATE %1$s
+        SET expires_at = :expiresAt
+        WHERE queue_name = :queueName
+          AND node_id = :nodeId
+          AND expires_at > :now
+        """
+            .formatted(leaseTableName);
+    this.findLeasesStatementSql =
+        """
+        SELECT partition, node_id, expires_at
+        FROM %1$s
+        WHERE queue_name = :queueName
+        """
+            .formatted(leaseTableName);
+    this.countLiveNodesStatementSql =
+        """
+        SELECT count(*)
+        FROM %1$s
+        WHERE queue_name = :queueName
+          AND expires_at > :now
+        """
+            .formatted(nodeTableName);
+    this.claimStatementSql =
+        """
+        INSERT INTO %1$s (queue_name, partition, node_id, expires_at)
+        VALUES (:queueName, :partition, :nodeId, :expiresAt)
+        ON CONFLICT (queue_name, partition) DO UPDATE
+            SET node_id    = EXCLUDED.node_id,
+                expires_at = EXCLUDED.expires_at
+            WHERE %1$s.expires_at <= :now
+               OR %1$s.node_id = EXCLUDED.node_id
+        """
+            .formatted(leaseTableName);
+    this.releaseStatementSql =
+        """
+        DELETE FROM %1$s
+        WHERE queue_name = :queueName
+          AND partition = :partition
+          AND node_id = :nodeId
+        """
+            .formatted(leaseTableName);
+    this.deregisterStatementSql =
+        """
+        DELETE FROM %1$s
+        WHERE queue_name = :queueName
+          AND node_id = :nodeId
+        """
+            .formatted(nodeTableName);
+  }
+
+  @Override
+  public Result<Collection<PartitionLease>, TransactionalQueueError<String>> heartbeat(
+      String nodeId, Instant now, Instant expiresAt) {
+    return execute(
+        nodeId,
+        "heartbeat",
+        () -> {
+          jdbcClient
+              .sql(registerNodeStatementSql)
+              .param(QUEUE_NAME, queueName)
+              .param(NODE_ID, nodeId)
+              .param(EXPIRES_AT, Timestamp.from(expiresAt))
+              .update();
+          jdbcClient
+              .sql(renewLeasesStatementSql)
+              .param(QUEUE_NAME, queueName)
+              .param(NODE_ID, nodeId)
+              .param(EXPIRES_AT, Timestamp.from(expiresAt))
+              .param("now", Timestamp.from(now))
+              .update();
+          return jdbcClient
+              .sql(findLeasesStatementSql)
+              .param(QUEUE_NAME, queueName)
+              .query(
+                  (resultSet, rowNumber) ->
+                      new PartitionLease(
+                          resultSet.getInt("partition"),
+                          resultSet.getString("node_id"),
+                          resultSet.getTimestamp("expires_at").toInstant()))
+              .list();
+        });
+  }
+
+  @Override
+  public Result<Integer, TransactionalQueueError<String>> countLiveNodes(Instant now) {
+    return execute(
+        queueName,
+        "count-live-nodes",
+        () ->
+            jdbcClient
+                .sql(countLiveNodesStatementSql)
+                .param(QUEUE_NAME, queueName)
+                .param("now", Timestamp.from(now))
+                .query(Integer.class)
+                .single());
+  }
+
+  @Override
+  public Result<Boolean, TransactionalQueueError<String>> claim(
+      int partition, String nodeId, Instant now, Instant expiresAt) {
+    return execute(
+        nodeId,
+        "claim",
+        () ->
+            jdbcClient
+                    .sql(claimStatementSql)
+                    .param(QUEUE_NAME, queueName)
+                    .param("partition", partition)
+                    .param(NODE_ID, nodeId)
+                    .param(EXPIRES_AT, Timestamp.from(expiresAt))
+                    .param("now", Timestamp.from(now))
+                    .update()
+                > 0);
+  }
+
+  @Override
+  public Result<Boolean, TransactionalQueueError<String>> release(int partition, String nodeId) {
+    return execute(
+        nodeId,
+        "release",
+        () ->
+            jdbcClient
+                    .sql(releaseStatementSql)
+                    .param(QUEUE_NAME, queueName)
+                    .param("partition", partition)
+                    .param(NODE_ID, nodeId)
+                    .update()
+                > 0);
+  }
+
+  @Override
+  public Result<Boolean, TransactionalQueueError<String>> deregister(String nodeId) {
+    return execute(
+        nodeId,
+        "deregister",
+        () ->
+            jdbcClient
+                    .sql(deregisterStatementSql)
+                    .param(QUEUE_NAME, queueName)
+                    .param(NODE_ID, nodeId)
+                    .update()
+                > 0);
+  }
+
+  private <T> Result<T, TransactionalQueueError<String>> execute(
+      String element, String operation, Supplier<T> statement) {
+    try {
+      return Result.success(statement.get());
+    } catch (Exception exception) {
+      return Result.error(
+          TransactionalQueueError.<String>builder(queueName)
+              .withCause(exception)
+              .withElement(element)
+              .withMessage(
+                  "Partition lease operation %s of %s failed for %s."
+                      .formatted(operation, queueName, element))
+              .withType("partition-lease-" + operation + "-error")
+              .build());
+    }
+  }
+}
@@ -0,0 +1,77 @@
+package io.chronoslabs.queue;
+
+import static io.chronoslabs.queue.Assert.requireNonNull;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Map;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import org.springframework.jdbc.core.simple.JdbcClient;
+
+/**
+ * Stores serialized payloads longer than {@code thresholdBytes} in a side table instead of the
+ * queue table of a {@link JdbcClientTransactionalQueueElementRepository}, keeping the rows scanned
+ * and returned by every lock narrow. The side table is keyed by the element id:
+ *
+ * <pre>{@code
+ * CREATE TABLE queue_payload (
+ *     element_id BIGINT PRIMARY KEY,
+ *     payload    TEXT   NOT NULL
+ * );
+ * }</pre>
+ *
+ * <p>The payload column of the queue table must be nullable, and the {@link
+ * org.springframework.jdbc.core.RowMapper} of the repository maps rows whose payload is {@code
+ * NULL} to elements without payload.
+ *
+ * @param tableName name of the side table.
+ * @param thresholdBytes size of the UTF-8 encoded payload above which it is offloaded.
+ * @param serializer serializes the payload, as stored inline or offloaded.
+ * @param deserializer returns the element carrying the offloaded payload, deserialized.
+ * @param insertStatement insert statement of the queue table binding the payload as serialized.
+ */
+public record JdbcClientPayloadOffloading<
+    P, E extends TransactionalQueueElement<P>, I extends TransactionalQueueElementToEnqueue<P, E>>(
+    String tableName,
+    int thresholdBytes,
+    Function<? super P, String> serializer,
+    BiFunction<? super E, String, ? extends E> deserializer,
+    InsertStatement<I> insertStatement) {
+
+  public JdbcClientPayloadOffloading {
+    requireNonNull(tableName, "JdbcClientPayloadOffloading.tableName");
+    Assert.isTrue(
+        thresholdBytes >= 0, "JdbcClientPayloadOffloading.thresholdBytes must not be negative.");
+    requireNonNull(serializer, "JdbcClientPayloadOffloading.serializer");
+    requireNonNull(deserializer, "JdbcClientPayloadOffloading.deserializer");
+    requireNonNull(insertStatement, "JdbcClientPayloadOffloading.insertStatement");
+  }
+
+  boolean isOffloaded(String serializedPayload) {
+    // A character takes at least one and at most three bytes in UTF-8.
+    if (serializedPayload.length() > thresholdBytes) {
+      return true;
+    }
+    if ((long) serializedPayload.length() * 3 <= thresholdBytes) {
+      return false;
+    }
+    return serializedPayload.getBytes(StandardCharsets.UTF_8).length > thresholdBytes;
+  }
+
+  @FunctionalInterface
+  public interface InsertStatement<I> {
+
+    /**
+     * @param inlinePayload the serialized payload to bind to the payload column, or {@code null}
+     *     when it is stored in the side table.
+     */
+    JdbcClient.StatementSpec anInsertStatementSpec(
+        JdbcClient jdbcClient,
+        I elementToEnqueue,
+        Instant createdAt,
+        Instant nextDispatchAfter,
+        Map<String, String> traceContext,
+        String inlinePayload);
+  }
+}
@@ -0,0 +1,58 @@
+package io.chronoslabs.queue;
+
+import static io.chronoslabs.queue.Assert.requireNonNull;
+
+import com.github.sviperll.result4j.Result;
+import org.springframework.jdbc.core.simple.JdbcClient;
+
+/**
+ * {@link RecurringJobRegistry} for PostgreSQL. The table may be shared by several queues:
+ *
+ * <pre>{@code
+ * CREATE TABLE queue_recurring_job (
+ *     queue_name TEXT NOT NULL,
+ *     job_name   TEXT NOT NULL,
+ *     PRIMARY KEY (queue_name, job_name)
+ * );
+ * }</pre>
+ */
+public class JdbcClientRecurringJobRegistry implements RecurringJobRegistry {
+  private final JdbcClient jdbcClient;
+  private final String queueName;
+  private final String registerStatementSql;
+
+  public JdbcClientRecurringJobRegistry(JdbcClient jdbcClient, String queueName, String tableName) {
+    this.jdbcClient = requireNonNull(jdbcClient, "JdbcClientRecurringJobRegistry.jdbcClient");
+    this.queueName = requireNonNull(queueName, "JdbcClientRecurringJobRegistry.queueName");
+    requireNonNull(tableName, "JdbcClientRecurringJobRegistry.tableName");
+    this.registerStatementSql =
+        """
+        INSERT INTO %1$s (queue_name, job_name)
+        VALUES (:queueName, :jobName)
+        ON CONFLICT (queue_name, job_name) DO NOTHING
+        """
+            .formatted(tableName);
+  }
+
+  @Override
+  public Result<Boolean, TransactionalQueueError<String>> register(String jobName) {
+    try {
+      return Result.success(
+          jdbcClient
+                  .sql(registerStatementSql)
+                  .param("queueName", queueName)
+                  .param("jobName", jobName)
+                  .update()
+              == 1);
+    } catch (Exception exception) {
+      return Result.error(
+          TransactionalQueueError.<String>builder(queueName)
+              .withCause(exception)
+              .withElement(jobName)
+              .withMessage(
+                  "Failed to register the recurring job %s of %s.".formatted(jobName, queueName))
+              .withType("recurring-job-register-error")
+              .build());
+    }
+  }
+}
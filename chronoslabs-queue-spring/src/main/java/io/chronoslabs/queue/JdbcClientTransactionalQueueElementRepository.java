@@ -5,10 +5,13 @@ import static io.chronoslabs.queue.Assert.requireNonNull;
 import com.github.sviperll.result4j.Result;
 import java.io.Serial;
 import java.sql.Timestamp;
+import java.time.Duration;
 import java.time.Instant;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Map;
 import java.util.Optional;
+import java.util.function.Supplier;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.jdbc.core.RowMapper;
@@ -16,20 +19,54 @@ import org.springframework.jdbc.core.simple.JdbcClient;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
 
+/**
+ * Base of repositories written with {@link JdbcClient}. Elements are partitioned by {@code mod(id,
+ * partitionCount)} for {@link PartitionLeases}; index that expression together with {@code
+ * next_dispatch_after} when partitions are leased. Delayed dispatch moves locked elements past
+ * their due time with PostgreSQL interval arithmetic, and {@link #releaseLocks} moves them back in
+ * one statement.
+ *
+ * <p>With {@link JdbcClientPayloadOffloading}, large payloads are kept out of the queue table. The
+ * offloading serializes the payloads, binds the inline ones in its own insert statement and
+ * deserializes the offloaded ones, and the {@link RowMapper} maps rows whose payload column is
+ * {@code NULL} to elements without payload. Such elements are returned by the locks and {@link
+ * #findById}; {@link #delete} removes the offloaded payload in the same statement as the element
+ * and returns the element carrying it, so it is only read just before being consumed.
+ *
+ * <p>Every row returned by the locks is mapped by the {@link RowMapper}, including those of
+ * elements which are never consumed. A mapper reading the payload column into a {@link LazyPayload}
+ * defers its decoding until the consumer reads it.
+ *
+ * <p>Payloads stored in a {@code BYTEA} column are best encoded with a {@link
+ * VersionedPayloadCodec}, binding {@code codec.encode(payload)} in the insert statement and mapping
+ * {@code LazyPayload.decoding(resultSet.getBytes("payload"), codec::decode)}.
+ */
 public abstract class JdbcClientTransactionalQueueElementRepository<
         P,
         E extends TransactionalQueueElement<P>,
         I extends TransactionalQueueElementToEnqueue<P, E>>
-    implements TransactionalQueueElementRepository<P, E, I> {
+    implements PartitionedTransactionalQueueElementRepository<P, E, I>,
+        DelayedTransactionalQueueElementRepository<P, E, I>,
+        ReleasableTransactionalQueueElementRepository<P, E, I> {
   private static final Logger log =
       LoggerFactory.getLogger(JdbcClientTransactionalQueueElementRepository.class);
+  private static final String PARTITION_CONDITION = "AND mod(id, :partitionCount) IN (:partitions)";
+  private static final String SKIPPED_IDS_CONDITION = "AND id NOT IN (:skippedIds)";
 
   protected final JdbcClient jdbcClient;
   protected final String queueName;
   protected final RowMapper<E> rowMapper;
+  private final JdbcClientPayloadOffloading<P, E, I> payloadOffloading;
   private final String findByIdStatementSql;
   private final String lockForNextDispatchStatementSql;
+  private final String lockForNextDispatchInPartitionsStatementSql;
+  private final String lockForNextDispatchSkippingStatementSql;
+  private final String lockForNextDispatchInPartitionsSkippingStatementSql;
+  private final String lockForDelayedDispatchStatementSql;
   private final String deleteStatementSql;
+  private final String releaseLocksStatementSql;
+  private final String insertOffloadedPayloadStatementSql;
+  private final String deleteWithOffloadedPayloadStatementSql;
 
   protected JdbcClientTransactionalQueueElementRepository(
       JdbcClient jdbcClient,
@@ -37,31 +74,157 @@ public abstract class JdbcClientTransactionalQueueElementRepository<
       String tableName,
       String tableColumns,
       RowMapper<E> rowMapper) {
+    this(jdbcClient, queueName, tableName, tableColumns, rowMapper, null);
+  }
+
+  /**
+   * @param payloadOffloading where and how payloads above a size threshold are stored, or {@code
+   *     null} to keep all of them in the queue table.
+   */
+  protected JdbcClientTransactionalQueueElementRepository(
+      JdbcClient jdbcClient,
+      String queueName,
+      String tableName,
+      String tableColumns,
+      RowMapper<E> rowMapper,
+      JdbcClientPayloadOffloading<P, E, I> payloadOffloading) {
     this.jdbcClient =
         requireNonNull(jdbcClient, "JdbcClientTransactionalQueueElementRepository.jdbcClient");
     this.queueName = queueName;
     this.findByIdStatementSql = aFindByIdStatementSql(tableName, tableColumns);
     this.lockForNextDispatchStatementSql =
-        aLockForNextDispatchStatementSql(tableName, tableColumns);
+        aLockForNextDispatchStatementSql(tableName, tableColumns, "");
+    this.lockForNextDispatchInPartitionsStatementSql =
+        aLockForNextDispatchStatementSql(tableName, tableColumns, PARTITION_CONDITION);
+    this.lockForNextDispatchSkippingStatementSql =
+        aLockForNextDispatchStatementSql(tableName, tableColumns, SKIPPED_IDS_CONDITION);
+    this.lockForNextDispatchInPartitionsSkippingStatementSql =
+        aLockForNextDispatchStatementSql(
+            tableName, tableColumns, PARTITION_CONDITION + " " + SKIPPED_IDS_CONDITION);
+    this.lockForDelayedDispatchStatementSql =
+        aLockForDelayedDispatchStatementSql(tableName, tableColumns);
     this.deleteStatementSql = aDeleteStatementSql(tableName);
+    this.releaseLocksStatementSql = aReleaseLocksStatementSql(tableName);
     this.rowMapper = rowMapper;
+    this.payloadOffloading = payloadOffloading;
+    if (payloadOffloading == null) {
+      this.insertOffloadedPayloadStatementSql = null;
+      this.deleteWithOffloadedPayloadStatementSql = null;
+    } else {
+      this.insertOffloadedPayloadStatementSql =
+          anInsertOffloadedPayloadStatementSql(payloadOffloading.tableName());
+      this.deleteWithOffloadedPayloadStatementSql =
+          aDeleteWithOffloadedPayloadStatementSql(tableName, payloadOffloading.tableName());
+    }
   }
 
   @Override
   public Result<E, TransactionalQueueError<I>> insert(
       I elementToEnqueue, Instant createdAt, Instant nextDispatchAfter) {
-    return insertElement(elementToEnqueue, createdAt, nextDispatchAfter)
+    return insert(elementToEnqueue, createdAt, nextDispatchAfter, Map.of());
+  }
+
+  @Override
+  public Result<E, TransactionalQueueError<I>> insert(
+      I elementToEnqueue,
+      Instant createdAt,
+      Instant nextDispatchAfter,
+      Map<String, String> traceContext) {
+    if (payloadOffloading != null) {
+      return insertWithPayloadOffloading(
+          elementToEnqueue, createdAt, nextDispatchAfter, traceContext);
+    }
+    return insertElement(
+            elementToEnqueue,
+            () ->
+                anInsertStatementSpec(elementToEnqueue, createdAt, nextDispatchAfter, traceContext))
+        .flatMap(keyHolder -> retrieveInsertedElementId(elementToEnqueue, keyHolder))
+        .map(
+            id ->
+                anInsertedElement(
+                    elementToEnqueue, id, createdAt, nextDispatchAfter, traceContext));
+  }
+
+  private Result<E, TransactionalQueueError<I>> insertWithPayloadOffloading(
+      I elementToEnqueue,
+      Instant createdAt,
+      Instant nextDispatchAfter,
+      Map<String, String> traceContext) {
+    String serializedPayload;
+    try {
+      serializedPayload = payloadOffloading.serializer().apply(elementToEnqueue.payload());
+    } catch (Exception exception) {
+      return Result.error(
+          TransactionalQueueError.<I>builder(queueName)
+              .withCause(exception)
+              .withElement(elementToEnqueue)
+              .withMessage("Failed to serialize the payload of %s Element.".formatted(queueName))
+              .withType("payload-serialization-error")
+              .build());
+    }
+    var offloaded = payloadOffloading.isOffloaded(serializedPayload);
+    var inlinePayload = offloaded ? null : serializedPayload;
+    return insertElement(
+            elementToEnqueue,
+            () ->
+                payloadOffloading
+                    .insertStatement()
+                    .anInsertStatementSpec(
+                        jdbcClient,
+                        elementToEnqueue,
+                        createdAt,
+                        nextDispatchAfter,
+                        traceContext,
+                        inlinePayload))
         .flatMap(keyHolder -> retrieveInsertedElementId(elementToEnqueue, keyHolder))
+        .flatMap(
+            id ->
+                offloaded
+                    ? insertOffloadedPayload(elementToEnqueue, id, serializedPayload)
+                    : Result.success(id))
         .map(
             id ->
-                elementToEnqueue
-                    .toTransactionalQueueElementBuilder()
-                    .withId(id)
-                    .withCreatedAt(createdAt)
-                    .withDispatchCount(INITIAL_DISPATCH_COUNT)
-                    .withNextDispatchAfter(nextDispatchAfter)
-                    .withPayload(elementToEnqueue.payload())
-                    .build());
+                anInsertedElement(
+                    elementToEnqueue, id, createdAt, nextDispatchAfter, traceContext));
+  }
+
+  private Result<Long, TransactionalQueueError<I>> insertOffloadedPayload(
+      I elementToEnqueue, long id, String serializedPayload) {
+    try {
+      jdbcClient
+          .sql(insertOffloadedPayloadStatementSql)
+          .param("elementId", id)
+          .param("payload", serializedPayload)
+          .update();
+      return Result.success(id);
+    } catch (Exception exception) {
+      return Result.error(
+          TransactionalQueueError.<I>builder(queueName)
+              .withCause(exception)
+              .withElement(elementToEnqueue)
+              .withMessage(
+                  "Failed to offload the payload of %s Element with id=%d."
+                      .formatted(queueName, id))
+              .withType("payload-offload-error")
+              .build());
+    }
+  }
+
+  private E anInsertedElement(
+      I elementToEnqueue,
+      long id,
+      Instant createdAt,
+      Instant nextDispatchAfter,
+      Map<String, String> traceContext) {
+    return elementToEnqueue
+        .toTransactionalQueueElementBuilder()
+        .withId(id)
+        .withCreatedAt(createdAt)
+        .withDispatchCount(INITIAL_DISPATCH_COUNT)
+        .withNextDispatchAfter(nextDispatchAfter)
+        .withPayload(elementToEnqueue.payload())
+        .withTraceContext(traceContext)
+        .build();
   }
 
   @Override
@@ -70,11 +233,15 @@ public abstract class JdbcClientTransactionalQueueElementRepository<
       var element = aFindByIdStatementSpec(id).query(rowMapper).single();
       return Result.success(element);
     } catch (Exception exception) {
-      log.atError()
-          .addArgument(queueName)
-          .addArgument(id)
-          .setCause(exception)
-          .log("Failed to select {} element with id={}.");
+      ErrorLogLimiter.shared()
+          .logError(
+              log,
+              queueName,
+              "read-element-error",
+              exception,
+              "Failed to select {} element with id={}.",
+              queueName,
+              id);
       return Result.error(
           TransactionalQueueError.<Long>builder(queueName)
               .withCause(exception)
@@ -95,36 +262,164 @@ public abstract class JdbcClientTransactionalQueueElementRepository<
               .list();
       return Result.success(elements);
     } catch (Exception exception) {
-      var params =
+      return lockError(
+          exception,
           "batchSize=%d, notDispatchedTill=%s, nextDispatchTime=%s"
-              .formatted(batchSize, notDispatchedTill, nextDispatchTime);
+              .formatted(batchSize, notDispatchedTill, nextDispatchTime));
+    }
+  }
+
+  @Override
+  public Result<Collection<E>, TransactionalQueueError<String>> lockForNextDispatch(
+      int batchSize, Instant notDispatchedTill, Instant nextDispatchTime, long[] skippedIds) {
+    if (skippedIds.length == 0) {
+      return lockForNextDispatch(batchSize, notDispatchedTill, nextDispatchTime);
+    }
+    try {
+      var elements =
+          aLockForNextDispatchStatementSpec(
+                  batchSize, notDispatchedTill, nextDispatchTime, skippedIds)
+              .query(rowMapper)
+              .list();
+      return Result.success(elements);
+    } catch (Exception exception) {
+      return lockError(
+          exception,
+          "batchSize=%d, notDispatchedTill=%s, nextDispatchTime=%s, skippedIds=%s"
+              .formatted(
+                  batchSize, notDispatchedTill, nextDispatchTime, Arrays.toString(skippedIds)));
+    }
+  }
+
+  @Override
+  public Result<Collection<E>, TransactionalQueueError<String>> lockForNextDispatch(
+      int batchSize,
+      Instant notDispatchedTill,
+      Instant nextDispatchTime,
+      int partitionCount,
+      int[] partitions) {
+    try {
+      var elements =
+          aLockForNextDispatchStatementSpec(
+                  batchSize, notDispatchedTill, nextDispatchTime, partitionCount, partitions)
+              .query(rowMapper)
+              .list();
+      return Result.success(elements);
+    } catch (Exception exception) {
+      return lockError(
+          exception,
+          "batchSize=%d, notDispatchedTill=%s, nextDispatchTime=%s, partitionCount=%d, partitions=%s"
+              .formatted(
+                  batchSize,
+                  notDispatchedTill,
+                  nextDispatchTime,
+                  partitionCount,
+                  Arrays.toString(partitions)));
+    }
+  }
+
+  @Override
+  public Result<Collection<E>, TransactionalQueueError<String>> lockForNextDispatch(
+      int batchSize,
+      Instant notDispatchedTill,
+      Instant nextDispatchTime,
+      int partitionCount,
+      int[] partitions,
+      long[] skippedIds) {
+    if (skippedIds.length == 0) {
+      return lockForNextDispatch(
+          batchSize, notDispatchedTill, nextDispatchTime, partitionCount, partitions);
+    }
+    try {
+      var elements =
+          aLockForNextDispatchStatementSpec(
+                  batchSize,
+                  notDispatchedTill,
+                  nextDispatchTime,
+                  partitionCount,
+                  partitions,
+                  skippedIds)
+              .query(rowMapper)
+              .list();
+      return Result.success(elements);
+    } catch (Exception exception) {
+      return lockError(
+          exception,
+          "batchSize=%d, notDispatchedTill=%s, nextDispatchTime=%s, partitionCount=%d, partitions=%s, skippedIds=%s"
+              .formatted(
+                  batchSize,
+                  notDispatchedTill,
+                  nextDispatchTime,
+                  partitionCount,
+                  Arrays.toString(partitions),
+                  Arrays.toString(skippedIds)));
+    }
+  }
+
+  @Override
+  public Result<Collection<E>, TransactionalQueueError<String>> lockForDelayedDispatch(
+      int batchSize, Instant dueFrom, Instant dueBefore, Duration lockTimeout) {
+    try {
+      var elements =
+          aLockForDelayedDispatchStatementSpec(batchSize, dueFrom, dueBefore, lockTimeout)
+              .query(rowMapper)
+              .list();
+      return Result.success(elements);
+    } catch (Exception exception) {
+      return lockError(
+          exception,
+          "batchSize=%d, dueFrom=%s, dueBefore=%s, lockTimeout=%s"
+              .formatted(batchSize, dueFrom, dueBefore, lockTimeout));
+    }
+  }
+
+  @Override
+  public Result<Integer, TransactionalQueueError<String>> releaseLocks(
+      Collection<E> elements, Duration lockTimeout) {
+    if (elements.isEmpty()) {
+      return Result.success(0);
+    }
+    try {
+      return Result.success(aReleaseLocksStatementSpec(elements, lockTimeout).update());
+    } catch (Exception exception) {
+      var params = "elements=%d, lockTimeout=%s".formatted(elements.size(), lockTimeout);
       return Result.error(
           TransactionalQueueError.<String>builder(queueName)
               .withCause(exception)
               .withElement(params)
               .withMessage(
-                  "Failed to lock %s Elements for retry dispatch. Params: %s"
+                  "Failed to release the locks of %s Elements. Params: %s"
                       .formatted(queueName, params))
-              .withType("retry-dispatch-lock-error")
+              .withType("release-locks-error")
               .build());
     }
   }
 
+  private Result<Collection<E>, TransactionalQueueError<String>> lockError(
+      Exception exception, String params) {
+    return Result.error(
+        TransactionalQueueError.<String>builder(queueName)
+            .withCause(exception)
+            .withElement(params)
+            .withMessage(
+                "Failed to lock %s Elements for retry dispatch. Params: %s"
+                    .formatted(queueName, params))
+            .withType("retry-dispatch-lock-error")
+            .build());
+  }
+
   @Override
   @SuppressWarnings("java:S1126")
   public Result<E, TransactionalQueueError<E>> delete(E element) {
     try {
+      if (payloadOffloading != null) {
+        return deleteWithOffloadedPayload(element);
+      }
       int rowsAffected = aDeleteStatementSpec(element).update();
       if (rowsAffected > 0) {
         return Result.success(element);
       }
-      return Result.error(
-          TransactionalQueueError.<E>builder(queueName)
-              .withElement(element)
-              .withMessage(
-                  "Failed to delete %s Element with id=%d.".formatted(queueName, element.id()))
-              .withType("zero-rows-deleted")
-              .build());
+      return zeroRowsDeleted(element);
     } catch (Exception exception) {
       return Result.error(
           TransactionalQueueError.<E>builder(queueName)
@@ -137,13 +432,42 @@ public abstract class JdbcClientTransactionalQueueElementRepository<
     }
   }
 
+  private Result<E, TransactionalQueueError<E>> deleteWithOffloadedPayload(E element) {
+    var deleted =
+        jdbcClient
+            .sql(deleteWithOffloadedPayloadStatementSql)
+            .param("id", element.id())
+            .param("dispatch_count", element.dispatchCount())
+            .query(
+                (resultSet, rowNumber) ->
+                    new DeletedElement(
+                        resultSet.getLong("deleted_elements"), resultSet.getString("payload")))
+            .single();
+    if (deleted.count() == 0) {
+      return zeroRowsDeleted(element);
+    }
+    if (deleted.payload() == null) {
+      return Result.success(element);
+    }
+    return Result.success(payloadOffloading.deserializer().apply(element, deleted.payload()));
+  }
+
+  private Result<E, TransactionalQueueError<E>> zeroRowsDeleted(E element) {
+    return Result.error(
+        TransactionalQueueError.<E>builder(queueName)
+            .withElement(element)
+            .withMessage(
+                "Failed to delete %s Element with id=%d.".formatted(queueName, element.id()))
+            .withType("zero-rows-deleted")
+            .build());
+  }
+
   @SuppressWarnings("PMD.AvoidLiteralsInIfCondition")
   private Result<KeyHolder, TransactionalQueueError<I>> insertElement(
-      I elementToEnqueue, Instant createdAt, Instant nextDispatchAfter) {
+      I elementToEnqueue, Supplier<JdbcClient.StatementSpec> insertStatementSpec) {
     var keyHolder = new GeneratedKeyHolder();
     try {
-      int rowsInserted =
-          anInsertStatementSpec(elementToEnqueue, createdAt, nextDispatchAfter).update(keyHolder);
+      int rowsInserted = insertStatementSpec.get().update(keyHolder);
 
       if (rowsInserted != 1) {
         return Result.error(
@@ -156,11 +480,15 @@ public abstract class JdbcClientTransactionalQueueElementRepository<
                 .build());
       }
     } catch (Exception exception) {
-      log.atError()
-          .addArgument(queueName)
-          .addArgument(elementToEnqueue)
-          .setCause(exception)
-          .log("Failed to insert element into {}. Element: {}.");
+      ErrorLogLimiter.shared()
+          .logError(
+              log,
+              queueName,
+              "queue-insert-error",
+              exception,
+              "Failed to insert element into {}. Element: {}.",
+              queueName,
+              elementToEnqueue);
       return Result.error(
           TransactionalQueueError.<I>builder(queueName)
               .withCause(exception)
@@ -216,6 +544,20 @@ public abstract class JdbcClientTransactionalQueueElementRepository<
   protected abstract JdbcClient.StatementSpec anInsertStatementSpec(
       I elementToEnqueue, Instant createdAt, Instant nextDispatchAfter) throws ElementException;
 
+  /**
+   * Override to persist the trace context of the enqueuing observation next to the element, so the
+   * {@link RowMapper} can restore it for {@link TransactionalQueueElement#traceContext()}. By
+   * default, the trace context is not stored.
+   */
+  protected JdbcClient.StatementSpec anInsertStatementSpec(
+      I elementToEnqueue,
+      Instant createdAt,
+      Instant nextDispatchAfter,
+      Map<String, String> traceContext)
+      throws ElementException {
+    return anInsertStatementSpec(elementToEnqueue, createdAt, nextDispatchAfter);
+  }
+
   private static String aFindByIdStatementSql(String tableName, String tableColumns) {
     return """
     SELECT %2$s
@@ -229,11 +571,13 @@ public abstract class JdbcClientTransactionalQueueElementRepository<
     return jdbcClient.sql(findByIdStatementSql).param("id", id);
   }
 
-  private static String aLockForNextDispatchStatementSql(String tableName, String tableColumns) {
+  private static String aLockForNextDispatchStatementSql(
+      String tableName, String tableColumns, String conditions) {
     return """
     WITH locked_records AS (SELECT id
                             FROM %1$s
                             WHERE next_dispatch_after < :notDispatchedTill
+                              %3$s
                             ORDER BY created_at, id
                             LIMIT :batchSize FOR UPDATE SKIP LOCKED)
     UPDATE %1$s
@@ -242,18 +586,117 @@ public abstract class JdbcClientTransactionalQueueElementRepository<
     WHERE id IN (SELECT id FROM locked_records)
     RETURNING %2$s
     """
-        .formatted(tableName, tableColumns);
+        .formatted(tableName, tableColumns, conditions);
   }
 
   protected JdbcClient.StatementSpec aLockForNextDispatchStatementSpec(
       int batchSize, Instant notDispatchedTill, Instant nextDispatchTime) {
+    return aLockStatementSpec(
+        lockForNextDispatchStatementSql, batchSize, notDispatchedTill, nextDispatchTime);
+  }
+
+  @SuppressWarnings("PMD.UseVarargs")
+  protected JdbcClient.StatementSpec aLockForNextDispatchStatementSpec(
+      int batchSize,
+      Instant notDispatchedTill,
+      Instant nextDispatchTime,
+      int partitionCount,
+      int[] partitions) {
+    return aLockStatementSpec(
+            lockForNextDispatchInPartitionsStatementSql,
+            batchSize,
+            notDispatchedTill,
+            nextDispatchTime)
+        .param("partitionCount", partitionCount)
+        .param("partitions", Arrays.stream(partitions).boxed().toList());
+  }
+
+  @SuppressWarnings("PMD.UseVarargs")
+  protected JdbcClient.StatementSpec aLockForNextDispatchStatementSpec(
+      int batchSize, Instant notDispatchedTill, Instant nextDispatchTime, long[] skippedIds) {
+    return aLockStatementSpec(
+            lockForNextDispatchSkippingStatementSql, batchSize, notDispatchedTill, nextDispatchTime)
+        .param("skippedIds", Arrays.stream(skippedIds).boxed().toList());
+  }
+
+  @SuppressWarnings("PMD.UseVarargs")
+  protected JdbcClient.StatementSpec aLockForNextDispatchStatementSpec(
+      int batchSize,
+      Instant notDispatchedTill,
+      Instant nextDispatchTime,
+      int partitionCount,
+      int[] partitions,
+      long[] skippedIds) {
+    return aLockStatementSpec(
+            lockForNextDispatchInPartitionsSkippingStatementSql,
+            batchSize,
+            notDispatchedTill,
+            nextDispatchTime)
+        .param("partitionCount", partitionCount)
+        .param("partitions", Arrays.stream(partitions).boxed().toList())
+        .param("skippedIds", Arrays.stream(skippedIds).boxed().toList());
+  }
+
+  private JdbcClient.StatementSpec aLockStatementSpec(
+      String sql, int batchSize, Instant notDispatchedTill, Instant nextDispatchTime) {
     return jdbcClient
-        .sql(lockForNextDispatchStatementSql)
+        .sql(sql)
         .param("batchSize", batchSize)
         .param("notDispatchedTill", Timestamp.from(notDispatchedTill))
         .param("nextDispatchTime", Timestamp.from(nextDispatchTime));
   }
 
+  private static String aLockForDelayedDispatchStatementSql(String tableName, String tableColumns) {
+    return """
+    WITH locked_records AS (SELECT id
+                            FROM %1$s
+                            WHERE next_dispatch_after >= :dueFrom
+                              AND next_dispatch_after < :dueBefore
+                              AND dispatch_count = 0
+                            ORDER BY next_dispatch_after, id
+                            LIMIT :batchSize FOR UPDATE SKIP LOCKED)
+    UPDATE %1$s
+    SET next_dispatch_after = next_dispatch_after + :lockTimeoutMillis * INTERVAL '1 millisecond',
+        dispatch_count      = dispatch_count + 1
+    WHERE id IN (SELECT id FROM locked_records)
+    RETURNING %2$s
+    """
+        .formatted(tableName, tableColumns);
+  }
+
+  protected JdbcClient.StatementSpec aLockForDelayedDispatchStatementSpec(
+      int batchSize, Instant dueFrom, Instant dueBefore, Duration lockTimeout) {
+    return jdbcClient
+        .sql(lockForDelayedDispatchStatementSql)
+        .param("batchSize", batchSize)
+        .param("dueFrom", Timestamp.from(dueFrom))
+        .param("dueBefore", Timestamp.from(dueBefore))
+        .param("lockTimeoutMillis", lockTimeout.toMillis());
+  }
+
+  /** The {@code (id, dispatch_count)} pairs of the elements are expanded into the IN list. */
+  private static String aReleaseLocksStatementSql(String tableName) {
+    return """
+    UPDATE %1$s
+    SET next_dispatch_after = next_dispatch_after - :lockTimeoutMillis * INTERVAL '1 millisecond',
+        dispatch_count      = dispatch_count - 1
+    WHERE (id, dispatch_count) IN (:lockedElements)
+    """
+        .formatted(tableName);
+  }
+
+  protected JdbcClient.StatementSpec aReleaseLocksStatementSpec(
+      Collection<E> elements, Duration lockTimeout) {
+    return jdbcClient
+        .sql(releaseLocksStatementSql)
+        .param("lockTimeoutMillis", lockTimeout.toMillis())
+        .param(
+            "lockedElements",
+            elements.stream()
+                .map(element -> new Object[] {element.id(), element.dispatchCount()})
+                .toList());
+  }
+
   private static String aDeleteStatementSql(String tableName) {
     return """
     DELETE FROM %1$s
@@ -270,6 +713,32 @@ public abstract class JdbcClientTransactionalQueueElementRepository<
         .param("dispatch_count", element.dispatchCount());
   }
 
+  private static String anInsertOffloadedPayloadStatementSql(String payloadTableName) {
+    return """
+    INSERT INTO %1$s (element_id, payload)
+    VALUES (:elementId, :payload)
+    """
+        .formatted(payloadTableName);
+  }
+
+  private static String aDeleteWithOffloadedPayloadStatementSql(
+      String tableName, String payloadTableName) {
+    return """
+    WITH deleted_element AS (DELETE FROM %1$s
+                             WHERE id = :id
+                               AND dispatch_count = :dispatch_count
+                             RETURNING id),
+         deleted_payload AS (DELETE FROM %2$s
+                             WHERE element_id IN (SELECT id FROM deleted_element)
+                             RETURNING payload)
+    SELECT (SELECT count(*) FROM deleted_element) AS deleted_elements,
+           (SELECT payload FROM deleted_payload)  AS payload
+    """
+        .formatted(tableName, payloadTableName);
+  }
+
+  private record DeletedElement(long count, String payload) {}
+
   public static class ElementException extends RuntimeException {
     @Serial private static final long serialVersionUID = 4460657212154651111L;
 
@@ -4,6 +4,9 @@ import static io.chronoslabs.queue.Assert.requireNonNull;
 
 import com.github.sviperll.result4j.Result;
 import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.transaction.PlatformTransactionManager;
@@ -15,20 +18,43 @@ public class SpringTransactionCreator implements TransactionCreator {
 
   private final MeterRegistry meterRegistry;
   private final PlatformTransactionManager transactionManager;
+  private final Map<TransactionDefinition, DefaultTransactionDefinition> definitions;
 
   public SpringTransactionCreator(
       MeterRegistry meterRegistry, PlatformTransactionManager transactionManager) {
     this.meterRegistry = requireNonNull(meterRegistry, "SpringTransactionCreator.meterRegistry");
     this.transactionManager =
         requireNonNull(transactionManager, "SpringTransactionCreator.transactionManager");
+    this.definitions = new EnumMap<>(TransactionDefinition.class);
+    for (var transactionDefinition : TransactionDefinition.values()) {
+      definitions.put(transactionDefinition, springDefinition(transactionDefinition));
+    }
   }
 
   @Override
   public Result<OpenedTransaction, TransactionalQueueError<String>> openTransaction(
       TransactionDefinition transactionDefinition, String queueName) {
+    return openTransaction(
+        transactionDefinition, definitions.get(transactionDefinition), queueName);
+  }
+
+  /**
+   * Sets the timeout, rounded up to whole seconds, on the Spring transaction. Spring's JDBC
+   * templates apply the time remaining until it as the query timeout of each statement.
+   */
+  @Override
+  public Result<OpenedTransaction, TransactionalQueueError<String>> openTransaction(
+      TransactionDefinition transactionDefinition, String queueName, Duration timeout) {
+    var definition = new DefaultTransactionDefinition(definitions.get(transactionDefinition));
+    definition.setTimeout(timeoutSeconds(timeout));
+    return openTransaction(transactionDefinition, definition, queueName);
+  }
+
+  private Result<OpenedTransaction, TransactionalQueueError<String>> openTransaction(
+      TransactionDefinition transactionDefinition,
+      DefaultTransactionDefinition definition,
+      String queueName) {
     try {
-      var definition = new DefaultTransactionDefinition();
-      definition.setPropagationBehaviorName(transactionDefinition.name());
       return Result.success(
           new SpringOpenedTransaction(transactionManager.getTransaction(definition), queueName));
     } catch (Exception exception) {
@@ -44,13 +70,23 @@ public class SpringTransactionCreator implements TransactionCreator {
     }
   }
 
+  private static int timeoutSeconds(Duration timeout) {
+    var seconds = timeout.getSeconds() + (timeout.getNano() > 0 ? 1 : 0);
+    return (int) Math.min(Math.max(seconds, 1), Integer.MAX_VALUE);
+  }
+
+  private static DefaultTransactionDefinition springDefinition(
+      TransactionDefinition transactionDefinition) {
+    var definition = new DefaultTransactionDefinition();
+    definition.setPropagationBehaviorName(transactionDefinition.name());
+    return definition;
+  }
+
   class SpringOpenedTransaction implements OpenedTransaction {
-    private final MetricHandler metricHandler;
     private final TransactionStatus status;
     private final String queueName;
 
     private SpringOpenedTransaction(TransactionStatus status, String queueName) {
-      this.metricHandler = new MetricHandler(meterRegistry, queueName);
       this.status = status;
       this.queueName = queueName;
     }
@@ -61,12 +97,15 @@ public class SpringTransactionCreator implements TransactionCreator {
         transactionManager.commit(status);
         return Result.success(success);
       } catch (Exception exception) {
-        logger
-            .atError()
-            .addArgument(status.getTransactionName())
-            .addArgument(queueName)
-            .setCause(exception)
-            .log("Failed to commit transaction {} for {}.");
+        ErrorLogLimiter.shared()
+            .logError(
+                logger,
+                queueName,
+                "commit-transaction-error",
+                exception,
+                "Failed to commit transaction {} for {}.",
+                status.getTransactionName(),
+                queueName);
         return Result.error(
             TransactionalQueueError.<String>builder(queueName)
                 .withCause(exception)
@@ -84,13 +123,16 @@ public class SpringTransactionCreator implements TransactionCreator {
       try {
         transactionManager.rollback(status);
       } catch (Exception exception) {
-        logger
-            .atError()
-            .addArgument(status.getTransactionName())
-            .addArgument(queueName)
-            .setCause(exception)
-            .log("Failed to rollback transaction {} for {}.");
-        metricHandler.registerRollbackError(exception);
+        ErrorLogLimiter.shared()
+            .logError(
+                logger,
+                queueName,
+                "database-rollback",
+                exception,
+                "Failed to rollback transaction {} for {}.",
+                status.getTransactionName(),
+                queueName);
+        new MetricHandler(meterRegistry, queueName).registerRollbackError(exception);
       }
     }
   }
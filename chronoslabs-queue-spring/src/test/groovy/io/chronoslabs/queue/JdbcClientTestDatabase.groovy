@@ -0,0 +1,35 @@
+package io.chronoslabs.queue
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres
+import org.springframework.jdbc.core.simple.JdbcClient
+
+import javax.sql.DataSource
+
+/** Embedded Postgres shared by the specs of the module, started once and emptied between tests. */
+class JdbcClientTestDatabase {
+    private static EmbeddedPostgres embeddedPostgres
+
+    static synchronized DataSource dataSource() {
+        if (embeddedPostgres == null) {
+            embeddedPostgres = EmbeddedPostgres.start()
+            JdbcClientTestElementRepository.SCHEMA.each { execute(it) }
+        }
+        return embeddedPostgres.getPostgresDatabase()
+    }
+
+    static JdbcClient jdbcClient() {
+        return JdbcClient.create(dataSource())
+    }
+
+    static void truncate() {
+        execute("TRUNCATE ${JdbcClientTestElementRepository.TABLE_NAME}, ${JdbcClientTestElementRepository.PAYLOAD_TABLE_NAME}")
+    }
+
+    static List<String> payloads(String tableName) {
+        return jdbcClient().sql("SELECT coalesce(payload, 'NULL') FROM ${tableName} ORDER BY 1").query(String).list()
+    }
+
+    static void execute(String sql) {
+        jdbcClient().sql(sql).update()
+    }
+}
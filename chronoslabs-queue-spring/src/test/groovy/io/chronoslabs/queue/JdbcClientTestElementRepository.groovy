@@ -0,0 +1,78 @@
+package io.chronoslabs.queue
+
+import org.springframework.jdbc.core.simple.JdbcClient
+
+import java.sql.ResultSet
+import java.sql.SQLException
+import java.sql.Timestamp
+import java.time.Instant
+
+class JdbcClientTestElementRepository extends JdbcClientTransactionalQueueElementRepository<String, JdbcClientTestElement, JdbcClientTestElementToEnqueue> {
+    static final String TABLE_NAME = "jdbc_client_test_queue"
+    static final String TABLE_COLUMNS = "id, created_at, next_dispatch_after, dispatch_count, payload"
+    static final String PAYLOAD_TABLE_NAME = "jdbc_client_test_queue_payload"
+    static final List<String> SCHEMA = [
+        """
+        CREATE TABLE ${TABLE_NAME} (
+            id                  BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+            created_at          TIMESTAMP WITH TIME ZONE NOT NULL,
+            next_dispatch_after TIMESTAMP WITH TIME ZONE NOT NULL,
+            dispatch_count      INTEGER                  NOT NULL,
+            payload             TEXT
+        )
+        """.toString(),
+        """
+        CREATE TABLE ${PAYLOAD_TABLE_NAME} (
+            element_id BIGINT PRIMARY KEY,
+            payload    TEXT   NOT NULL
+        )
+        """.toString(),
+    ]
+    private static final String INSERT_STATEMENT_SQL = """
+        INSERT INTO ${TABLE_NAME} (created_at, next_dispatch_after, dispatch_count, payload)
+        VALUES (:createdAt, :nextDispatchAfter, 0, :payload)
+        """.toString()
+
+    JdbcClientTestElementRepository(JdbcClient jdbcClient, String queueName) {
+        super(jdbcClient, queueName, TABLE_NAME, TABLE_COLUMNS, { ResultSet resultSet, int rowNumber -> mapRow(resultSet) })
+    }
+
+    /** Offloads the payloads longer than {@code thresholdBytes}, which are stored as they are. */
+    JdbcClientTestElementRepository(JdbcClient jdbcClient, String queueName, int thresholdBytes) {
+        super(jdbcClient, queueName, TABLE_NAME, TABLE_COLUMNS, { ResultSet resultSet, int rowNumber -> mapRow(resultSet) },
+            new JdbcClientPayloadOffloading<String, JdbcClientTestElement, JdbcClientTestElementToEnqueue>(
+                PAYLOAD_TABLE_NAME,
+                thresholdBytes,
+                { String payload -> payload },
+                { JdbcClientTestElement element, String serializedPayload -> JdbcClientTestElementRepository.withPayload(element, serializedPayload) },
+                { JdbcClient client, JdbcClientTestElementToEnqueue elementToEnqueue, Instant createdAt, Instant nextDispatchAfter, Map<String, String> traceContext, String inlinePayload ->
+                    client
+                        .sql(INSERT_STATEMENT_SQL)
+                        .param("createdAt", Timestamp.from(createdAt))
+                        .param("nextDispatchAfter", Timestamp.from(nextDispatchAfter))
+                        .param("payload", inlinePayload)
+                } as JdbcClientPayloadOffloading.InsertStatement<JdbcClientTestElementToEnqueue>))
+    }
+
+    @Override
+    protected JdbcClient.StatementSpec anInsertStatementSpec(JdbcClientTestElementToEnqueue elementToEnqueue, Instant createdAt, Instant nextDispatchAfter) {
+        return jdbcClient
+            .sql(INSERT_STATEMENT_SQL)
+            .param("createdAt", Timestamp.from(createdAt))
+            .param("nextDispatchAfter", Timestamp.from(nextDispatchAfter))
+            .param("payload", elementToEnqueue.payload())
+    }
+
+    static JdbcClientTestElement withPayload(JdbcClientTestElement element, String payload) {
+        return new JdbcClientTestElement(element.id(), payload, element.createdAt(), element.nextDispatchAfter(), element.dispatchCount())
+    }
+
+    static JdbcClientTestElement mapRow(ResultSet resultSet) throws SQLException {
+        return new JdbcClientTestElement(
+            resultSet.getLong("id"),
+            resultSet.getString("payload"),
+            resultSet.getTimestamp("created_at").toInstant(),
+            resultSet.getTimestamp("next_dispatch_after").toInstant(),
+            resultSet.getInt("dispatch_count"))
+    }
+}
@@ -0,0 +1,9 @@
+package io.chronoslabs.queue
+
+record JdbcClientTestElementToEnqueue(String payload)
+    implements TransactionalQueueElementToEnqueue<String, JdbcClientTestElement> {
+
+    JdbcClientTestElement.Builder toTransactionalQueueElementBuilder() {
+        return JdbcClientTestElement.builder()
+    }
+}
@@ -0,0 +1,100 @@
+package io.chronoslabs.queue
+
+import spock.lang.Specification
+
+import java.time.Duration
+import java.time.Instant
+
+class JdbcClientTransactionalQueueElementRepositorySpec extends Specification {
+    String queueName = "TestQueue"
+    Instant now = Instant.parse("2025-04-25T12:00:00Z")
+    Duration lockTimeout = Duration.ofSeconds(30)
+    JdbcClientTestElementRepository repository = new JdbcClientTestElementRepository(JdbcClientTestDatabase.jdbcClient(), queueName)
+
+    def cleanup() {
+        JdbcClientTestDatabase.truncate()
+    }
+
+    def "should lock for delayed dispatch only the elements which were never locked"() {
+        given: "an element due soon, and one locked by the retry whose lock expires within the look-ahead"
+            JdbcClientTestElement dueSoon = insert("due-soon", now + Duration.ofSeconds(5))
+            insert("retried", now - Duration.ofSeconds(1))
+            JdbcClientTestElement retried = repository.lockForNextDispatch(10, now, now + Duration.ofSeconds(10)).discardError().get().first()
+
+        when: "the elements due within the look-ahead are locked"
+            List<JdbcClientTestElement> locked = lockForDelayedDispatch(now, now + Duration.ofSeconds(20))
+
+        then: "only the element due soon is locked, moved past its due time by the lock timeout"
+            locked*.id() == [dueSoon.id()]
+            locked.first().nextDispatchAfter() == dueSoon.nextDispatchAfter() + lockTimeout
+            locked.first().dispatchCount() == 1
+
+        and: "the lock of the retried element is left as it was"
+            repository.findById(retried.id()).discardError().get() == retried
+
+        when: "the look-ahead of a later schedule reaches the lock expiry of the delayed element"
+            List<JdbcClientTestElement> lockedLater = lockForDelayedDispatch(now + Duration.ofSeconds(20), now + lockTimeout + Duration.ofSeconds(10))
+
+        then: "it is not locked again"
+            lockedLater.isEmpty()
+            repository.findById(dueSoon.id()).discardError().get() == locked.first()
+    }
+
+    def "should offload the payloads above the threshold to the side table"() {
+        given:
+            JdbcClientTestElementRepository offloadingRepository = new JdbcClientTestElementRepository(JdbcClientTestDatabase.jdbcClient(), queueName, 8)
+
+        when:
+            JdbcClientTestElement small = offloadingRepository.insert(new JdbcClientTestElementToEnqueue("small"), now, now - Duration.ofSeconds(1)).discardError().get()
+            JdbcClientTestElement large = offloadingRepository.insert(new JdbcClientTestElementToEnqueue("large payload"), now, now - Duration.ofSeconds(1)).discardError().get()
+
+        then: "both inserted elements carry their payload"
+            small.payload() == "small"
+            large.payload() == "large payload"
+
+        and: "only the large payload is stored in the side table, keyed by its element"
+            JdbcClientTestDatabase.payloads(JdbcClientTestElementRepository.TABLE_NAME) == ["NULL", "small"]
+            JdbcClientTestDatabase.payloads(JdbcClientTestElementRepository.PAYLOAD_TABLE_NAME) == ["large payload"]
+            JdbcClientTestDatabase.jdbcClient().sql("SELECT element_id FROM ${JdbcClientTestElementRepository.PAYLOAD_TABLE_NAME}").query(Long).single() == large.id()
+
+        and: "the locks return the element without its offloaded payload"
+            offloadingRepository.lockForNextDispatch(10, now, now + lockTimeout).discardError().get().collectEntries { [it.id(), it.payload()] } == [(small.id()): "small", (large.id()): null]
+    }
+
+    def "should delete an element together with its offloaded payload and return it carrying the payload"() {
+        given: "two locked elements, one with an offloaded payload"
+            JdbcClientTestElementRepository offloadingRepository = new JdbcClientTestElementRepository(JdbcClientTestDatabase.jdbcClient(), queueName, 8)
+            offloadingRepository.insert(new JdbcClientTestElementToEnqueue("small"), now, now - Duration.ofSeconds(1))
+            offloadingRepository.insert(new JdbcClientTestElementToEnqueue("large payload"), now, now - Duration.ofSeconds(1))
+            Map<String, JdbcClientTestElement> locked = offloadingRepository.lockForNextDispatch(10, now, now + lockTimeout).discardError().get()
+                .collectEntries { [it.payload() ?: "offloaded", it] }
+
+        when: "the element is deleted with a stale dispatch count"
+            JdbcClientTestElement stale = new JdbcClientTestElement(locked.offloaded.id(), null, now, now, 0)
+            TransactionalQueueError<JdbcClientTestElement> error = offloadingRepository.delete(stale).discardSuccess().get()
+
+        then: "neither the element nor its payload is deleted"
+            error.type() == "zero-rows-deleted"
+            JdbcClientTestDatabase.payloads(JdbcClientTestElementRepository.PAYLOAD_TABLE_NAME) == ["large payload"]
+
+        when: "both elements are deleted"
+            JdbcClientTestElement deletedOffloaded = offloadingRepository.delete(locked.offloaded).discardError().get()
+            JdbcClientTestElement deletedInline = offloadingRepository.delete(locked.small).discardError().get()
+
+        then: "the element with the offloaded payload is returned carrying it"
+            deletedOffloaded == JdbcClientTestElementRepository.withPayload(locked.offloaded, "large payload")
+            deletedInline == locked.small
+
+        and: "both tables are empty"
+            JdbcClientTestDatabase.payloads(JdbcClientTestElementRepository.TABLE_NAME).isEmpty()
+            JdbcClientTestDatabase.payloads(JdbcClientTestElementRepository.PAYLOAD_TABLE_NAME).isEmpty()
+    }
+
+    private JdbcClientTestElement insert(String payload, Instant nextDispatchAfter) {
+        return repository.insert(new JdbcClientTestElementToEnqueue(payload), now, nextDispatchAfter).discardError().get()
+    }
+
+    private List<JdbcClientTestElement> lockForDelayedDispatch(Instant dueFrom, Instant dueBefore) {
+        return repository.lockForDelayedDispatch(10, dueFrom, dueBefore, lockTimeout).discardError().get() as List
+    }
+}
@@ -7,5 +7,10 @@ pluginManagement {
 rootProject.name = "chronos-queue"
 enableFeaturePreview("TYPESAFE_PROJECT_ACCESSORS")
 
+include(":chronoslabs-queue-appendlog")
+include(":chronoslabs-queue-benchmarks")
 include(":chronoslabs-queue-core")
+include(":chronoslabs-queue-jdbc")
+include(":chronoslabs-queue-loadtest")
+include(":chronoslabs-queue-r2dbc")
 include(":chronoslabs-queue-spring")